@@ -57,6 +57,9 @@ public class ActivityProvider extends ContentProvider {
   @SuppressWarnings("WeakerAccess")
   public static final String TCX_MIME = "application/vnd.garmin.tcx+xml";
 
+  @SuppressWarnings("WeakerAccess")
+  public static final String FIT_MIME = "application/vnd.ant.fit";
+
   // UriMatcher used to match against incoming requests
   @SuppressWarnings("WeakerAccess")
   static final int GPX = 1;
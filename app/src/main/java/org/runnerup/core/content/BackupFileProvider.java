@@ -6,20 +6,28 @@ import android.content.UriMatcher;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.ParcelFileDescriptor;
+import android.util.Log;
 import androidx.annotation.NonNull;
 import org.runnerup.BuildConfig;
 import org.runnerup.core.util.AutomaticBackupManager;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * ContentProvider for sharing backup files via email, cloud storage, etc.
  */
 public class BackupFileProvider extends ContentProvider {
 
+    private static final String TAG = "BackupFileProvider";
     public static final String AUTHORITY = BuildConfig.APPLICATION_ID + ".backup.file.provider";
     public static final String MIME = "application/x-sqlite3";
+    public static final String MIME_GZIP = "application/gzip";
+    public static final String MIME_ENCRYPTED = "application/octet-stream";
 
     private UriMatcher uriMatcher;
 
@@ -49,6 +57,22 @@ public class BackupFileProvider extends ContentProvider {
                 throw new FileNotFoundException("Backup file not found: " + file.getAbsolutePath());
             }
 
+            if (fileName.endsWith(AutomaticBackupManager.MANIFEST_SUFFIX)) {
+                // Chunked backup, stream the reassembled database
+                return openPipeHelper(uri, MIME, null, file, (output, u, mimeType, opts, backup) -> {
+                    try (InputStream in = AutomaticBackupManager.openBackup(getContext(), backup);
+                         OutputStream out = new FileOutputStream(output.getFileDescriptor())) {
+                        byte[] buffer = new byte[64 * 1024];
+                        int bytesRead;
+                        while ((bytesRead = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, bytesRead);
+                        }
+                    } catch (IOException e) {
+                        Log.w(TAG, "Failed to stream backup " + backup.getName(), e);
+                    }
+                });
+            }
+
             // Return read-only access
             return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
         }
@@ -65,7 +89,15 @@ public class BackupFileProvider extends ContentProvider {
 
     @Override
     public String getType(@NonNull Uri uri) {
-        return MIME;
+        String fileName = uri.getLastPathSegment();
+        return getType(fileName != null ? fileName : "");
+    }
+
+    public static String getType(String fileName) {
+        if (fileName.endsWith(AutomaticBackupManager.ENCRYPTED_BACKUP_SUFFIX)) {
+            return MIME_ENCRYPTED;
+        }
+        return fileName.endsWith(".gz") ? MIME_GZIP : MIME;
     }
 
     @Override
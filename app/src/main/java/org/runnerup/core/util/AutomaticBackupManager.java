@@ -2,13 +2,22 @@ package org.runnerup.core.util;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 import org.runnerup.data.DBHelper;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -16,6 +25,8 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Simple, reliable automatic backup manager that creates local backups
@@ -26,6 +37,20 @@ public class AutomaticBackupManager {
     private static final String PREFS_NAME = "auto_backup_prefs";
     private static final String PREF_LAST_BACKUP_TIME = "last_backup_time";
     private static final String PREF_BACKUP_COUNT = "backup_count";
+    private static final String PREF_LAST_BACKUP_DB_SIZE = "last_backup_db_size";
+    private static final String PREF_LAST_BACKUP_SIZE = "last_backup_size";
+    private static final String PREF_LAST_BACKUP_WRITTEN = "last_backup_written";
+    private static final String PREF_LAST_BACKUP_DURATION = "last_backup_duration";
+
+    private static final String BACKUP_PREFIX = "auto_backup_";
+    // Backups are manifests of chunks in CHUNK_DIR, older backups are complete database copies
+    public static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String GZIP_BACKUP_SUFFIX = ".db.gz";
+    // Compressed and then encrypted with StreamEncryption
+    public static final String ENCRYPTED_BACKUP_SUFFIX = ".db.gz.enc";
+    private static final String LEGACY_BACKUP_SUFFIX = ".db";
+    private static final String CHUNK_DIR = "chunks";
+    private static final int BUFFER_SIZE = 64 * 1024;
     
     // Keep last 10 backups or backups from last 7 days, whichever is more
     private static final int MAX_BACKUPS = 10;
@@ -33,6 +58,8 @@ public class AutomaticBackupManager {
     
     // Minimum time between backups (1 hour) to avoid too frequent backups
     private static final long MIN_BACKUP_INTERVAL = 60L * 60 * 1000; // 1 hour
+
+    private static ChunkStore sChunkStore = null;
     
     /**
      * Create an automatic backup if enough time has passed since last backup.
@@ -89,28 +116,21 @@ public class AutomaticBackupManager {
             // Create backup file with timestamp
             SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
             String timestamp = sdf.format(new Date());
-            String fileName = "auto_backup_" + timestamp + ".db";
+            String fileName = BACKUP_PREFIX + timestamp + MANIFEST_SUFFIX;
             File backupFile = new File(backupDir, fileName);
-            
-            // Copy database file
-            try (FileInputStream in = new FileInputStream(dbFile);
-                 FileOutputStream out = new FileOutputStream(backupFile)) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                long totalBytes = 0;
-                while ((bytesRead = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, bytesRead);
-                    totalBytes += bytesRead;
-                }
-                out.flush();
-                Log.i(TAG, "Backup created: " + backupFile.getName() + " (" + totalBytes + " bytes)");
-            }
-            
+
+            BackupStats stats = writeChunkedBackup(context, backupFile);
+            Log.i(TAG, "Backup created: " + backupFile.getName() + " (" + stats + ")");
+
             // Update last backup time
             SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
             prefs.edit()
                 .putLong(PREF_LAST_BACKUP_TIME, System.currentTimeMillis())
                 .putInt(PREF_BACKUP_COUNT, getBackupCount(context) + 1)
+                .putLong(PREF_LAST_BACKUP_DB_SIZE, stats.databaseSize)
+                .putLong(PREF_LAST_BACKUP_SIZE, stats.backupSize)
+                .putLong(PREF_LAST_BACKUP_WRITTEN, stats.writtenSize)
+                .putLong(PREF_LAST_BACKUP_DURATION, stats.durationMs)
                 .apply();
             
             // Clean up old backups
@@ -123,6 +143,183 @@ public class AutomaticBackupManager {
         }
     }
     
+    /**
+     * Create a backup encrypted with the passphrase, listed with the other backups. The
+     * passphrase is not stored, it is needed again to restore.
+     */
+    public static boolean createEncryptedBackup(Context context, char[] passphrase) {
+        try {
+            File backupDir = getBackupDirectory(context);
+            if (!backupDir.exists() && !backupDir.mkdirs()) {
+                Log.e(TAG, "Failed to create backup directory: " + backupDir.getAbsolutePath());
+                return false;
+            }
+            SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
+            String fileName = BACKUP_PREFIX + sdf.format(new Date()) + ENCRYPTED_BACKUP_SUFFIX;
+            File backupFile = new File(backupDir, fileName);
+
+            BackupStats stats = writeBackup(context, backupFile, passphrase);
+            Log.i(TAG, "Encrypted backup created: " + backupFile.getName() + " (" + stats + ")");
+            cleanupOldBackups(context);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to create encrypted backup", e);
+            return false;
+        }
+    }
+
+    private static synchronized ChunkStore getChunkStore(Context context) {
+        if (sChunkStore == null) {
+            sChunkStore = new ChunkStore(new File(getBackupDirectory(context), CHUNK_DIR));
+        }
+        return sChunkStore;
+    }
+
+    /**
+     * Write a consistent backup of the database to the chunk store, only chunks that changed
+     * since earlier backups are written.
+     */
+    private static BackupStats writeChunkedBackup(Context context, File manifest) throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        File snapshot = snapshotDatabase(context, manifest.getParentFile());
+        try (InputStream in = new FileInputStream(snapshot)) {
+            ChunkStore.WriteResult result = getChunkStore(context).write(in, manifest);
+            Log.d(TAG, "Wrote " + result.newChunks + " of " + result.chunks + " chunks");
+            return new BackupStats(
+                result.size,
+                result.bytesStored,
+                result.bytesWritten,
+                SystemClock.elapsedRealtime() - start);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            snapshot.delete();
+        }
+    }
+
+    /**
+     * Write a compressed, consistent backup of the database. The backup is written to a
+     * temporary file that is renamed to the target when complete, so the target is never
+     * a partial file.
+     */
+    public static BackupStats writeBackup(Context context, File target) throws IOException {
+        return writeBackup(context, target, null);
+    }
+
+    /**
+     * As {@link #writeBackup(Context, File)}, encrypted with the passphrase if not null.
+     */
+    public static BackupStats writeBackup(Context context, File target, char[] passphrase)
+            throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        File dir = target.getParentFile();
+        File snapshot = snapshotDatabase(context, dir);
+        File tmp = new File(dir, target.getName() + ".tmp");
+        try {
+            try (InputStream in = new FileInputStream(snapshot);
+                 FileOutputStream fileOut = new FileOutputStream(tmp);
+                 GZIPOutputStream out = new GZIPOutputStream(fileOut, BUFFER_SIZE)) {
+                copy(in, out);
+                out.finish();
+                fileOut.getFD().sync();
+            }
+            if (passphrase != null) {
+                encrypt(tmp, passphrase);
+            }
+            if (!tmp.renameTo(target)) {
+                throw new IOException("Failed to rename " + tmp + " to " + target);
+            }
+            return new BackupStats(
+                snapshot.length(), target.length(), SystemClock.elapsedRealtime() - start);
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            snapshot.delete();
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Replace the file with its encrypted content.
+     */
+    private static void encrypt(File file, char[] passphrase) throws IOException {
+        File encrypted = new File(file.getPath() + ".enc");
+        try {
+            try (InputStream in = new FileInputStream(file);
+                 FileOutputStream fileOut = new FileOutputStream(encrypted);
+                 OutputStream out = new BufferedOutputStream(fileOut, BUFFER_SIZE)) {
+                StreamEncryption.encrypt(in, out, passphrase);
+                out.flush();
+                fileOut.getFD().sync();
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+            if (!encrypted.renameTo(file)) {
+                throw new IOException("Failed to rename " + encrypted + " to " + file);
+            }
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            encrypted.delete();
+        }
+    }
+
+    /**
+     * Write a transactionally consistent copy of the database to a temporary file in dir.
+     * The database may be in use. The caller deletes the file.
+     */
+    public static File snapshotDatabase(Context context, File dir) throws IOException {
+        File snapshot = File.createTempFile("snapshot_", ".db", dir);
+        SQLiteDatabase db = DBHelper.getWritableDatabase(context);
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                // SQLite 3.27+: copy from a read transaction, also dropping free pages
+                db.execSQL("VACUUM INTO '" + snapshot.getAbsolutePath().replace("'", "''") + "'");
+            } else {
+                // Move committed pages from the write-ahead log (if any) to the database file,
+                // then hold a write transaction so no pages change while the file is copied
+                try (Cursor c = db.rawQuery("PRAGMA wal_checkpoint(FULL)", null)) {
+                    c.moveToFirst();
+                }
+                db.beginTransaction();
+                try (InputStream in = new FileInputStream(DBHelper.getDbPath(context));
+                     OutputStream out = new FileOutputStream(snapshot)) {
+                    copy(in, out);
+                } finally {
+                    db.endTransaction();
+                }
+            }
+            return snapshot;
+        } catch (SQLException | IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            snapshot.delete();
+            throw e instanceof IOException ? (IOException) e : new IOException(e);
+        }
+    }
+
+    private static long copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long totalBytes = 0;
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1) {
+            out.write(buffer, 0, bytesRead);
+            totalBytes += bytesRead;
+        }
+        return totalBytes;
+    }
+
+    private static boolean isBackupFile(String name) {
+        return name.startsWith(BACKUP_PREFIX) && getBackupSuffix(name) != null;
+    }
+
+    private static String getBackupSuffix(String name) {
+        for (String suffix : new String[] {
+                MANIFEST_SUFFIX, ENCRYPTED_BACKUP_SUFFIX, GZIP_BACKUP_SUFFIX, LEGACY_BACKUP_SUFFIX}) {
+            if (name.endsWith(suffix)) {
+                return suffix;
+            }
+        }
+        return null;
+    }
+
     /**
      * Get the backup directory (in app's external files directory).
      */
@@ -146,7 +343,7 @@ public class AutomaticBackupManager {
             return backups;
         }
         
-        File[] files = backupDir.listFiles((dir, name) -> name.startsWith("auto_backup_") && name.endsWith(".db"));
+        File[] files = backupDir.listFiles((dir, name) -> isBackupFile(name));
         if (files == null) {
             return backups;
         }
@@ -154,8 +351,9 @@ public class AutomaticBackupManager {
         for (File file : files) {
             try {
                 String name = file.getName();
-                // Extract timestamp from filename: auto_backup_yyyyMMdd_HHmmss.db
-                String timestampStr = name.substring(12, name.length() - 3); // Remove "auto_backup_" and ".db"
+                // Extract timestamp from filename: auto_backup_yyyyMMdd_HHmmss.manifest
+                String suffix = getBackupSuffix(name);
+                String timestampStr = name.substring(BACKUP_PREFIX.length(), name.length() - suffix.length());
                 SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
                 Date date = sdf.parse(timestampStr);
                 
@@ -177,6 +375,14 @@ public class AutomaticBackupManager {
      * Restore database from a backup file.
      */
     public static boolean restoreBackup(Context context, File backupFile) {
+        return restoreBackup(context, backupFile, null);
+    }
+
+    /**
+     * Restore database from a backup file, encrypted backups are decrypted with the passphrase.
+     */
+    public static boolean restoreBackup(Context context, File backupFile, char[] passphrase) {
+        File tmp = null;
         try {
             if (!backupFile.exists()) {
                 Log.e(TAG, "Backup file does not exist: " + backupFile.getAbsolutePath());
@@ -186,28 +392,76 @@ public class AutomaticBackupManager {
             String dbPath = DBHelper.getDbPath(context);
             File dbFile = new File(dbPath);
             
+            // Unpack next to the database, a wrong passphrase fails before anything is replaced
+            tmp = new File(dbFile.getParentFile(), dbFile.getName() + ".restore");
+            try (InputStream in = openBackup(context, backupFile, passphrase);
+                 FileOutputStream out = new FileOutputStream(tmp)) {
+                copy(in, out);
+                out.getFD().sync();
+            }
+
             // Create a backup of current database before restoring
             createBackup(context, true);
-            
-            // Copy backup file to database location
-            try (FileInputStream in = new FileInputStream(backupFile);
-                 FileOutputStream out = new FileOutputStream(dbFile)) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, bytesRead);
-                }
-                out.flush();
+
+            // A write-ahead log of the replaced database must not be applied to the restored one
+            //noinspection ResultOfMethodCallIgnored
+            new File(dbPath + "-wal").delete();
+            //noinspection ResultOfMethodCallIgnored
+            new File(dbPath + "-shm").delete();
+            if (!tmp.renameTo(dbFile)) {
+                throw new IOException("Failed to replace " + dbFile);
             }
             
             Log.i(TAG, "Database restored from: " + backupFile.getName());
             return true;
         } catch (Exception e) {
             Log.e(TAG, "Failed to restore backup", e);
+            if (tmp != null) {
+                //noinspection ResultOfMethodCallIgnored
+                tmp.delete();
+            }
             return false;
         }
     }
     
+    /**
+     * The database content of a backup.
+     */
+    public static InputStream openBackup(Context context, File backupFile) throws IOException {
+        return openBackup(context, backupFile, null);
+    }
+
+    /**
+     * The database content of a backup, encrypted backups are decrypted with the passphrase.
+     * A wrong passphrase or a modified file is reported as an IOException when reading.
+     */
+    public static InputStream openBackup(Context context, File backupFile, char[] passphrase)
+            throws IOException {
+        String name = backupFile.getName();
+        if (name.endsWith(MANIFEST_SUFFIX)) {
+            return getChunkStore(context).open(backupFile);
+        }
+        if (name.endsWith(ENCRYPTED_BACKUP_SUFFIX)) {
+            if (passphrase == null) {
+                throw new IOException("Backup is encrypted: " + name);
+            }
+            return new GZIPInputStream(decrypt(backupFile, passphrase), BUFFER_SIZE);
+        }
+        InputStream in = new FileInputStream(backupFile);
+        if (name.endsWith(GZIP_BACKUP_SUFFIX)) {
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        }
+        return in;
+    }
+
+    private static InputStream decrypt(File file, char[] passphrase) throws IOException {
+        try {
+            return new StreamEncryption.RandomAccessReader(file, passphrase).openStream(0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
     /**
      * Clean up old backups, keeping only the most recent ones.
      */
@@ -218,7 +472,7 @@ public class AutomaticBackupManager {
                 return;
             }
             
-            File[] files = backupDir.listFiles((dir, name) -> name.startsWith("auto_backup_") && name.endsWith(".db"));
+            File[] files = backupDir.listFiles((dir, name) -> isBackupFile(name));
             if (files == null || files.length <= MAX_BACKUPS) {
                 return;
             }
@@ -243,6 +497,16 @@ public class AutomaticBackupManager {
             
             if (deleted > 0) {
                 Log.i(TAG, "Cleaned up " + deleted + " old backup(s)");
+
+                // Drop the chunks only used by the deleted backups
+                List<File> manifests = new ArrayList<>();
+                File[] remaining = backupDir.listFiles((dir, name) -> isBackupFile(name)
+                    && name.endsWith(MANIFEST_SUFFIX));
+                if (remaining != null) {
+                    manifests.addAll(Arrays.asList(remaining));
+                }
+                int chunks = getChunkStore(context).collectGarbage(manifests);
+                Log.i(TAG, "Deleted " + chunks + " unused backup chunk(s)");
             }
         } catch (Exception e) {
             Log.e(TAG, "Error cleaning up old backups", e);
@@ -265,6 +529,58 @@ public class AutomaticBackupManager {
         return prefs.getLong(PREF_LAST_BACKUP_TIME, 0);
     }
     
+    /**
+     * Statistics of the last backup, null if there is none.
+     */
+    public static BackupStats getLastBackupStats(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long backupSize = prefs.getLong(PREF_LAST_BACKUP_SIZE, 0);
+        if (backupSize <= 0) {
+            return null;
+        }
+        return new BackupStats(
+            prefs.getLong(PREF_LAST_BACKUP_DB_SIZE, 0),
+            backupSize,
+            prefs.getLong(PREF_LAST_BACKUP_WRITTEN, backupSize),
+            prefs.getLong(PREF_LAST_BACKUP_DURATION, 0));
+    }
+
+    /**
+     * Size and time of a backup.
+     */
+    public static class BackupStats {
+        public final long databaseSize;
+        // Size of the backup, for chunked backups all chunks it uses
+        public final long backupSize;
+        // Bytes written, for chunked backups only the new chunks
+        public final long writtenSize;
+        public final long durationMs;
+
+        public BackupStats(long databaseSize, long backupSize, long durationMs) {
+            this(databaseSize, backupSize, backupSize, durationMs);
+        }
+
+        public BackupStats(long databaseSize, long backupSize, long writtenSize, long durationMs) {
+            this.databaseSize = databaseSize;
+            this.backupSize = backupSize;
+            this.writtenSize = writtenSize;
+            this.durationMs = durationMs;
+        }
+
+        /**
+         * Database size divided by backup size.
+         */
+        public double getCompressionRatio() {
+            return backupSize > 0 ? (double) databaseSize / backupSize : 0;
+        }
+
+        @Override
+        public String toString() {
+            return databaseSize + " -> " + backupSize + " bytes, " + writtenSize + " written, "
+                + durationMs + " ms";
+        }
+    }
+
     /**
      * Information about a backup file.
      */
@@ -276,9 +592,24 @@ public class AutomaticBackupManager {
         public BackupInfo(File file, long timestamp) {
             this.file = file;
             this.timestamp = timestamp;
-            this.size = file.length();
+            this.size = getDatabaseSize(file);
+        }
+
+        private static long getDatabaseSize(File file) {
+            if (file.getName().endsWith(MANIFEST_SUFFIX)) {
+                try {
+                    return ChunkStore.readSize(file);
+                } catch (IOException e) {
+                    Log.w(TAG, "Error reading backup manifest: " + file.getName(), e);
+                }
+            }
+            return file.length();
         }
         
+        public boolean isEncrypted() {
+            return file.getName().endsWith(ENCRYPTED_BACKUP_SUFFIX);
+        }
+
         public String getFormattedDate() {
             SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.getDefault());
             return sdf.format(new Date(timestamp));
@@ -4,15 +4,12 @@ import android.content.Context;
 import android.net.Uri;
 import android.util.Log;
 import androidx.annotation.NonNull;
+import androidx.preference.PreferenceManager;
 import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 import org.runnerup.data.DBHelper;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -21,6 +18,8 @@ import java.util.concurrent.TimeUnit;
 
 public class BackupWorker extends Worker {
     private static final String TAG = "BackupWorker";
+    // Was stored in plain text, removed. Encrypted backups are created from the settings.
+    public static final String PREF_BACKUP_PASSWORD = "pref_auto_backup_password";
     
     public BackupWorker(@NonNull Context context, @NonNull WorkerParameters params) {
         super(context, params);
@@ -140,7 +139,9 @@ public class BackupWorker extends Worker {
             // Create backup file name with timestamp
             SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
             String timestamp = sdf.format(new Date());
-            String fileName = "runnerup_backup_" + timestamp + ".db";
+            String fileName = "runnerup_backup_" + timestamp + ".db.gz";
+            PreferenceManager.getDefaultSharedPreferences(getApplicationContext())
+                .edit().remove(PREF_BACKUP_PASSWORD).apply();
             
             // Save to app's external files directory (no permissions needed)
             File backupDir = getApplicationContext().getExternalFilesDir("backups");
@@ -151,18 +152,12 @@ public class BackupWorker extends Worker {
             
             File backupFile = new File(backupDir, fileName);
             
-            // Copy database to backup file
-            try (InputStream in = new FileInputStream(dbFile);
-                 OutputStream out = new FileOutputStream(backupFile)) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, bytesRead);
-                }
-                out.flush();
-            }
+            // Consistent compressed copy, the database may be in use
+            AutomaticBackupManager.BackupStats stats =
+                AutomaticBackupManager.writeBackup(getApplicationContext(), backupFile);
             
-            Log.d(TAG, "Backup saved locally to: " + backupFile.getAbsolutePath());
+            Log.d(TAG, "Backup saved locally to: " + backupFile.getAbsolutePath()
+                + " (" + stats + ")");
             
             // Save last backup time
             android.content.SharedPreferences prefs = getApplicationContext()
@@ -0,0 +1,399 @@
+package org.runnerup.core.util;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Deduplicating store for backups. A file is split in content-defined chunks with a rolling hash,
+ * so an insert only changes the chunks around it, not all that follow. Each chunk is stored once,
+ * compressed and named by its SHA-256, and a manifest lists the chunks of a backup.
+ *
+ * <p>Manifest format, text:
+ *
+ * <pre>
+ * runnerup-chunks 1
+ * size &lt;bytes&gt;
+ * &lt;sha256&gt; &lt;length&gt;
+ * ...
+ * </pre>
+ */
+public final class ChunkStore {
+
+  private static final String MAGIC = "runnerup-chunks 1";
+  private static final String CHUNK_SUFFIX = ".gz";
+
+  static final int MIN_CHUNK = 16 * 1024;
+  static final int MAX_CHUNK = 256 * 1024;
+  // Boundary when the top 16 bits are zero, 64 KiB average after the minimum. The top bits of
+  // the Gear hash depend on the last 64 bytes, the low bits only on the last few.
+  private static final long BOUNDARY_MASK = 0xffffL << 48;
+
+  // Gear hash table, must never change or existing chunks are not reused
+  private static final long[] GEAR = new long[256];
+
+  static {
+    long seed = 0x52554e4e45525550L;
+    for (int i = 0; i < GEAR.length; i++) {
+      // SplitMix64
+      seed += 0x9E3779B97F4A7C15L;
+      long z = seed;
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      GEAR[i] = z ^ (z >>> 31);
+    }
+  }
+
+  /** Result of writing a backup */
+  public static final class WriteResult {
+    /** Size of the backed up file */
+    public final long size;
+
+    public final int chunks;
+    public final int newChunks;
+
+    /** Bytes written to the store, compressed */
+    public final long bytesWritten;
+
+    /** Bytes in the store used by the backup, compressed, including chunks written earlier */
+    public final long bytesStored;
+
+    WriteResult(long size, int chunks, int newChunks, long bytesWritten, long bytesStored) {
+      this.size = size;
+      this.chunks = chunks;
+      this.newChunks = newChunks;
+      this.bytesWritten = bytesWritten;
+      this.bytesStored = bytesStored;
+    }
+  }
+
+  private final File chunkDir;
+
+  /**
+   * @param chunkDir directory for the chunks, shared by all manifests
+   */
+  public ChunkStore(File chunkDir) {
+    this.chunkDir = chunkDir;
+  }
+
+  /**
+   * Store the content and write its manifest. Chunks already in the store are not written again.
+   * The manifest is written last, renamed into place when complete.
+   */
+  public synchronized WriteResult write(InputStream in, File manifest) throws IOException {
+    MessageDigest digest = sha256();
+    Chunker chunker = new Chunker(in);
+    byte[] buf = new byte[MAX_CHUNK];
+    StringBuilder entries = new StringBuilder();
+    long size = 0;
+    int chunks = 0;
+    int newChunks = 0;
+    long bytesWritten = 0;
+    long bytesStored = 0;
+    Set<String> stored = new HashSet<>();
+    int len;
+    while ((len = chunker.next(buf)) > 0) {
+      digest.reset();
+      digest.update(buf, 0, len);
+      String hash = toHex(digest.digest());
+      File file = chunkFile(hash);
+      if (!file.exists()) {
+        long written = writeChunk(file, buf, len);
+        bytesWritten += written;
+        bytesStored += written;
+        newChunks++;
+        stored.add(hash);
+      } else if (stored.add(hash)) {
+        // Repeated chunks are stored once
+        bytesStored += file.length();
+      }
+      entries.append(hash).append(' ').append(len).append('\n');
+      size += len;
+      chunks++;
+    }
+
+    File tmp = new File(manifest.getPath() + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(tmp);
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      writer.write(MAGIC + "\n");
+      writer.write("size " + size + "\n");
+      writer.write(entries.toString());
+      writer.flush();
+      out.getFD().sync();
+    }
+    if (!tmp.renameTo(manifest)) {
+      //noinspection ResultOfMethodCallIgnored
+      tmp.delete();
+      throw new IOException("Failed to rename " + tmp + " to " + manifest);
+    }
+    bytesWritten += manifest.length();
+    bytesStored += manifest.length();
+    return new WriteResult(size, chunks, newChunks, bytesWritten, bytesStored);
+  }
+
+  /** Content of a backup, reassembled from its chunks and verified */
+  public InputStream open(File manifest) throws IOException {
+    List<String> lines = readManifest(manifest);
+    return new ChunkInputStream(lines.subList(2, lines.size()));
+  }
+
+  /** Size of the backed up file */
+  public static long readSize(File manifest) throws IOException {
+    try (BufferedReader reader = newReader(manifest)) {
+      if (!MAGIC.equals(reader.readLine())) {
+        throw new IOException("Not a chunk manifest: " + manifest);
+      }
+      String line = reader.readLine();
+      if (line == null || !line.startsWith("size ")) {
+        throw new IOException("Missing size in " + manifest);
+      }
+      return Long.parseLong(line.substring(5));
+    }
+  }
+
+  /**
+   * Delete the chunks not used by any of the manifests.
+   *
+   * @return the number of deleted chunks
+   */
+  public synchronized int collectGarbage(Collection<File> manifests) throws IOException {
+    Set<String> live = new HashSet<>();
+    for (File manifest : manifests) {
+      List<String> lines = readManifest(manifest);
+      for (String entry : lines.subList(2, lines.size())) {
+        live.add(entry.substring(0, entry.indexOf(' ')));
+      }
+    }
+    int deleted = 0;
+    File[] dirs = chunkDir.listFiles(File::isDirectory);
+    if (dirs == null) {
+      return 0;
+    }
+    for (File dir : dirs) {
+      File[] files = dir.listFiles();
+      if (files == null) {
+        continue;
+      }
+      for (File file : files) {
+        String name = file.getName();
+        String hash =
+            name.endsWith(CHUNK_SUFFIX)
+                ? name.substring(0, name.length() - CHUNK_SUFFIX.length())
+                : null;
+        if ((hash == null || !live.contains(hash)) && file.delete()) {
+          deleted++;
+        }
+      }
+    }
+    return deleted;
+  }
+
+  private File chunkFile(String hash) {
+    return new File(new File(chunkDir, hash.substring(0, 2)), hash + CHUNK_SUFFIX);
+  }
+
+  private static long writeChunk(File file, byte[] buf, int len) throws IOException {
+    File dir = file.getParentFile();
+    if (!dir.exists() && !dir.mkdirs()) {
+      throw new IOException("Failed to create " + dir);
+    }
+    File tmp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(tmp);
+        GZIPOutputStream gz = new GZIPOutputStream(out)) {
+      gz.write(buf, 0, len);
+      gz.finish();
+      out.getFD().sync();
+    }
+    if (!tmp.renameTo(file)) {
+      //noinspection ResultOfMethodCallIgnored
+      tmp.delete();
+      throw new IOException("Failed to rename " + tmp + " to " + file);
+    }
+    return file.length();
+  }
+
+  private static List<String> readManifest(File manifest) throws IOException {
+    List<String> lines = new ArrayList<>();
+    try (BufferedReader reader = newReader(manifest)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (!line.isEmpty()) {
+          lines.add(line);
+        }
+      }
+    }
+    if (lines.size() < 2 || !MAGIC.equals(lines.get(0)) || !lines.get(1).startsWith("size ")) {
+      throw new IOException("Not a chunk manifest: " + manifest);
+    }
+    return lines;
+  }
+
+  private static BufferedReader newReader(File file) throws IOException {
+    return new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    char[] hex = "0123456789abcdef".toCharArray();
+    char[] out = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      out[2 * i] = hex[(bytes[i] >> 4) & 0xf];
+      out[2 * i + 1] = hex[bytes[i] & 0xf];
+    }
+    return new String(out);
+  }
+
+  /** Splits a stream at content-defined boundaries, using a Gear rolling hash */
+  static final class Chunker {
+    private final InputStream in;
+    private final byte[] buf = new byte[MAX_CHUNK];
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+
+    Chunker(InputStream in) {
+      this.in = in;
+    }
+
+    /**
+     * Read the next chunk.
+     *
+     * @param out at least MAX_CHUNK bytes
+     * @return the chunk length, 0 at the end of the stream
+     */
+    int next(byte[] out) throws IOException {
+      fill();
+      int available = limit - pos;
+      if (available == 0) {
+        return 0;
+      }
+      int len = available;
+      if (available > MIN_CHUNK) {
+        long hash = 0;
+        for (int i = pos + MIN_CHUNK; i < limit; i++) {
+          hash = (hash << 1) + GEAR[buf[i] & 0xff];
+          if ((hash & BOUNDARY_MASK) == 0) {
+            len = i + 1 - pos;
+            break;
+          }
+        }
+      }
+      System.arraycopy(buf, pos, out, 0, len);
+      pos += len;
+      return len;
+    }
+
+    /** Fill the buffer so it has MAX_CHUNK bytes or the rest of the stream */
+    private void fill() throws IOException {
+      if (pos > 0) {
+        System.arraycopy(buf, pos, buf, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+      }
+      while (!eof && limit < buf.length) {
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+          eof = true;
+        } else {
+          limit += n;
+        }
+      }
+    }
+  }
+
+  /** Concatenation of the chunks of a manifest, each verified against its hash */
+  private final class ChunkInputStream extends InputStream {
+    private final List<String> entries;
+    private final MessageDigest digest = sha256();
+    private int index = 0;
+    private byte[] chunk = new byte[0];
+    private int pos = 0;
+
+    ChunkInputStream(List<String> entries) {
+      this.entries = entries;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (pos == chunk.length) {
+        if (index == entries.size()) {
+          return -1;
+        }
+        loadChunk(entries.get(index++));
+      }
+      int n = Math.min(len, chunk.length - pos);
+      System.arraycopy(chunk, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    private void loadChunk(String entry) throws IOException {
+      int space = entry.indexOf(' ');
+      String hash = entry.substring(0, space);
+      int length = Integer.parseInt(entry.substring(space + 1));
+      if (length > MAX_CHUNK) {
+        throw new IOException("Invalid chunk length " + length);
+      }
+      byte[] data = new byte[length];
+      try (InputStream in = new GZIPInputStream(new FileInputStream(chunkFile(hash)))) {
+        int n = 0;
+        while (n < length) {
+          int read = in.read(data, n, length - n);
+          if (read < 0) {
+            throw new EOFException("Truncated chunk " + hash);
+          }
+          n += read;
+        }
+      }
+      digest.reset();
+      if (!Arrays.equals(digest.digest(data), fromHex(hash))) {
+        throw new IOException("Corrupt chunk " + hash);
+      }
+      chunk = data;
+      pos = 0;
+    }
+  }
+
+  private static byte[] fromHex(String hex) {
+    byte[] out = new byte[hex.length() / 2];
+    for (int i = 0; i < out.length; i++) {
+      out[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+    }
+    return out;
+  }
+}
@@ -220,7 +220,10 @@ public class DriveBackupManager {
 
             publisher.publish("Saving to Google Drive...");
 
-            try (InputStream in = new FileInputStream(dbFile);
+            // Upload a consistent copy, the database may be in use. Kept uncompressed so the
+            // file can be imported directly.
+            File snapshot = AutomaticBackupManager.snapshotDatabase(context, context.getCacheDir());
+            try (InputStream in = new FileInputStream(snapshot);
                     OutputStream out = context.getContentResolver().openOutputStream(fileUri, "w")) {
                 if (out == null) {
                     throw new IOException("Failed to open output stream for " + fileUri);
@@ -229,7 +232,7 @@ public class DriveBackupManager {
                 byte[] buffer = new byte[8192];
                 int bytesRead;
                 long totalBytes = 0;
-                long fileSize = dbFile.length();
+                long fileSize = snapshot.length();
 
                 while ((bytesRead = in.read(buffer)) != -1) {
                     out.write(buffer, 0, bytesRead);
@@ -240,6 +243,9 @@ public class DriveBackupManager {
                     }
                 }
                 out.flush();
+            } finally {
+                //noinspection ResultOfMethodCallIgnored
+                snapshot.delete();
             }
 
             SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
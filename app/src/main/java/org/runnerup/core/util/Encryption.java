@@ -121,6 +121,10 @@ public class Encryption {
     out.close();
   }
 
+  /**
+   * Legacy format, PBE with MD5 and DES without authentication. Only used for the bundled sync
+   * assets, use {@link StreamEncryption} for new data.
+   */
   public static void decrypt(final InputStream in, final OutputStream out, final String key)
       throws Exception {
     final PBEKeySpec keySpec = new PBEKeySpec(key.toCharArray());
@@ -265,6 +265,10 @@ public class Formatter implements OnSharedPreferenceChangeListener {
         return formatCadence(target, value); // TODO
       case PRESSURE:
         return formatCadence(target, value); // TODO
+      case RMSSD:
+        return formatRmssd(target, value);
+      case DFA_ALPHA1:
+        return formatDfaAlpha1(target, value);
     }
     return "";
   }
@@ -460,6 +464,44 @@ public class Formatter implements OnSharedPreferenceChangeListener {
     return "";
   }
 
+  /** RMSSD heart rate variability, in ms */
+  public String formatRmssd(Format target, double rmssd) {
+    String s = Long.toString(Math.round(rmssd));
+    switch (target) {
+      case CUE:
+      case CUE_SHORT:
+      case CUE_LONG:
+        if (unitCue) {
+          return cueResources.getString(org.runnerup.common.R.string.rmssd) + " " + s;
+        }
+        return s;
+      case TXT:
+      case TXT_SHORT:
+      case TXT_LONG:
+        return s;
+    }
+    return "";
+  }
+
+  /** DFA alpha 1, dimensionless */
+  public String formatDfaAlpha1(Format target, double alpha1) {
+    String s = String.format(cueResources.defaultLocale, "%.2f", alpha1);
+    switch (target) {
+      case CUE:
+      case CUE_SHORT:
+      case CUE_LONG:
+        if (unitCue) {
+          return cueResources.getString(org.runnerup.common.R.string.dfa_alpha1) + " " + s;
+        }
+        return s;
+      case TXT:
+      case TXT_SHORT:
+      case TXT_LONG:
+        return s;
+    }
+    return "";
+  }
+
   private String formatHeartRateZone(Format target, double hrZone) {
     switch (target) {
       case TXT:
@@ -867,6 +909,8 @@ public class Formatter implements OnSharedPreferenceChangeListener {
       case CAD:
       case TEMPERATURE:
       case PRESSURE:
+      case RMSSD:
+      case DFA_ALPHA1:
       default:
         break;
     }
@@ -24,6 +24,7 @@ import android.content.res.Resources;
 import android.database.sqlite.SQLiteDatabase;
 import org.runnerup.core.util.BgTasks;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.View;
 import android.widget.LinearLayout;
 import android.widget.LinearLayout.LayoutParams;
@@ -34,9 +35,7 @@ import com.jjoe64.graphview.GraphView;
 import com.jjoe64.graphview.GridLabelRenderer;
 import com.jjoe64.graphview.series.DataPoint;
 import com.jjoe64.graphview.series.LineGraphSeries;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Locale;
 import org.runnerup.R;
 import org.runnerup.common.util.Constants;
@@ -49,6 +48,64 @@ public class GraphWrapper implements Constants {
   private static final double GRAPH_WARMUP_OMIT_METERS = 500;
   private static final double GRAPH_WARMUP_OMIT_MIN_RUN_METERS = 3000;
 
+  /** Max points per series, relative to the screen width in pixels */
+  private static final int POINTS_PER_PIXEL = 2;
+
+  /**
+   * Graphs of recently shown activities, key starts with the activity id. Invalidated by {@link
+   * #invalidateCache(long)} when the locations of an activity change.
+   */
+  private static final LruCache<String, GraphData> cache = new LruCache<>(8);
+
+  /** A finished graph, smoothed and downsampled */
+  static final class GraphData {
+    DataPoint[] velocity;
+    DataPoint[] hr;
+    double[] hrzHist;
+    boolean showPace;
+    boolean showHR;
+    boolean showHRZhist;
+  }
+
+  /** Growable x/y series of primitives */
+  static final class Series {
+    double[] x = new double[256];
+    double[] y = new double[256];
+    int size = 0;
+
+    void add(double px, double py) {
+      if (size == x.length) {
+        x = Arrays.copyOf(x, size * 2);
+        y = Arrays.copyOf(y, size * 2);
+      }
+      x[size] = px;
+      y[size] = py;
+      size++;
+    }
+
+    void removeBelowX(double limit) {
+      int n = 0;
+      for (int i = 0; i < size; i++) {
+        if (x[i] >= limit) {
+          x[n] = x[i];
+          y[n] = y[i];
+          n++;
+        }
+      }
+      size = n;
+    }
+
+    /** Downsample to at most maxPoints */
+    DataPoint[] toDataPoints(int maxPoints) {
+      int[] keep = Lttb.select(x, y, size, maxPoints);
+      DataPoint[] points = new DataPoint[keep.length];
+      for (int i = 0; i < keep.length; i++) {
+        points[i] = new DataPoint(x[keep[i]], y[keep[i]]);
+      }
+      return points;
+    }
+  }
+
   private final GraphView graphView;
   private final GraphView graphView2;
 
@@ -232,11 +289,62 @@ public class GraphWrapper implements Constants {
     loadGraphAsync();
   }
 
+  /** Drop cached graphs of an activity, to be called when its locations change */
+  public static void invalidateCache(long activityId) {
+    String prefix = activityId + ":";
+    for (String key : cache.snapshot().keySet()) {
+      if (key.startsWith(prefix)) {
+        cache.remove(key);
+      }
+    }
+  }
+
+  private int getMaxPoints(Context context) {
+    return POINTS_PER_PIXEL * context.getResources().getDisplayMetrics().widthPixels;
+  }
+
+  /** Cache key, with the settings that change the graph */
+  private String getCacheKey(Context context, int maxPoints) {
+    Resources res = context.getResources();
+    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+    String filters =
+        prefs.getBoolean(res.getString(R.string.pref_pace_graph_smoothing), true)
+            ? prefs.getString(
+                res.getString(R.string.pref_pace_graph_smoothing_filters),
+                res.getString(R.string.mm31kz513sg5))
+            : "";
+    return loadParam.mID
+        + ":"
+        + useDistanceAsX
+        + ":"
+        + maxPoints
+        + ":"
+        + filters
+        + ":"
+        + Formatter.getPreferredSpeedUnit(context)
+        + ":"
+        + prefs.getString(res.getString(R.string.pref_hrz_values), "");
+  }
+
   private void loadGraphAsync() {
-    BgTasks.runDb(() -> produceGraph(loadParam), this::applyGraphProducer);
+    Context context = loadParam.context;
+    int maxPoints = getMaxPoints(context);
+    String key = getCacheKey(context, maxPoints);
+    GraphData cached = cache.get(key);
+    if (cached != null) {
+      applyGraphData(cached);
+      return;
+    }
+    BgTasks.runDb(
+        () -> {
+          GraphData data = produceGraph(loadParam, maxPoints);
+          cache.put(key, data);
+          return data;
+        },
+        this::applyGraphData);
   }
 
-  private GraphProducer produceGraph(LoadParam params) {
+  private GraphData produceGraph(LoadParam params, int maxPoints) {
     LocationEntity.LocationList<LocationEntity> ll =
         new LocationEntity.LocationList<>(params.mDB, params.mID);
     GraphProducer graphData = new GraphProducer(params.context, ll.getCount());
@@ -273,19 +381,19 @@ public class GraphWrapper implements Constants {
 
     ll.close();
     Log.e(getClass().getName(), "Finished loading " + cnt + " points"
-        + " => " + graphData.velocityList.size() + " points");
-    return graphData;
+        + " => " + graphData.velocity.size + " points");
+    return graphData.finish(params.context, maxPoints);
   }
 
-  private void applyGraphProducer(GraphProducer graphData) {
-    graphData.complete(graphView);
+  private void applyGraphData(GraphData graphData) {
+    complete(graphData);
     graphTab.removeView(graphView);
     graphTab.removeView(graphView2);
-    if (graphData.HasPaceInfo() && !graphData.HasHRInfo()) {
+    if (graphData.showPace && !graphData.showHR) {
       graphTab.addView(graphView);
-    } else if (!graphData.HasPaceInfo() && graphData.HasHRInfo()) {
+    } else if (!graphData.showPace && graphData.showHR) {
       graphTab.addView(graphView2);
-    } else if (graphData.HasPaceInfo() && graphData.HasHRInfo()) {
+    } else if (graphData.showPace && graphData.showHR) {
       graphTab.addView(
           graphView, new LayoutParams(LayoutParams.MATCH_PARENT, 0, 0.5f));
 
@@ -294,7 +402,7 @@ public class GraphWrapper implements Constants {
     }
 
     hrzonesBarLayout.removeView(hrzonesBar);
-    if (graphData.HasHRZHist()) {
+    if (graphData.showHR && graphData.showHRZhist) {
       hrzonesBarLayout.setVisibility(View.VISIBLE);
       hrzonesBarLayout.addView(hrzonesBar);
     } else {
@@ -325,8 +433,8 @@ public class GraphWrapper implements Constants {
     double avg_velocity = 0;
     double min_velocity = Double.MAX_VALUE;
     double max_velocity = Double.MIN_VALUE;
-    final List<DataPoint> velocityList;
-    final List<DataPoint> hrList;
+    final Series velocity = new Series();
+    final Series hrSeries = new Series();
 
     boolean showPace = false;
     boolean showHR = false;
@@ -348,11 +456,9 @@ public class GraphWrapper implements Constants {
         graphAverageSeconds = GRAPH_AVERAGE_SECONDS;
         this.interval = GRAPH_INTERVAL_SECONDS;
       }
-      this.velocityList = new ArrayList<>();
       this.time = new double[graphAverageSeconds];
       this.distance = new double[graphAverageSeconds];
 
-      this.hrList = new ArrayList<>();
       this.hr = new int[graphAverageSeconds];
 
       Resources res = context.getResources();
@@ -439,16 +545,16 @@ public class GraphWrapper implements Constants {
       }
       if (first) {
         if (tot_X > 0) {
-          velocityList.add(new DataPoint(0, velocity));
+          this.velocity.add(0, velocity);
           if (avg_hr > 0) {
-            hrList.add(new DataPoint(0, Math.round(avg_hr)));
+            hrSeries.add(0, Math.round(avg_hr));
           }
         }
         first = false;
       }
-      velocityList.add(new DataPoint(tot_X, velocity));
+      this.velocity.add(tot_X, velocity);
       if (avg_hr > 0) {
-        hrList.add(new DataPoint(tot_X, Math.round(avg_hr)));
+        hrSeries.add(tot_X, Math.round(avg_hr));
       }
       acc_time = 0;
 
@@ -465,17 +571,15 @@ public class GraphWrapper implements Constants {
     class GraphFilter {
 
       final double[] data;
-      final List<DataPoint> source;
+      final Series source;
 
-      GraphFilter(List<DataPoint> velocityList) {
-        source = velocityList;
-        data = new double[velocityList.size()];
-        for (int i = 0; i < velocityList.size(); i++) data[i] = velocityList.get(i).getY();
+      GraphFilter(Series series) {
+        source = series;
+        data = Arrays.copyOf(series.y, series.size);
       }
 
       void complete() {
-        for (int i = 0; i < source.size(); i++)
-          source.set(i, new DataPoint(source.get(i).getX(), data[i]));
+        System.arraycopy(data, 0, source.y, 0, data.length);
       }
 
       void init(double[] window, double val) {
@@ -578,30 +682,20 @@ public class GraphWrapper implements Constants {
       }
     }
 
-    public void complete(final GraphView graphView) {
-      avg_velocity /= velocityList.size();
-      Log.e(getClass().getName(), "graph: " + velocityList.size() + " points");
-
-      boolean smoothData =
-          PreferenceManager.getDefaultSharedPreferences(graphView.getContext())
-              .getBoolean(
-                  graphView
-                      .getContext()
-                      .getResources()
-                      .getString(R.string.pref_pace_graph_smoothing),
-                  true);
-      if (velocityList.size() > 0 && smoothData) {
-        GraphFilter f = new GraphFilter(velocityList);
-        final String defaultFilterList =
-            graphView.getContext().getResources().getString(R.string.mm31kz513sg5);
+    /** Smooth and downsample the series, runs in the background */
+    GraphData finish(Context context, int maxPoints) {
+      avg_velocity /= velocity.size;
+      Log.e(getClass().getName(), "graph: " + velocity.size + " points");
+
+      Resources res = context.getResources();
+      SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+      boolean smoothData = prefs.getBoolean(res.getString(R.string.pref_pace_graph_smoothing), true);
+      if (velocity.size > 0 && smoothData) {
+        GraphFilter f = new GraphFilter(velocity);
+        final String defaultFilterList = res.getString(R.string.mm31kz513sg5);
         final String filterList =
-            PreferenceManager.getDefaultSharedPreferences(graphView.getContext())
-                .getString(
-                    graphView
-                        .getContext()
-                        .getResources()
-                        .getString(R.string.pref_pace_graph_smoothing_filters),
-                    defaultFilterList);
+            prefs.getString(
+                res.getString(R.string.pref_pace_graph_smoothing_filters), defaultFilterList);
         final String[] filters = filterList.split(";");
         System.err.print("Applying filters(" + filters.length + ", >" + filterList + "<):");
         for (String filter : filters) {
@@ -634,58 +728,27 @@ public class GraphWrapper implements Constants {
         Log.e(getClass().getName(), "");
         f.complete();
       }
-      LineGraphSeries<DataPoint> graphViewData =
-          new LineGraphSeries<>(velocityList.toArray(new DataPoint[0]));
-      graphView.addSeries(graphViewData); // data
-      graphView.getViewport().setMinX(graphView.getViewport().getMinX(true));
-      graphView.getViewport().setMaxX(graphView.getViewport().getMaxX(true));
-      graphViewData.setOnDataPointTapListener(
-          (series, dataPoint) -> {
-            String msg =
-                String.format(
-                    "%s: %s\n%s: %s %s",
-                    graphView.getContext().getString(org.runnerup.common.R.string.Distance),
-                    xAxis.formatValue(dataPoint.getX()),
-                    formatter.formatVelocityLabel(),
-                    formatter.formatVelocityByPreferredUnit(
-                        Formatter.Format.TXT_SHORT, dataPoint.getY()),
-                    formatter.getVelocityUnit(graphView.getContext()));
-            Toast.makeText(graphView.getContext(), msg, Toast.LENGTH_SHORT).show();
-          });
-      if (showHR) {
-        LineGraphSeries<DataPoint> graphViewData2 =
-            new LineGraphSeries<>(hrList.toArray(new DataPoint[0]));
-        graphView2.addSeries(graphViewData2); // data
-        graphView2.getViewport().setMinX(graphView2.getViewport().getMinX(true));
-        graphView2.getViewport().setMaxX(graphView2.getViewport().getMaxX(true));
-        applyHeartRateYAxisBounds(graphView2, graphViewData2);
-        graphViewData2.setOnDataPointTapListener(
-            (series, dataPoint) -> {
-              String msg =
-                  graphView.getContext().getString(org.runnerup.common.R.string.Distance)
-                      + ": "
-                      + xAxis.formatValue(dataPoint.getX())
-                      + "\n"
-                      + graphView.getContext().getString(org.runnerup.common.R.string.Heart_rate)
-                      + ": "
-                      + formatter.formatHeartRate(Formatter.Format.TXT_SHORT, dataPoint.getY());
-              Toast.makeText(graphView.getContext(), msg, Toast.LENGTH_SHORT).show();
-            });
 
-        if (showHRZhist) {
-          System.err.print("HR Zones:");
-          double sum = 0;
-          for (double aHrzHist : hrzHist) {
-            sum += aHrzHist;
-          }
-          for (int i = 0; i < hrzHist.length; i++) {
-            hrzHist[i] = hrzHist[i] / sum;
-            System.err.print(" " + hrzHist[i]);
-          }
-          Log.e(getClass().getName(), "\n");
-          hrzonesBar.pushHrzData(hrzHist);
+      GraphData data = new GraphData();
+      data.velocity = velocity.toDataPoints(maxPoints);
+      data.hr = hrSeries.toDataPoints(maxPoints);
+      data.showPace = showPace;
+      data.showHR = showHR;
+      data.showHRZhist = showHRZhist;
+      if (showHR && showHRZhist) {
+        System.err.print("HR Zones:");
+        double sum = 0;
+        for (double aHrzHist : hrzHist) {
+          sum += aHrzHist;
+        }
+        for (int i = 0; i < hrzHist.length; i++) {
+          hrzHist[i] = hrzHist[i] / sum;
+          System.err.print(" " + hrzHist[i]);
         }
+        Log.e(getClass().getName(), "\n");
+        data.hrzHist = hrzHist;
       }
+      return data;
     }
 
     private int[] getArgs(String s) {
@@ -704,24 +767,56 @@ public class GraphWrapper implements Constants {
       }
     }
 
-    public boolean HasPaceInfo() {
-      return showPace;
-    }
-
-    public boolean HasHRInfo() {
-      return showHR;
-    }
-
-    public boolean HasHRZHist() {
-      return showHR && showHRZhist;
-    }
-
     void omitWarmupIfNeeded(double totalRunMeters, boolean distanceOnX) {
       if (!distanceOnX || totalRunMeters <= GRAPH_WARMUP_OMIT_MIN_RUN_METERS) {
         return;
       }
-      velocityList.removeIf(p -> p.getX() < GRAPH_WARMUP_OMIT_METERS);
-      hrList.removeIf(p -> p.getX() < GRAPH_WARMUP_OMIT_METERS);
+      velocity.removeBelowX(GRAPH_WARMUP_OMIT_METERS);
+      hrSeries.removeBelowX(GRAPH_WARMUP_OMIT_METERS);
+    }
+  }
+
+  /** Show a finished graph, runs on the UI thread */
+  private void complete(GraphData data) {
+    LineGraphSeries<DataPoint> graphViewData = new LineGraphSeries<>(data.velocity);
+    graphView.addSeries(graphViewData); // data
+    graphView.getViewport().setMinX(graphView.getViewport().getMinX(true));
+    graphView.getViewport().setMaxX(graphView.getViewport().getMaxX(true));
+    graphViewData.setOnDataPointTapListener(
+        (series, dataPoint) -> {
+          String msg =
+              String.format(
+                  "%s: %s\n%s: %s %s",
+                  graphView.getContext().getString(org.runnerup.common.R.string.Distance),
+                  xAxis.formatValue(dataPoint.getX()),
+                  formatter.formatVelocityLabel(),
+                  formatter.formatVelocityByPreferredUnit(
+                      Formatter.Format.TXT_SHORT, dataPoint.getY()),
+                  formatter.getVelocityUnit(graphView.getContext()));
+          Toast.makeText(graphView.getContext(), msg, Toast.LENGTH_SHORT).show();
+        });
+    if (data.showHR) {
+      LineGraphSeries<DataPoint> graphViewData2 = new LineGraphSeries<>(data.hr);
+      graphView2.addSeries(graphViewData2); // data
+      graphView2.getViewport().setMinX(graphView2.getViewport().getMinX(true));
+      graphView2.getViewport().setMaxX(graphView2.getViewport().getMaxX(true));
+      applyHeartRateYAxisBounds(graphView2, graphViewData2);
+      graphViewData2.setOnDataPointTapListener(
+          (series, dataPoint) -> {
+            String msg =
+                graphView.getContext().getString(org.runnerup.common.R.string.Distance)
+                    + ": "
+                    + xAxis.formatValue(dataPoint.getX())
+                    + "\n"
+                    + graphView.getContext().getString(org.runnerup.common.R.string.Heart_rate)
+                    + ": "
+                    + formatter.formatHeartRate(Formatter.Format.TXT_SHORT, dataPoint.getY());
+            Toast.makeText(graphView.getContext(), msg, Toast.LENGTH_SHORT).show();
+          });
+
+      if (data.hrzHist != null) {
+        hrzonesBar.pushHrzData(data.hrzHist);
+      }
     }
   }
 
@@ -0,0 +1,431 @@
+package org.runnerup.core.util;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a JSON (RFC 4627) encoded value as a stream of tokens, the counterpart to {@link
+ * JsonWriter}. Values are pulled one at a time, no document tree is built and the input is not
+ * read into memory, so large responses can be consumed while they are received.
+ *
+ * <pre>{@code
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *   String name = reader.nextName();
+ *   if (name.equals("id")) {
+ *     id = reader.nextLong();
+ *   } else {
+ *     reader.skipValue();
+ *   }
+ * }
+ * reader.endObject();
+ * }</pre>
+ *
+ * Numbers can be read as strings and numeric strings as numbers. Reading a token of an unexpected
+ * type throws {@link IllegalStateException}, malformed input an {@link IOException}.
+ */
+public final class JsonReader implements Closeable {
+
+  /** A structure, name or value type in a JSON encoded string */
+  public enum Token {
+    BEGIN_ARRAY,
+    END_ARRAY,
+    BEGIN_OBJECT,
+    END_OBJECT,
+    NAME,
+    STRING,
+    NUMBER,
+    BOOLEAN,
+    NULL,
+    END_DOCUMENT,
+  }
+
+  private static final int BUFFER_SIZE = 1024;
+
+  private final Reader in;
+  private final char[] buffer = new char[BUFFER_SIZE];
+  private int pos = 0;
+  private int limit = 0;
+
+  private final List<JsonScope> stack = new ArrayList<>();
+
+  {
+    stack.add(JsonScope.EMPTY_DOCUMENT);
+  }
+
+  /** The peeked token, null if the next token must be read */
+  private Token token;
+
+  /** The text of a peeked name, string, number or literal */
+  private String value;
+
+  private final StringBuilder builder = new StringBuilder();
+
+  /**
+   * Creates a new instance that reads a JSON-encoded stream from {@code in}. The reader is buffered
+   * internally, {@code in} does not need to be.
+   */
+  public JsonReader(Reader in) {
+    if (in == null) {
+      throw new NullPointerException("in == null");
+    }
+    this.in = in;
+  }
+
+  /** Consumes the next token, asserting that it is the beginning of a new array. */
+  public void beginArray() throws IOException {
+    expect(Token.BEGIN_ARRAY);
+  }
+
+  /** Consumes the next token, asserting that it is the end of the current array. */
+  public void endArray() throws IOException {
+    expect(Token.END_ARRAY);
+  }
+
+  /** Consumes the next token, asserting that it is the beginning of a new object. */
+  public void beginObject() throws IOException {
+    expect(Token.BEGIN_OBJECT);
+  }
+
+  /** Consumes the next token, asserting that it is the end of the current object. */
+  public void endObject() throws IOException {
+    expect(Token.END_OBJECT);
+  }
+
+  /** Returns true if the current array or object has another element. */
+  public boolean hasNext() throws IOException {
+    Token t = peek();
+    return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+  }
+
+  /** Returns the type of the next token without consuming it. */
+  public Token peek() throws IOException {
+    if (token != null) {
+      return token;
+    }
+
+    int c;
+    switch (top()) {
+      case EMPTY_DOCUMENT:
+        replaceTop(JsonScope.NONEMPTY_DOCUMENT);
+        return readValue();
+
+      case NONEMPTY_DOCUMENT:
+        if (nextNonWhitespace(false) != -1) {
+          throw syntaxError("Expected end of document");
+        }
+        return token = Token.END_DOCUMENT;
+
+      case EMPTY_ARRAY:
+        replaceTop(JsonScope.NONEMPTY_ARRAY);
+        if (nextNonWhitespace(true) == ']') {
+          return pop(Token.END_ARRAY);
+        }
+        pos--;
+        return readValue();
+
+      case NONEMPTY_ARRAY:
+        c = nextNonWhitespace(true);
+        if (c == ']') {
+          return pop(Token.END_ARRAY);
+        } else if (c != ',') {
+          throw syntaxError("Expected ',' or ']'");
+        }
+        return readValue();
+
+      case EMPTY_OBJECT:
+      case NONEMPTY_OBJECT:
+        c = nextNonWhitespace(true);
+        if (c == '}') {
+          return pop(Token.END_OBJECT);
+        }
+        if (top() == JsonScope.NONEMPTY_OBJECT) {
+          if (c != ',') {
+            throw syntaxError("Expected ',' or '}'");
+          }
+          c = nextNonWhitespace(true);
+        }
+        if (c != '"') {
+          throw syntaxError("Expected name");
+        }
+        value = readString();
+        replaceTop(JsonScope.DANGLING_NAME);
+        return token = Token.NAME;
+
+      case DANGLING_NAME:
+        if (nextNonWhitespace(true) != ':') {
+          throw syntaxError("Expected ':'");
+        }
+        replaceTop(JsonScope.NONEMPTY_OBJECT);
+        return readValue();
+
+      default:
+        throw new IllegalStateException("JsonReader is closed");
+    }
+  }
+
+  /** Returns the next property name and consumes it. */
+  public String nextName() throws IOException {
+    expect(Token.NAME);
+    return value;
+  }
+
+  /** Returns the string value of the next token, a string or a number, and consumes it. */
+  public String nextString() throws IOException {
+    Token t = peek();
+    if (t != Token.STRING && t != Token.NUMBER) {
+      throw new IllegalStateException("Expected a string but was " + t);
+    }
+    token = null;
+    return value;
+  }
+
+  /** Returns the boolean value of the next token and consumes it. */
+  public boolean nextBoolean() throws IOException {
+    expect(Token.BOOLEAN);
+    return value.equals("true");
+  }
+
+  /** Consumes the next token, asserting that it is a literal null. */
+  public void nextNull() throws IOException {
+    expect(Token.NULL);
+  }
+
+  /**
+   * Returns the double value of the next token, a number or a numeric string, and consumes it.
+   *
+   * @throws NumberFormatException if the value cannot be parsed as a double
+   */
+  public double nextDouble() throws IOException {
+    return Double.parseDouble(nextString());
+  }
+
+  /**
+   * Returns the long value of the next token, a number or a numeric string, and consumes it.
+   *
+   * @throws NumberFormatException if the value is not an integer or does not fit in a long
+   */
+  public long nextLong() throws IOException {
+    String s = nextString();
+    try {
+      return Long.parseLong(s);
+    } catch (NumberFormatException e) {
+      // Exponent or fraction, accepted if the value is integral
+      double d = Double.parseDouble(s);
+      long l = (long) d;
+      if (l != d) {
+        throw new NumberFormatException(s);
+      }
+      return l;
+    }
+  }
+
+  /**
+   * Returns the int value of the next token, a number or a numeric string, and consumes it.
+   *
+   * @throws NumberFormatException if the value is not an integer or does not fit in an int
+   */
+  public int nextInt() throws IOException {
+    long l = nextLong();
+    if (l != (int) l) {
+      throw new NumberFormatException(Long.toString(l));
+    }
+    return (int) l;
+  }
+
+  /** Skips the next value, recursively for arrays and objects. */
+  public void skipValue() throws IOException {
+    int depth = 0;
+    do {
+      Token t = peek();
+      token = null;
+      if (t == Token.BEGIN_ARRAY || t == Token.BEGIN_OBJECT) {
+        depth++;
+      } else if (t == Token.END_ARRAY || t == Token.END_OBJECT) {
+        depth--;
+      } else if (t == Token.END_DOCUMENT) {
+        throw new IllegalStateException("Expected a value but was " + t);
+      }
+    } while (depth > 0);
+  }
+
+  /** Closes the reader and the underlying {@link Reader}. */
+  @Override
+  public void close() throws IOException {
+    token = null;
+    value = null;
+    stack.clear();
+    stack.add(JsonScope.CLOSED);
+    in.close();
+  }
+
+  private void expect(Token expected) throws IOException {
+    Token t = peek();
+    if (t != expected) {
+      throw new IllegalStateException("Expected " + expected + " but was " + t);
+    }
+    token = null;
+  }
+
+  private JsonScope top() {
+    return stack.get(stack.size() - 1);
+  }
+
+  private void replaceTop(JsonScope topOfStack) {
+    stack.set(stack.size() - 1, topOfStack);
+  }
+
+  private Token pop(Token end) {
+    stack.remove(stack.size() - 1);
+    return token = end;
+  }
+
+  private Token readValue() throws IOException {
+    int c = nextNonWhitespace(true);
+    switch (c) {
+      case '{':
+        stack.add(JsonScope.EMPTY_OBJECT);
+        return token = Token.BEGIN_OBJECT;
+      case '[':
+        stack.add(JsonScope.EMPTY_ARRAY);
+        return token = Token.BEGIN_ARRAY;
+      case '"':
+        value = readString();
+        return token = Token.STRING;
+      default:
+        pos--;
+        value = readLiteral();
+        if (value.equals("true") || value.equals("false")) {
+          return token = Token.BOOLEAN;
+        } else if (value.equals("null")) {
+          return token = Token.NULL;
+        }
+        char first = value.charAt(0);
+        if (first == '-' || (first >= '0' && first <= '9')) {
+          return token = Token.NUMBER;
+        }
+        throw syntaxError("Unexpected value " + value);
+    }
+  }
+
+  /** Reads a string after the opening quote, up to and including the closing quote. */
+  private String readString() throws IOException {
+    builder.setLength(0);
+    while (true) {
+      int start = pos;
+      while (pos < limit) {
+        char c = buffer[pos++];
+        if (c == '"') {
+          builder.append(buffer, start, pos - start - 1);
+          return builder.toString();
+        } else if (c == '\\') {
+          builder.append(buffer, start, pos - start - 1);
+          builder.append(readEscape());
+          start = pos;
+        }
+      }
+      builder.append(buffer, start, pos - start);
+      if (!fill()) {
+        throw new EOFException("Unterminated string");
+      }
+    }
+  }
+
+  private char readEscape() throws IOException {
+    char c = nextChar();
+    switch (c) {
+      case 'u':
+        int v = 0;
+        for (int i = 0; i < 4; i++) {
+          int digit = Character.digit(nextChar(), 16);
+          if (digit < 0) {
+            throw syntaxError("Malformed \\u escape");
+          }
+          v = (v << 4) | digit;
+        }
+        return (char) v;
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 't':
+        return '\t';
+      case '"':
+      case '\\':
+      case '/':
+        return c;
+      default:
+        throw syntaxError("Invalid escape \\" + c);
+    }
+  }
+
+  /** Reads an unquoted literal: a number, true, false or null. */
+  private String readLiteral() throws IOException {
+    builder.setLength(0);
+    while (pos < limit || fill()) {
+      char c = buffer[pos];
+      if (c == ',' || c == ':' || c == ']' || c == '}' || c == '[' || c == '{' || isSpace(c)) {
+        break;
+      }
+      builder.append(c);
+      pos++;
+    }
+    if (builder.length() == 0) {
+      throw syntaxError("Expected a value");
+    }
+    return builder.toString();
+  }
+
+  private char nextChar() throws IOException {
+    if (pos == limit && !fill()) {
+      throw new EOFException("End of input");
+    }
+    return buffer[pos++];
+  }
+
+  /**
+   * @return the next non-whitespace character, or -1 at the end of input if not required
+   */
+  private int nextNonWhitespace(boolean required) throws IOException {
+    while (pos < limit || fill()) {
+      char c = buffer[pos++];
+      if (!isSpace(c)) {
+        return c;
+      }
+    }
+    if (required) {
+      throw new EOFException("End of input");
+    }
+    return -1;
+  }
+
+  private static boolean isSpace(char c) {
+    return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+  }
+
+  /** Refills the buffer, the current content must have been consumed. */
+  private boolean fill() throws IOException {
+    pos = 0;
+    limit = 0;
+    int n;
+    // A Reader may return 0 chars, read until there is input or the end is reached
+    while ((n = in.read(buffer, 0, buffer.length)) == 0) {}
+    if (n < 0) {
+      return false;
+    }
+    limit = n;
+    return true;
+  }
+
+  private IOException syntaxError(String message) {
+    return new IOException("Malformed JSON: " + message);
+  }
+}
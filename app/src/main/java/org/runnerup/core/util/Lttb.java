@@ -0,0 +1,72 @@
+package org.runnerup.core.util;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling (Steinarsson 2013). Keeps the first and last point
+ * and from each bucket in between the point forming the largest triangle with the previously kept
+ * point and the average of the next bucket, which preserves the visual shape of a series far
+ * better than picking every nth point.
+ */
+public final class Lttb {
+
+  private Lttb() {}
+
+  /**
+   * Select the points to keep.
+   *
+   * @param x x values, ascending
+   * @param y y values
+   * @param n number of points used from the arrays
+   * @param threshold max number of points to keep
+   * @return the indices of the kept points, ascending
+   */
+  public static int[] select(double[] x, double[] y, int n, int threshold) {
+    if (threshold >= n || threshold < 3) {
+      int[] all = new int[n];
+      for (int i = 0; i < n; i++) {
+        all[i] = i;
+      }
+      return all;
+    }
+
+    int[] kept = new int[threshold];
+    int k = 0;
+    kept[k++] = 0;
+    // Bucket size, the first and last point are buckets of their own
+    double every = (double) (n - 2) / (threshold - 2);
+    int a = 0;
+    for (int i = 0; i < threshold - 2; i++) {
+      // Average of the next bucket
+      int avgStart = (int) Math.floor((i + 1) * every) + 1;
+      int avgEnd = Math.min((int) Math.floor((i + 2) * every) + 1, n);
+      if (avgEnd <= avgStart) {
+        avgStart = n - 1;
+        avgEnd = n;
+      }
+      double avgX = 0;
+      double avgY = 0;
+      for (int j = avgStart; j < avgEnd; j++) {
+        avgX += x[j];
+        avgY += y[j];
+      }
+      avgX /= avgEnd - avgStart;
+      avgY /= avgEnd - avgStart;
+
+      // Point of this bucket with the largest triangle
+      int start = (int) Math.floor(i * every) + 1;
+      int end = (int) Math.floor((i + 1) * every) + 1;
+      double maxArea = -1;
+      int next = start;
+      for (int j = start; j < end; j++) {
+        double area = Math.abs((x[a] - avgX) * (y[j] - y[a]) - (x[a] - x[j]) * (avgY - y[a]));
+        if (area > maxArea) {
+          maxArea = area;
+          next = j;
+        }
+      }
+      kept[k++] = next;
+      a = next;
+    }
+    kept[k] = n - 1;
+    return kept;
+  }
+}
@@ -0,0 +1,267 @@
+package org.runnerup.core.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Level-of-detail pyramid for drawing a route on a map: Douglas-Peucker simplifications of the path
+ * at increasing tolerances. A map picks the coarsest level whose error is below a pixel at the
+ * current zoom and draws only the parts of it in view.
+ */
+public final class RouteLevels {
+
+  /** Tolerance in m of each level, finest first */
+  public static final double[] TOLERANCES_M = {1, 4, 16, 64, 256};
+
+  private static final double EARTH_RADIUS_M = 6371008.8;
+
+  /** Ground resolution in m per pixel at the equator at zoom 0 (256 pixel tiles) */
+  private static final double METERS_PER_PIXEL_ZOOM_0 = 156543.03392;
+
+  /** One simplification of the path, coordinates in degrees */
+  public static final class Level {
+    public final double tolerance;
+    public final double[] lat;
+    public final double[] lon;
+
+    public Level(double tolerance, double[] lat, double[] lon) {
+      this.tolerance = tolerance;
+      this.lat = lat;
+      this.lon = lon;
+    }
+
+    public int size() {
+      return lat.length;
+    }
+
+    /** Coordinates as zigzag varint encoded deltas of 1e-6 degrees */
+    public byte[] encode() {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(lat.length * 4);
+      long prevLat = 0;
+      long prevLon = 0;
+      for (int i = 0; i < lat.length; i++) {
+        long la = Math.round(lat[i] * 1e6);
+        long lo = Math.round(lon[i] * 1e6);
+        writeVarint(out, la - prevLat);
+        writeVarint(out, lo - prevLon);
+        prevLat = la;
+        prevLon = lo;
+      }
+      return out.toByteArray();
+    }
+
+    public static Level decode(double tolerance, byte[] data) {
+      double[] lat = new double[16];
+      double[] lon = new double[16];
+      int n = 0;
+      long la = 0;
+      long lo = 0;
+      int[] pos = {0};
+      while (pos[0] < data.length) {
+        la += readVarint(data, pos);
+        lo += readVarint(data, pos);
+        if (n == lat.length) {
+          lat = Arrays.copyOf(lat, n * 2);
+          lon = Arrays.copyOf(lon, n * 2);
+        }
+        lat[n] = la / 1e6;
+        lon[n] = lo / 1e6;
+        n++;
+      }
+      return new Level(tolerance, Arrays.copyOf(lat, n), Arrays.copyOf(lon, n));
+    }
+  }
+
+  private final Level[] levels;
+
+  public RouteLevels(Level[] levels) {
+    this.levels = levels;
+  }
+
+  /** Build all levels from the full path */
+  public static RouteLevels build(double[] lat, double[] lon, int n) {
+    Level[] levels = new Level[TOLERANCES_M.length];
+    for (int l = 0; l < levels.length; l++) {
+      int[] kept = douglasPeucker(lat, lon, n, TOLERANCES_M[l]);
+      double[] la = new double[kept.length];
+      double[] lo = new double[kept.length];
+      for (int i = 0; i < kept.length; i++) {
+        la[i] = lat[kept[i]];
+        lo[i] = lon[kept[i]];
+      }
+      levels[l] = new Level(TOLERANCES_M[l], la, lo);
+    }
+    return new RouteLevels(levels);
+  }
+
+  public int getLevelCount() {
+    return levels.length;
+  }
+
+  public Level getLevel(int level) {
+    return levels[level];
+  }
+
+  public boolean isEmpty() {
+    return levels.length == 0 || levels[0].size() == 0;
+  }
+
+  /**
+   * The coarsest level with an error below one pixel.
+   *
+   * @param zoom map zoom level (256 pixel tiles)
+   * @param density pixels per map pixel, as maps scale tiles for the screen density
+   */
+  public Level getLevelForZoom(double zoom, double density) {
+    Level finest = levels[0];
+    double latitude = finest.size() > 0 ? finest.lat[0] : 0;
+    double metersPerPixel =
+        METERS_PER_PIXEL_ZOOM_0 * Math.cos(Math.toRadians(latitude)) / Math.pow(2, zoom) / density;
+    Level best = finest;
+    for (Level level : levels) {
+      if (level.tolerance <= metersPerPixel) {
+        best = level;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * The parts of a level in a bounding box, as index ranges. A range includes the points just
+   * outside the box so lines leaving the view are drawn to its edge.
+   *
+   * @return {from, to} pairs, inclusive
+   */
+  public static List<int[]> getVisibleRuns(
+      Level level, double south, double west, double north, double east) {
+    List<int[]> runs = new ArrayList<>();
+    int n = level.size();
+    int start = -1;
+    for (int i = 0; i + 1 < n; i++) {
+      boolean visible =
+          intersects(level.lat[i], level.lon[i], level.lat[i + 1], level.lon[i + 1],
+              south, west, north, east);
+      if (visible && start < 0) {
+        start = i;
+      } else if (!visible && start >= 0) {
+        runs.add(new int[] {start, i});
+        start = -1;
+      }
+    }
+    if (start >= 0) {
+      runs.add(new int[] {start, n - 1});
+    } else if (n == 1
+        && level.lat[0] >= south && level.lat[0] <= north
+        && level.lon[0] >= west && level.lon[0] <= east) {
+      runs.add(new int[] {0, 0});
+    }
+    return runs;
+  }
+
+  /** The bounding box of the segment overlaps the view */
+  private static boolean intersects(double lat1, double lon1, double lat2, double lon2,
+      double south, double west, double north, double east) {
+    return Math.max(lat1, lat2) >= south
+        && Math.min(lat1, lat2) <= north
+        && Math.max(lon1, lon2) >= west
+        && Math.min(lon1, lon2) <= east;
+  }
+
+  /**
+   * Douglas-Peucker simplification, iterative so long tracks can not overflow the stack.
+   *
+   * @return indices of the kept points, ascending
+   */
+  public static int[] douglasPeucker(double[] lat, double[] lon, int n, double toleranceM) {
+    if (n <= 2) {
+      int[] all = new int[n];
+      for (int i = 0; i < n; i++) {
+        all[i] = i;
+      }
+      return all;
+    }
+    // Local equirectangular projection to m
+    double kx = Math.cos(Math.toRadians(lat[0])) * Math.toRadians(1) * EARTH_RADIUS_M;
+    double ky = Math.toRadians(1) * EARTH_RADIUS_M;
+    double tolerance2 = toleranceM * toleranceM;
+
+    boolean[] keep = new boolean[n];
+    keep[0] = true;
+    keep[n - 1] = true;
+    int[] stack = new int[64];
+    int sp = 0;
+    stack[sp++] = 0;
+    stack[sp++] = n - 1;
+    while (sp > 0) {
+      int last = stack[--sp];
+      int first = stack[--sp];
+      double ax = lon[first] * kx;
+      double ay = lat[first] * ky;
+      double ex = lon[last] * kx - ax;
+      double ey = lat[last] * ky - ay;
+      double len2 = ex * ex + ey * ey;
+      double maxDist2 = -1;
+      int index = -1;
+      for (int i = first + 1; i < last; i++) {
+        double px = lon[i] * kx - ax;
+        double py = lat[i] * ky - ay;
+        double t = len2 > 0 ? Math.max(0, Math.min(1, (px * ex + py * ey) / len2)) : 0;
+        double dx = px - t * ex;
+        double dy = py - t * ey;
+        double d2 = dx * dx + dy * dy;
+        if (d2 > maxDist2) {
+          maxDist2 = d2;
+          index = i;
+        }
+      }
+      if (maxDist2 > tolerance2) {
+        keep[index] = true;
+        if (sp + 4 > stack.length) {
+          stack = Arrays.copyOf(stack, stack.length * 2);
+        }
+        stack[sp++] = first;
+        stack[sp++] = index;
+        stack[sp++] = index;
+        stack[sp++] = last;
+      }
+    }
+
+    int count = 0;
+    for (boolean k : keep) {
+      if (k) {
+        count++;
+      }
+    }
+    int[] kept = new int[count];
+    int k = 0;
+    for (int i = 0; i < n; i++) {
+      if (keep[i]) {
+        kept[k++] = i;
+      }
+    }
+    return kept;
+  }
+
+  private static void writeVarint(ByteArrayOutputStream out, long value) {
+    long v = (value << 1) ^ (value >> 63);
+    while ((v & ~0x7FL) != 0) {
+      out.write((int) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    out.write((int) v);
+  }
+
+  private static long readVarint(byte[] data, int[] pos) {
+    long v = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = data[pos[0]++];
+      v |= (long) (b & 0x7F) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return (v >>> 1) ^ -(v & 1);
+  }
+}
@@ -0,0 +1,430 @@
+package org.runnerup.core.util;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Password based authenticated encryption of large files, for backups and exports.
+ *
+ * <p>The plaintext is split in fixed size frames, each encrypted with AES-GCM. The nonce is a
+ * random per file prefix and the frame index, and the header, the frame index and a last frame
+ * flag are authenticated, so frames can not be reordered, dropped or truncated. As all frames but
+ * the last have the same size, they can be encrypted and decrypted in parallel with constant
+ * memory and any frame can be read directly. The key is derived with PBKDF2-HMAC-SHA256.
+ *
+ * <pre>
+ * header: "RUE1" iterations(int) salt(16) frameSize(int) noncePrefix(8)
+ * frame:  AES-GCM(frame plaintext) tag(16)
+ * </pre>
+ */
+public final class StreamEncryption {
+
+  public static final int DEFAULT_FRAME_SIZE = 256 * 1024;
+  public static final int DEFAULT_ITERATIONS = 100_000;
+
+  private static final byte[] MAGIC = "RUE1".getBytes(StandardCharsets.US_ASCII);
+  private static final int SALT_SIZE = 16;
+  private static final int NONCE_PREFIX_SIZE = 8;
+  private static final int HEADER_SIZE = MAGIC.length + 4 + SALT_SIZE + 4 + NONCE_PREFIX_SIZE;
+  private static final int TAG_SIZE = 16;
+  private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+  private static final int MAX_ITERATIONS = 10_000_000;
+
+  private StreamEncryption() {}
+
+  /** Encrypt with the default parameters, using all cores */
+  public static void encrypt(InputStream in, OutputStream out, char[] passphrase)
+      throws IOException, GeneralSecurityException {
+    encrypt(
+        in,
+        out,
+        passphrase,
+        DEFAULT_ITERATIONS,
+        DEFAULT_FRAME_SIZE,
+        Runtime.getRuntime().availableProcessors());
+  }
+
+  public static void encrypt(
+      InputStream in,
+      OutputStream out,
+      char[] passphrase,
+      int iterations,
+      int frameSize,
+      int threads)
+      throws IOException, GeneralSecurityException {
+    SecureRandom random = new SecureRandom();
+    byte[] salt = new byte[SALT_SIZE];
+    byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+    random.nextBytes(salt);
+    random.nextBytes(noncePrefix);
+    Header header = new Header(iterations, salt, frameSize, noncePrefix);
+    SecretKeySpec key = header.deriveKey(passphrase);
+    out.write(header.bytes);
+
+    new FramePipeline(threads) {
+      @Override
+      byte[] process(long index, byte[] frame, int length, boolean last) throws Exception {
+        return header.encryptFrame(key, index, frame, length, last);
+      }
+    }.run(in, out, frameSize);
+  }
+
+  /** Decrypt and verify, using all cores */
+  public static void decrypt(InputStream in, OutputStream out, char[] passphrase)
+      throws IOException, GeneralSecurityException {
+    decrypt(in, out, passphrase, Runtime.getRuntime().availableProcessors());
+  }
+
+  public static void decrypt(InputStream in, OutputStream out, char[] passphrase, int threads)
+      throws IOException, GeneralSecurityException {
+    byte[] headerBytes = new byte[HEADER_SIZE];
+    new DataInputStream(in).readFully(headerBytes);
+    Header header = Header.parse(headerBytes);
+    SecretKeySpec key = header.deriveKey(passphrase);
+
+    new FramePipeline(threads) {
+      @Override
+      byte[] process(long index, byte[] frame, int length, boolean last) throws Exception {
+        return header.decryptFrame(key, index, frame, 0, length, last);
+      }
+    }.run(in, out, header.frameSize + TAG_SIZE);
+  }
+
+  /** The stream starts with the header of this format */
+  public static boolean isEncrypted(byte[] start) {
+    return start.length >= MAGIC.length
+        && Arrays.equals(Arrays.copyOf(start, MAGIC.length), MAGIC);
+  }
+
+  /** Random access to the frames of an encrypted file */
+  public static final class RandomAccessReader implements Closeable {
+    private final RandomAccessFile file;
+    private final Header header;
+    private final SecretKeySpec key;
+    private final long frameCount;
+    private final long length;
+    private final byte[] buf;
+
+    public RandomAccessReader(File file, char[] passphrase)
+        throws IOException, GeneralSecurityException {
+      this.file = new RandomAccessFile(file, "r");
+      try {
+        byte[] headerBytes = new byte[HEADER_SIZE];
+        this.file.readFully(headerBytes);
+        this.header = Header.parse(headerBytes);
+        this.key = header.deriveKey(passphrase);
+        long encrypted = this.file.length() - HEADER_SIZE;
+        long stride = header.frameSize + TAG_SIZE;
+        if (encrypted < TAG_SIZE) {
+          throw new EOFException("Truncated file");
+        }
+        this.frameCount = (encrypted + stride - 1) / stride;
+        long lastFrame = encrypted - (frameCount - 1) * stride - TAG_SIZE;
+        if (lastFrame < 0) {
+          throw new EOFException("Truncated file");
+        }
+        this.length = (frameCount - 1) * header.frameSize + lastFrame;
+        this.buf = new byte[header.frameSize + TAG_SIZE];
+      } catch (IOException | GeneralSecurityException | RuntimeException e) {
+        this.file.close();
+        throw e;
+      }
+    }
+
+    public long getFrameCount() {
+      return frameCount;
+    }
+
+    /** Plaintext length */
+    public long getLength() {
+      return length;
+    }
+
+    public int getFrameSize() {
+      return header.frameSize;
+    }
+
+    /**
+     * Decrypt and verify one frame.
+     *
+     * @param out at least getFrameSize() bytes
+     * @return the plaintext length of the frame
+     */
+    public synchronized int readFrame(long index, byte[] out)
+        throws IOException, GeneralSecurityException {
+      if (index < 0 || index >= frameCount) {
+        throw new IndexOutOfBoundsException("Frame " + index + " of " + frameCount);
+      }
+      long stride = header.frameSize + TAG_SIZE;
+      long offset = HEADER_SIZE + index * stride;
+      int size = (int) Math.min(stride, file.length() - offset);
+      file.seek(offset);
+      file.readFully(buf, 0, size);
+      byte[] plain = header.decryptFrame(key, index, buf, 0, size, index == frameCount - 1);
+      System.arraycopy(plain, 0, out, 0, plain.length);
+      return plain.length;
+    }
+
+    /**
+     * The plaintext from a position, frame by frame. A wrong passphrase or a modified frame fails
+     * the read with an IOException. Closing the stream closes the reader.
+     */
+    public InputStream openStream(long position) {
+      if (position < 0 || position > length) {
+        throw new IndexOutOfBoundsException("Position " + position + " of " + length);
+      }
+      return new InputStream() {
+        private final byte[] frame = new byte[header.frameSize];
+        private long next = position / header.frameSize;
+        private int skip = (int) (position % header.frameSize);
+        private int pos = 0;
+        private int end = 0;
+
+        @Override
+        public int read() throws IOException {
+          byte[] b = new byte[1];
+          return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+          if (len == 0) {
+            return 0;
+          }
+          while (pos == end) {
+            if (next >= frameCount) {
+              return -1;
+            }
+            try {
+              end = readFrame(next++, frame);
+            } catch (GeneralSecurityException e) {
+              throw new IOException("Decryption failed: " + e.getMessage(), e);
+            }
+            pos = Math.min(skip, end);
+            skip = 0;
+          }
+          int n = Math.min(len, end - pos);
+          System.arraycopy(frame, pos, b, off, n);
+          pos += n;
+          return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+          RandomAccessReader.this.close();
+        }
+      };
+    }
+
+    @Override
+    public void close() throws IOException {
+      file.close();
+    }
+  }
+
+  private static final class Header {
+    final int iterations;
+    final byte[] salt;
+    final int frameSize;
+    final byte[] noncePrefix;
+    final byte[] bytes;
+
+    Header(int iterations, byte[] salt, int frameSize, byte[] noncePrefix) {
+      if (frameSize <= 0 || frameSize > MAX_FRAME_SIZE) {
+        throw new IllegalArgumentException("Invalid frame size " + frameSize);
+      }
+      this.iterations = iterations;
+      this.salt = salt;
+      this.frameSize = frameSize;
+      this.noncePrefix = noncePrefix;
+      ByteBuffer b = ByteBuffer.allocate(HEADER_SIZE);
+      b.put(MAGIC).putInt(iterations).put(salt).putInt(frameSize).put(noncePrefix);
+      this.bytes = b.array();
+    }
+
+    static Header parse(byte[] bytes) throws IOException {
+      if (!isEncrypted(bytes)) {
+        throw new IOException("Not an encrypted stream");
+      }
+      ByteBuffer b = ByteBuffer.wrap(bytes, MAGIC.length, HEADER_SIZE - MAGIC.length);
+      int iterations = b.getInt();
+      byte[] salt = new byte[SALT_SIZE];
+      b.get(salt);
+      int frameSize = b.getInt();
+      byte[] noncePrefix = new byte[NONCE_PREFIX_SIZE];
+      b.get(noncePrefix);
+      if (iterations <= 0 || iterations > MAX_ITERATIONS
+          || frameSize <= 0 || frameSize > MAX_FRAME_SIZE) {
+        throw new IOException("Invalid header");
+      }
+      return new Header(iterations, salt, frameSize, noncePrefix);
+    }
+
+    SecretKeySpec deriveKey(char[] passphrase) throws GeneralSecurityException {
+      return new SecretKeySpec(pbkdf2(passphrase, salt, iterations, 32), "AES");
+    }
+
+    byte[] encryptFrame(SecretKeySpec key, long index, byte[] frame, int length, boolean last)
+        throws GeneralSecurityException {
+      Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+      cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, nonce(index)));
+      cipher.updateAAD(aad(index, last));
+      return cipher.doFinal(frame, 0, length);
+    }
+
+    byte[] decryptFrame(
+        SecretKeySpec key, long index, byte[] frame, int offset, int length, boolean last)
+        throws GeneralSecurityException {
+      Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+      cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_SIZE * 8, nonce(index)));
+      cipher.updateAAD(aad(index, last));
+      return cipher.doFinal(frame, offset, length);
+    }
+
+    private byte[] nonce(long index) {
+      if (index > 0xffffffffL) {
+        throw new IllegalStateException("Too many frames");
+      }
+      return ByteBuffer.allocate(12).put(noncePrefix).putInt((int) index).array();
+    }
+
+    private byte[] aad(long index, boolean last) {
+      return ByteBuffer.allocate(HEADER_SIZE + 9)
+          .put(bytes)
+          .putLong(index)
+          .put((byte) (last ? 1 : 0))
+          .array();
+    }
+  }
+
+  /**
+   * Reads fixed size frames, processes them on a thread pool and writes the results in order. At
+   * most a few frames per thread are in memory.
+   */
+  private abstract static class FramePipeline {
+    private final int threads;
+
+    FramePipeline(int threads) {
+      this.threads = Math.max(1, threads);
+    }
+
+    abstract byte[] process(long index, byte[] frame, int length, boolean last) throws Exception;
+
+    void run(InputStream in, OutputStream out, int frameSize)
+        throws IOException, GeneralSecurityException {
+      ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+      ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+      try {
+        // One frame of lookahead to know which frame is the last one
+        byte[] frame = new byte[frameSize];
+        int length = readFrame(in, frame);
+        long index = 0;
+        while (true) {
+          byte[] next = new byte[frameSize];
+          int nextLength = length == frameSize ? readFrame(in, next) : 0;
+          boolean last = nextLength == 0;
+          final byte[] f = frame;
+          final int l = length;
+          final long i = index;
+          if (executor == null) {
+            out.write(process(i, f, l, last));
+          } else {
+            if (pending.size() >= 2 * threads) {
+              out.write(pending.removeFirst().get());
+            }
+            pending.addLast(executor.submit(() -> process(i, f, l, last)));
+          }
+          if (last) {
+            break;
+          }
+          frame = next;
+          length = nextLength;
+          index++;
+        }
+        while (!pending.isEmpty()) {
+          out.write(pending.removeFirst().get());
+        }
+        out.flush();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof GeneralSecurityException) {
+          throw (GeneralSecurityException) cause;
+        }
+        throw new IOException(cause);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } catch (IOException | GeneralSecurityException | RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new IOException(e);
+      } finally {
+        if (executor != null) {
+          executor.shutdownNow();
+        }
+      }
+    }
+
+    private static int readFrame(InputStream in, byte[] frame) throws IOException {
+      int n = 0;
+      while (n < frame.length) {
+        int read = in.read(frame, n, frame.length - n);
+        if (read < 0) {
+          break;
+        }
+        n += read;
+      }
+      return n;
+    }
+  }
+
+  /** PBKDF2-HMAC-SHA256 (RFC 8018), SecretKeyFactory only has it from Android 8 */
+  static byte[] pbkdf2(char[] passphrase, byte[] salt, int iterations, int keyLength)
+      throws GeneralSecurityException {
+    Mac mac = Mac.getInstance("HmacSHA256");
+    byte[] password = new String(passphrase).getBytes(StandardCharsets.UTF_8);
+    // An empty key is rejected by SecretKeySpec, HMAC pads keys with zeros anyway
+    mac.init(new SecretKeySpec(password.length > 0 ? password : new byte[1], "HmacSHA256"));
+    Arrays.fill(password, (byte) 0);
+    int hashLength = mac.getMacLength();
+    byte[] out = new byte[keyLength];
+    int blocks = (keyLength + hashLength - 1) / hashLength;
+    byte[] u = new byte[hashLength];
+    for (int block = 1; block <= blocks; block++) {
+      mac.update(salt);
+      mac.update(ByteBuffer.allocate(4).putInt(block).array());
+      mac.doFinal(u, 0);
+      byte[] t = u.clone();
+      for (int i = 1; i < iterations; i++) {
+        mac.update(u);
+        mac.doFinal(u, 0);
+        for (int j = 0; j < hashLength; j++) {
+          t[j] ^= u[j];
+        }
+      }
+      int offset = (block - 1) * hashLength;
+      System.arraycopy(t, 0, out, offset, Math.min(hashLength, keyLength - offset));
+    }
+    return out;
+  }
+}
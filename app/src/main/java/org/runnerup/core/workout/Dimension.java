@@ -29,7 +29,9 @@ public enum Dimension {
   HRZ(DIMENSION.HRZ, org.runnerup.common.R.string.heart_rate_zone),
   CAD(DIMENSION.CAD, org.runnerup.common.R.string.cadence),
   TEMPERATURE(DIMENSION.CAD, org.runnerup.common.R.string.temperature),
-  PRESSURE(DIMENSION.CAD, org.runnerup.common.R.string.pressure);
+  PRESSURE(DIMENSION.CAD, org.runnerup.common.R.string.pressure),
+  RMSSD(DIMENSION.RMSSD, org.runnerup.common.R.string.rmssd),
+  DFA_ALPHA1(DIMENSION.DFA_ALPHA1, org.runnerup.common.R.string.dfa_alpha1);
 
   // TODO
   public static final boolean SPEED_CUE_ENABLED = true;
@@ -79,6 +81,10 @@ public enum Dimension {
         return TEMPERATURE;
       case DIMENSION.PRESSURE:
         return PRESSURE;
+      case DIMENSION.RMSSD:
+        return RMSSD;
+      case DIMENSION.DFA_ALPHA1:
+        return DFA_ALPHA1;
       default:
         return null;
     }
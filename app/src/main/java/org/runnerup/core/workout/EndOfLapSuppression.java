@@ -126,6 +126,8 @@ public class EndOfLapSuppression extends TriggerSuppression {
       case CAD:
       case TEMPERATURE:
       case PRESSURE:
+      case RMSSD:
+      case DFA_ALPHA1:
       case PACE:
       case SPEED:
         return false;
@@ -31,11 +31,12 @@ public class FileFormats {
 
   public static final Format GPX = new Format("GPX", "gpx");
   public static final Format TCX = new Format("TCX", "tcx");
+  public static final Format FIT = new Format("FIT", "fit");
   public static final List<Format> ALL_FORMATS;
   public static final FileFormats DEFAULT_FORMATS;
 
   static {
-    List<Format> formatList = Arrays.asList(TCX, GPX);
+    List<Format> formatList = Arrays.asList(TCX, GPX, FIT);
     ALL_FORMATS = Collections.unmodifiableList(formatList);
     DEFAULT_FORMATS = new FileFormats(FileFormats.TCX.getValue(), true);
   }
@@ -41,6 +41,14 @@ public class IntervalTrigger extends Trigger {
     return false;
   }
 
+  @Override
+  double getTimeToTick(Workout w) {
+    if (next == 0 || dimension != Dimension.TIME) {
+      return Double.MAX_VALUE;
+    }
+    return Math.max(0, next - w.get(scope, dimension));
+  }
+
   private void scheduleNext(Workout w, double now) {
     if (interval == 0) {
       // last occurrence (maybe first)
@@ -24,6 +24,11 @@ public class ListTrigger extends Trigger {
   private final Scope scope;
   private final Dimension dimension;
 
+  // add a bit of margin, NOTE: less than 0.5s
+  // For distance 4:00 /km is just over 4 m/s
+  private static final double TIME_MARGIN = 0.4d;
+  private static final double DISTANCE_MARGIN = 2d;
+
   private int pos;
   private final ArrayList<Double> triggerTimes;
 
@@ -40,9 +45,7 @@ public class ListTrigger extends Trigger {
 
   @Override
   public boolean onTick(Workout w) {
-    // add a bit of margin, NOTE: less than 0.5s
-    // For distance 4:00 /km is just over 4 m/s
-    final double margin = dimension == Dimension.TIME ? 0.4d : 2d;
+    final double margin = dimension == Dimension.TIME ? TIME_MARGIN : DISTANCE_MARGIN;
 
     double now = w.getRemaining(scope, dimension) - margin;
     if (pos < triggerTimes.size() && now <= triggerTimes.get(pos)) {
@@ -52,6 +55,15 @@ public class ListTrigger extends Trigger {
     return false;
   }
 
+  @Override
+  double getTimeToTick(Workout w) {
+    if (dimension != Dimension.TIME || pos >= triggerTimes.size()) {
+      return Double.MAX_VALUE;
+    }
+    double now = w.getRemaining(scope, dimension) - TIME_MARGIN;
+    return Math.max(0, now - triggerTimes.get(pos));
+  }
+
   private void scheduleNext(Workout w, double now) {
     while (pos < triggerTimes.size() && now <= triggerTimes.get(pos)) {
       pos++;
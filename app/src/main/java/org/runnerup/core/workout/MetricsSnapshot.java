@@ -0,0 +1,85 @@
+package org.runnerup.core.workout;
+
+import java.util.Arrays;
+
+/**
+ * The values of all {@link Scope} and {@link Dimension} combinations at one workout tick. Computed
+ * once at the first use in a tick, then read by the triggers, feedback and views until the next
+ * tick or step change, so all see the same values.
+ */
+public final class MetricsSnapshot {
+
+  private static final Scope[] SCOPES = Scope.values();
+  private static final Dimension[] DIMENSIONS = Dimension.values();
+
+  private final double[] values = new double[SCOPES.length * DIMENSIONS.length];
+  private final boolean[] present = new boolean[values.length];
+  private boolean valid = false;
+  private boolean updating = false;
+  private long updates = 0;
+
+  private static int index(Scope scope, Dimension d) {
+    return scope.ordinal() * DIMENSIONS.length + d.ordinal();
+  }
+
+  /** Values only available for the current sample, see Workout */
+  private static boolean isCurrentOnly(Dimension d) {
+    return d == Dimension.CAD || d == Dimension.TEMPERATURE || d == Dimension.PRESSURE;
+  }
+
+  /**
+   * Compute the values if not valid.
+   *
+   * @return false while computing, the workout must then compute the value itself
+   */
+  boolean refresh(Workout w, boolean withHrZones) {
+    if (valid) {
+      return true;
+    }
+    if (updating) {
+      return false;
+    }
+    updating = true;
+    try {
+      Arrays.fill(present, false);
+      for (Scope scope : SCOPES) {
+        for (Dimension d : DIMENSIONS) {
+          if ((scope != Scope.CURRENT && isCurrentOnly(d))
+              || (d == Dimension.HRZ && !withHrZones)) {
+            continue;
+          }
+          int i = index(scope, d);
+          values[i] = w.get(scope, d);
+          present[i] = true;
+        }
+      }
+      valid = true;
+      updates++;
+    } finally {
+      updating = false;
+    }
+    return true;
+  }
+
+  /** Values changed, compute at the next use */
+  void invalidate() {
+    valid = false;
+  }
+
+  public boolean isValid() {
+    return valid;
+  }
+
+  public boolean has(Scope scope, Dimension d) {
+    return valid && present[index(scope, d)];
+  }
+
+  public double get(Scope scope, Dimension d) {
+    return values[index(scope, d)];
+  }
+
+  /** Number of times computed */
+  public long getUpdates() {
+    return updates;
+  }
+}
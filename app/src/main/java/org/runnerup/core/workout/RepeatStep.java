@@ -20,7 +20,6 @@ package org.runnerup.core.workout;
 import androidx.annotation.NonNull;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 
 public class RepeatStep extends Step {
 
@@ -117,6 +116,14 @@ public class RepeatStep extends Step {
         || steps.get(currentStep).onTick(w);
   }
 
+  @Override
+  public double getTimeToTick(Workout w) {
+    if (currentStep >= steps.size() || currentRepeat >= repeatCount) {
+      return 0;
+    }
+    return steps.get(currentStep).getTimeToTick(w);
+  }
+
   /**
    * Return true when the step cannot be increased within this repeat step
    *
@@ -221,12 +228,4 @@ public class RepeatStep extends Step {
 
     return steps.get(currentStep).isLastStep();
   }
-
-  @Override
-  public void getSteps(Step parent, int level, List<Workout.StepListEntry> list) {
-    list.add(new Workout.StepListEntry(list.size(), this, level, parent));
-    for (Step s2 : steps) {
-      s2.getSteps(this, level + 1, list);
-    }
-  }
 }
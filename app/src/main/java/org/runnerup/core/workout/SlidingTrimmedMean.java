@@ -0,0 +1,235 @@
+package org.runnerup.core.workout;
+
+/**
+ * Trimmed mean and median of the last observations, updated in O(log n) per observation.
+ *
+ * <p>The observations are kept in a ring buffer, and ordered in a treap with the size and sum of
+ * each subtree, so the k smallest values and their sum are found without sorting. The node of an
+ * observation is its slot in the ring buffer, so no allocation after construction.
+ */
+public final class SlidingTrimmedMean {
+
+  private static final int NIL = -1;
+
+  private final int trimPercent;
+
+  private final double[] value;
+  private final int[] priority;
+  private final int[] left;
+  private final int[] right;
+  private final int[] size;
+  private final double[] sum;
+
+  private int root = NIL;
+  private int next = 0; // next slot in the ring buffer
+  private int count = 0;
+  private int seed = 0x2545F491;
+
+  /**
+   * @param window number of observations kept
+   * @param trimPercent percentage of the lowest and of the highest values ignored in the mean
+   */
+  public SlidingTrimmedMean(int window, int trimPercent) {
+    this.trimPercent = trimPercent;
+    value = new double[window];
+    priority = new int[window];
+    left = new int[window];
+    right = new int[window];
+    size = new int[window];
+    sum = new double[window];
+  }
+
+  public void clear() {
+    root = NIL;
+    next = 0;
+    count = 0;
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public int getWindow() {
+    return value.length;
+  }
+
+  public void add(double val) {
+    if (value.length == 0) {
+      return;
+    }
+    int node = next;
+    if (count == value.length) {
+      root = remove(root, node);
+    } else {
+      count++;
+    }
+    value[node] = val;
+    priority[node] = nextPriority();
+    left[node] = NIL;
+    right[node] = NIL;
+    size[node] = 1;
+    sum[node] = val;
+    root = insert(root, node);
+    next = (next + 1) % value.length;
+  }
+
+  /** Add the same value n times, as n observations */
+  public void add(double val, int n) {
+    // Older observations are replaced anyway
+    for (int i = Math.min(n, value.length); i > 0; i--) {
+      add(val);
+    }
+  }
+
+  /**
+   * Mean of the values, ignoring trimPercent of the values at each end. NaN if no value remains.
+   */
+  public double getTrimmedMean() {
+    int skip = (trimPercent * count) / 100;
+    int n = count - 2 * skip;
+    return (sumSmallest(count - skip) - sumSmallest(skip)) / n;
+  }
+
+  /** Median of the values, NaN if none */
+  public double getMedian() {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (count % 2 == 1) {
+      return get(count / 2);
+    }
+    return (get(count / 2 - 1) + get(count / 2)) / 2;
+  }
+
+  /** The k:th smallest value, from 0 */
+  public double get(int k) {
+    int node = root;
+    while (node != NIL) {
+      int leftSize = sizeOf(left[node]);
+      if (k < leftSize) {
+        node = left[node];
+      } else if (k == leftSize) {
+        return value[node];
+      } else {
+        k -= leftSize + 1;
+        node = right[node];
+      }
+    }
+    throw new IndexOutOfBoundsException();
+  }
+
+  /** Sum of the k smallest values */
+  double sumSmallest(int k) {
+    double res = 0;
+    int node = root;
+    while (node != NIL && k > 0) {
+      int leftSize = sizeOf(left[node]);
+      if (k <= leftSize) {
+        node = left[node];
+      } else {
+        res += sumOf(left[node]) + value[node];
+        k -= leftSize + 1;
+        node = right[node];
+      }
+    }
+    return res;
+  }
+
+  private int sizeOf(int node) {
+    return node == NIL ? 0 : size[node];
+  }
+
+  private double sumOf(int node) {
+    return node == NIL ? 0 : sum[node];
+  }
+
+  private void update(int node) {
+    size[node] = 1 + sizeOf(left[node]) + sizeOf(right[node]);
+    sum[node] = value[node] + sumOf(left[node]) + sumOf(right[node]);
+  }
+
+  // Order by value, equal values by slot
+  private int compare(int a, int b) {
+    int c = Double.compare(value[a], value[b]);
+    return c != 0 ? c : Integer.compare(a, b);
+  }
+
+  private int insert(int t, int node) {
+    if (t == NIL) {
+      return node;
+    }
+    if (compare(node, t) < 0) {
+      left[t] = insert(left[t], node);
+      if (priority[left[t]] > priority[t]) {
+        t = rotateRight(t);
+      }
+    } else {
+      right[t] = insert(right[t], node);
+      if (priority[right[t]] > priority[t]) {
+        t = rotateLeft(t);
+      }
+    }
+    update(t);
+    return t;
+  }
+
+  private int remove(int t, int node) {
+    if (t == NIL) {
+      return NIL;
+    }
+    if (t == node) {
+      return merge(left[t], right[t]);
+    }
+    if (compare(node, t) < 0) {
+      left[t] = remove(left[t], node);
+    } else {
+      right[t] = remove(right[t], node);
+    }
+    update(t);
+    return t;
+  }
+
+  // All of a before all of b
+  private int merge(int a, int b) {
+    if (a == NIL) {
+      return b;
+    }
+    if (b == NIL) {
+      return a;
+    }
+    if (priority[a] > priority[b]) {
+      right[a] = merge(right[a], b);
+      update(a);
+      return a;
+    }
+    left[b] = merge(a, left[b]);
+    update(b);
+    return b;
+  }
+
+  private int rotateRight(int t) {
+    int l = left[t];
+    left[t] = right[l];
+    right[l] = t;
+    update(t);
+    update(l);
+    return l;
+  }
+
+  private int rotateLeft(int t) {
+    int r = right[t];
+    right[t] = left[r];
+    left[r] = t;
+    update(t);
+    update(r);
+    return r;
+  }
+
+  // xorshift, repeatable
+  private int nextPriority() {
+    seed ^= seed << 13;
+    seed ^= seed >>> 17;
+    seed ^= seed << 5;
+    return seed;
+  }
+}
@@ -20,7 +20,6 @@ package org.runnerup.core.workout;
 import android.content.ContentValues;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import org.runnerup.BuildConfig;
 import org.runnerup.common.util.Constants;
 import org.runnerup.common.util.Constants.DB;
@@ -248,6 +247,7 @@ public class Step implements TickComponent {
       stepStartTime = time;
       stepStartDistance = dist;
       stepStartHeartbeats = beats;
+      s.invalidateMetrics();
       if (intensity == Intensity.ACTIVE
           && s.getWorkoutType() == Constants.WORKOUT_TYPE.INTERVAL) {
         s.resetIntervalRecentPace();
@@ -262,6 +262,7 @@ public class Step implements TickComponent {
       lapStartDistance = dist;
       lapStartHeartbeats = beats;
       lapMaxHr = 0;
+      s.invalidateMetrics();
       ContentValues tmp = new ContentValues();
       tmp.put(DB.LAP.INTENSITY, intensity.getValue());
       if (persistedStepId > 0) {
@@ -282,6 +283,8 @@ public class Step implements TickComponent {
           case CAD:
           case TEMPERATURE:
           case PRESSURE:
+          case RMSSD:
+          case DFA_ALPHA1:
             break;
         }
       }
@@ -302,6 +305,8 @@ public class Step implements TickComponent {
           case CAD:
           case TEMPERATURE:
           case PRESSURE:
+          case RMSSD:
+          case DFA_ALPHA1:
             break;
         }
       }
@@ -366,6 +371,18 @@ public class Step implements TickComponent {
     return false;
   }
 
+  /** Activity time in s until onTick can act without new data, see Trigger.getTimeToTick() */
+  public double getTimeToTick(Workout s) {
+    double res = Double.MAX_VALUE;
+    if (durationType == Dimension.TIME) {
+      res = Math.max(0, durationValue - s.get(Scope.STEP, Dimension.TIME));
+    }
+    for (Trigger t : triggers) {
+      res = Math.min(res, t.getTimeToTick(s));
+    }
+    return res;
+  }
+
   private void updateLapMaxHr(Workout s) {
     double current = s.getHeartRate(Scope.CURRENT);
     if (current > 0) {
@@ -529,10 +546,6 @@ public class Step implements TickComponent {
     return step;
   }
 
-  public void getSteps(Step parent, int i, List<Workout.StepListEntry> list) {
-    list.add(new Workout.StepListEntry(list.size(), this, i, parent));
-  }
-
   public Step getCurrentStep() {
     return this;
   }
@@ -0,0 +1,107 @@
+package org.runnerup.core.workout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * The steps of a workout in a flat array, in list order: each repeat step followed by its steps.
+ * Compiled once when the workout is prepared, so the step list, the step positions and the
+ * persisted schedule do not walk the step tree.
+ */
+final class StepTable {
+
+  private final Step[] steps;
+  // Index of the enclosing repeat step, -1 at top level
+  private final int[] parent;
+  private final int[] level;
+  private final int[] orderInParent;
+  private final List<Workout.StepListEntry> entries;
+  private final IdentityHashMap<Step, Integer> index;
+
+  private StepTable(List<Step> list, List<Integer> parents, List<Integer> orders) {
+    int n = list.size();
+    steps = list.toArray(new Step[n]);
+    parent = new int[n];
+    level = new int[n];
+    orderInParent = new int[n];
+    index = new IdentityHashMap<>(n);
+    ArrayList<Workout.StepListEntry> tmp = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      parent[i] = parents.get(i);
+      level[i] = parent[i] < 0 ? 0 : level[parent[i]] + 1;
+      orderInParent[i] = orders.get(i);
+      index.put(steps[i], i);
+      Step parentStep = parent[i] < 0 ? null : steps[parent[i]];
+      tmp.add(new Workout.StepListEntry(i, steps[i], level[i], parentStep));
+    }
+    entries = Collections.unmodifiableList(tmp);
+  }
+
+  /** Flatten the step tree, depth first without recursion */
+  static StepTable compile(List<Step> roots) {
+    ArrayList<Step> list = new ArrayList<>();
+    ArrayList<Integer> parents = new ArrayList<>();
+    ArrayList<Integer> orders = new ArrayList<>();
+
+    // Pending steps, pushed in reverse order so they are taken in list order
+    ArrayList<Step> stack = new ArrayList<>();
+    ArrayList<Integer> stackParent = new ArrayList<>();
+    ArrayList<Integer> stackOrder = new ArrayList<>();
+    for (int i = roots.size() - 1; i >= 0; i--) {
+      stack.add(roots.get(i));
+      stackParent.add(-1);
+      stackOrder.add(i);
+    }
+    while (!stack.isEmpty()) {
+      int top = stack.size() - 1;
+      Step step = stack.remove(top);
+      int pos = list.size();
+      list.add(step);
+      parents.add(stackParent.remove(top));
+      orders.add(stackOrder.remove(top));
+      if (step instanceof RepeatStep) {
+        List<Step> children = ((RepeatStep) step).getSteps();
+        for (int i = children.size() - 1; i >= 0; i--) {
+          stack.add(children.get(i));
+          stackParent.add(pos);
+          stackOrder.add(i);
+        }
+      }
+    }
+    return new StepTable(list, parents, orders);
+  }
+
+  int size() {
+    return steps.length;
+  }
+
+  Step getStep(int i) {
+    return steps[i];
+  }
+
+  /** Index of the repeat step containing step i, -1 at top level */
+  int getParent(int i) {
+    return parent[i];
+  }
+
+  int getLevel(int i) {
+    return level[i];
+  }
+
+  /** Position of step i in its repeat step or in the workout */
+  int getOrderInParent(int i) {
+    return orderInParent[i];
+  }
+
+  /** Index of the step, -1 if not in the workout */
+  int indexOf(Step step) {
+    Integer i = index.get(step);
+    return i == null ? -1 : i;
+  }
+
+  List<Workout.StepListEntry> getEntries() {
+    return entries;
+  }
+}
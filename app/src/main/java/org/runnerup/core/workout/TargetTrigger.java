@@ -18,7 +18,6 @@
 package org.runnerup.core.workout;
 
 import android.util.Log;
-import java.util.Arrays;
 import org.runnerup.BuildConfig;
 
 public class TargetTrigger extends Trigger {
@@ -39,26 +38,22 @@ public class TargetTrigger extends Trigger {
   Range range = null;
 
   private int cntMeasures = 0;
-  private final double[] measure;
+  // ignore 5% lowest and 5% highest values
+  private final SlidingTrimmedMean measure;
 
-  @SuppressWarnings("FieldCanBeLocal")
-  private final int skip_values;
-
-  private final double[] sort_measure;
   private double lastTimestamp = 0;
 
   private final double[] measure_time;
   private final double[] measure_distance;
 
-  /** cache computing of median */
+  /** cache computing of the trimmed mean */
   private double lastVal = 0;
 
   private int lastValCnt = 0;
 
   public TargetTrigger(Dimension dim, int movingAverageSeconds, int graceSeconds) {
     dimension = dim;
-    measure = new double[movingAverageSeconds];
-    sort_measure = new double[movingAverageSeconds];
+    measure = new SlidingTrimmedMean(movingAverageSeconds, 5);
 
     if (dimension == Dimension.HRZ) dimension = Dimension.HR;
 
@@ -66,8 +61,6 @@ public class TargetTrigger extends Trigger {
     measure_distance = new double[movingAverageSeconds];
 
     minGraceCount = graceSeconds;
-    skip_values = (5 * movingAverageSeconds) / 100; // ignore 5% lowest and
-    // 5% higest values
 
     reset();
   }
@@ -108,9 +101,9 @@ public class TargetTrigger extends Trigger {
 
     try {
       double val_now = getMeasurement(w, time_now);
-      for (int i = 0; i < elapsed_seconds; i++) {
-        addObservation(val_now);
-      }
+      // one observation per second
+      measure.add(val_now, elapsed_seconds);
+      cntMeasures += elapsed_seconds;
       // Log.e(getName(), "val_now: " + val_now + " elapsed: " +
       // elapsed_seconds);
 
@@ -134,10 +127,13 @@ public class TargetTrigger extends Trigger {
     return false;
   }
 
-  private void addObservation(double val_now) {
-    int pos = cntMeasures % measure.length;
-    measure[pos] = val_now;
-    cntMeasures++;
+  @Override
+  double getTimeToTick(Workout w) {
+    if (paused || !inited) {
+      return Double.MAX_VALUE;
+    }
+    // Sampled every second of step time
+    return Math.max(0, 1.0 - (w.get(Scope.STEP, Dimension.TIME) - lastTimestamp));
   }
 
   public Dimension getDimension() {
@@ -155,26 +151,13 @@ public class TargetTrigger extends Trigger {
   public double getValue() {
     if (cntMeasures == lastValCnt) return lastVal;
 
-    // not all values in the measure array are meaningful when
-    // cntMeasures is small so we adjust for it.
-    int meaningful_length = Math.min(cntMeasures, measure.length);
-    // should the percentage of values skipped be a variable of the class?
-    int meaningful_skip_values = (5 * meaningful_length) / 100;
-    System.arraycopy(measure, 0, sort_measure, 0, meaningful_length);
-    java.util.Arrays.sort(sort_measure, 0, meaningful_length);
-    double cnt = 0;
-    double val = 0;
-    for (int i = meaningful_skip_values; i < meaningful_length - meaningful_skip_values; i++) {
-      val += sort_measure[i];
-      cnt++;
-    }
-    lastVal = val / cnt;
+    lastVal = measure.getTrimmedMean();
     lastValCnt = cntMeasures;
     return lastVal;
   }
 
   private void reset() {
-    Arrays.fill(measure, 0);
+    measure.clear();
     inited = false;
     cntMeasures = 0;
     graceCount = initialGrace;
@@ -199,6 +182,8 @@ public class TargetTrigger extends Trigger {
       case CAD:
       case TEMPERATURE:
       case PRESSURE:
+      case RMSSD:
+      case DFA_ALPHA1:
       case TIME:
       default:
         break;
@@ -236,6 +221,8 @@ public class TargetTrigger extends Trigger {
       case CAD:
       case TEMPERATURE:
       case PRESSURE:
+      case RMSSD:
+      case DFA_ALPHA1:
       case TIME:
       default:
         break;
@@ -47,6 +47,14 @@ public abstract class Trigger implements TickComponent {
     }
   }
 
+  /**
+   * Activity time in s until onTick can fire without new data, Double.MAX_VALUE if the trigger only
+   * depends on new data
+   */
+  double getTimeToTick(Workout w) {
+    return Double.MAX_VALUE;
+  }
+
   void fire(Workout w) {
     for (TriggerSuppression s : triggerSuppression) {
       if (s.suppress(this, w)) {
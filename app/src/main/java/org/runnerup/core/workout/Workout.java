@@ -93,6 +93,9 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
   private final IntervalSegmentPace intervalSegmentPace = new IntervalSegmentPace();
 
+  private final MetricsSnapshot metrics = new MetricsSnapshot();
+  private StepTable stepTable = null;
+
   Tracker tracker = null;
   private HRZones hrZones = null;
   private RUTextToSpeech textToSpeech = null;
@@ -109,6 +112,24 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
   public void setTracker(Tracker tracker) {
     this.tracker = tracker;
+    metrics.invalidate();
+  }
+
+  /** The values of the current tick, not valid without a tracker */
+  public MetricsSnapshot getMetrics() {
+    if (tracker != null) {
+      metrics.refresh(this, hrZones != null);
+    }
+    return metrics;
+  }
+
+  /** Step or lap started, values relative to it changed */
+  void invalidateMetrics() {
+    metrics.invalidate();
+  }
+
+  private boolean useMetrics(Scope scope, Dimension d) {
+    return tracker != null && metrics.refresh(this, hrZones != null) && metrics.has(scope, d);
   }
 
   /**
@@ -136,12 +157,22 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
    */
   public void persistSchedule(SQLiteDatabase db, long activityId) {
     if (db == null || activityId <= 0) return;
-    for (int i = 0; i < steps.size(); i++) {
-      persistStepRecursive(db, activityId, steps.get(i), /* parentId= */ 0L, i);
-    }
-  }
-
-  private static void persistStepRecursive(
+    StepTable table = getStepTable();
+    // Repeat steps are before their steps in the table
+    long[] ids = new long[table.size()];
+    for (int i = 0; i < table.size(); i++) {
+      int parent = table.getParent(i);
+      ids[i] =
+          persistStep(
+              db,
+              activityId,
+              table.getStep(i),
+              parent < 0 ? 0L : ids[parent],
+              table.getOrderInParent(i));
+    }
+  }
+
+  private static long persistStep(
       SQLiteDatabase db, long activityId, Step step, long parentId, int orderInParent) {
     ContentValues row = new ContentValues();
     row.put(DB.STEP.ACTIVITY, activityId);
@@ -173,13 +204,7 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
     long id = db.insert(DB.STEP.TABLE, null, row);
     step.setPersistedStepId(id);
-
-    if (step instanceof RepeatStep) {
-      ArrayList<Step> children = ((RepeatStep) step).getSteps();
-      for (int i = 0; i < children.size(); i++) {
-        persistStepRecursive(db, activityId, children.get(i), id, i);
-      }
-    }
+    return id;
   }
 
   public void onInit(Workout w) {
@@ -241,6 +266,7 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
   private void setCurrentStep(Step step) {
     Step oldStep = currentStep;
     currentStep = step;
+    metrics.invalidate();
 
     Step newStep = (step == null) ? null : step.getCurrentStep();
     for (WorkoutStepListener l : stepListeners) {
@@ -249,6 +275,7 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
   }
 
   public void onTick() {
+    metrics.invalidate();
     initFeedback();
 
     while (currentStep != null) {
@@ -265,6 +292,11 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
     emitFeedback();
   }
 
+  /** Activity time in s until onTick() can act without new data */
+  public double getTimeToTick() {
+    return currentStep == null ? Double.MAX_VALUE : currentStep.getTimeToTick(this);
+  }
+
   public void onNextStep() {
     if (currentStep == null) {
       return;
@@ -358,6 +390,7 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
     }
     setCurrentStep(null);
     currentStepNo = -1;
+    stepTable = null;
   }
 
   @Override
@@ -370,6 +403,9 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
     if (d == null) {
       return 0;
     }
+    if (useMetrics(scope, d)) {
+      return metrics.get(scope, d);
+    }
     switch (d) {
       case DISTANCE:
         return getDistance(scope);
@@ -389,12 +425,19 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
         return getTemperature(scope);
       case PRESSURE:
         return getPressure(scope);
+      case RMSSD:
+        return tracker != null ? tracker.getCurrentRmssd() : 0;
+      case DFA_ALPHA1:
+        return tracker != null ? tracker.getCurrentDfaAlpha1() : 0;
     }
     return 0;
   }
 
   @Override
   public double getDistance(Scope scope) {
+    if (useMetrics(scope, Dimension.DISTANCE)) {
+      return metrics.get(scope, Dimension.DISTANCE);
+    }
     switch (scope) {
       case ACTIVITY:
         if (tracker != null) {
@@ -414,6 +457,9 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
   @Override
   public double getTime(Scope scope) {
+    if (useMetrics(scope, Dimension.TIME)) {
+      return metrics.get(scope, Dimension.TIME);
+    }
     switch (scope) {
       case ACTIVITY:
         if (tracker != null) {
@@ -434,6 +480,9 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
   @Override
   public double getSpeed(Scope scope) {
+    if (useMetrics(scope, Dimension.SPEED)) {
+      return metrics.get(scope, Dimension.SPEED);
+    }
     switch (scope) {
       case ACTIVITY:
         double d = getDistance(scope);
@@ -456,6 +505,9 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
   @Override
   public double getPace(Scope scope) {
+    if (useMetrics(scope, Dimension.PACE)) {
+      return metrics.get(scope, Dimension.PACE);
+    }
     double s = getSpeed(scope);
     if (s != 0) return 1.0d / s;
     return 0;
@@ -499,6 +551,9 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
   @Override
   public double getHeartRate(Scope scope) {
+    if (useMetrics(scope, Dimension.HR)) {
+      return metrics.get(scope, Dimension.HR);
+    }
     switch (scope) {
       case CURRENT:
         if (tracker != null) {
@@ -524,6 +579,9 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
   @Override
   public double getCadence(Scope scope) {
+    if (useMetrics(scope, Dimension.CAD)) {
+      return metrics.get(scope, Dimension.CAD);
+    }
     switch (scope) {
       case CURRENT:
         if (tracker != null) {
@@ -552,6 +610,9 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
   @Override
   public double getTemperature(Scope scope) {
+    if (useMetrics(scope, Dimension.TEMPERATURE)) {
+      return metrics.get(scope, Dimension.TEMPERATURE);
+    }
     switch (scope) {
       case CURRENT:
         if (tracker != null) {
@@ -574,6 +635,9 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
   @Override
   public double getPressure(Scope scope) {
+    if (useMetrics(scope, Dimension.PRESSURE)) {
+      return metrics.get(scope, Dimension.PRESSURE);
+    }
     switch (scope) {
       case CURRENT:
         if (tracker != null) {
@@ -596,6 +660,9 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
   @Override
   public double getHeartRateZone(Scope scope) {
+    if (useMetrics(scope, Dimension.HRZ)) {
+      return metrics.get(scope, Dimension.HRZ);
+    }
     return hrZones.getZone(getHeartRate(scope));
   }
 
@@ -617,7 +684,7 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
     if (tracker == null) {
       return false;
     }
-    if (dim == Dimension.HR) {
+    if (dim == Dimension.HR || dim == Dimension.RMSSD || dim == Dimension.DFA_ALPHA1) {
       return tracker.isComponentConnected(TrackerHRM.NAME);
     } else if (dim == Dimension.HRZ) {
       return hrZones != null
@@ -686,18 +753,33 @@ public class Workout implements WorkoutComponent, WorkoutInfo {
 
   public void addStep(Step s) {
     steps.add(s);
+    stepTable = null;
   }
 
   public List<Step> getSteps() {
     return steps;
   }
 
+  /**
+   * Compile the steps into a flat table, used until the workout is completed. The steps must not
+   * be changed after this.
+   */
+  public void compileSteps() {
+    stepTable = StepTable.compile(steps);
+  }
+
+  /** The compiled table, or else the table of the current steps */
+  StepTable getStepTable() {
+    return stepTable != null ? stepTable : StepTable.compile(steps);
+  }
+
   public List<StepListEntry> getStepList() {
-    ArrayList<StepListEntry> list = new ArrayList<>();
-    for (Step s : steps) {
-      s.getSteps(null, 0, list);
-    }
-    return list;
+    return getStepTable().getEntries();
+  }
+
+  /** Position of the step in the step list, -1 if not in the workout */
+  public int getStepListIndex(Step step) {
+    return getStepTable().indexOf(step);
   }
 
   public Step getCurrentStep() {
@@ -902,6 +902,8 @@ public class WorkoutBuilder {
         }
       }
     }
+
+    w.compileSteps();
   }
 
   public static void addFeedbackFromPreferences(
@@ -230,6 +230,8 @@ public class WorkoutSerializer {
       case CAD:
       case TEMPERATURE:
       case PRESSURE:
+      case RMSSD:
+      case DFA_ALPHA1:
         break;
     }
   }
@@ -340,6 +342,8 @@ public class WorkoutSerializer {
       case CAD:
       case TEMPERATURE:
       case PRESSURE:
+      case RMSSD:
+      case DFA_ALPHA1:
         break;
     }
   }
@@ -21,11 +21,11 @@ import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.location.Location;
-import android.text.TextUtils;
 import android.util.Log;
 import java.util.ArrayList;
 import java.util.List;
 import org.runnerup.common.util.Constants;
+import org.runnerup.core.util.GraphWrapper;
 
 public class ActivityCleaner implements Constants {
   private long _totalSumHr = 0;
@@ -682,6 +682,8 @@ public class ActivityCleaner implements Constants {
     }
     recomputeSummary(db, activityId);
     invalidateAggregateCaches(db);
+    GraphWrapper.invalidateCache(activityId);
+    RouteLevelStore.invalidate(db, activityId);
   }
 
   /**
@@ -1006,8 +1008,17 @@ public class ActivityCleaner implements Constants {
    * @param db Database.
    * @param ids ID to delete.
    */
-  public static void deleteLocations(SQLiteDatabase db, ArrayList<String> ids) {
-    String strIDs = TextUtils.join(",", ids);
+  public static void deleteLocations(SQLiteDatabase db, LocationIdSet ids) {
+    if (ids.isEmpty()) {
+      return;
+    }
+    StringBuilder strIDs = new StringBuilder();
+    for (long id : ids.toArray()) {
+      if (strIDs.length() > 0) {
+        strIDs.append(',');
+      }
+      strIDs.append(id);
+    }
     db.execSQL(
         "delete from "
             + DB.LOCATION.TABLE
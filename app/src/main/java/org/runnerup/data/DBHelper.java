@@ -27,8 +27,14 @@ import android.database.sqlite.SQLiteOpenHelper;
 import org.runnerup.core.util.BgTasks;
 import android.util.Log;
 import androidx.appcompat.app.AlertDialog;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.List;
 import org.json.JSONException;
@@ -45,11 +51,12 @@ import org.runnerup.sync.RunningAHEADSynchronizer;
 import org.runnerup.sync.StravaSynchronizer;
 import org.runnerup.sync.WebDavSynchronizer;
 import org.runnerup.core.util.FileUtil;
+import org.runnerup.core.util.StreamEncryption;
 import org.runnerup.core.workout.FileFormats;
 
 public class DBHelper extends SQLiteOpenHelper implements Constants {
 
-  private static final int DBVERSION = 49;
+  private static final int DBVERSION = 54;
   private static final String DBNAME = "runnerup.db";
 
   // DBVERSION update
@@ -208,6 +215,83 @@ public class DBHelper extends SQLiteOpenHelper implements Constants {
           + " integer not null default 1" // DBVERSION update: remove
           + ");";
 
+  private static final String CREATE_TABLE_UPLOAD_QUEUE =
+      "create table "
+          + DB.UPLOAD_QUEUE.TABLE
+          + " ( "
+          + ("_id integer primary key autoincrement, ")
+          + (DB.UPLOAD_QUEUE.ACTIVITY + " integer not null, ")
+          + (DB.UPLOAD_QUEUE.ACCOUNT + " integer not null, ")
+          + (DB.UPLOAD_QUEUE.STATE + " integer not null default 0, ")
+          + (DB.UPLOAD_QUEUE.ATTEMPTS + " integer not null default 0, ")
+          + (DB.UPLOAD_QUEUE.NEXT_ATTEMPT + " integer not null default 0, ")
+          + ("unique (" + DB.UPLOAD_QUEUE.ACTIVITY + ", " + DB.UPLOAD_QUEUE.ACCOUNT + ")")
+          + ");";
+
+  private static final String CREATE_INDEX_UPLOAD_QUEUE =
+      "create index "
+          + "if not exists UPLOAD_QUEUE_NEXT_ATTEMPT "
+          + (" on " + DB.UPLOAD_QUEUE.TABLE)
+          + (" (" + DB.UPLOAD_QUEUE.STATE + ", " + DB.UPLOAD_QUEUE.NEXT_ATTEMPT + ")");
+
+  // History pages are read by (start_time, _id), _id is the rowid and part of every index
+  private static final String CREATE_INDEX_ACTIVITY_START_TIME =
+      "create index if not exists ACTIVITY_START_TIME on "
+          + DB.ACTIVITY.TABLE
+          + " ("
+          + DB.ACTIVITY.START_TIME
+          + ")";
+
+  private static final String CREATE_TABLE_RR_INTERVAL =
+      "create table "
+          + DB.RR_INTERVAL.TABLE
+          + " ( "
+          + ("_id integer primary key autoincrement, ")
+          + (DB.RR_INTERVAL.ACTIVITY + " integer not null, ")
+          + (DB.RR_INTERVAL.TIME + " integer not null, ")
+          + (DB.RR_INTERVAL.INTERVALS + " blob not null")
+          + ");";
+
+  private static final String CREATE_INDEX_RR_INTERVAL =
+      "create index if not exists RR_INTERVAL_ACTIVITY on "
+          + DB.RR_INTERVAL.TABLE
+          + " ("
+          + DB.RR_INTERVAL.ACTIVITY
+          + ", "
+          + DB.RR_INTERVAL.TIME
+          + ")";
+
+  private static final String CREATE_TABLE_HR_SAMPLE =
+      "create table "
+          + DB.HR_SAMPLE.TABLE
+          + " ( "
+          + ("_id integer primary key autoincrement, ")
+          + (DB.HR_SAMPLE.ACTIVITY + " integer not null, ")
+          + (DB.HR_SAMPLE.TIME + " integer not null, ")
+          + (DB.HR_SAMPLE.SAMPLES + " blob not null")
+          + ");";
+
+  private static final String CREATE_INDEX_HR_SAMPLE =
+      "create index if not exists HR_SAMPLE_ACTIVITY on "
+          + DB.HR_SAMPLE.TABLE
+          + " ("
+          + DB.HR_SAMPLE.ACTIVITY
+          + ", "
+          + DB.HR_SAMPLE.TIME
+          + ")";
+
+  private static final String CREATE_TABLE_ROUTE_LOD =
+      "create table "
+          + DB.ROUTE_LOD.TABLE
+          + " ( "
+          + ("_id integer primary key autoincrement, ")
+          + (DB.ROUTE_LOD.ACTIVITY + " integer not null, ")
+          + (DB.ROUTE_LOD.LEVEL + " integer not null, ")
+          + (DB.ROUTE_LOD.TOLERANCE + " real not null, ")
+          + (DB.ROUTE_LOD.POINTS + " blob not null, ")
+          + ("unique (" + DB.ROUTE_LOD.ACTIVITY + ", " + DB.ROUTE_LOD.LEVEL + ")")
+          + ");";
+
   private static final String CREATE_TABLE_AUDIO_SCHEMES =
       "create table "
           + DB.AUDIO_SCHEMES.TABLE
@@ -445,6 +529,14 @@ public class DBHelper extends SQLiteOpenHelper implements Constants {
     arg0.execSQL(CREATE_TABLE_STEP);
     arg0.execSQL(CREATE_TABLE_ACTIVITY_EVENT);
     arg0.execSQL(CREATE_INDEX_ACTIVITY_EVENT);
+    arg0.execSQL(CREATE_TABLE_UPLOAD_QUEUE);
+    arg0.execSQL(CREATE_INDEX_UPLOAD_QUEUE);
+    arg0.execSQL(CREATE_TABLE_ROUTE_LOD);
+    arg0.execSQL(CREATE_INDEX_ACTIVITY_START_TIME);
+    arg0.execSQL(CREATE_TABLE_RR_INTERVAL);
+    arg0.execSQL(CREATE_INDEX_RR_INTERVAL);
+    arg0.execSQL(CREATE_TABLE_HR_SAMPLE);
+    arg0.execSQL(CREATE_INDEX_HR_SAMPLE);
 
     onCreateUpgrade(arg0, 0, DBVERSION);
   }
@@ -741,6 +833,28 @@ public class DBHelper extends SQLiteOpenHelper implements Constants {
       // Legacy bug: avg_hr stored peak BPM and max_hr stored average BPM.
       ActivityCleaner.repairSwappedActivityHeartRates(arg0);
     }
+    if (oldVersion < 50) {
+      // Persistent upload queue, empty for existing installs
+      arg0.execSQL(CREATE_TABLE_UPLOAD_QUEUE);
+      arg0.execSQL(CREATE_INDEX_UPLOAD_QUEUE);
+    }
+    if (oldVersion < 51) {
+      // Map route levels, built when an activity is first shown on a map
+      arg0.execSQL(CREATE_TABLE_ROUTE_LOD);
+    }
+    if (oldVersion < 52) {
+      arg0.execSQL(CREATE_INDEX_ACTIVITY_START_TIME);
+    }
+    if (oldVersion < 53) {
+      // Beat to beat intervals from the heart rate monitor
+      arg0.execSQL(CREATE_TABLE_RR_INTERVAL);
+      arg0.execSQL(CREATE_INDEX_RR_INTERVAL);
+    }
+    if (oldVersion < 54) {
+      // Heart rate at the rate of the sensor, independent of the location rows
+      arg0.execSQL(CREATE_TABLE_HR_SAMPLE);
+      arg0.execSQL(CREATE_INDEX_HR_SAMPLE);
+    }
     if (oldVersion < 48) {
       arg0.execSQL(
           "ALTER TABLE "
@@ -1070,6 +1184,7 @@ public class DBHelper extends SQLiteOpenHelper implements Constants {
     Log.e("DBHelper", "deleting account: " + id);
     String[] args = {Long.toString(id)};
     db.delete(DB.EXPORT.TABLE, DB.EXPORT.ACCOUNT + " = ?", args);
+    db.delete(DB.UPLOAD_QUEUE.TABLE, DB.UPLOAD_QUEUE.ACCOUNT + " = ?", args);
     db.delete(DB.ACCOUNT.TABLE, "_id = ?", args);
   }
 
@@ -1099,6 +1214,10 @@ public class DBHelper extends SQLiteOpenHelper implements Constants {
     Log.e("DBHelper", "deleting activity: " + id);
     String[] args = {Long.toString(id)};
     db.delete(DB.EXPORT.TABLE, DB.EXPORT.ACTIVITY + " = ?", args);
+    db.delete(DB.UPLOAD_QUEUE.TABLE, DB.UPLOAD_QUEUE.ACTIVITY + " = ?", args);
+    db.delete(DB.ROUTE_LOD.TABLE, DB.ROUTE_LOD.ACTIVITY + " = ?", args);
+    db.delete(DB.RR_INTERVAL.TABLE, DB.RR_INTERVAL.ACTIVITY + " = ?", args);
+    db.delete(DB.HR_SAMPLE.TABLE, DB.HR_SAMPLE.ACTIVITY + " = ?", args);
     db.delete(DB.LOCATION.TABLE, DB.LOCATION.ACTIVITY + " = ?", args);
     db.delete(DB.LAP.TABLE, DB.LAP.ACTIVITY + " = ?", args);
     db.delete(DB.ACTIVITY.TABLE, "_id = ?", args);
@@ -1162,7 +1281,29 @@ public class DBHelper extends SQLiteOpenHelper implements Constants {
     return ctx.getExternalFilesDir(null) + File.separator + "runnerup.db.export";
   }
 
+  /** The default path of an export encrypted with {@link StreamEncryption} */
+  public static String getDefaultEncryptedBackupPath(Context ctx) {
+    return getDefaultBackupPath(ctx) + ".enc";
+  }
+
+  /** The file is an export encrypted with {@link StreamEncryption} */
+  public static boolean isEncryptedBackup(String path) {
+    byte[] start = new byte[4];
+    try (InputStream in = new FileInputStream(path)) {
+      return in.read(start) == start.length && StreamEncryption.isEncrypted(start);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
   public static void importDatabase(Context ctx, String from) {
+    importDatabase(ctx, from, null);
+  }
+
+  /**
+   * Replace the database with an export, an encrypted export is decrypted with the passphrase.
+   */
+  public static void importDatabase(Context ctx, String from, char[] passphrase) {
     final DBHelper mDBHelper = DBHelper.getHelper(ctx);
     final SQLiteDatabase db = mDBHelper.getWritableDatabase();
     db.close();
@@ -1174,7 +1315,25 @@ public class DBHelper extends SQLiteOpenHelper implements Constants {
       from = getDefaultBackupPath(ctx);
     }
     AlertDialog.Builder builder = new AlertDialog.Builder(ctx).setTitle("Import " + DBNAME);
+    if (passphrase == null && isEncryptedBackup(from)) {
+      builder
+          .setMessage(from + " is encrypted, import it from the maintenance settings")
+          .setNegativeButton(org.runnerup.common.R.string.Cancel, listener)
+          .show();
+      return;
+    }
+    String to = getDbPath(ctx);
+    // Decrypted next to the database, a wrong passphrase fails before it is replaced
+    File tmp = passphrase != null ? new File(to + ".import") : null;
     try {
+      int cnt = 0;
+      if (tmp != null) {
+        try (InputStream in =
+            new StreamEncryption.RandomAccessReader(new File(from), passphrase).openStream(0)) {
+          cnt = FileUtil.copy(in, tmp.getPath());
+        }
+      }
+
       // Create automatic backup before importing to prevent data loss
       android.util.Log.i("DBHelper", "Creating automatic backup before import...");
       boolean backupCreated = org.runnerup.core.util.AutomaticBackupManager.createBackup(ctx, true);
@@ -1184,13 +1343,22 @@ public class DBHelper extends SQLiteOpenHelper implements Constants {
         android.util.Log.w("DBHelper", "Failed to create automatic backup before import");
       }
       
-      String to = getDbPath(ctx);
-      int cnt = FileUtil.copyFile(to, from);
+      if (tmp != null) {
+        if (!tmp.renameTo(new File(to))) {
+          throw new IOException("Failed to replace " + to);
+        }
+      } else {
+        cnt = FileUtil.copyFile(to, from);
+      }
       builder
           .setMessage("Copied " + cnt + " bytes from " + from + "\n\nRestart to use the database" +
               (backupCreated ? "\n\nAutomatic backup created before import." : ""))
           .setPositiveButton(org.runnerup.common.R.string.OK, listener);
-    } catch (IOException e) {
+    } catch (IOException | GeneralSecurityException e) {
+      if (tmp != null) {
+        //noinspection ResultOfMethodCallIgnored
+        tmp.delete();
+      }
       builder
           .setMessage("Exception: " + e + " for " + from)
           .setNegativeButton(org.runnerup.common.R.string.Cancel, listener);
@@ -1199,24 +1367,39 @@ public class DBHelper extends SQLiteOpenHelper implements Constants {
   }
 
   public static void exportDatabase(Context ctx, String to) {
+    exportDatabase(ctx, to, null);
+  }
+
+  /** Copy the database, encrypted with {@link StreamEncryption} if a passphrase is given. */
+  public static void exportDatabase(Context ctx, String to, char[] passphrase) {
     DialogInterface.OnClickListener listener = (dialog, which) -> dialog.dismiss();
 
     if (to == null) {
-      to = getDefaultBackupPath(ctx);
+      to = passphrase != null ? getDefaultEncryptedBackupPath(ctx) : getDefaultBackupPath(ctx);
     }
     AlertDialog.Builder builder = new AlertDialog.Builder(ctx).setTitle("Export " + DBNAME);
     try {
       String from = getDbPath(ctx);
-      int cnt = FileUtil.copyFile(to, from);
+      long cnt;
+      if (passphrase != null) {
+        try (InputStream in = new FileInputStream(from);
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(to))) {
+          StreamEncryption.encrypt(in, out, passphrase);
+        }
+        cnt = new File(to).length();
+      } else {
+        cnt = FileUtil.copyFile(to, from);
+      }
       builder
           .setMessage(
               "Exported "
                   + cnt
                   + " bytes to "
                   + to
+                  + (passphrase != null ? "\n\nThe password is needed to import the file" : "")
                   + "\n\nNote that the file will be deleted at uninstall")
           .setPositiveButton(org.runnerup.common.R.string.OK, listener);
-    } catch (IOException e) {
+    } catch (IOException | GeneralSecurityException e) {
       builder
           .setMessage("Exception: " + e + " for " + to)
           .setNegativeButton(org.runnerup.common.R.string.Cancel, listener);
@@ -0,0 +1,127 @@
+package org.runnerup.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import java.io.IOException;
+import java.util.Arrays;
+import org.runnerup.common.util.Constants.DB;
+
+/**
+ * Heart rate samples of an activity at the rate of the sensor, as stored in the hr_sample table.
+ * Exporters use it to look up the heart rate at the time of each track point, independent of how
+ * often locations were recorded, and to write the samples between track points as points of
+ * their own.
+ */
+public final class HRSeries {
+
+  /** Bytes per sample in the hr_sample blob: 16 bit ms since the previous sample, 8 bit bpm */
+  public static final int SAMPLE_SIZE = 3;
+
+  /** Largest time between samples in one row */
+  public static final int MAX_DELTA_MS = 0xFFFF;
+
+  /** Samples older than this are not used for a point */
+  public static final long MAX_AGE_MS = 15000;
+
+  /** Samples closer than this to a track point are given by the heart rate of the point */
+  public static final long MIN_POINT_GAP_MS = 1000;
+
+  /** Receives the samples between track points */
+  public interface Visitor {
+    void sample(long time, int bpm) throws IOException;
+  }
+
+  private long[] times = new long[256];
+  private int[] values = new int[256];
+  private int count = 0;
+
+  /**
+   * @return the samples of the activity, null if none were recorded (older activities or no
+   *     heart rate monitor)
+   */
+  public static HRSeries load(SQLiteDatabase db, long activityId) {
+    String[] columns = {DB.HR_SAMPLE.TIME, DB.HR_SAMPLE.SAMPLES};
+    HRSeries series = new HRSeries();
+    try (Cursor c =
+        db.query(
+            DB.HR_SAMPLE.TABLE,
+            columns,
+            DB.HR_SAMPLE.ACTIVITY + " = " + activityId,
+            null,
+            null,
+            null,
+            DB.HR_SAMPLE.TIME)) {
+      while (c.moveToNext()) {
+        series.append(c.getLong(0), c.getBlob(1));
+      }
+    }
+    return series.count > 0 ? series : null;
+  }
+
+  /** Add the samples of one row, rows in time order */
+  void append(long time, byte[] samples) {
+    int n = samples.length / SAMPLE_SIZE;
+    if (count + n > times.length) {
+      int capacity = Math.max(count + n, 2 * times.length);
+      times = Arrays.copyOf(times, capacity);
+      values = Arrays.copyOf(values, capacity);
+    }
+    for (int i = 0; i < n; i++) {
+      int p = i * SAMPLE_SIZE;
+      time += (samples[p] & 0xFF) | (samples[p + 1] & 0xFF) << 8;
+      times[count] = time;
+      values[count] = samples[p + 2] & 0xFF;
+      count++;
+    }
+  }
+
+  public int size() {
+    return count;
+  }
+
+  public long getTime(int i) {
+    return times[i];
+  }
+
+  public int getValue(int i) {
+    return values[i];
+  }
+
+  /**
+   * Visit the samples between two track points in time order, skipping those within {@link
+   * #MIN_POINT_GAP_MS} of the points or of the previous visited sample.
+   */
+  public void forEachBetween(long from, long to, Visitor visitor) throws IOException {
+    int i = Arrays.binarySearch(times, 0, count, from);
+    if (i < 0) {
+      i = -i - 1;
+    }
+    long last = from;
+    for (; i < count && times[i] <= to - MIN_POINT_GAP_MS; i++) {
+      if (times[i] - last >= MIN_POINT_GAP_MS && values[i] > 0) {
+        visitor.sample(times[i], values[i]);
+        last = times[i];
+      }
+    }
+  }
+
+  /**
+   * @return the latest sample at or before the time, 0 if there is none within {@link
+   *     #MAX_AGE_MS}
+   */
+  public int valueAt(long time) {
+    int i = Arrays.binarySearch(times, 0, count, time);
+    if (i < 0) {
+      i = -i - 2; // the preceding sample
+    } else {
+      // The last of equal times
+      while (i + 1 < count && times[i + 1] == time) {
+        i++;
+      }
+    }
+    if (i < 0 || time - times[i] > MAX_AGE_MS) {
+      return 0;
+    }
+    return values[i];
+  }
+}
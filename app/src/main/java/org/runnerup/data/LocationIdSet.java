@@ -0,0 +1,96 @@
+package org.runnerup.data;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Set of location row ids of one activity. The rows of an activity are inserted together, so the
+ * ids are normally stored as a bitset relative to the lowest id, giving O(1) membership tests.
+ * Ids spread over a large range, e.g. after rows were merged from another database, are stored
+ * as a sorted array instead.
+ */
+public final class LocationIdSet {
+
+  public static final LocationIdSet EMPTY = new LocationIdSet(0, new BitSet(0), null);
+
+  // Bits per id allowed for the bitset, a long per id is used by the sorted array
+  private static final long MAX_BITS_PER_ID = 64;
+
+  private final long base;
+  private final BitSet bits;
+  // Unique ids in ascending order, null if the bitset is used
+  private final long[] sorted;
+
+  private LocationIdSet(long base, BitSet bits, long[] sorted) {
+    this.base = base;
+    this.bits = bits;
+    this.sorted = sorted;
+  }
+
+  /**
+   * @param ids the ids, in any order
+   * @param count number of ids used from the array
+   */
+  public static LocationIdSet of(long[] ids, int count) {
+    if (count == 0) {
+      return EMPTY;
+    }
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < count; i++) {
+      min = Math.min(min, ids[i]);
+      max = Math.max(max, ids[i]);
+    }
+    // Subtracting may overflow for ids of both signs
+    long span = max - min;
+    if (span < 0 || span >= Math.max(Integer.SIZE, count * MAX_BITS_PER_ID)) {
+      return new LocationIdSet(0, null, unique(ids, count));
+    }
+    BitSet bits = new BitSet((int) (span + 1));
+    for (int i = 0; i < count; i++) {
+      bits.set((int) (ids[i] - min));
+    }
+    return new LocationIdSet(min, bits, null);
+  }
+
+  private static long[] unique(long[] ids, int count) {
+    long[] sorted = Arrays.copyOf(ids, count);
+    Arrays.sort(sorted);
+    int n = 1;
+    for (int i = 1; i < count; i++) {
+      if (sorted[i] != sorted[n - 1]) {
+        sorted[n++] = sorted[i];
+      }
+    }
+    return n == count ? sorted : Arrays.copyOf(sorted, n);
+  }
+
+  public boolean contains(long id) {
+    if (sorted != null) {
+      return Arrays.binarySearch(sorted, id) >= 0;
+    }
+    long i = id - base;
+    return i >= 0 && i < Integer.MAX_VALUE && bits.get((int) i);
+  }
+
+  public boolean isEmpty() {
+    return sorted == null ? bits.isEmpty() : sorted.length == 0;
+  }
+
+  public int size() {
+    return sorted == null ? bits.cardinality() : sorted.length;
+  }
+
+  /** The ids in ascending order */
+  public long[] toArray() {
+    if (sorted != null) {
+      return sorted.clone();
+    }
+    long[] ids = new long[bits.cardinality()];
+    int n = 0;
+    for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+      ids[n++] = base + i;
+    }
+    return ids;
+  }
+}
@@ -1,6 +1,7 @@
 package org.runnerup.data;
 
 import java.util.Calendar;
+import java.util.TimeZone;
 
 /** Inclusive calendar month as Unix epoch seconds (activity start_time). */
 public final class MonthRange {
@@ -29,4 +30,27 @@ public final class MonthRange {
     Calendar cal = Calendar.getInstance();
     return forYearMonth(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1);
   }
+
+  /**
+   * Calendar month of an epoch time in {@code tz}, as year * 12 + month (0-based). Does not
+   * allocate, for grouping long lists by month.
+   */
+  public static int monthIndex(long epochSeconds, TimeZone tz) {
+    long millis = epochSeconds * 1000;
+    long localMillis = millis + tz.getOffset(millis);
+    long days = localMillis / 86_400_000L;
+    if (localMillis < 0 && days * 86_400_000L != localMillis) {
+      days--;
+    }
+    // Days to civil date, proleptic Gregorian, with March as the first month of the year
+    long z = days + 719_468;
+    long era = (z >= 0 ? z : z - 146_096) / 146_097;
+    long dayOfEra = z - era * 146_097;
+    long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+    long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    long marchMonth = (5 * dayOfYear + 2) / 153;
+    int month = (int) (marchMonth < 10 ? marchMonth + 2 : marchMonth - 10);
+    long year = yearOfEra + era * 400 + (month <= Calendar.FEBRUARY ? 1 : 0);
+    return (int) year * 12 + month;
+  }
 }
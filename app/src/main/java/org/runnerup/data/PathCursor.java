@@ -2,13 +2,12 @@ package org.runnerup.data;
 
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import java.util.ArrayList;
 import org.runnerup.common.util.Constants;
 
 public class PathCursor {
 
   private final Cursor cursor;
-  private ArrayList<Integer> ignoreIDs;
+  private LocationIdSet ignoreIDs;
   private final int idxLocId;
 
   public PathCursor(
@@ -20,7 +19,7 @@ public class PathCursor {
 
     if (simplifier != null) {
       ignoreIDs = simplifier.getNoisyLocationIDs(mDB, activityId);
-      if (ignoreIDs.size() == 0) {
+      if (ignoreIDs.isEmpty()) {
         ignoreIDs = null;
       }
     }
@@ -39,7 +38,7 @@ public class PathCursor {
 
   private boolean skipSimplified(boolean ok) {
     if (ignoreIDs != null) {
-      while (ok && ignoreIDs.contains(cursor.getInt(idxLocId))) {
+      while (ok && ignoreIDs.contains(cursor.getLong(idxLocId))) {
         ok = cursor.moveToNext();
       }
     }
@@ -5,12 +5,10 @@ import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
-import android.location.Location;
 import androidx.preference.PreferenceManager;
 import com.goebl.simplify.PointExtractor;
 import com.goebl.simplify.Simplify;
-import java.util.ArrayList;
-import java.util.Locale;
+import java.util.Arrays;
 import org.runnerup.R;
 import org.runnerup.common.util.Constants;
 
@@ -40,33 +38,43 @@ public class PathSimplifier {
   Below fields are used as a cache of simplification results, to avoid repeating computation
   when uploading to multiple accounts
   */
-  /** noisy IDs as String */
-  private ArrayList<String> idsStr;
-
-  /** noisy IDs as Integer */
-  private ArrayList<Integer> idsInt;
+  /** noisy IDs */
+  private LocationIdSet noisyIds;
 
   /** activity on which simplification was applied */
   private long actID = -1;
 
+  /*
+  Buffers for the GPS locations of the current segment, reused between segments
+  */
+  private int segmentSize;
+  private long[] segmentIds = new long[1024];
+  private double[] segmentLat = new double[1024];
+  private double[] segmentLon = new double[1024];
+
+  /** IDs of the locations to remove, while simplifying */
+  private long[] noisy;
+
+  private int noisyCount;
+
   /**
-   * Wrapper needed by simplifyPath to use Location as 2D point. Extracts (lat,long) from the
-   * Location class needed by com.goebl.simplify.simplify for (x,y).
+   * Extracts (lat,long) of a segment location by its index in the segment buffers, for
+   * com.goebl.simplify.simplify (x,y).
    *
    * <p>The functions return a multiple of the lat/long values to avoid deltas < 1 between points.
    *
    * <p>https://github.com/hgoebl/simplify-java
    */
-  private static final PointExtractor<Location> locationPointExtractor =
-      new PointExtractor<Location>() {
+  private final PointExtractor<Integer> indexPointExtractor =
+      new PointExtractor<Integer>() {
         @Override
-        public double getX(Location point) {
-          return point.getLatitude() * PathSimplifier.MULTIPLIER;
+        public double getX(Integer index) {
+          return segmentLat[index] * PathSimplifier.MULTIPLIER;
         }
 
         @Override
-        public double getY(Location point) {
-          return point.getLongitude() * PathSimplifier.MULTIPLIER;
+        public double getY(Integer index) {
+          return segmentLon[index] * PathSimplifier.MULTIPLIER;
         }
       };
 
@@ -104,6 +112,11 @@ public class PathSimplifier {
     this.high_quality = high_quality_setting.equals(algorithm);
   }
 
+  /** Tolerance in meters */
+  public double getToleranceMeters() {
+    return toleranceDeg * ONE_DEGREE;
+  }
+
   /**
    * Returns a simplifier for DB saving configured according to preferences, or null if no
    * simplification on save
@@ -135,10 +148,10 @@ public class PathSimplifier {
   }
 
   /**
-   * Returns the IDs (as a list of strings) of the location entries that would simplify the path of
-   * an activity, i.e., reduce the path's resolution. Simplification is applied within each activity
-   * segment. A segment is a set of locations between START/RESUME and PAUSE/END locations. Only GPS
-   * locations are considered for simplification, other locations are preserved.
+   * Returns the IDs of the location entries that would simplify the path of an activity, i.e.,
+   * reduce the path's resolution. Simplification is applied within each activity segment. A
+   * segment is a set of locations between START/RESUME and PAUSE/END locations. Only GPS locations
+   * are considered for simplification, other locations are preserved.
    *
    * <p>We use only 2D because we cannot mix degrees (lat,long) with meters (altitude), regarding
    * the tolerance of simplify. Conversion of lat and long to meters is not necessary to simplify
@@ -149,122 +162,99 @@ public class PathSimplifier {
    * @param db Database.
    * @param activityId ID of the activity to simplify.
    */
-  public ArrayList<String> getNoisyLocationIDsAsStrings(SQLiteDatabase db, long activityId) {
+  public synchronized LocationIdSet getNoisyLocationIDs(SQLiteDatabase db, long activityId) {
 
     // Only perform computation if not yet computed or activity has changed
-    if ((idsStr == null) || (activityId != actID)) {
-
-      // reset cache
-      actID = activityId;
-      idsInt = null;
-
-      // columns to query from the "LOCATION" table in database
-      String[] pColumns = {
-        "_id",
-        Constants.DB.LOCATION.LATITUDE,
-        Constants.DB.LOCATION.LONGITUDE,
-        Constants.DB.LOCATION.TYPE
-      };
-
-      // get table from database
-      Cursor c =
-          db.query(
-              Constants.DB.LOCATION.TABLE,
-              pColumns,
-              Constants.DB.LOCATION.ACTIVITY + " = " + activityId,
-              null,
-              null,
-              null,
-              Constants.DB.LOCATION.TIME);
-
-      // List of a segment activity's locations (lat,long).
-      ArrayList<Location> locations = new ArrayList<>();
-      // IDs of the full activity's locations
-      idsStr = new ArrayList<>();
-      // Location IDs to remove from the activity
-      ArrayList<String> simplifiedIDs = new ArrayList<>();
+    if ((noisyIds != null) && (activityId == actID)) {
+      return noisyIds;
+    }
 
+    // columns to query from the "LOCATION" table in database
+    String[] pColumns = {
+      "_id",
+      Constants.DB.LOCATION.LATITUDE,
+      Constants.DB.LOCATION.LONGITUDE,
+      Constants.DB.LOCATION.TYPE
+    };
+
+    noisy = new long[1024];
+    noisyCount = 0;
+    segmentSize = 0;
+
+    try (Cursor c =
+        db.query(
+            Constants.DB.LOCATION.TABLE,
+            pColumns,
+            Constants.DB.LOCATION.ACTIVITY + " = " + activityId,
+            null,
+            null,
+            null,
+            Constants.DB.LOCATION.TIME)) {
       if (c.moveToFirst()) {
         do {
           int lstate = c.getInt(3);
 
           // Only TYPE_GPS locations are considered for simplification
           if (lstate == Constants.DB.LOCATION.TYPE_GPS) {
-            // save ID of the location entry
-            Location l = new Location(String.format(Locale.US, "%d", c.getInt(0)));
-            // get location's coordinates
-            l.setLatitude(c.getDouble(1));
-            l.setLongitude(c.getDouble(2));
-            idsStr.add(l.getProvider());
-            locations.add(l);
+            addToSegment(c.getLong(0), c.getDouble(1), c.getDouble(2));
 
           } else if ((lstate == Constants.DB.LOCATION.TYPE_PAUSE)
               || (lstate == Constants.DB.LOCATION.TYPE_AUTO_PAUSE)
               || (lstate == Constants.DB.LOCATION.TYPE_END)) {
             // this is the end of a segment
-
-            // simplify current segment
-            Location[] simplifiedLocations = simplifySegment(locations);
-            // store locations to keep
-            for (Location sl : simplifiedLocations) {
-              simplifiedIDs.add(sl.getProvider());
-            }
-
-            // start new segment
-            locations = new ArrayList<>();
+            simplifySegment();
           }
 
         } while (c.moveToNext());
       }
-      c.close();
-
-      // remove the locations to keep in the simplified path
-      idsStr.removeAll(simplifiedIDs);
     }
+    // locations after the last PAUSE/END (activity not properly ended) are simplified too
+    simplifySegment();
 
-    return idsStr;
+    noisyIds = LocationIdSet.of(noisy, noisyCount);
+    noisy = null;
+    actID = activityId;
+    return noisyIds;
   }
 
-  /**
-   * Returns the IDs (list of integers) of the location entries that would simplify the path of an
-   * activity, i.e., reduce the path's resolution.
-   *
-   * @param db Database.
-   * @param activityId ID of the activity to simplify.
-   */
-  public ArrayList<Integer> getNoisyLocationIDs(SQLiteDatabase db, long activityId) {
-
-    // Only perform computation if not yet computed or activity has changed
-    if ((idsInt == null) || (activityId != actID)) {
-
-      // reset cache
-      actID = activityId;
-      idsStr = null;
-
-      getNoisyLocationIDsAsStrings(db, activityId);
-
-      // convert (back) to integers
-      idsInt = new ArrayList<>();
-      for (String str : idsStr) idsInt.add(Integer.parseInt(str));
+  private void addToSegment(long id, double lat, double lon) {
+    if (segmentSize == segmentIds.length) {
+      int n = segmentSize * 2;
+      segmentIds = Arrays.copyOf(segmentIds, n);
+      segmentLat = Arrays.copyOf(segmentLat, n);
+      segmentLon = Arrays.copyOf(segmentLon, n);
     }
-
-    return idsInt;
+    segmentIds[segmentSize] = id;
+    segmentLat[segmentSize] = lat;
+    segmentLon[segmentSize] = lon;
+    segmentSize++;
   }
 
-  /**
-   * Simplifies a segment of an activity
-   *
-   * @param locations a subset of the activity locations that ends with a location of TYPE_PAUSE or
-   *     TYPE_END type
-   * @return the locations of the simplified path segment
-   */
-  private Location[] simplifySegment(ArrayList<Location> locations) {
-
+  /** Simplifies the current segment of an activity, adding the removed locations to noisy */
+  private void simplifySegment() {
+    if (segmentSize == 0) {
+      return;
+    }
+    Integer[] points = new Integer[segmentSize];
+    for (int i = 0; i < segmentSize; i++) {
+      points[i] = i;
+    }
     // create an instance of the simplifier (empty array needed by List.toArray)
-    Location[] sampleArray = new Location[0];
-    Simplify<Location> simplify = new Simplify<>(sampleArray, locationPointExtractor);
-    // removes unnecessary intermediate points (note this does not change lat/long values!)
-    return simplify.simplify(
-        locations.toArray(sampleArray), toleranceDeg * MULTIPLIER, this.high_quality);
+    Simplify<Integer> simplify = new Simplify<>(new Integer[0], indexPointExtractor);
+    // removes unnecessary intermediate points, the result is in segment order
+    Integer[] kept = simplify.simplify(points, toleranceDeg * MULTIPLIER, this.high_quality);
+
+    if (noisy.length < noisyCount + segmentSize) {
+      noisy = Arrays.copyOf(noisy, Math.max(noisy.length * 2, noisyCount + segmentSize));
+    }
+    int k = 0;
+    for (int i = 0; i < segmentSize; i++) {
+      if (k < kept.length && kept[k] == i) {
+        k++;
+      } else {
+        noisy[noisyCount++] = segmentIds[i];
+      }
+    }
+    segmentSize = 0;
   }
 }
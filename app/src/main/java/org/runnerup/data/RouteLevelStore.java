@@ -0,0 +1,120 @@
+package org.runnerup.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import java.util.Arrays;
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.core.util.RouteLevels;
+
+/**
+ * Route levels of an activity, stored in {@link DB.ROUTE_LOD}. Levels are built from the
+ * locations the first time an activity is shown on a map and dropped when the locations change.
+ * Call from a background thread.
+ */
+public final class RouteLevelStore {
+
+  private static final String TAG = "RouteLevelStore";
+
+  private RouteLevelStore() {}
+
+  /** Load the stored levels or build and store them */
+  public static RouteLevels get(SQLiteDatabase db, long activityId) {
+    RouteLevels levels = load(db, activityId);
+    if (levels != null) {
+      return levels;
+    }
+    levels = build(db, activityId);
+    if (!levels.isEmpty()) {
+      save(db, activityId, levels);
+    }
+    return levels;
+  }
+
+  /** Drop the stored levels, they are rebuilt on the next use */
+  public static void invalidate(SQLiteDatabase db, long activityId) {
+    db.delete(
+        DB.ROUTE_LOD.TABLE,
+        DB.ROUTE_LOD.ACTIVITY + " = ?",
+        new String[] {Long.toString(activityId)});
+  }
+
+  private static RouteLevels load(SQLiteDatabase db, long activityId) {
+    String[] columns = {DB.ROUTE_LOD.TOLERANCE, DB.ROUTE_LOD.POINTS};
+    try (Cursor c =
+        db.query(
+            DB.ROUTE_LOD.TABLE,
+            columns,
+            DB.ROUTE_LOD.ACTIVITY + " = ?",
+            new String[] {Long.toString(activityId)},
+            null,
+            null,
+            DB.ROUTE_LOD.LEVEL)) {
+      if (c.getCount() != RouteLevels.TOLERANCES_M.length) {
+        return null;
+      }
+      RouteLevels.Level[] levels = new RouteLevels.Level[c.getCount()];
+      int i = 0;
+      while (c.moveToNext()) {
+        levels[i++] = RouteLevels.Level.decode(c.getDouble(0), c.getBlob(1));
+      }
+      return new RouteLevels(levels);
+    }
+  }
+
+  private static RouteLevels build(SQLiteDatabase db, long activityId) {
+    String[] columns = {DB.LOCATION.LATITUDE, DB.LOCATION.LONGITUDE};
+    double[] lat = new double[1024];
+    double[] lon = new double[1024];
+    int n = 0;
+    try (Cursor c =
+        db.query(
+            DB.LOCATION.TABLE,
+            columns,
+            DB.LOCATION.ACTIVITY
+                + " = ? and "
+                + DB.LOCATION.LATITUDE
+                + " is not null and "
+                + DB.LOCATION.LONGITUDE
+                + " is not null",
+            new String[] {Long.toString(activityId)},
+            null,
+            null,
+            "_id")) {
+      while (c.moveToNext()) {
+        if (n == lat.length) {
+          lat = Arrays.copyOf(lat, n * 2);
+          lon = Arrays.copyOf(lon, n * 2);
+        }
+        lat[n] = c.getDouble(0);
+        lon[n] = c.getDouble(1);
+        n++;
+      }
+    }
+    return RouteLevels.build(lat, lon, n);
+  }
+
+  private static void save(SQLiteDatabase db, long activityId, RouteLevels levels) {
+    db.beginTransaction();
+    try {
+      invalidate(db, activityId);
+      ContentValues values = new ContentValues();
+      for (int i = 0; i < levels.getLevelCount(); i++) {
+        RouteLevels.Level level = levels.getLevel(i);
+        values.clear();
+        values.put(DB.ROUTE_LOD.ACTIVITY, activityId);
+        values.put(DB.ROUTE_LOD.LEVEL, i);
+        values.put(DB.ROUTE_LOD.TOLERANCE, level.tolerance);
+        values.put(DB.ROUTE_LOD.POINTS, level.encode());
+        db.insert(DB.ROUTE_LOD.TABLE, null, values);
+      }
+      db.setTransactionSuccessful();
+    } catch (Exception e) {
+      // Levels are rebuilt next time
+      Log.w(TAG, "Failed to store route levels for " + activityId, e);
+    } finally {
+      db.endTransaction();
+    }
+  }
+}
@@ -0,0 +1,430 @@
+package org.runnerup.sync;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Xml;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.data.ActivityCleaner;
+import org.runnerup.sync.format.ImportedActivity;
+import org.runnerup.sync.format.XmlActivityParser;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Bulk import of GPX and TCX files from a folder or a zip file. Files are parsed on a small worker
+ * pool and handed over a bounded queue to a single writer (the calling thread), which inserts
+ * activity, lap and location rows in batched transactions. Activities that already exist (same
+ * start second and about the same distance) are skipped. Points without a position, such as on a
+ * treadmill, are imported with the last known position. Must not be called on the main thread.
+ */
+public final class ActivityImporter {
+
+  private static final String TAG = "ActivityImporter";
+
+  /** Location rows written per transaction, a transaction is also committed when idle */
+  private static final int BATCH_POINTS = 20000;
+
+  /** Parsed files that may wait for the writer */
+  private static final int QUEUE_SIZE = 4;
+
+  /**
+   * Distance difference for a duplicate, the same recording exported by different tools differs
+   * slightly (lap totals, computed from the points or simplified)
+   */
+  private static final double DUPLICATE_DISTANCE_M = 50;
+
+  private static final double DUPLICATE_DISTANCE_RATIO = 0.02;
+
+  /** Outcome of an import */
+  public static final class Result {
+    public int files;
+    public int imported;
+    public int duplicates;
+    public int failed;
+    public long points;
+    public long elapsedMs;
+
+    public double pointsPerSecond() {
+      return elapsedMs > 0 ? points * 1000.0 / elapsedMs : 0;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ROOT,
+          "%d files: %d imported, %d duplicates, %d failed, %d points in %d ms (%.0f points/s)",
+          files,
+          imported,
+          duplicates,
+          failed,
+          points,
+          elapsedMs,
+          pointsPerSecond());
+    }
+  }
+
+  private interface Source {
+    String getName();
+
+    InputStream open() throws IOException;
+  }
+
+  /** A parsed file, activities is null if the file could not be parsed */
+  private static final class Parsed {
+    final String name;
+    @Nullable final List<ImportedActivity> activities;
+
+    Parsed(String name, @Nullable List<ImportedActivity> activities) {
+      this.name = name;
+      this.activities = activities;
+    }
+  }
+
+  private final SQLiteDatabase db;
+  private final int threads;
+
+  private SQLiteStatement insertLocation;
+  private SQLiteStatement findDuplicate;
+  private int pointsInTransaction = 0;
+
+  public ActivityImporter(SQLiteDatabase db) {
+    this(db, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)));
+  }
+
+  /**
+   * @param threads number of parser threads
+   */
+  public ActivityImporter(SQLiteDatabase db, int threads) {
+    this.db = db;
+    this.threads = threads;
+  }
+
+  /**
+   * Import the .gpx and .tcx files in a folder, or in a zip file
+   *
+   * @param file folder or zip file
+   */
+  public Result importFrom(File file) throws IOException {
+    if (file.isDirectory()) {
+      List<Source> sources = new ArrayList<>();
+      File[] files = file.listFiles();
+      if (files != null) {
+        for (File f : files) {
+          if (f.isFile() && isSupported(f.getName())) {
+            sources.add(fileSource(f));
+          }
+        }
+      }
+      return importSources(sources);
+    }
+    try (ZipFile zip = new ZipFile(file)) {
+      List<Source> sources = new ArrayList<>();
+      for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements(); ) {
+        ZipEntry entry = e.nextElement();
+        if (!entry.isDirectory() && isSupported(entry.getName())) {
+          sources.add(zipSource(zip, entry));
+        }
+      }
+      return importSources(sources);
+    }
+  }
+
+  private static boolean isSupported(String name) {
+    String s = name.toLowerCase(Locale.ROOT);
+    return s.endsWith(".gpx") || s.endsWith(".tcx");
+  }
+
+  private static Source fileSource(File f) {
+    return new Source() {
+      @Override
+      public String getName() {
+        return f.getName();
+      }
+
+      @Override
+      public InputStream open() throws IOException {
+        return new FileInputStream(f);
+      }
+    };
+  }
+
+  private static Source zipSource(ZipFile zip, ZipEntry entry) {
+    return new Source() {
+      @Override
+      public String getName() {
+        return entry.getName();
+      }
+
+      @Override
+      public InputStream open() throws IOException {
+        // ZipFile allows concurrent streams for different entries
+        return zip.getInputStream(entry);
+      }
+    };
+  }
+
+  private Result importSources(List<Source> sources) {
+    Result result = new Result();
+    result.files = sources.size();
+    if (sources.isEmpty()) {
+      return result;
+    }
+    long start = SystemClock.elapsedRealtime();
+    BlockingQueue<Parsed> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    ExecutorService parsers = Executors.newFixedThreadPool(Math.min(threads, sources.size()));
+    for (Source source : sources) {
+      parsers.execute(
+          () -> {
+            Parsed parsed = new Parsed(source.getName(), parse(source));
+            try {
+              queue.put(parsed);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          });
+    }
+    parsers.shutdown();
+
+    insertLocation =
+        db.compileStatement(
+            "insert into "
+                + DB.LOCATION.TABLE
+                + " ("
+                + DB.LOCATION.ACTIVITY
+                + ", "
+                + DB.LOCATION.LAP
+                + ", "
+                + DB.LOCATION.TYPE
+                + ", "
+                + DB.LOCATION.TIME
+                + ", "
+                + DB.LOCATION.ELAPSED
+                + ", "
+                + DB.LOCATION.DISTANCE
+                + ", "
+                + DB.LOCATION.LATITUDE
+                + ", "
+                + DB.LOCATION.LONGITUDE
+                + ", "
+                + DB.LOCATION.ALTITUDE
+                + ", "
+                + DB.LOCATION.HR
+                + ", "
+                + DB.LOCATION.CADENCE
+                + ", "
+                + DB.LOCATION.TEMPERATURE
+                + ") values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    findDuplicate =
+        db.compileStatement(
+            "select count(*) from "
+                + DB.ACTIVITY.TABLE
+                + " where "
+                + DB.ACTIVITY.START_TIME
+                + " between ? and ? and abs(ifnull("
+                + DB.ACTIVITY.DISTANCE
+                + ", 0) - ?) <= ? and "
+                + DB.ACTIVITY.DELETED
+                + " = 0");
+    pointsInTransaction = 0;
+    try {
+      for (int i = 0; i < sources.size(); i++) {
+        Parsed parsed = queue.poll();
+        if (parsed == null) {
+          // Nothing to write, commit what we have while waiting for the parsers
+          commit();
+          parsed = queue.take();
+        }
+        write(parsed, result);
+        if (pointsInTransaction >= BATCH_POINTS) {
+          commit();
+        }
+      }
+    } catch (InterruptedException e) {
+      Log.w(TAG, "Import interrupted");
+      Thread.currentThread().interrupt();
+    } finally {
+      // Releases parsers blocked on the queue if the writer stopped early
+      parsers.shutdownNow();
+      commit();
+      insertLocation.close();
+      findDuplicate.close();
+    }
+
+    result.elapsedMs = SystemClock.elapsedRealtime() - start;
+    Log.i(TAG, result.toString());
+    return result;
+  }
+
+  @Nullable
+  private static List<ImportedActivity> parse(Source source) {
+    try (InputStream in = new BufferedInputStream(source.open())) {
+      XmlPullParser parser = Xml.newPullParser();
+      parser.setInput(in, null);
+      return new XmlActivityParser(parser, source.getName()).parse();
+    } catch (IOException | XmlPullParserException | RuntimeException e) {
+      Log.w(TAG, "Failed to parse " + source.getName() + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  private void commit() {
+    if (db.inTransaction()) {
+      db.setTransactionSuccessful();
+      db.endTransaction();
+    }
+    pointsInTransaction = 0;
+  }
+
+  private void write(Parsed parsed, Result result) {
+    if (parsed.activities == null) {
+      result.failed++;
+      return;
+    }
+    for (ImportedActivity a : parsed.activities) {
+      long fingerprint = a.getFingerprint();
+      double distance = a.getTotalDistance();
+      findDuplicate.bindLong(1, fingerprint - 1);
+      findDuplicate.bindLong(2, fingerprint + 1);
+      findDuplicate.bindDouble(3, distance);
+      findDuplicate.bindDouble(
+          4, Math.max(DUPLICATE_DISTANCE_M, distance * DUPLICATE_DISTANCE_RATIO));
+      if (findDuplicate.simpleQueryForLong() > 0) {
+        result.duplicates++;
+        continue;
+      }
+      if (!db.inTransaction()) {
+        db.beginTransaction();
+      }
+      try {
+        insert(a);
+        result.imported++;
+        result.points += a.size();
+        pointsInTransaction += a.size();
+      } catch (SQLException e) {
+        Log.w(TAG, "Failed to import " + parsed.name + ": " + e.getMessage());
+        result.failed++;
+      }
+    }
+  }
+
+  private long insert(ImportedActivity a) {
+    ContentValues tmp = new ContentValues();
+    tmp.put(DB.ACTIVITY.START_TIME, a.getFingerprint());
+    tmp.put(DB.ACTIVITY.SPORT, a.sport);
+    tmp.put(DB.ACTIVITY.DISTANCE, a.getTotalDistance());
+    if (a.size() > 0) {
+      tmp.put(DB.ACTIVITY.TIME, a.getMovingTime() / 1000);
+    }
+    if (a.name != null && !a.name.isEmpty()) {
+      tmp.put(DB.ACTIVITY.NAME, a.name);
+    }
+    if (a.comment != null && !a.comment.isEmpty()) {
+      tmp.put(DB.ACTIVITY.COMMENT, a.comment);
+    }
+    long id = db.insertOrThrow(DB.ACTIVITY.TABLE, null, tmp);
+    try {
+      insertLaps(id, a);
+      insertLocations(id, a);
+      // Lap and activity summaries (hr, time when not recorded) from the locations
+      new ActivityCleaner().recompute(db, id);
+    } catch (SQLException e) {
+      deleteRows(id);
+      throw e;
+    }
+    return id;
+  }
+
+  private void insertLaps(long id, ImportedActivity a) {
+    ContentValues tmp = new ContentValues();
+    for (int l = 0; l < a.getLapCount(); l++) {
+      tmp.clear();
+      tmp.put(DB.LAP.ACTIVITY, id);
+      tmp.put(DB.LAP.LAP, l);
+      tmp.put(DB.LAP.INTENSITY, a.getLapIntensity(l));
+      if (!Double.isNaN(a.getLapTime(l))) {
+        tmp.put(DB.LAP.TIME, Math.round(a.getLapTime(l)));
+      }
+      if (!Double.isNaN(a.getLapDistance(l))) {
+        tmp.put(DB.LAP.DISTANCE, a.getLapDistance(l));
+      }
+      db.insertOrThrow(DB.LAP.TABLE, null, tmp);
+    }
+  }
+
+  /** Write the points with START/PAUSE/RESUME/END rows, as the tracker does */
+  private void insertLocations(long id, ImportedActivity a) {
+    a.fillMissingPositions();
+    int n = a.size();
+    long elapsed = 0;
+    for (int i = 0; i < n; i++) {
+      if (i > 0 && !a.isResume(i)) {
+        elapsed += a.getTime(i) - a.getTime(i - 1);
+      }
+      if (i == 0) {
+        insertLocation(id, a, i, DB.LOCATION.TYPE_START, elapsed);
+      } else if (a.isResume(i)) {
+        insertLocation(id, a, i - 1, DB.LOCATION.TYPE_PAUSE, elapsed);
+        insertLocation(id, a, i, DB.LOCATION.TYPE_RESUME, elapsed);
+      }
+      insertLocation(id, a, i, DB.LOCATION.TYPE_GPS, elapsed);
+    }
+    if (n > 0) {
+      insertLocation(id, a, n - 1, DB.LOCATION.TYPE_END, elapsed);
+    }
+  }
+
+  private void insertLocation(long id, ImportedActivity a, int i, int type, long elapsed) {
+    SQLiteStatement s = insertLocation;
+    s.clearBindings();
+    s.bindLong(1, id);
+    s.bindLong(2, a.getLap(i));
+    s.bindLong(3, type);
+    s.bindLong(4, a.getTime(i));
+    s.bindLong(5, elapsed);
+    s.bindDouble(6, a.getDistance(i));
+    s.bindDouble(7, a.getLatitude(i));
+    s.bindDouble(8, a.getLongitude(i));
+    if (!Double.isNaN(a.getAltitude(i))) {
+      s.bindDouble(9, a.getAltitude(i));
+    }
+    if (a.getHr(i) >= 0) {
+      s.bindLong(10, a.getHr(i));
+    }
+    if (!Float.isNaN(a.getCadence(i))) {
+      s.bindDouble(11, a.getCadence(i));
+    }
+    if (!Float.isNaN(a.getTemperature(i))) {
+      s.bindDouble(12, a.getTemperature(i));
+    }
+    s.executeInsert();
+  }
+
+  private void deleteRows(long id) {
+    String[] args = {Long.toString(id)};
+    db.delete(DB.LOCATION.TABLE, DB.LOCATION.ACTIVITY + " = ?", args);
+    db.delete(DB.LAP.TABLE, DB.LAP.ACTIVITY + " = ?", args);
+    db.delete(DB.ACTIVITY.TABLE, "_id = ?", args);
+  }
+}
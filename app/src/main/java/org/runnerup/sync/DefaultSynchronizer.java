@@ -25,6 +25,7 @@ import android.util.Pair;
 import androidx.annotation.ColorRes;
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
 import androidx.appcompat.app.AppCompatActivity;
 import java.io.BufferedReader;
@@ -129,6 +130,16 @@ public abstract class DefaultSynchronizer implements Synchronizer {
     return s;
   }
 
+  @Nullable
+  public byte[] prepareUpload(SQLiteDatabase db, long mID) {
+    return null;
+  }
+
+  @NonNull
+  public Status upload(SQLiteDatabase db, long mID, @Nullable byte[] payload) {
+    return upload(db, mID);
+  }
+
   @NonNull
   public Status getExternalId(SQLiteDatabase db, Status uploadStatus) {
     return Status.ERROR;
@@ -27,6 +27,7 @@ import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.StringWriter;
@@ -40,10 +41,12 @@ import org.runnerup.common.util.Constants;
 import org.runnerup.common.util.Constants.DB;
 import org.runnerup.data.PathSimplifier;
 import org.runnerup.sync.format.ExportOptions;
+import org.runnerup.sync.format.FIT;
 import org.runnerup.sync.format.GPX;
 import org.runnerup.sync.format.TCX;
 import org.runnerup.sync.oauth2client.OAuth2Activity;
 import org.runnerup.sync.oauth2client.OAuth2Server;
+import org.runnerup.sync.util.HttpTransport;
 import org.runnerup.sync.util.SyncHelper;
 import org.runnerup.core.util.FileNameHelper;
 import org.runnerup.core.workout.FileFormats;
@@ -231,11 +234,16 @@ public class DropboxSynchronizer extends DefaultSynchronizer implements OAuth2Se
   // upload a single file
   private Status uploadFile(StringWriter writer, final long mID, String fileBase, String fileExt)
       throws IOException, JSONException {
+    return uploadFile(writer.getBuffer().toString().getBytes(), mID, fileBase, fileExt);
+  }
+
+  private Status uploadFile(byte[] data, final long mID, String fileBase, String fileExt)
+      throws IOException, JSONException {
 
     Status s;
 
     // Upload to default directory /Apps/RunnerUp
-    HttpURLConnection conn = (HttpURLConnection) new URL(UPLOAD_URL).openConnection();
+    HttpURLConnection conn = HttpTransport.open(getName(), new URL(UPLOAD_URL));
     conn.setDoOutput(true);
     conn.setRequestMethod(RequestMethod.POST.name());
     conn.addRequestProperty("Content-Type", "application/octet-stream");
@@ -251,7 +259,7 @@ public class DropboxSynchronizer extends DefaultSynchronizer implements OAuth2Se
     }
     conn.addRequestProperty("Dropbox-API-Arg", parameters.toString());
     OutputStream out = new BufferedOutputStream(conn.getOutputStream());
-    out.write(writer.getBuffer().toString().getBytes());
+    out.write(data);
     out.flush();
     out.close();
 
@@ -334,6 +342,12 @@ public class DropboxSynchronizer extends DefaultSynchronizer implements OAuth2Se
         gpx.export(mID, writer);
         s = uploadFile(writer, mID, fileBase, FileFormats.GPX.getValue());
       }
+      if (s == Status.OK && mFormat.contains(FileFormats.FIT)) {
+        FIT fit = new FIT(db, ExportOptions.getDefault(), simplifier);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fit.export(mID, out);
+        s = uploadFile(out.toByteArray(), mID, fileBase, FileFormats.FIT.getValue());
+      }
 
     } catch (Exception e) {
       Log.e(getName(), "Error uploading, exception: ", e);
@@ -41,6 +41,7 @@ import org.runnerup.sync.format.GPX;
 import org.runnerup.core.util.FileNameHelper;
 import org.runnerup.core.workout.FileFormats;
 import org.runnerup.core.workout.Sport;
+import org.runnerup.sync.util.HttpTransport;
 
 public class EndurainSynchronizer extends DefaultSynchronizer {
 
@@ -194,7 +195,7 @@ public class EndurainSynchronizer extends DefaultSynchronizer {
   }
 
   private OkHttpClient getAuthClient() {
-    return new OkHttpClient()
+    return HttpTransport.getClient(getName())
         .newBuilder()
         .addInterceptor(
             chain ->
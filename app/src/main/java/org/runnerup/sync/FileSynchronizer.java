@@ -48,6 +48,7 @@ import org.runnerup.common.util.Constants.DB;
 import org.runnerup.core.content.ActivityProvider;
 import org.runnerup.data.PathSimplifier;
 import org.runnerup.sync.format.ExportOptions;
+import org.runnerup.sync.format.FIT;
 import org.runnerup.sync.format.GPX;
 import org.runnerup.sync.format.TCX;
 import org.runnerup.core.util.FileNameHelper;
@@ -234,6 +235,17 @@ public class FileSynchronizer extends DefaultSynchronizer {
           gpx.export(mID, new OutputStreamWriter(out));
         }
       }
+      if (mFormat.contains(FileFormats.FIT)) {
+        OutputStream out =
+            getOutputStream(fileBase + FileFormats.FIT.getValue(), ActivityProvider.FIT_MIME);
+        if (out == null) {
+          s = Status.ERROR;
+        } else {
+          FIT fit = new FIT(db, ExportOptions.getDefault(), simplifier);
+          fit.export(mID, out);
+          out.close();
+        }
+      }
     } catch (IOException e) {
       s = Status.ERROR;
     }
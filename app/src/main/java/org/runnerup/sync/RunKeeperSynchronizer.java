@@ -48,7 +48,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.runnerup.R;
@@ -59,8 +58,10 @@ import org.runnerup.data.entities.ActivityEntity;
 import org.runnerup.sync.format.RunKeeper;
 import org.runnerup.sync.oauth2client.OAuth2Activity;
 import org.runnerup.sync.oauth2client.OAuth2Server;
+import org.runnerup.sync.util.HttpTransport;
 import org.runnerup.sync.util.SyncHelper;
 import org.runnerup.core.util.Formatter;
+import org.runnerup.core.util.JsonReader;
 import org.runnerup.core.util.SyncActivityItem;
 import org.runnerup.core.workout.Sport;
 
@@ -281,12 +282,12 @@ public class RunKeeperSynchronizer extends DefaultSynchronizer
     do {
       try {
         URL newurl = new URL(REST_URL + "/user");
-        conn = (HttpURLConnection) newurl.openConnection();
+        conn = HttpTransport.open(getName(), newurl);
         conn.setRequestProperty("Authorization", "Bearer " + access_token);
         conn.addRequestProperty("Content-Type", "application/vnd.com.runkeeper.User+json");
         InputStream in = new BufferedInputStream(conn.getInputStream());
+        // parse() consumes and closes the stream, the connection is kept alive
         JSONObject obj = SyncHelper.parse(in);
-        conn.disconnect();
         conn = null;
         uri = obj.getString("fitness_activities");
       } catch (MalformedURLException | JSONException e) {
@@ -331,24 +332,23 @@ public class RunKeeperSynchronizer extends DefaultSynchronizer
     while (requestUrl != null) {
       try {
         URL nextUrl = new URL(requestUrl);
-        HttpURLConnection conn = (HttpURLConnection) nextUrl.openConnection();
+        HttpURLConnection conn = HttpTransport.open(getName(), nextUrl);
         conn.setDoInput(true);
         conn.setRequestMethod(RequestMethod.GET.name());
         conn.addRequestProperty("Authorization", "Bearer " + access_token);
         conn.addRequestProperty(
             "Content-Type", "application/vnd.com.runkeeper.FitnessActivityFeed+json");
 
-        InputStream input = new BufferedInputStream(conn.getInputStream());
         if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
-          JSONObject resp = SyncHelper.parse(input);
-          requestUrl = parseForNext(resp, list);
+          try (JsonReader reader = SyncHelper.reader(conn.getInputStream())) {
+            requestUrl = parseForNext(reader, list);
+          }
           s = Status.OK;
         } else {
+          HttpTransport.release(conn);
           s = Status.ERROR;
         }
-        input.close();
-        conn.disconnect();
-      } catch (IOException | JSONException e) {
+      } catch (IOException | IllegalStateException | NumberFormatException e) {
         Log.e(Constants.LOG, e.getMessage());
         requestUrl = null;
         s = Status.ERROR;
@@ -357,42 +357,72 @@ public class RunKeeperSynchronizer extends DefaultSynchronizer
     return s;
   }
 
-  private String parseForNext(JSONObject resp, List<SyncActivityItem> items) throws JSONException {
-    if (resp.has("items")) {
-      JSONArray activities = resp.getJSONArray("items");
-      for (int i = 0; i < activities.length(); i++) {
-        JSONObject item = activities.getJSONObject(i);
-        SyncActivityItem ai = new SyncActivityItem();
-
-        String startTime = item.getString("start_time");
-        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss", Locale.US);
-        try {
-          ai.setStartTime(TimeUnit.MILLISECONDS.toSeconds(format.parse(startTime).getTime()));
-        } catch (ParseException e) {
-          Log.e(Constants.LOG, e.getMessage());
-          return null;
-        }
-        @SuppressWarnings("WrapperTypeMayBePrimitive")
-        Float time = Float.parseFloat(item.getString("duration"));
-        ai.setDuration(time.longValue());
-        BigDecimal dist = BigDecimal.valueOf(Float.parseFloat(item.getString("total_distance")));
-        dist = dist.setScale(2, RoundingMode.UP);
-        ai.setDistance(dist.doubleValue());
-        ai.setURI(REST_URL + item.getString("uri"));
-        ai.setId((long) items.size());
-        String sport = item.getString("type");
-        if (runkeeper2sportMap.containsKey(sport)) {
-          ai.setSport(runkeeper2sportMap.get(sport).getDbValue());
-        } else {
-          ai.setSport(Sport.OTHER.getDbValue());
+  private String parseForNext(JsonReader reader, List<SyncActivityItem> items) throws IOException {
+    String next = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (name.equals("items")) {
+        reader.beginArray();
+        while (reader.hasNext()) {
+          SyncActivityItem ai = parseItem(reader, items.size());
+          if (ai == null) {
+            return null;
+          }
+          items.add(ai);
         }
-        items.add(ai);
+        reader.endArray();
+      } else if (name.equals("next")) {
+        next = REST_URL + reader.nextString();
+      } else {
+        reader.skipValue();
       }
     }
-    if (resp.has("next")) {
-      return REST_URL + resp.getString("next");
+    reader.endObject();
+    return next;
+  }
+
+  private SyncActivityItem parseItem(JsonReader reader, long id) throws IOException {
+    SyncActivityItem ai = new SyncActivityItem();
+    ai.setSport(Sport.OTHER.getDbValue());
+    SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss", Locale.US);
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.nextName()) {
+        case "start_time":
+          try {
+            ai.setStartTime(
+                TimeUnit.MILLISECONDS.toSeconds(format.parse(reader.nextString()).getTime()));
+          } catch (ParseException e) {
+            Log.e(Constants.LOG, e.getMessage());
+            return null;
+          }
+          break;
+        case "duration":
+          ai.setDuration((long) reader.nextDouble());
+          break;
+        case "total_distance":
+          BigDecimal dist = BigDecimal.valueOf((float) reader.nextDouble());
+          dist = dist.setScale(2, RoundingMode.UP);
+          ai.setDistance(dist.doubleValue());
+          break;
+        case "uri":
+          ai.setURI(REST_URL + reader.nextString());
+          break;
+        case "type":
+          Sport sport = runkeeper2sportMap.get(reader.nextString());
+          if (sport != null) {
+            ai.setSport(sport.getDbValue());
+          }
+          break;
+        default:
+          reader.skipValue();
+          break;
+      }
     }
-    return null;
+    reader.endObject();
+    ai.setId(id);
+    return ai;
   }
 
   @NonNull
@@ -412,7 +442,7 @@ public class RunKeeperSynchronizer extends DefaultSynchronizer
     try {
       URL newurl = new URL(REST_URL + fitnessActivitiesUrl);
       // Log.e(Constants.LOG, "url: " + newurl.toString());
-      conn = (HttpURLConnection) newurl.openConnection();
+      conn = HttpTransport.open(getName(), newurl);
       conn.setDoOutput(true);
       conn.setRequestMethod(RequestMethod.POST.name());
       conn.addRequestProperty("Authorization", "Bearer " + access_token);
@@ -426,7 +456,7 @@ public class RunKeeperSynchronizer extends DefaultSynchronizer
       int responseCode = conn.getResponseCode();
       String amsg = conn.getResponseMessage();
       String externalId = noNullStr(conn.getHeaderField("Location"));
-      conn.disconnect();
+      HttpTransport.release(conn);
       conn = null;
 
       if (responseCode >= HttpURLConnection.HTTP_OK
@@ -470,14 +500,13 @@ public class RunKeeperSynchronizer extends DefaultSynchronizer
                 () -> {
                   try {
                     URL newurl = new URL(REST_URL + "/profile");
-                    HttpURLConnection conn = (HttpURLConnection) newurl.openConnection();
+                    HttpURLConnection conn = HttpTransport.open(getName(), newurl);
                     conn.setRequestProperty("Authorization", "Bearer " + access_token);
                     conn.addRequestProperty(
                         "Content-Type", "application/vnd.com.runkeeper.Profile+json");
 
                     InputStream in = new BufferedInputStream(conn.getInputStream());
                     JSONObject obj = SyncHelper.parse(in);
-                    conn.disconnect();
 
                     String uri = obj.getString("profile");
                     return uri.substring(uri.lastIndexOf("/") + 1);
@@ -524,19 +553,21 @@ public class RunKeeperSynchronizer extends DefaultSynchronizer
     HttpURLConnection conn;
     try {
       URL activityUrl = new URL(item.getURI());
-      conn = (HttpURLConnection) activityUrl.openConnection();
+      conn = HttpTransport.open(getName(), activityUrl);
       conn.setDoInput(true);
       conn.setRequestMethod(RequestMethod.GET.name());
       conn.addRequestProperty("Authorization", "Bearer " + access_token);
       conn.addRequestProperty("Content-type", "application/vnd.com.runkeeper.FitnessActivity+json");
 
       if (conn.getResponseCode() == HttpURLConnection.HTTP_OK) {
-        BufferedInputStream input = new BufferedInputStream(conn.getInputStream());
-        JSONObject resp = SyncHelper.parse(input);
-        activity = RunKeeper.parseToActivity(resp, getLapLength());
+        try (JsonReader reader = SyncHelper.reader(conn.getInputStream())) {
+          activity = RunKeeper.parseToActivity(reader, getLapLength());
+        }
+      } else {
+        HttpTransport.release(conn);
       }
 
-    } catch (IOException | JSONException e) {
+    } catch (IOException | IllegalStateException | NumberFormatException e) {
       Log.e(Constants.LOG, e.getMessage());
       return activity;
     }
@@ -26,7 +26,9 @@ import android.util.Log;
 import androidx.annotation.ColorRes;
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.net.HttpURLConnection;
@@ -37,12 +39,15 @@ import org.json.JSONObject;
 import org.runnerup.BuildConfig;
 import org.runnerup.R;
 import org.runnerup.common.util.Constants.DB;
+import org.runnerup.core.workout.FileFormats;
 import org.runnerup.data.PathSimplifier;
 import org.runnerup.sync.format.ExportOptions;
+import org.runnerup.sync.format.FIT;
 import org.runnerup.sync.format.TCX;
 import org.runnerup.sync.oauth2client.OAuth2Activity;
 import org.runnerup.sync.oauth2client.OAuth2Server;
 import org.runnerup.sync.util.FormValues;
+import org.runnerup.sync.util.HttpTransport;
 import org.runnerup.sync.util.Part;
 import org.runnerup.sync.util.StringWritable;
 import org.runnerup.sync.util.SyncHelper;
@@ -61,6 +66,8 @@ public class RunalyzeSynchronizer extends DefaultSynchronizer implements OAuth2S
   private static final String REDIRECT_URI = "http://localhost:8080/runnerup/runalyze";
 
   private long id = 0;
+  // Upload as FIT instead of TCX, selected per account
+  private boolean uploadFit = false;
   private String access_token = null;
   private String refresh_token = null;
   private long access_expire = -1;
@@ -146,6 +153,7 @@ public class RunalyzeSynchronizer extends DefaultSynchronizer implements OAuth2S
       }
     }
     id = config.getAsLong("_id");
+    uploadFit = new FileFormats(config.getAsString(DB.ACCOUNT.FORMAT)).contains(FileFormats.FIT);
   }
 
   @NonNull
@@ -246,7 +254,7 @@ public class RunalyzeSynchronizer extends DefaultSynchronizer implements OAuth2S
       fv.put("refresh_token", refresh_token);
 
       URL url = new URL(getTokenUrl());
-      HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+      HttpURLConnection conn = HttpTransport.open(getName(), url);
       conn.setDoOutput(true);
       conn.setRequestMethod(RequestMethod.POST.name());
       conn.addRequestProperty("Content-Type", "application/x-www-form-urlencoded");
@@ -298,26 +306,58 @@ public class RunalyzeSynchronizer extends DefaultSynchronizer implements OAuth2S
     return desc;
   }
 
+  @Nullable
+  @Override
+  public byte[] prepareUpload(SQLiteDatabase db, final long mID) {
+    try {
+      return uploadFit ? exportFit(db, mID) : exportTcx(db, mID);
+    } catch (IOException e) {
+      Log.e(getName(), "Failed to export activity " + mID, e);
+      return null;
+    }
+  }
+
+  private byte[] exportTcx(SQLiteDatabase db, final long mID) throws IOException {
+    TCX tcx = new TCX(db, ExportOptions.getDefault(), simplifier);
+    StringWriter writer = new StringWriter();
+    tcx.export(mID, writer);
+    return writer.toString().getBytes();
+  }
+
+  private byte[] exportFit(SQLiteDatabase db, final long mID) throws IOException {
+    FIT fit = new FIT(db, ExportOptions.getDefault(), simplifier);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    fit.export(mID, out);
+    return out.toByteArray();
+  }
+
   @NonNull
   @Override
   public Status upload(SQLiteDatabase db, final long mID) {
+    return upload(db, mID, null);
+  }
+
+  @NonNull
+  @Override
+  public Status upload(SQLiteDatabase db, final long mID, @Nullable byte[] payload) {
     Status s = connect();
     if (s != Status.OK) {
       return s;
     }
 
     String desc = getDesc(db, mID);
-    TCX tcx = new TCX(db, ExportOptions.getDefault(), simplifier);
     try {
-      StringWriter writer = new StringWriter();
-      tcx.export(mID, writer);
-      HttpURLConnection conn = (HttpURLConnection) new URL(UPLOAD_URL).openConnection();
+      if (payload == null) {
+        payload = uploadFit ? exportFit(db, mID) : exportTcx(db, mID);
+      }
+      HttpURLConnection conn = HttpTransport.open(getName(), new URL(UPLOAD_URL));
       conn.setDoOutput(true);
       conn.setRequestMethod(RequestMethod.POST.name());
       conn.setRequestProperty("Authorization", "Bearer " + access_token);
 
-      Part<StringWritable> filePart = new Part<>("file", new StringWritable(writer.toString()));
-      filePart.setFilename(String.format(Locale.getDefault(), "RunnerUp_%04d.tcx", mID));
+      Part<StringWritable> filePart = new Part<>("file", new StringWritable(payload));
+      filePart.setFilename(
+          String.format(Locale.getDefault(), "RunnerUp_%04d.%s", mID, uploadFit ? "fit" : "tcx"));
       filePart.setContentType("application/octet-stream");
       Part<?>[] parts = {filePart, null};
       if (!TextUtils.isEmpty(desc)) {
@@ -377,6 +417,6 @@ public class RunalyzeSynchronizer extends DefaultSynchronizer implements OAuth2S
 
   @Override
   public boolean checkSupport(Synchronizer.Feature f) {
-    return f == Feature.UPLOAD;
+    return f == Feature.UPLOAD || f == Feature.UPLOAD_FORMAT;
   }
 }
@@ -17,23 +17,17 @@
 
 package org.runnerup.sync;
 
-import android.app.IntentService;
 import android.content.ContentValues;
 import android.content.Context;
-import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.Resources;
 import android.location.Location;
-import android.os.Build;
-import android.util.Log;
 import androidx.annotation.ColorRes;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.preference.PreferenceManager;
-import java.io.BufferedOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.Executors;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.runnerup.BuildConfig;
@@ -41,14 +35,20 @@ import org.runnerup.R;
 import org.runnerup.common.util.Constants.DB;
 import org.runnerup.tracking.WorkoutObserver;
 import org.runnerup.core.util.Formatter;
+import org.runnerup.core.util.NetworkUtils;
 import org.runnerup.core.workout.Scope;
 import org.runnerup.core.workout.WorkoutInfo;
+import org.runnerup.sync.util.LiveUplink;
 
 public class RunnerUpLiveSynchronizer extends DefaultSynchronizer implements WorkoutObserver {
 
   public static final String NAME = "RunnerUp LIVE";
   private static final String PUBLIC_URL = "https://weide.devsparkles.se/Demo/Map";
   private static final String POST_URL = "https://weide.devsparkles.se/api/Resource/";
+  // Positions in between are replaced by the newest
+  private static final long FLUSH_INTERVAL_MS = 5000;
+  private static final int QUEUE_CAPACITY = 64;
+  private static LiveUplink lastUplink = null;
   private final Context context;
 
   private long id = 0;
@@ -56,7 +56,7 @@ public class RunnerUpLiveSynchronizer extends DefaultSynchronizer implements Wor
   private String password = null;
   private final String postUrl;
   private final Formatter formatter;
-  private long mTimeLastLog;
+  private LiveUplink uplink = null;
 
   RunnerUpLiveSynchronizer(Context context) {
     this.context = context;
@@ -170,119 +170,60 @@ public class RunnerUpLiveSynchronizer extends DefaultSynchronizer implements Wor
 
   @Override
   public void workoutEvent(WorkoutInfo workoutInfo, int type) {
-
-    if (type == DB.LOCATION.TYPE_GPS) {
-      double mMinLiveLogDelayMillis = 5000;
-      if (System.currentTimeMillis() - mTimeLastLog < mMinLiveLogDelayMillis) {
-        return;
-      }
+    if (uplink == null) {
+      uplink =
+          new LiveUplink(
+              postUrl,
+              QUEUE_CAPACITY,
+              FLUSH_INTERVAL_MS,
+              () -> NetworkUtils.isNetworkAvailable(context),
+              Executors.newSingleThreadScheduledExecutor(),
+              new Random());
+      uplink.start();
+      lastUplink = uplink;
     }
 
-    mTimeLastLog = System.currentTimeMillis();
     int externalType = translateType(type);
     long elapsedDistanceMeter = Math.round(workoutInfo.getDistance(Scope.ACTIVITY));
     long elapsedTimeMillis = Math.round(workoutInfo.getTime(Scope.ACTIVITY));
 
     Location location = workoutInfo.getLastKnownLocation();
 
-    Intent msgIntent =
-        new Intent(context, LiveService.class)
-            .putExtra(LiveService.PARAM_IN_LAT, location.getLatitude())
-            .putExtra(LiveService.PARAM_IN_LONG, location.getLongitude())
-            .putExtra(LiveService.PARAM_IN_ALTITUDE, location.getAltitude())
-            .putExtra(LiveService.PARAM_IN_TYPE, externalType)
-            .putExtra(
-                LiveService.PARAM_IN_ELAPSED_DISTANCE,
-                formatter.formatDistance(Formatter.Format.TXT_LONG, elapsedDistanceMeter))
-            .putExtra(
-                LiveService.PARAM_IN_ELAPSED_TIME,
-                formatter.formatElapsedTime(
-                    Formatter.Format.TXT_LONG, Math.round(elapsedTimeMillis / 1000.0)))
-            .putExtra(
-                LiveService.PARAM_IN_PACE,
-                formatter.formatVelocityByPreferredUnit(
-                    Formatter.Format.TXT_SHORT,
-                    elapsedTimeMillis == 0 ? 0 : elapsedDistanceMeter * 1000.0 / elapsedTimeMillis))
-            .putExtra(LiveService.PARAM_IN_USERNAME, username)
-            .putExtra(LiveService.PARAM_IN_PASSWORD, password)
-            .putExtra(LiveService.PARAM_IN_SERVERADRESS, postUrl);
-    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-      context.startForegroundService(msgIntent);
-    } else {
-      context.startService(msgIntent);
+    try {
+      JSONObject data = new JSONObject();
+      data.put("userName", username);
+      data.put("password", password);
+      data.put("lat", location.getLatitude());
+      data.put("long", location.getLongitude());
+      data.put("altitude", location.getAltitude());
+      data.put("runningEventType", externalType);
+      data.put(
+          "TotalDistance",
+          formatter.formatDistance(Formatter.Format.TXT_LONG, elapsedDistanceMeter));
+      data.put(
+          "TotalTime",
+          formatter.formatElapsedTime(
+              Formatter.Format.TXT_LONG, Math.round(elapsedTimeMillis / 1000.0)));
+      data.put(
+          "Pace",
+          formatter.formatVelocityByPreferredUnit(
+              Formatter.Format.TXT_SHORT,
+              elapsedTimeMillis == 0 ? 0 : elapsedDistanceMeter * 1000.0 / elapsedTimeMillis));
+      uplink.offer(data.toString(), type == DB.LOCATION.TYPE_GPS);
+    } catch (JSONException e) {
+      e.printStackTrace();
     }
-  }
-
-  public static class LiveService extends IntentService {
-
-    public static final String PARAM_IN_ELAPSED_DISTANCE = "dist";
-    public static final String PARAM_IN_ELAPSED_TIME = "time";
-    public static final String PARAM_IN_PACE = "pace";
-    public static final String PARAM_IN_USERNAME = "username";
-    public static final String PARAM_IN_PASSWORD = "password";
-    public static final String PARAM_IN_SERVERADRESS = "serveradress";
-    public static final String PARAM_IN_LAT = "lat";
-    public static final String PARAM_IN_LONG = "long";
-    public static final String PARAM_IN_ALTITUDE = "altitude";
-    public static final String PARAM_IN_TYPE = "type";
 
-    public LiveService() {
-      super("LiveService");
+    if (type == DB.LOCATION.TYPE_END || type == DB.LOCATION.TYPE_DISCARD) {
+      uplink.stop();
+      uplink = null;
     }
+  }
 
-    @Override
-    protected void onHandleIntent(Intent intent) {
-
-      String mElapsedDistance = intent.getStringExtra(PARAM_IN_ELAPSED_DISTANCE);
-      String mElapsedTime = intent.getStringExtra(PARAM_IN_ELAPSED_TIME);
-      String pace = intent.getStringExtra(PARAM_IN_PACE);
-      String username = intent.getStringExtra(PARAM_IN_USERNAME);
-      String password = intent.getStringExtra(PARAM_IN_PASSWORD);
-      double lat = intent.getDoubleExtra(PARAM_IN_LAT, 0);
-      double lon = intent.getDoubleExtra(PARAM_IN_LONG, 0);
-      double alt = intent.getDoubleExtra(PARAM_IN_ALTITUDE, 0);
-      int type = intent.getIntExtra(PARAM_IN_TYPE, 0);
-      String serverAdress = intent.getStringExtra(PARAM_IN_SERVERADRESS);
-
-      URL url;
-      HttpURLConnection connect = null;
-      try {
-        url = new URL(serverAdress);
-        connect = (HttpURLConnection) url.openConnection();
-
-        connect.setDoOutput(true);
-        connect.addRequestProperty("Content-Type", "application/json; charset=UTF-8");
-        connect.setRequestMethod(RequestMethod.POST.name());
-
-        JSONObject data = new JSONObject();
-
-        data.put("userName", username);
-        data.put("password", password);
-        data.put("lat", lat);
-        data.put("long", lon);
-        data.put("altitude", alt);
-        data.put("runningEventType", type);
-        data.put("TotalDistance", mElapsedDistance);
-        data.put("TotalTime", mElapsedTime);
-        data.put("Pace", pace);
-        final OutputStream out = new BufferedOutputStream(connect.getOutputStream());
-        out.write(data.toString().getBytes());
-        out.flush();
-        out.close();
-
-        final int code = connect.getResponseCode();
-        if (code != HttpURLConnection.HTTP_OK) {
-          // Probably too verbose at errors
-          Log.v(getClass().getSimpleName(), "Failed to push data: " + code);
-        }
-      } catch (IOException | JSONException e) {
-        e.printStackTrace();
-      } finally {
-        if (connect != null) {
-          connect.disconnect();
-        }
-      }
-    }
+  /** The uplink of the current or last activity, null if none this session */
+  @Nullable
+  public static LiveUplink getLastUplink() {
+    return lastUplink;
   }
 
   @Override
@@ -42,6 +42,7 @@ import org.runnerup.sync.format.ExportOptions;
 import org.runnerup.sync.format.TCX;
 import org.runnerup.sync.oauth2client.OAuth2Activity;
 import org.runnerup.sync.oauth2client.OAuth2Server;
+import org.runnerup.sync.util.HttpTransport;
 import org.runnerup.sync.util.SyncHelper;
 
 public class RunningAHEADSynchronizer extends DefaultSynchronizer implements OAuth2Server {
@@ -222,7 +223,7 @@ public class RunningAHEADSynchronizer extends DefaultSynchronizer implements OAu
     try {
       StringWriter writer = new StringWriter();
       tcx.export(mID, writer);
-      conn = (HttpURLConnection) new URL(URL).openConnection();
+      conn = HttpTransport.open(getName(), new URL(URL));
       conn.setDoOutput(true);
       conn.setRequestMethod(RequestMethod.POST.name());
       conn.addRequestProperty("Content-Encoding", "gzip");
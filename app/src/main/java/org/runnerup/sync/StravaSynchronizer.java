@@ -26,6 +26,7 @@ import android.util.Log;
 import androidx.annotation.ColorRes;
 import androidx.annotation.DrawableRes;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -41,13 +42,16 @@ import org.runnerup.R;
 import org.runnerup.common.util.Constants.DB;
 import org.runnerup.data.PathSimplifier;
 import org.runnerup.sync.format.ExportOptions;
+import org.runnerup.sync.format.FIT;
 import org.runnerup.sync.format.TCX;
 import org.runnerup.sync.oauth2client.OAuth2Activity;
 import org.runnerup.sync.oauth2client.OAuth2Server;
 import org.runnerup.sync.util.FormValues;
+import org.runnerup.sync.util.HttpTransport;
 import org.runnerup.sync.util.Part;
 import org.runnerup.sync.util.StringWritable;
 import org.runnerup.sync.util.SyncHelper;
+import org.runnerup.core.workout.FileFormats;
 import org.runnerup.core.workout.Sport;
 
 public class StravaSynchronizer extends DefaultSynchronizer implements OAuth2Server {
@@ -69,6 +73,8 @@ public class StravaSynchronizer extends DefaultSynchronizer implements OAuth2Ser
   private static final String UPLOAD_URL = PUBLIC_URL + "/api/v3/uploads";
 
   private long id = 0;
+  // Upload as FIT instead of TCX, selected per account
+  private boolean uploadFit = false;
   private String access_token = null;
   private String refresh_token = null;
   private long access_expire = -1;
@@ -167,6 +173,7 @@ public class StravaSynchronizer extends DefaultSynchronizer implements OAuth2Ser
       }
     }
     id = config.getAsLong("_id");
+    uploadFit = new FileFormats(config.getAsString(DB.ACCOUNT.FORMAT)).contains(FileFormats.FIT);
   }
 
   @NonNull
@@ -267,7 +274,7 @@ public class StravaSynchronizer extends DefaultSynchronizer implements OAuth2Ser
       fv.put("refresh_token", refresh_token);
 
       URL url = new URL(getTokenUrl());
-      HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+      HttpURLConnection conn = HttpTransport.open(getName(), url);
       conn.setDoOutput(true);
       conn.setRequestMethod(RequestMethod.POST.name());
       conn.addRequestProperty("Content-Type", "application/x-www-form-urlencoded");
@@ -342,6 +349,17 @@ public class StravaSynchronizer extends DefaultSynchronizer implements OAuth2Ser
     return dbInfo;
   }
 
+  @Nullable
+  @Override
+  public byte[] prepareUpload(SQLiteDatabase db, final long mID) {
+    try {
+      return uploadFit ? exportFitGz(db, mID) : exportTcxGz(db, mID);
+    } catch (IOException e) {
+      Log.e(getName(), "Failed to export activity " + mID, e);
+      return null;
+    }
+  }
+
   private static byte[] gzip(String string) throws IOException {
     ByteArrayOutputStream os = new ByteArrayOutputStream(string.length());
     GZIPOutputStream gos = new GZIPOutputStream(os);
@@ -352,9 +370,35 @@ public class StravaSynchronizer extends DefaultSynchronizer implements OAuth2Ser
     return compressed;
   }
 
+  private byte[] exportTcxGz(SQLiteDatabase db, final long mID) throws IOException {
+    var options = ExportOptions.builder();
+    options.isStrava = true;
+    TCX tcx = new TCX(db, options.build(), simplifier);
+    StringWriter writer = new StringWriter();
+    tcx.export(mID, writer);
+    return gzip(writer.toString());
+  }
+
+  private byte[] exportFitGz(SQLiteDatabase db, final long mID) throws IOException {
+    var options = ExportOptions.builder();
+    options.isStrava = true;
+    FIT fit = new FIT(db, options.build(), simplifier);
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    GZIPOutputStream gos = new GZIPOutputStream(os);
+    fit.export(mID, gos);
+    gos.close();
+    return os.toByteArray();
+  }
+
   @NonNull
   @Override
   public Status upload(SQLiteDatabase db, final long mID) {
+    return upload(db, mID, null);
+  }
+
+  @NonNull
+  @Override
+  public Status upload(SQLiteDatabase db, final long mID, @Nullable byte[] payload) {
     Status s = connect();
     s.activityId = mID;
     if (s != Status.OK) {
@@ -362,22 +406,21 @@ public class StravaSynchronizer extends DefaultSynchronizer implements OAuth2Ser
     }
 
     try {
-      var options = ExportOptions.builder();
-      options.isStrava = true;
-      TCX tcx = new TCX(db, options.build(), simplifier);
-      StringWriter writer = new StringWriter();
-      tcx.export(mID, writer);
+      if (payload == null) {
+        payload = uploadFit ? exportFitGz(db, mID) : exportTcxGz(db, mID);
+      }
+      String dataType = uploadFit ? "fit.gz" : "tcx.gz";
       ActivityDbInfo dbInfo = getStravaType(db, mID);
 
-      HttpURLConnection conn = (HttpURLConnection) new URL(UPLOAD_URL).openConnection();
+      HttpURLConnection conn = HttpTransport.open(getName(), new URL(UPLOAD_URL));
       conn.setDoOutput(true);
       conn.setRequestMethod(RequestMethod.POST.name());
       conn.setRequestProperty("Authorization", "Bearer " + access_token);
 
-      Part<StringWritable> dataTypePart = new Part<>("data_type", new StringWritable("tcx.gz"));
+      Part<StringWritable> dataTypePart = new Part<>("data_type", new StringWritable(dataType));
       Part<StringWritable> filePart =
-          new Part<>("file", new StringWritable(gzip(writer.toString())));
-      filePart.setFilename(String.format(Locale.getDefault(), "RunnerUp_%04d.tcx.gz", mID));
+          new Part<>("file", new StringWritable(payload));
+      filePart.setFilename(String.format(Locale.getDefault(), "RunnerUp_%04d.", mID) + dataType);
       filePart.setContentType("application/octet-stream");
       Part<StringWritable> activityTypePart =
           new Part<>("activity_type", new StringWritable(dbInfo.stravaType));
@@ -454,8 +497,7 @@ public class StravaSynchronizer extends DefaultSynchronizer implements OAuth2Ser
         } catch (InterruptedException e) {
         }
         HttpURLConnection conn =
-            (HttpURLConnection)
-                new URL(UPLOAD_URL + "/" + uploadStatus.externalId).openConnection();
+            HttpTransport.open(getName(), new URL(UPLOAD_URL + "/" + uploadStatus.externalId));
         conn.setRequestMethod(RequestMethod.GET.name());
         conn.setRequestProperty("Authorization", "Bearer " + access_token);
 
@@ -505,7 +547,7 @@ public class StravaSynchronizer extends DefaultSynchronizer implements OAuth2Ser
 
   @Override
   public boolean checkSupport(Synchronizer.Feature f) {
-    return f == Feature.UPLOAD;
+    return f == Feature.UPLOAD || f == Feature.UPLOAD_FORMAT;
   }
 
   @Override
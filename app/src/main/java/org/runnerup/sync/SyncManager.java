@@ -31,6 +31,7 @@ import android.database.sqlite.SQLiteDatabase;
 import org.runnerup.core.util.BgTasks;
 import android.os.Build;
 import android.os.Environment;
+import android.os.SystemClock;
 import android.text.InputType;
 import android.util.Log;
 import android.util.Pair;
@@ -41,6 +42,8 @@ import android.widget.CheckBox;
 import android.widget.TableRow;
 import android.widget.TextView;
 import androidx.activity.result.ActivityResultLauncher;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.collection.LongSparseArray;
@@ -66,6 +69,7 @@ import org.runnerup.data.DBHelper;
 import org.runnerup.data.PathSimplifier;
 import org.runnerup.sync.Synchronizer.AuthMethod;
 import org.runnerup.sync.Synchronizer.Status;
+import org.runnerup.sync.util.HttpTransport;
 import org.runnerup.tracking.WorkoutObserver;
 import org.runnerup.core.util.Encryption;
 import org.runnerup.core.util.SyncActivityItem;
@@ -111,7 +115,10 @@ public class SyncManager {
     this.mContext = context;
     mDB = DBHelper.getWritableDatabase(context);
     mSpinner = spinner;
-    mSpinner.setCancelable(false);
+    if (mSpinner != null) {
+      // No spinner when used from a worker
+      mSpinner.setCancelable(false);
+    }
     simplifier = PathSimplifier.getPathSimplifierForExport(context);
   }
 
@@ -128,6 +135,7 @@ public class SyncManager {
   }
 
   public synchronized void close() {
+    closeUploadPipeline();
     if (mDB != null) {
       DBHelper.closeDB(mDB);
     }
@@ -242,7 +250,7 @@ public class SyncManager {
     }
     Status s = synchronizer.connect();
     if (s == Synchronizer.Status.NEED_REFRESH) {
-      s = handleRefreshComplete(synchronizer, synchronizer.refreshToken());
+      s = refreshToken(synchronizer);
     }
     switch (s) {
       case OK:
@@ -266,6 +274,21 @@ public class SyncManager {
     }
   }
 
+  /** Refresh the token, concurrent refreshes for the same synchronizer are coalesced */
+  private Status refreshToken(final Synchronizer synchronizer) {
+    try {
+      return HttpTransport.refreshToken(
+          synchronizer.getName(),
+          synchronizer,
+          () -> handleRefreshComplete(synchronizer, synchronizer.refreshToken()));
+    } catch (Exception ex) {
+      Log.e(getClass().getName(), "Token refresh failed", ex);
+      Status s = Status.ERROR;
+      s.ex = ex;
+      return s;
+    }
+  }
+
   private Status handleRefreshComplete(final Synchronizer synchronizer, final Status s) {
     if (s == Status.OK) {
       ContentValues tmp = new ContentValues();
@@ -333,6 +356,8 @@ public class SyncManager {
       String[] args = {Long.toString(synchronizer.getId())};
       try {
         mDB.update(DB.ACCOUNT.TABLE, tmp, "_id = ?", args);
+        UploadQueue.authenticated(mDB, synchronizer.getId(), System.currentTimeMillis());
+        UploadQueue.schedule(mContext, mDB);
       } catch (IllegalStateException ex) {
         Log.e(getClass().getName(), "Update failed:", ex);
         s = Status.ERROR;
@@ -578,13 +603,16 @@ public class SyncManager {
 
     copySpinner.setMessage(
         getResources().getString(SyncMode.UPLOAD.getTextId(), synchronizer.getName()));
+    // Let the upload worker retry if this upload does not complete
+    UploadQueue.enqueue(
+        copyDB, synchronizer.getId(), mID, System.currentTimeMillis() + UploadQueue.LEASE_MS);
 
     BgTasks.runNetwork(
         () -> {
           try {
             Synchronizer.Status s2 = synchronizer.upload(copyDB, mID);
             if (s2 == Synchronizer.Status.NEED_REFRESH) {
-              s2 = handleRefreshComplete(synchronizer, synchronizer.refreshToken());
+              s2 = refreshToken(synchronizer);
               if (s2 == Synchronizer.Status.OK) {
                 s2 = synchronizer.upload(copyDB, mID);
               }
@@ -608,6 +636,7 @@ public class SyncManager {
                     if (status == Synchronizer.Status.OK) {
                       doUpload(synchronizer);
                     } else {
+                      UploadQueue.needAuth(copyDB, synchronizer.getId());
                       nextSynchronizer();
                     }
                   },
@@ -616,11 +645,13 @@ public class SyncManager {
               return;
 
             case CANCEL:
+              UploadQueue.remove(copyDB, synchronizer.getId(), mID);
               pendingSynchronizers.clear();
               doneUploading();
               return;
 
             default:
+              UploadQueue.failed(copyDB, synchronizer.getId(), mID, System.currentTimeMillis());
               nextSynchronizer();
               break;
           }
@@ -656,17 +687,48 @@ public class SyncManager {
       Synchronizer.Status status) {
     copySpinner.setMessage(getResources().getString(org.runnerup.common.R.string.Saving));
     status.activityId = mID; // Not always set
+    saveUpload(synchronizer, copyDB, status);
+  }
 
+  private static void saveUpload(
+      Synchronizer synchronizer, SQLiteDatabase copyDB, Synchronizer.Status status) {
     ContentValues tmp = new ContentValues();
     tmp.put(DB.EXPORT.ACCOUNT, synchronizer.getId());
     tmp.put(DB.EXPORT.ACTIVITY, status.activityId);
     tmp.put(DB.EXPORT.STATUS, status.externalIdStatus.getInt());
     tmp.put(DB.EXPORT.EXTERNAL_ID, status.externalId);
     copyDB.insert(DB.EXPORT.TABLE, null, tmp);
+    UploadQueue.remove(copyDB, synchronizer.getId(), status.activityId);
 
     getExternalId(synchronizer, copyDB, status);
   }
 
+  /**
+   * Upload an activity and save the result, blocking. Used by {@link UploadWorker}, without UI
+   * authentication is not possible and NEED_AUTH is returned to the caller.
+   */
+  @NonNull
+  Synchronizer.Status uploadActivity(Synchronizer synchronizer, long activityId) {
+    Synchronizer.Status s;
+    try {
+      s = synchronizer.upload(mDB, activityId);
+      if (s == Synchronizer.Status.NEED_REFRESH) {
+        s = refreshToken(synchronizer);
+        if (s == Synchronizer.Status.OK) {
+          s = synchronizer.upload(mDB, activityId);
+        }
+      }
+    } catch (Exception ex) {
+      Log.e(getClass().getName(), "Upload failed for " + activityId, ex);
+      s = Synchronizer.Status.ERROR;
+    }
+    if (s == Synchronizer.Status.OK) {
+      s.activityId = activityId;
+      saveUpload(synchronizer, mDB, s);
+    }
+    return s;
+  }
+
   private static void externalIdCompleted(
       Synchronizer synchronizer, SQLiteDatabase copyDB, Synchronizer.Status status) {
     ContentValues tmp = new ContentValues();
@@ -678,6 +740,8 @@ public class SyncManager {
   }
 
   private void doneUploading() {
+    UploadQueue.schedule(mContext, mDB);
+    HttpTransport.logMetrics();
     try {
       mSpinner.dismiss();
     } catch (IllegalArgumentException ex) {
@@ -805,7 +869,7 @@ public class SyncManager {
           try {
             Synchronizer.Status s2 = synchronizer.listWorkouts(list);
             if (s2 == Synchronizer.Status.NEED_REFRESH) {
-              s2 = handleRefreshComplete(synchronizer, synchronizer.refreshToken());
+              s2 = refreshToken(synchronizer);
               if (s2 == Synchronizer.Status.OK) {
                 s2 = synchronizer.listWorkouts(list);
               }
@@ -973,6 +1037,7 @@ public class SyncManager {
 
   private Callback syncActivityCallback = null;
   private StringBuffer cancelSync = null;
+  private UploadPipeline uploadPipeline = null;
 
   public void syncActivities(
       SyncMode mode,
@@ -992,6 +1057,23 @@ public class SyncManager {
     cancelSync = cancel;
     syncActivityCallback = synchCallback;
     syncActivitiesList = list;
+    if (mode == SyncMode.UPLOAD) {
+      // Persist the uploads, the upload worker takes over what is not completed here
+      long[] ids = new long[list.size()];
+      for (int i = 0; i < ids.length; i++) {
+        ids[i] = list.get(i).getId();
+      }
+      UploadQueue.enqueue(
+          mDB, synchronizer.getId(), ids, System.currentTimeMillis() + UploadQueue.LEASE_MS);
+      UploadQueue.schedule(mContext, mDB);
+    }
+    if (mode == SyncMode.UPLOAD && list.size() > 1) {
+      // Export the next activity while the current one is uploaded
+      uploadPipeline =
+          new UploadPipeline(
+              synchronizer, DBHelper.getWritableDatabase(mContext), new ArrayList<>(list), cancel);
+      uploadPipeline.start();
+    }
     mSpinner.show();
     Button noButton = mSpinner.getButton(DialogInterface.BUTTON_NEGATIVE);
     if (noButton != null) {
@@ -1040,14 +1122,34 @@ public class SyncManager {
     return false;
   }
 
+  private void closeUploadPipeline() {
+    if (uploadPipeline != null) {
+      uploadPipeline.close();
+      uploadPipeline = null;
+    }
+  }
+
   private void syncNextActivity(final Synchronizer synchronizer, SyncMode mode) {
     if (checkCancel(cancelSync)) {
+      closeUploadPipeline();
+      if (mode == SyncMode.UPLOAD) {
+        // Cancelled by the user, do not upload the remaining activities in the background
+        for (SyncActivityItem ai : syncActivitiesList) {
+          UploadQueue.remove(mDB, synchronizer.getId(), ai.getId());
+        }
+        UploadQueue.schedule(mContext, mDB);
+      }
       mSpinner.cancel();
       syncActivityCallback.run(synchronizer.getName(), Synchronizer.Status.CANCEL);
       return;
     }
 
     if (syncActivitiesList.size() == 0) {
+      closeUploadPipeline();
+      HttpTransport.logMetrics();
+      if (mode == SyncMode.UPLOAD) {
+        UploadQueue.schedule(mContext, mDB);
+      }
       try {
         mSpinner.cancel();
       } catch (IllegalStateException ex) {
@@ -1060,6 +1162,10 @@ public class SyncManager {
     }
 
     mSpinner.setProgress(syncActivitiesList.size());
+    if (mode == SyncMode.UPLOAD) {
+      UploadQueue.extendLease(
+          mDB, synchronizer.getId(), System.currentTimeMillis() + UploadQueue.LEASE_MS);
+    }
     SyncActivityItem ai = syncActivitiesList.get(0);
     syncActivitiesList.remove(0);
     mID = ai.getId();
@@ -1071,15 +1177,24 @@ public class SyncManager {
       final Synchronizer synchronizer, final SyncMode mode, final SyncActivityItem activityItem) {
     final ProgressDialog copySpinner = mSpinner;
     final SQLiteDatabase copyDB = DBHelper.getWritableDatabase(mContext);
+    final UploadPipeline pipeline = uploadPipeline;
 
     copySpinner.setMessage(Long.toString(1 + syncActivitiesList.size()) + " remaining");
     BgTasks.runNetwork(
         () -> {
           try {
             Synchronizer.Status s2;
+            UploadPipeline.Prepared prepared = null;
+            if (pipeline != null) {
+              prepared = pipeline.take(activityItem.getId());
+              if (prepared == null) {
+                return Synchronizer.Status.CANCEL;
+              }
+            }
+            long t0 = SystemClock.elapsedRealtime();
             switch (mode) {
               case UPLOAD:
-                s2 = synchronizer.upload(copyDB, activityItem.getId());
+                s2 = upload(synchronizer, copyDB, activityItem.getId(), prepared);
                 break;
               case DOWNLOAD:
                 s2 = synchronizer.download(copyDB, activityItem);
@@ -1088,11 +1203,11 @@ public class SyncManager {
                 s2 = Synchronizer.Status.INCORRECT_USAGE;
             }
             if (s2 == Synchronizer.Status.NEED_REFRESH) {
-              s2 = handleRefreshComplete(synchronizer, synchronizer.refreshToken());
+              s2 = refreshToken(synchronizer);
               if (s2 == Synchronizer.Status.OK) {
                 switch (mode) {
                   case UPLOAD:
-                    s2 = synchronizer.upload(copyDB, activityItem.getId());
+                    s2 = upload(synchronizer, copyDB, activityItem.getId(), prepared);
                     break;
                   case DOWNLOAD:
                     s2 = synchronizer.download(copyDB, activityItem);
@@ -1102,6 +1217,9 @@ public class SyncManager {
                 }
               }
             }
+            if (prepared != null) {
+              pipeline.uploaded(prepared, SystemClock.elapsedRealtime() - t0);
+            }
             return s2;
           } catch (Exception ex) {
             ex.printStackTrace();
@@ -1121,6 +1239,7 @@ public class SyncManager {
                     if (s2 == Synchronizer.Status.OK) {
                       doSyncMulti(synchronizer, mode, activityItem);
                     } else {
+                      uploadFailed(synchronizer, mode, activityItem);
                       syncNextActivity(synchronizer, mode);
                     }
                   },
@@ -1129,17 +1248,42 @@ public class SyncManager {
               return;
 
             case CANCEL:
+              if (mode == SyncMode.UPLOAD) {
+                UploadQueue.remove(copyDB, synchronizer.getId(), activityItem.getId());
+                for (SyncActivityItem ai : syncActivitiesList) {
+                  UploadQueue.remove(copyDB, synchronizer.getId(), ai.getId());
+                }
+              }
               syncActivitiesList.clear();
               syncNextActivity(synchronizer, mode);
               break;
 
             default:
+              uploadFailed(synchronizer, mode, activityItem);
               syncNextActivity(synchronizer, mode);
               break;
           }
         });
   }
 
+  private void uploadFailed(
+      Synchronizer synchronizer, SyncMode mode, SyncActivityItem activityItem) {
+    if (mode == SyncMode.UPLOAD) {
+      UploadQueue.failed(
+          mDB, synchronizer.getId(), activityItem.getId(), System.currentTimeMillis());
+    }
+  }
+
+  private static Synchronizer.Status upload(
+      Synchronizer synchronizer,
+      SQLiteDatabase db,
+      long id,
+      @Nullable UploadPipeline.Prepared prepared) {
+    return prepared == null
+        ? synchronizer.upload(db, id)
+        : synchronizer.upload(db, id, prepared.payload);
+  }
+
   public void loadLiveLoggers(List<WorkoutObserver> liveLoggers) {
     liveLoggers.clear();
     Resources res = getResources();
@@ -89,7 +89,8 @@ public interface Synchronizer {
     LIVE, // live feed of activity
     ACTIVITY_LIST, // list recorded activities
     GET_ACTIVITY, // download recorded activity
-    FILE_FORMAT // upload as file in different possible formats
+    FILE_FORMAT, // upload as file in different possible formats
+    UPLOAD_FORMAT // upload as TCX, or as FIT if selected
   }
 
   /**
@@ -154,6 +155,27 @@ public interface Synchronizer {
   @NonNull
   Status upload(SQLiteDatabase db, long mID);
 
+  /**
+   * Export the activity to the format sent by upload(). Used when syncing several activities, so
+   * the next activity can be exported while the previous one is uploaded.
+   *
+   * @param db
+   * @param mID
+   * @return the exported payload, or null if the synchronizer exports in upload()
+   */
+  @Nullable
+  byte[] prepareUpload(SQLiteDatabase db, long mID);
+
+  /**
+   * Upload a payload created by prepareUpload()
+   *
+   * @param db
+   * @param mID
+   * @param payload from prepareUpload(), exported in the call if null
+   */
+  @NonNull
+  Status upload(SQLiteDatabase db, long mID, @Nullable byte[] payload);
+
   /**
    * Get the external identifier for the service Done in the background, can take substantial time
    * for some services
@@ -0,0 +1,212 @@
+package org.runnerup.sync;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+import androidx.annotation.Nullable;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.runnerup.core.util.SyncActivityItem;
+
+/**
+ * Two stage producer/consumer pipeline for bulk uploads. The export stage runs
+ * Synchronizer.prepareUpload() for the activities in order on its own thread, while the upload
+ * stage (SyncManager) sends the previous activity. A small bounded queue limits the number of
+ * exported payloads held in memory.
+ */
+class UploadPipeline {
+
+  private static final String TAG = "UploadPipeline";
+
+  /** Number of exported activities that may wait for upload */
+  private static final int QUEUE_SIZE = 2;
+
+  private static final long POLL_MS = 200;
+
+  /** An exported activity, payload is null if the export is done in upload() */
+  static final class Prepared {
+    final long id;
+    @Nullable final byte[] payload;
+
+    Prepared(long id, @Nullable byte[] payload) {
+      this.id = id;
+      this.payload = payload;
+    }
+  }
+
+  private final Synchronizer synchronizer;
+  private final SQLiteDatabase db;
+  private final long[] ids;
+  private final StringBuffer cancel;
+  private final BlockingQueue<Prepared> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+  private final Thread exportThread;
+  private volatile boolean closed = false;
+  private volatile boolean exportDone = false;
+
+  // Per stage statistics, exportXxx only written by the export thread
+  private volatile int exportCount = 0;
+  private volatile long exportBytes = 0;
+  private volatile long exportMs = 0;
+  private int uploadCount = 0;
+  private long uploadBytes = 0;
+  private long uploadMs = 0;
+  private long uploadWaitMs = 0;
+  private final long startTime = SystemClock.elapsedRealtime();
+
+  @Nullable private volatile Prepared current = null;
+
+  UploadPipeline(
+      Synchronizer synchronizer,
+      SQLiteDatabase db,
+      List<SyncActivityItem> items,
+      StringBuffer cancel) {
+    this.synchronizer = synchronizer;
+    this.db = db;
+    this.cancel = cancel;
+    this.ids = new long[items.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = items.get(i).getId();
+    }
+    exportThread = new Thread(this::runExport, TAG);
+    exportThread.setPriority(Thread.NORM_PRIORITY - 1);
+  }
+
+  void start() {
+    exportThread.start();
+  }
+
+  private boolean isCancelled() {
+    if (closed) {
+      return true;
+    }
+    if (cancel != null) {
+      //noinspection SynchronizationOnLocalVariableOrMethodParameter
+      synchronized (cancel) {
+        return cancel.length() > 0;
+      }
+    }
+    return false;
+  }
+
+  private void runExport() {
+    try {
+      for (long id : ids) {
+        if (isCancelled()) {
+          break;
+        }
+        long t0 = SystemClock.elapsedRealtime();
+        byte[] payload;
+        try {
+          payload = synchronizer.prepareUpload(db, id);
+        } catch (Exception ex) {
+          // Let upload() retry the export and report the error
+          Log.w(TAG, "Export failed for " + id, ex);
+          payload = null;
+        }
+        exportMs += SystemClock.elapsedRealtime() - t0;
+        exportCount++;
+        if (payload != null) {
+          exportBytes += payload.length;
+        }
+
+        Prepared p = new Prepared(id, payload);
+        while (!queue.offer(p, POLL_MS, TimeUnit.MILLISECONDS)) {
+          if (isCancelled()) {
+            return;
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      // closed
+    } finally {
+      exportDone = true;
+    }
+  }
+
+  /**
+   * Get the exported payload for an activity, blocking until the export stage has produced it.
+   * Called from the upload stage, in the same order as the activities were given. The same
+   * activity can be requested again (retry after authentication).
+   *
+   * @return the prepared activity (with null payload if not exported) or null if cancelled
+   */
+  @Nullable
+  Prepared take(long id) {
+    if (current != null && current.id == id) {
+      return current;
+    }
+    long t0 = SystemClock.elapsedRealtime();
+    try {
+      while (!isCancelled()) {
+        Prepared p = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+        if (p == null) {
+          if (exportDone && queue.isEmpty()) {
+            break;
+          }
+          continue;
+        }
+        if (p.id == id) {
+          current = p;
+          return p;
+        }
+        // Skipped in the upload stage, drop it
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      uploadWaitMs += SystemClock.elapsedRealtime() - t0;
+    }
+    if (isCancelled()) {
+      return null;
+    }
+    current = new Prepared(id, null);
+    return current;
+  }
+
+  /** Record an upload of a payload taken from the pipeline */
+  void uploaded(Prepared p, long durationMs) {
+    uploadCount++;
+    uploadMs += durationMs;
+    if (p.payload != null) {
+      uploadBytes += p.payload.length;
+    }
+  }
+
+  /** Stop the export stage and log the per stage throughput */
+  void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    exportThread.interrupt();
+    queue.clear();
+    current = null;
+    Log.i(TAG, getStatistics());
+  }
+
+  String getStatistics() {
+    long total = SystemClock.elapsedRealtime() - startTime;
+    return String.format(
+        Locale.ROOT,
+        "%s: export %d activities, %d kB in %d ms (%.1f kB/s); "
+            + "upload %d activities, %d kB in %d ms (%.1f kB/s), waited %d ms; total %d ms",
+        synchronizer.getName(),
+        exportCount,
+        exportBytes / 1024,
+        exportMs,
+        rate(exportBytes, exportMs),
+        uploadCount,
+        uploadBytes / 1024,
+        uploadMs,
+        rate(uploadBytes, uploadMs),
+        uploadWaitMs,
+        total);
+  }
+
+  private static double rate(long bytes, long ms) {
+    return ms > 0 ? bytes / 1.024 / ms : 0;
+  }
+}
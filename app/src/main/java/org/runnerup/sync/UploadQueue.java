@@ -0,0 +1,277 @@
+package org.runnerup.sync;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.runnerup.common.util.Constants.DB;
+
+/**
+ * Durable queue of activity uploads (activity x synchronizer), see {@link DB.UPLOAD_QUEUE}. Uploads
+ * are enqueued when started from the UI and removed when they succeed, whatever remains is drained
+ * by {@link UploadWorker}.
+ */
+public final class UploadQueue {
+
+  private static final String TAG = "UploadQueue";
+  private static final String WORK_NAME = "upload_queue";
+
+  /**
+   * Time an interactive upload has before the worker may take over its entries (if the UI was
+   * killed). Extended as the interactive upload proceeds.
+   */
+  static final long LEASE_MS = TimeUnit.MINUTES.toMillis(10);
+
+  private static final long BACKOFF_MIN_MS = TimeUnit.MINUTES.toMillis(1);
+  private static final long BACKOFF_MAX_MS = TimeUnit.HOURS.toMillis(6);
+  static final int MAX_ATTEMPTS = 10;
+
+  /** A queued upload */
+  public static final class Entry {
+    public final long activityId;
+    public final long accountId;
+    public final String accountName;
+    public final int attempts;
+
+    Entry(long activityId, long accountId, String accountName, int attempts) {
+      this.activityId = activityId;
+      this.accountId = accountId;
+      this.accountName = accountName;
+      this.attempts = attempts;
+    }
+  }
+
+  private UploadQueue() {}
+
+  /**
+   * Add an upload to the queue, or reset an existing entry to pending.
+   *
+   * @param firstAttempt time the worker may first try the upload
+   */
+  public static void enqueue(SQLiteDatabase db, long accountId, long activityId, long firstAttempt) {
+    ContentValues tmp = new ContentValues();
+    tmp.put(DB.UPLOAD_QUEUE.ACCOUNT, accountId);
+    tmp.put(DB.UPLOAD_QUEUE.ACTIVITY, activityId);
+    tmp.put(DB.UPLOAD_QUEUE.STATE, DB.UPLOAD_QUEUE.STATE_PENDING);
+    tmp.put(DB.UPLOAD_QUEUE.ATTEMPTS, 0);
+    tmp.put(DB.UPLOAD_QUEUE.NEXT_ATTEMPT, firstAttempt);
+    db.insertWithOnConflict(DB.UPLOAD_QUEUE.TABLE, null, tmp, SQLiteDatabase.CONFLICT_REPLACE);
+  }
+
+  /** Enqueue several activities for one account in one transaction */
+  public static void enqueue(
+      SQLiteDatabase db, long accountId, long[] activityIds, long firstAttempt) {
+    db.beginTransaction();
+    try {
+      for (long id : activityIds) {
+        enqueue(db, accountId, id, firstAttempt);
+      }
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
+  /** The upload succeeded (or is no longer wanted) */
+  public static void remove(SQLiteDatabase db, long accountId, long activityId) {
+    String[] args = {Long.toString(accountId), Long.toString(activityId)};
+    db.delete(
+        DB.UPLOAD_QUEUE.TABLE,
+        DB.UPLOAD_QUEUE.ACCOUNT + " = ? AND " + DB.UPLOAD_QUEUE.ACTIVITY + " = ?",
+        args);
+  }
+
+  /** Postpone the worker for pending uploads of an account, an interactive upload is running */
+  public static void extendLease(SQLiteDatabase db, long accountId, long until) {
+    ContentValues tmp = new ContentValues();
+    tmp.put(DB.UPLOAD_QUEUE.NEXT_ATTEMPT, until);
+    String[] args = {
+      Long.toString(accountId), Integer.toString(DB.UPLOAD_QUEUE.STATE_PENDING), Long.toString(until)
+    };
+    db.update(
+        DB.UPLOAD_QUEUE.TABLE,
+        tmp,
+        DB.UPLOAD_QUEUE.ACCOUNT
+            + " = ? AND "
+            + DB.UPLOAD_QUEUE.STATE
+            + " = ? AND "
+            + DB.UPLOAD_QUEUE.NEXT_ATTEMPT
+            + " < ? AND "
+            + DB.UPLOAD_QUEUE.ATTEMPTS
+            + " = 0",
+        args);
+  }
+
+  /**
+   * Park the pending uploads of an account that needs authentication, without counting an attempt.
+   * Retrying cannot succeed before the user authenticates in the UI, see {@link #authenticated}.
+   */
+  public static void needAuth(SQLiteDatabase db, long accountId) {
+    ContentValues tmp = new ContentValues();
+    tmp.put(DB.UPLOAD_QUEUE.STATE, DB.UPLOAD_QUEUE.STATE_NEED_AUTH);
+    String[] args = {Long.toString(accountId), Integer.toString(DB.UPLOAD_QUEUE.STATE_PENDING)};
+    db.update(
+        DB.UPLOAD_QUEUE.TABLE,
+        tmp,
+        DB.UPLOAD_QUEUE.ACCOUNT + " = ? AND " + DB.UPLOAD_QUEUE.STATE + " = ?",
+        args);
+  }
+
+  /** The account is authenticated, its parked uploads are pending again */
+  public static void authenticated(SQLiteDatabase db, long accountId, long now) {
+    ContentValues tmp = new ContentValues();
+    tmp.put(DB.UPLOAD_QUEUE.STATE, DB.UPLOAD_QUEUE.STATE_PENDING);
+    tmp.put(DB.UPLOAD_QUEUE.NEXT_ATTEMPT, now);
+    String[] args = {Long.toString(accountId), Integer.toString(DB.UPLOAD_QUEUE.STATE_NEED_AUTH)};
+    db.update(
+        DB.UPLOAD_QUEUE.TABLE,
+        tmp,
+        DB.UPLOAD_QUEUE.ACCOUNT + " = ? AND " + DB.UPLOAD_QUEUE.STATE + " = ?",
+        args);
+  }
+
+  /**
+   * Record a failed attempt, the next attempt is done with exponential backoff. After MAX_ATTEMPTS
+   * the entry is marked failed and not retried by the worker.
+   */
+  public static void failed(SQLiteDatabase db, long accountId, long activityId, long now) {
+    String[] args = {Long.toString(accountId), Long.toString(activityId)};
+    int attempts = 0;
+    try (Cursor c =
+        db.query(
+            DB.UPLOAD_QUEUE.TABLE,
+            new String[] {DB.UPLOAD_QUEUE.ATTEMPTS},
+            DB.UPLOAD_QUEUE.ACCOUNT + " = ? AND " + DB.UPLOAD_QUEUE.ACTIVITY + " = ?",
+            args,
+            null,
+            null,
+            null)) {
+      if (!c.moveToFirst()) {
+        return;
+      }
+      attempts = c.getInt(0) + 1;
+    }
+
+    ContentValues tmp = new ContentValues();
+    tmp.put(DB.UPLOAD_QUEUE.ATTEMPTS, attempts);
+    tmp.put(DB.UPLOAD_QUEUE.NEXT_ATTEMPT, now + getBackoff(attempts));
+    tmp.put(
+        DB.UPLOAD_QUEUE.STATE,
+        attempts >= MAX_ATTEMPTS ? DB.UPLOAD_QUEUE.STATE_FAILED : DB.UPLOAD_QUEUE.STATE_PENDING);
+    db.update(
+        DB.UPLOAD_QUEUE.TABLE,
+        tmp,
+        DB.UPLOAD_QUEUE.ACCOUNT + " = ? AND " + DB.UPLOAD_QUEUE.ACTIVITY + " = ?",
+        args);
+  }
+
+  /** Delay before the next attempt after the given number of failed attempts */
+  static long getBackoff(int attempts) {
+    if (attempts <= 0) {
+      return 0;
+    }
+    long delay = BACKOFF_MIN_MS << Math.min(attempts - 1, 20);
+    return Math.min(delay, BACKOFF_MAX_MS);
+  }
+
+  /**
+   * Get pending uploads due at the given time, oldest activities first
+   *
+   * @param limit max number of entries
+   */
+  public static List<Entry> getDue(SQLiteDatabase db, long now, int limit) {
+    List<Entry> list = new ArrayList<>();
+    String sql =
+        "SELECT q."
+            + DB.UPLOAD_QUEUE.ACTIVITY
+            + ", q."
+            + DB.UPLOAD_QUEUE.ACCOUNT
+            + ", a."
+            + DB.ACCOUNT.NAME
+            + ", q."
+            + DB.UPLOAD_QUEUE.ATTEMPTS
+            + " FROM "
+            + DB.UPLOAD_QUEUE.TABLE
+            + " q JOIN "
+            + DB.ACCOUNT.TABLE
+            + " a ON a._id = q."
+            + DB.UPLOAD_QUEUE.ACCOUNT
+            + " WHERE q."
+            + DB.UPLOAD_QUEUE.STATE
+            + " = ? AND q."
+            + DB.UPLOAD_QUEUE.NEXT_ATTEMPT
+            + " <= ? ORDER BY q."
+            + DB.UPLOAD_QUEUE.ACCOUNT
+            + ", q."
+            + DB.UPLOAD_QUEUE.ACTIVITY
+            + " LIMIT "
+            + limit;
+    String[] args = {Integer.toString(DB.UPLOAD_QUEUE.STATE_PENDING), Long.toString(now)};
+    try (Cursor c = db.rawQuery(sql, args)) {
+      while (c.moveToNext()) {
+        list.add(new Entry(c.getLong(0), c.getLong(1), c.getString(2), c.getInt(3)));
+      }
+    }
+    return list;
+  }
+
+  /**
+   * @return time of the next pending attempt, or -1 if the queue has no pending uploads
+   */
+  public static long getNextAttempt(SQLiteDatabase db) {
+    String sql =
+        "SELECT MIN("
+            + DB.UPLOAD_QUEUE.NEXT_ATTEMPT
+            + ") FROM "
+            + DB.UPLOAD_QUEUE.TABLE
+            + " WHERE "
+            + DB.UPLOAD_QUEUE.STATE
+            + " = ?";
+    String[] args = {Integer.toString(DB.UPLOAD_QUEUE.STATE_PENDING)};
+    try (Cursor c = db.rawQuery(sql, args)) {
+      if (c.moveToFirst() && !c.isNull(0)) {
+        return c.getLong(0);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Schedule the worker for the next pending upload, if any. Replaces an already scheduled worker,
+   * entries in a stopped worker remain in the queue.
+   */
+  public static void schedule(Context context, SQLiteDatabase db) {
+    long next = getNextAttempt(db);
+    if (next < 0) {
+      return;
+    }
+    long delay = Math.max(0, next - System.currentTimeMillis());
+    schedule(context, delay, ExistingWorkPolicy.REPLACE);
+  }
+
+  static void schedule(Context context, long delayMs, ExistingWorkPolicy policy) {
+    try {
+      Constraints constraints =
+          new Constraints.Builder().setRequiredNetworkType(NetworkType.CONNECTED).build();
+      OneTimeWorkRequest request =
+          new OneTimeWorkRequest.Builder(UploadWorker.class)
+              .setConstraints(constraints)
+              .setInitialDelay(delayMs, TimeUnit.MILLISECONDS)
+              .addTag("upload")
+              .build();
+      WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, policy, request);
+      Log.d(TAG, "Upload worker scheduled in " + delayMs / 1000 + " s");
+    } catch (Exception e) {
+      Log.e(TAG, "Failed to schedule upload worker", e);
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package org.runnerup.sync;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.runnerup.data.DBHelper;
+import org.runnerup.sync.util.HttpTransport;
+
+/**
+ * Drains the {@link UploadQueue} in batches without UI. Failed uploads are retried with
+ * exponential backoff, the worker reschedules itself for the next due upload. Uploads needing
+ * authentication are parked until the user authenticates in the UI.
+ */
+public class UploadWorker extends Worker {
+  private static final String TAG = "UploadWorker";
+
+  /** Uploads per run, the worker is rescheduled directly if more are due */
+  private static final int BATCH_SIZE = 20;
+
+  public UploadWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+    super(context, params);
+  }
+
+  @NonNull
+  @Override
+  public Result doWork() {
+    Context context = getApplicationContext();
+    SQLiteDatabase db = DBHelper.getWritableDatabase(context);
+    SyncManager syncManager = new SyncManager(context, null);
+    int ok = 0;
+    int failed = 0;
+    Set<Long> needAuth = new HashSet<>();
+    try {
+      List<UploadQueue.Entry> batch =
+          UploadQueue.getDue(db, System.currentTimeMillis(), BATCH_SIZE);
+      Log.d(TAG, "Uploading " + batch.size() + " queued activities");
+      for (UploadQueue.Entry e : batch) {
+        if (isStopped()) {
+          break;
+        }
+        if (needAuth.contains(e.accountId)) {
+          // Parked with the first upload of the account in this batch
+          continue;
+        }
+        syncManager.load(e.accountName);
+        Synchronizer synchronizer = syncManager.getSynchronizerByName(e.accountName);
+        if (synchronizer == null || !synchronizer.isConfigured()) {
+          // Account removed or logged out, nothing to retry
+          UploadQueue.remove(db, e.accountId, e.activityId);
+          continue;
+        }
+
+        Synchronizer.Status s = syncManager.uploadActivity(synchronizer, e.activityId);
+        if (s == Synchronizer.Status.OK) {
+          ok++;
+        } else if (s == Synchronizer.Status.NEED_AUTH) {
+          Log.w(TAG, synchronizer.getName() + ": needs authentication, uploads parked");
+          UploadQueue.needAuth(db, e.accountId);
+          needAuth.add(e.accountId);
+        } else {
+          Log.w(TAG, synchronizer.getName() + ": upload of " + e.activityId + " failed: " + s);
+          UploadQueue.failed(db, e.accountId, e.activityId, System.currentTimeMillis());
+          failed++;
+        }
+      }
+    } catch (Exception ex) {
+      Log.e(TAG, "Upload queue failed", ex);
+    } finally {
+      syncManager.close();
+    }
+    Log.d(TAG, "Uploaded " + ok + ", failed " + failed);
+    HttpTransport.logMetrics();
+
+    long next = UploadQueue.getNextAttempt(db);
+    if (next >= 0) {
+      // Append to this work, start when this worker has completed
+      long delay = Math.max(0, next - System.currentTimeMillis());
+      UploadQueue.schedule(context, delay, ExistingWorkPolicy.APPEND_OR_REPLACE);
+    }
+    return Result.success();
+  }
+}
@@ -24,6 +24,7 @@ import android.text.TextUtils;
 import android.util.Log;
 import androidx.annotation.ColorRes;
 import androidx.annotation.NonNull;
+import java.io.ByteArrayOutputStream;
 import java.io.StringWriter;
 import okhttp3.Credentials;
 import okhttp3.MediaType;
@@ -36,12 +37,15 @@ import org.json.JSONObject;
 import org.runnerup.R;
 import org.runnerup.common.util.Constants;
 import org.runnerup.data.PathSimplifier;
+import org.runnerup.core.content.ActivityProvider;
 import org.runnerup.sync.format.ExportOptions;
+import org.runnerup.sync.format.FIT;
 import org.runnerup.sync.format.GPX;
 import org.runnerup.sync.format.TCX;
 import org.runnerup.core.util.FileNameHelper;
 import org.runnerup.core.workout.FileFormats;
 import org.runnerup.core.workout.Sport;
+import org.runnerup.sync.util.HttpTransport;
 
 public class WebDavSynchronizer extends DefaultSynchronizer {
 
@@ -187,7 +191,7 @@ public class WebDavSynchronizer extends DefaultSynchronizer {
    * @return the OkHttpClient containing basic auth
    */
   private OkHttpClient getAuthClient() {
-    return new OkHttpClient()
+    return HttpTransport.getClient(getName())
         .newBuilder()
         .addInterceptor(
             chain -> {
@@ -238,6 +242,16 @@ public class WebDavSynchronizer extends DefaultSynchronizer {
         gpx.export(mID, writer);
         s = uploadFile(writer, fileBase, FileFormats.GPX.getValue());
       }
+      if (s == Status.OK && mFormat.contains(FileFormats.FIT)) {
+        FIT fit = new FIT(db, ExportOptions.getDefault(), simplifier);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        fit.export(mID, out);
+        s =
+            uploadFile(
+                RequestBody.create(MediaType.parse(ActivityProvider.FIT_MIME), out.toByteArray()),
+                fileBase,
+                FileFormats.FIT.getValue());
+      }
 
     } catch (Exception e) {
       Log.e(getName(), "Error uploading, exception: ", e);
@@ -248,11 +262,16 @@ public class WebDavSynchronizer extends DefaultSynchronizer {
   }
 
   private Status uploadFile(StringWriter writer, String fileBase, String fileExt) {
+    return uploadFile(
+        RequestBody.create(MediaType.parse("application/" + fileExt + "+xml"), writer.toString()),
+        fileBase,
+        fileExt);
+  }
+
+  private Status uploadFile(RequestBody body, String fileBase, String fileExt) {
     Status s;
     try {
       OkHttpClient client = getAuthClient();
-      RequestBody body =
-          RequestBody.create(MediaType.parse("application/" + fileExt + "+xml"), writer.toString());
       Request request =
           new Request.Builder().url(url + fileBase + fileExt).method("PUT", body).build();
 
@@ -0,0 +1,439 @@
+package org.runnerup.sync.format;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.location.Location;
+import java.io.IOException;
+import java.io.OutputStream;
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.core.workout.Sport;
+import org.runnerup.data.HRSeries;
+import org.runnerup.data.PathCursor;
+import org.runnerup.data.PathSimplifier;
+
+/**
+ * FIT - export an activity in the binary FIT format: file_id, record, lap, session and activity
+ * messages, with timer events for pauses. Much smaller and faster to produce than TCX.
+ */
+public class FIT {
+
+  // Global message numbers
+  static final int MESG_FILE_ID = 0;
+  static final int MESG_SESSION = 18;
+  static final int MESG_LAP = 19;
+  static final int MESG_RECORD = 20;
+  static final int MESG_EVENT = 21;
+  static final int MESG_ACTIVITY = 34;
+
+  // Common field numbers
+  static final int FIELD_TIMESTAMP = 253;
+  static final int FIELD_MESSAGE_INDEX = 254;
+
+  static final int FILE_ACTIVITY = 4;
+  static final int MANUFACTURER_DEVELOPMENT = 255;
+
+  static final int EVENT_TIMER = 0;
+  static final int EVENT_SESSION = 8;
+  static final int EVENT_LAP = 9;
+  static final int EVENT_ACTIVITY = 26;
+  static final int EVENT_TYPE_START = 0;
+  static final int EVENT_TYPE_STOP = 1;
+  static final int EVENT_TYPE_STOP_ALL = 4;
+
+  static final int SPORT_GENERIC = 0;
+  static final int SPORT_RUNNING = 1;
+  static final int SPORT_CYCLING = 2;
+  static final int SPORT_WALKING = 11;
+  static final int SUB_SPORT_GENERIC = 0;
+  static final int SUB_SPORT_TREADMILL = 1;
+
+  private static final double SEMICIRCLES_PER_DEGREE = 2147483648.0 / 180;
+
+  private static final FitEncoder.Message FILE_ID =
+      new FitEncoder.Message(MESG_FILE_ID)
+          .field(0, FitEncoder.ENUM) // type
+          .field(1, FitEncoder.UINT16) // manufacturer
+          .field(2, FitEncoder.UINT16) // product
+          .field(3, FitEncoder.UINT32Z) // serial_number
+          .field(4, FitEncoder.UINT32); // time_created
+
+  private static final FitEncoder.Message EVENT =
+      new FitEncoder.Message(MESG_EVENT)
+          .field(FIELD_TIMESTAMP, FitEncoder.UINT32)
+          .field(0, FitEncoder.ENUM) // event
+          .field(1, FitEncoder.ENUM); // event_type
+
+  private static final FitEncoder.Message RECORD =
+      new FitEncoder.Message(MESG_RECORD)
+          .field(FIELD_TIMESTAMP, FitEncoder.UINT32)
+          .field(0, FitEncoder.SINT32) // position_lat, semicircles
+          .field(1, FitEncoder.SINT32) // position_long, semicircles
+          .field(2, FitEncoder.UINT16) // altitude, 5 * (m + 500)
+          .field(3, FitEncoder.UINT8) // heart_rate
+          .field(4, FitEncoder.UINT8) // cadence
+          .field(5, FitEncoder.UINT32) // distance, cm
+          .field(13, FitEncoder.SINT8); // temperature, C
+
+  private static final FitEncoder.Message LAP =
+      new FitEncoder.Message(MESG_LAP)
+          .field(FIELD_TIMESTAMP, FitEncoder.UINT32)
+          .field(FIELD_MESSAGE_INDEX, FitEncoder.UINT16)
+          .field(0, FitEncoder.ENUM) // event
+          .field(1, FitEncoder.ENUM) // event_type
+          .field(2, FitEncoder.UINT32) // start_time
+          .field(7, FitEncoder.UINT32) // total_elapsed_time, ms
+          .field(8, FitEncoder.UINT32) // total_timer_time, ms
+          .field(9, FitEncoder.UINT32) // total_distance, cm
+          .field(15, FitEncoder.UINT8) // avg_heart_rate
+          .field(16, FitEncoder.UINT8) // max_heart_rate
+          .field(23, FitEncoder.ENUM) // intensity
+          .field(24, FitEncoder.ENUM) // lap_trigger
+          .field(25, FitEncoder.ENUM); // sport
+
+  private static final FitEncoder.Message SESSION =
+      new FitEncoder.Message(MESG_SESSION)
+          .field(FIELD_TIMESTAMP, FitEncoder.UINT32)
+          .field(FIELD_MESSAGE_INDEX, FitEncoder.UINT16)
+          .field(0, FitEncoder.ENUM) // event
+          .field(1, FitEncoder.ENUM) // event_type
+          .field(2, FitEncoder.UINT32) // start_time
+          .field(5, FitEncoder.ENUM) // sport
+          .field(6, FitEncoder.ENUM) // sub_sport
+          .field(7, FitEncoder.UINT32) // total_elapsed_time, ms
+          .field(8, FitEncoder.UINT32) // total_timer_time, ms
+          .field(9, FitEncoder.UINT32) // total_distance, cm
+          .field(16, FitEncoder.UINT8) // avg_heart_rate
+          .field(17, FitEncoder.UINT8) // max_heart_rate
+          .field(25, FitEncoder.UINT16) // first_lap_index
+          .field(26, FitEncoder.UINT16); // num_laps
+
+  private static final FitEncoder.Message ACTIVITY =
+      new FitEncoder.Message(MESG_ACTIVITY)
+          .field(FIELD_TIMESTAMP, FitEncoder.UINT32)
+          .field(0, FitEncoder.UINT32) // total_timer_time, ms
+          .field(1, FitEncoder.UINT16) // num_sessions
+          .field(2, FitEncoder.ENUM) // type
+          .field(3, FitEncoder.ENUM) // event
+          .field(4, FitEncoder.ENUM); // event_type
+
+  private final SQLiteDatabase mDB;
+  private final ExportOptions exportOptions;
+  private final PathSimplifier simplifier;
+
+  private FitEncoder enc;
+  private int fitSport;
+
+  // Heart rate for the lap and the session, from the exported locations
+  private int lapHrSum;
+  private int lapHrCount;
+  private int lapHrMax;
+  private long hrSum;
+  private int hrCount;
+  private int hrMax;
+
+  public FIT(SQLiteDatabase mDB, ExportOptions exportOptions, PathSimplifier simplifier) {
+    this.mDB = mDB;
+    this.exportOptions = exportOptions;
+    this.simplifier = simplifier;
+  }
+
+  /** FIT timestamp from ms since the Unix epoch */
+  static long timestamp(long ms) {
+    return ms / 1000 - FitEncoder.FIT_EPOCH_OFFSET_S;
+  }
+
+  static long semicircles(double degrees) {
+    return Math.max(
+        Integer.MIN_VALUE,
+        Math.min(Integer.MAX_VALUE, Math.round(degrees * SEMICIRCLES_PER_DEGREE)));
+  }
+
+  static int fitSport(Sport sport) {
+    if (sport.IsRunning()) {
+      return SPORT_RUNNING;
+    } else if (sport.IsCycling()) {
+      return SPORT_CYCLING;
+    } else if (sport.IsWalking()) {
+      return SPORT_WALKING;
+    }
+    return SPORT_GENERIC;
+  }
+
+  public void export(long activityId, OutputStream out) throws IOException {
+    String[] aColumns = {
+      DB.ACTIVITY.START_TIME, DB.ACTIVITY.SPORT, DB.ACTIVITY.TIME, DB.ACTIVITY.DISTANCE
+    };
+    long startTime;
+    Sport sport;
+    long time;
+    double distance;
+    try (Cursor cursor =
+        mDB.query(DB.ACTIVITY.TABLE, aColumns, "_id = " + activityId, null, null, null, null)) {
+      if (!cursor.moveToFirst()) {
+        throw new IOException("No activity " + activityId);
+      }
+      startTime = cursor.getLong(0) * 1000;
+      sport = cursor.isNull(1) ? Sport.RUNNING : Sport.valueOf(cursor.getInt(1));
+      time = cursor.getLong(2);
+      distance = cursor.getDouble(3);
+    }
+    fitSport = fitSport(sport);
+    hrSum = 0;
+    hrCount = 0;
+    hrMax = 0;
+
+    enc = new FitEncoder();
+    try {
+      enc.begin(FILE_ID)
+          .value(FILE_ACTIVITY)
+          .value(MANUFACTURER_DEVELOPMENT)
+          .value(0)
+          .value(startTime / 1000)
+          .value(timestamp(startTime));
+      event(startTime, EVENT_TYPE_START);
+
+      long[] end = {startTime};
+      int laps = exportLaps(activityId, startTime, sport, end);
+      long endTime = Math.max(end[0], startTime + time * 1000);
+
+      event(endTime, EVENT_TYPE_STOP_ALL);
+      enc.begin(SESSION)
+          .value(timestamp(endTime))
+          .value(0)
+          .value(EVENT_SESSION)
+          .value(EVENT_TYPE_STOP)
+          .value(timestamp(startTime))
+          .value(fitSport)
+          .value(sport == Sport.TREADMILL ? SUB_SPORT_TREADMILL : SUB_SPORT_GENERIC)
+          .value(endTime - startTime)
+          .value(time * 1000)
+          .value(Math.round(distance * 100));
+      heartRate(hrCount > 0 ? hrSum / hrCount : 0, hrMax);
+      enc.value(0).value(laps);
+      enc.begin(ACTIVITY)
+          .value(timestamp(endTime))
+          .value(time * 1000)
+          .value(1)
+          .value(0) // manual
+          .value(EVENT_ACTIVITY)
+          .value(EVENT_TYPE_STOP);
+      enc.finish(out);
+    } finally {
+      enc = null;
+    }
+  }
+
+  private void event(long time, int type) {
+    enc.begin(EVENT).value(timestamp(time)).value(EVENT_TIMER).value(type);
+  }
+
+  private void heartRate(long avg, int max) {
+    if (max > 0) {
+      enc.value(avg).value(max);
+    } else {
+      enc.invalid().invalid();
+    }
+  }
+
+  /**
+   * @param end set to the time of the last exported location
+   * @return number of exported laps
+   */
+  private int exportLaps(long activityId, long startTime, Sport sport, long[] end)
+      throws IOException {
+    String[] lColumns = {DB.LAP.LAP, DB.LAP.TIME, DB.LAP.DISTANCE, DB.LAP.INTENSITY};
+    String[] pColumns = {
+      DB.LOCATION.LAP,
+      DB.LOCATION.TYPE,
+      DB.LOCATION.TIME,
+      DB.LOCATION.DISTANCE,
+      DB.LOCATION.LATITUDE,
+      DB.LOCATION.LONGITUDE,
+      DB.LOCATION.ALTITUDE,
+      DB.LOCATION.HR,
+      DB.LOCATION.CADENCE,
+      DB.LOCATION.TEMPERATURE,
+      DB.PRIMARY_KEY
+    };
+    int laps = 0;
+    try (Cursor cLap =
+        mDB.query(
+            DB.LAP.TABLE,
+            lColumns,
+            "("
+                + DB.LAP.DISTANCE
+                + " > 0 or "
+                + DB.LAP.TIME
+                + " > 0) and "
+                + DB.LAP.ACTIVITY
+                + " = "
+                + activityId,
+            null,
+            null,
+            null,
+            null)) {
+      PathCursor cLocation = new PathCursor(mDB, activityId, pColumns, 10, simplifier);
+      HRSeries hrSeries = HRSeries.load(mDB, activityId);
+      boolean lok = cLap.moveToFirst();
+      boolean pok = cLocation.moveToFirst();
+
+      double totalDistance = 0;
+      double lastLat = 0;
+      double lastLon = 0;
+      long lastTime = 0;
+      boolean paused = false;
+      // The lap table has no start time, a lap starts where the previous lap row ended
+      long nextLapStart = startTime;
+      while (lok) {
+        long lapTime = cLap.getLong(1);
+        double lapDistance = cLap.getDouble(2);
+        long lapStart = nextLapStart;
+        long lapEnd = lapStart + lapTime * 1000;
+        if (exportOptions.shouldExportLap(sport.getDbValue(), (float) lapDistance, lapTime)) {
+          long lap = cLap.getLong(0);
+          while (pok && cLocation.getLong(0) < lap) {
+            pok = cLocation.moveToNext();
+          }
+          if (pok && cLocation.getLong(0) == lap) {
+            lapStart = cLocation.getLong(2);
+            lapEnd = lapStart + lapTime * 1000;
+          }
+          lapHrSum = 0;
+          lapHrCount = 0;
+          lapHrMax = 0;
+          // Heart rate samples after this time are recorded between the locations, -1 when
+          // paused
+          long hrSince = -1;
+
+          while (pok && cLocation.getLong(0) == lap) {
+            int locType = cLocation.getInt(1);
+            long time = cLocation.getLong(2);
+            if (locType == DB.LOCATION.TYPE_PAUSE
+                || locType == DB.LOCATION.TYPE_AUTO_PAUSE
+                || locType == DB.LOCATION.TYPE_END) {
+              if (hrSeries != null && hrSince >= 0) {
+                hrSeries.forEachBetween(hrSince, time, this::heartRateRecord);
+              }
+              hrSince = -1;
+              if (!paused && locType != DB.LOCATION.TYPE_END) {
+                event(time, EVENT_TYPE_STOP_ALL);
+                paused = true;
+              }
+            } else if (locType == DB.LOCATION.TYPE_START
+                || locType == DB.LOCATION.TYPE_RESUME
+                || locType == DB.LOCATION.TYPE_AUTO_RESUME) {
+              hrSince = time;
+              if (paused && locType != DB.LOCATION.TYPE_START) {
+                event(time, EVENT_TYPE_START);
+                paused = false;
+              }
+            } else if (locType == DB.LOCATION.TYPE_GPS && time > lastTime) {
+              double lat = cLocation.getDouble(4);
+              double lon = cLocation.getDouble(5);
+              if (!cLocation.isNull(3)) {
+                totalDistance = cLocation.getDouble(3);
+              } else {
+                // Only for older activities
+                float[] d = {0};
+                if (lastLat != 0 || lastLon != 0) {
+                  Location.distanceBetween(lastLat, lastLon, lat, lon, d);
+                }
+                totalDistance += d[0];
+              }
+              int hr;
+              if (hrSeries != null) {
+                hr = hrSeries.valueAt(time);
+              } else {
+                hr = cLocation.isNull(7) ? 0 : cLocation.getInt(7);
+              }
+              if (hrSeries != null && hrSince >= 0) {
+                hrSeries.forEachBetween(hrSince, time, this::heartRateRecord);
+              }
+              hrSince = time;
+              record(cLocation, time, lat, lon, totalDistance, hr);
+              lastTime = time;
+              lastLat = lat;
+              lastLon = lon;
+              lapEnd = Math.max(lapEnd, time);
+            }
+            pok = cLocation.moveToNext();
+          }
+
+          enc.begin(LAP)
+              .value(timestamp(lapEnd))
+              .value(laps)
+              .value(EVENT_LAP)
+              .value(EVENT_TYPE_STOP)
+              .value(timestamp(lapStart))
+              .value(lapEnd - lapStart)
+              .value(lapTime * 1000)
+              .value(Math.round(lapDistance * 100));
+          heartRate(lapHrCount > 0 ? lapHrSum / lapHrCount : 0, lapHrMax);
+          enc.value(cLap.getLong(3) == DB.INTENSITY.ACTIVE ? 0 : 1) // active or rest
+              .value(0) // manual
+              .value(fitSport);
+          laps++;
+          end[0] = Math.max(end[0], lapEnd);
+        }
+        nextLapStart = lapEnd;
+        lok = cLap.moveToNext();
+      }
+      cLocation.close();
+    }
+    return laps;
+  }
+
+  private void record(PathCursor c, long time, double lat, double lon, double distance, int hr) {
+    enc.begin(RECORD).value(timestamp(time)).value(semicircles(lat)).value(semicircles(lon));
+    if (c.isNull(6)) {
+      enc.invalid();
+    } else {
+      long alt = Math.round((c.getDouble(6) + 500) * 5);
+      if (alt >= 0 && alt < 0xFFFF) {
+        enc.value(alt);
+      } else {
+        enc.invalid();
+      }
+    }
+    heartRate(hr);
+    if (c.isNull(8) || c.getInt(8) < 0 || c.getInt(8) >= 0xFF) {
+      enc.invalid();
+    } else {
+      enc.value(c.getInt(8));
+    }
+    enc.value(Math.round(distance * 100));
+    if (c.isNull(9)) {
+      enc.invalid();
+    } else {
+      enc.value(Math.max(-127, Math.min(126, Math.round(c.getDouble(9)))));
+    }
+  }
+
+  /** A record with only the heart rate, for the samples between the locations */
+  private void heartRateRecord(long time, int hr) {
+    enc.begin(RECORD)
+        .value(timestamp(time))
+        .invalid() // position_lat
+        .invalid() // position_long
+        .invalid(); // altitude
+    heartRate(hr);
+    enc.invalid() // cadence
+        .invalid() // distance
+        .invalid(); // temperature
+  }
+
+  /** The heart_rate field of a record, counted for the lap and the session */
+  private void heartRate(int hr) {
+    if (hr > 0 && hr < 0xFF) {
+      enc.value(hr);
+      lapHrSum += hr;
+      lapHrCount++;
+      lapHrMax = Math.max(lapHrMax, hr);
+      hrSum += hr;
+      hrCount++;
+      hrMax = Math.max(hrMax, hr);
+    } else {
+      enc.invalid();
+    }
+  }
+}
@@ -0,0 +1,227 @@
+package org.runnerup.sync.format;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Encoder for the binary FIT format. Messages are encoded as they are written, and the definition
+ * messages are emitted when a message type is first used (or its local type was reused).
+ *
+ * <p>The file header holds the size of the data, so the encoded data is kept until {@link
+ * #finish(OutputStream)}, which computes the CRCs over it. FIT data is compact, a few tens of bytes
+ * per record.
+ */
+public final class FitEncoder {
+
+  /** Seconds from the Unix epoch to the FIT epoch, 1989-12-31T00:00:00Z */
+  public static final long FIT_EPOCH_OFFSET_S = 631065600L;
+
+  // Base types
+  public static final int ENUM = 0x00;
+  public static final int SINT8 = 0x01;
+  public static final int UINT8 = 0x02;
+  public static final int SINT16 = 0x83;
+  public static final int UINT16 = 0x84;
+  public static final int SINT32 = 0x85;
+  public static final int UINT32 = 0x86;
+  public static final int UINT32Z = 0x8C;
+
+  static final int HEADER_SIZE = 14;
+  private static final int PROTOCOL_VERSION = 0x10; // 1.0
+  private static final int PROFILE_VERSION = 2100; // 21.00
+  private static final int LOCAL_TYPES = 16;
+
+  private static final int[] CRC_TABLE = {
+    0x0000, 0xCC01, 0xD801, 0x1400, 0xF001, 0x3C00, 0x2800, 0xE401,
+    0xA001, 0x6C00, 0x7800, 0xB401, 0x5000, 0x9C01, 0x8801, 0x4400
+  };
+
+  /** Definition of a message type: the global message number and its fields, in write order */
+  public static final class Message {
+    final int global;
+    private int[] fields = new int[8];
+    private int[] types = new int[8];
+    private int count = 0;
+
+    public Message(int global) {
+      this.global = global;
+    }
+
+    public Message field(int number, int baseType) {
+      if (count == fields.length) {
+        fields = Arrays.copyOf(fields, count * 2);
+        types = Arrays.copyOf(types, count * 2);
+      }
+      fields[count] = number;
+      types[count] = baseType;
+      count++;
+      return this;
+    }
+  }
+
+  private byte[] buf = new byte[16 * 1024];
+  private int len = HEADER_SIZE;
+
+  private final Message[] locals = new Message[LOCAL_TYPES];
+  private int nextLocal = 0;
+
+  private Message current;
+  private int fieldIndex;
+
+  /** Start a data message, followed by one value() or invalid() per field */
+  public FitEncoder begin(Message m) {
+    checkComplete();
+    int local = -1;
+    for (int i = 0; i < LOCAL_TYPES; i++) {
+      if (locals[i] == m) {
+        local = i;
+        break;
+      }
+    }
+    if (local < 0) {
+      local = nextLocal;
+      nextLocal = (nextLocal + 1) % LOCAL_TYPES;
+      locals[local] = m;
+      writeDefinition(local, m);
+    }
+    writeByte(local);
+    current = m;
+    fieldIndex = 0;
+    return this;
+  }
+
+  /** Write the next field, the value is truncated to the size of the field */
+  public FitEncoder value(long value) {
+    if (current == null || fieldIndex == current.count) {
+      throw new IllegalStateException("No field to write");
+    }
+    int size = size(current.types[fieldIndex++]);
+    for (int i = 0; i < size; i++) {
+      writeByte((int) (value >> (8 * i)));
+    }
+    return this;
+  }
+
+  /** Write the invalid value of the next field, the field has no value */
+  public FitEncoder invalid() {
+    if (current == null || fieldIndex == current.count) {
+      throw new IllegalStateException("No field to write");
+    }
+    return value(invalidValue(current.types[fieldIndex]));
+  }
+
+  /** Size of the encoded data so far, excluding header and CRC */
+  public int getDataSize() {
+    return len - HEADER_SIZE;
+  }
+
+  /** Write the file: header, data and CRC. The encoder cannot be used after this. */
+  public void finish(OutputStream out) throws IOException {
+    checkComplete();
+    int dataSize = len - HEADER_SIZE;
+    buf[0] = HEADER_SIZE;
+    buf[1] = PROTOCOL_VERSION;
+    buf[2] = (byte) PROFILE_VERSION;
+    buf[3] = (byte) (PROFILE_VERSION >> 8);
+    for (int i = 0; i < 4; i++) {
+      buf[4 + i] = (byte) (dataSize >> (8 * i));
+    }
+    buf[8] = '.';
+    buf[9] = 'F';
+    buf[10] = 'I';
+    buf[11] = 'T';
+    int headerCrc = crc(0, buf, 0, 12);
+    buf[12] = (byte) headerCrc;
+    buf[13] = (byte) (headerCrc >> 8);
+
+    // The file CRC covers the header too
+    int fileCrc = crc(0, buf, 0, len);
+
+    out.write(buf, 0, len);
+    out.write(fileCrc);
+    out.write(fileCrc >> 8);
+    buf = null;
+  }
+
+  /** Update the FIT CRC-16 with one byte */
+  public static int crc(int crc, int b) {
+    int tmp = CRC_TABLE[crc & 0xF];
+    crc = (crc >> 4) & 0x0FFF;
+    crc = crc ^ tmp ^ CRC_TABLE[b & 0xF];
+    tmp = CRC_TABLE[crc & 0xF];
+    crc = (crc >> 4) & 0x0FFF;
+    return crc ^ tmp ^ CRC_TABLE[(b >> 4) & 0xF];
+  }
+
+  public static int crc(int crc, byte[] data, int off, int len) {
+    for (int i = off; i < off + len; i++) {
+      crc = crc(crc, data[i]);
+    }
+    return crc;
+  }
+
+  static int size(int baseType) {
+    switch (baseType) {
+      case SINT16:
+      case UINT16:
+        return 2;
+      case SINT32:
+      case UINT32:
+      case UINT32Z:
+        return 4;
+      default:
+        return 1;
+    }
+  }
+
+  static long invalidValue(int baseType) {
+    switch (baseType) {
+      case SINT8:
+        return 0x7F;
+      case SINT16:
+        return 0x7FFF;
+      case UINT16:
+        return 0xFFFF;
+      case SINT32:
+        return 0x7FFFFFFF;
+      case UINT32:
+        return 0xFFFFFFFFL;
+      case UINT32Z:
+        return 0;
+      default:
+        return 0xFF;
+    }
+  }
+
+  private void checkComplete() {
+    if (buf == null) {
+      throw new IllegalStateException("Encoder is finished");
+    }
+    if (current != null && fieldIndex != current.count) {
+      throw new IllegalStateException(
+          "Message " + current.global + " has " + fieldIndex + " of " + current.count + " fields");
+    }
+  }
+
+  private void writeDefinition(int local, Message m) {
+    writeByte(0x40 | local);
+    writeByte(0); // reserved
+    writeByte(0); // little endian
+    writeByte(m.global);
+    writeByte(m.global >> 8);
+    writeByte(m.count);
+    for (int i = 0; i < m.count; i++) {
+      writeByte(m.fields[i]);
+      writeByte(size(m.types[i]));
+      writeByte(m.types[i]);
+    }
+  }
+
+  private void writeByte(int b) {
+    if (len == buf.length) {
+      buf = Arrays.copyOf(buf, buf.length * 2);
+    }
+    buf[len++] = (byte) b;
+  }
+}
@@ -26,6 +26,7 @@ import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
 import org.runnerup.common.util.Constants.DB;
+import org.runnerup.data.HRSeries;
 import org.runnerup.data.PathCursor;
 import org.runnerup.data.PathSimplifier;
 import org.runnerup.core.util.KXmlSerializer;
@@ -181,6 +182,7 @@ public class GPX {
       DB.PRIMARY_KEY
     };
     PathCursor cLocation = new PathCursor(mDB, activityId, pColumns, 15, simplifier);
+    HRSeries hrSeries = HRSeries.load(mDB, activityId);
     boolean lok = cLap.moveToFirst();
     boolean pok = cLocation.moveToFirst();
 
@@ -250,7 +252,13 @@ public class GPX {
                 // Cluetrust)
                 // Check app specific like Strava: https://strava.github.io/api/v3/uploads/
                 // Private extensions are normally not used externally
-                boolean isHr = !cLocation.isNull(6);
+                int hr;
+                if (hrSeries != null) {
+                  hr = hrSeries.valueAt(time);
+                } else {
+                  hr = cLocation.isNull(6) ? 0 : cLocation.getInt(6);
+                }
+                boolean isHr = hr > 0;
                 boolean isCad = !cLocation.isNull(7);
                 boolean isTemp = !cLocation.isNull(8);
                 boolean isPres = !cLocation.isNull(9) && exportOptions.accuracyExtensions;
@@ -278,7 +286,7 @@ public class GPX {
                 if (isHr) {
                   // Same ns for Garmin/Cluetrust extensions
                   mXML.startTag("", "gpxtpx:hr");
-                  String bpm = Integer.toString(cLocation.getInt(6));
+                  String bpm = Integer.toString(hr);
                   mXML.text(bpm);
                   mXML.endTag("", "gpxtpx:hr");
                 }
@@ -0,0 +1,370 @@
+package org.runnerup.sync.format;
+
+import java.util.Arrays;
+import org.runnerup.common.util.Constants.DB;
+
+/**
+ * An activity read from a GPX or TCX file. Points and laps are kept in primitive columns so large
+ * files do not create an object per point; missing values are NaN (or -1 for heart rate). Points
+ * without a position, as recorded indoors or on a treadmill, have NaN latitude and longitude.
+ */
+public final class ImportedActivity {
+
+  private static final double EARTH_RADIUS_M = 6371008.8;
+
+  public final String source;
+  public int sport = DB.ACTIVITY.SPORT_RUNNING;
+  public String name;
+  public String comment;
+
+  private int size = 0;
+  private long[] time = new long[256];
+  private double[] latitude = new double[256];
+  private double[] longitude = new double[256];
+  private double[] altitude = new double[256];
+  private double[] distance = new double[256];
+  private int[] hr = new int[256];
+  private float[] cadence = new float[256];
+  private float[] temperature = new float[256];
+  private int[] lap = new int[256];
+  /** The point starts a new track segment, the activity was paused before it */
+  private boolean[] resume = new boolean[256];
+
+  private int laps = 0;
+  private long[] lapStart = new long[8];
+  private double[] lapTime = new double[8];
+  private double[] lapDistance = new double[8];
+  private int[] lapIntensity = new int[8];
+
+  private boolean newSegment = true;
+  /** The last point with a position in the current segment, -1 if none */
+  private int lastPositioned = -1;
+
+  public ImportedActivity(String source) {
+    this.source = source;
+  }
+
+  /** Start a lap, points added after this belong to it */
+  public void startLap(long startTime, int intensity) {
+    if (laps == lapStart.length) {
+      int n = laps * 2;
+      lapStart = Arrays.copyOf(lapStart, n);
+      lapTime = Arrays.copyOf(lapTime, n);
+      lapDistance = Arrays.copyOf(lapDistance, n);
+      lapIntensity = Arrays.copyOf(lapIntensity, n);
+    }
+    lapStart[laps] = startTime;
+    lapTime[laps] = Double.NaN;
+    lapDistance[laps] = Double.NaN;
+    lapIntensity[laps] = intensity;
+    laps++;
+  }
+
+  /** Totals of the current lap, as recorded in the file */
+  public void setLapTotals(double timeS, double distanceM) {
+    if (laps > 0) {
+      lapTime[laps - 1] = timeS;
+      lapDistance[laps - 1] = distanceM;
+    }
+  }
+
+  /** The next point starts a new track segment */
+  public void startSegment() {
+    newSegment = true;
+  }
+
+  /**
+   * Add a point, points must be added in time order.
+   *
+   * @param lat latitude, NaN for a point without a position (also longitude)
+   * @param distanceM distance from the start as recorded in the file, NaN if not recorded
+   */
+  public void addPoint(
+      long timeMs,
+      double lat,
+      double lon,
+      double alt,
+      double distanceM,
+      int heartRate,
+      float cad,
+      float temp) {
+    if (size > 0 && timeMs < time[size - 1]) {
+      // Not in time order, keep the track consistent
+      return;
+    }
+    if (size == time.length) {
+      grow();
+    }
+    if (laps == 0) {
+      startLap(timeMs, DB.INTENSITY.ACTIVE);
+    }
+    boolean segmentStart = newSegment && size > 0;
+    if (newSegment) {
+      lastPositioned = -1;
+    }
+    boolean positioned = !Double.isNaN(lat) && !Double.isNaN(lon);
+    if (Double.isNaN(distanceM)) {
+      // Compute from the positions, not over pauses
+      distanceM = size > 0 ? distance[size - 1] : 0;
+      if (positioned && lastPositioned >= 0) {
+        distanceM +=
+            distanceBetween(latitude[lastPositioned], longitude[lastPositioned], lat, lon);
+      }
+    }
+    time[size] = timeMs;
+    latitude[size] = lat;
+    longitude[size] = lon;
+    altitude[size] = alt;
+    distance[size] = distanceM;
+    hr[size] = heartRate;
+    cadence[size] = cad;
+    temperature[size] = temp;
+    lap[size] = laps - 1;
+    resume[size] = segmentStart;
+    newSegment = false;
+    if (positioned) {
+      lastPositioned = size;
+    }
+    size++;
+  }
+
+  public boolean hasPosition(int i) {
+    return !Double.isNaN(latitude[i]) && !Double.isNaN(longitude[i]);
+  }
+
+  /**
+   * Give the points without a position the last known one (the first one for leading points, 0 if
+   * there is none), as the location table requires a position. Distances are not changed.
+   */
+  public void fillMissingPositions() {
+    double lat = 0;
+    double lon = 0;
+    for (int i = 0; i < size; i++) {
+      if (hasPosition(i)) {
+        lat = latitude[i];
+        lon = longitude[i];
+        break;
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      if (hasPosition(i)) {
+        lat = latitude[i];
+        lon = longitude[i];
+      } else {
+        latitude[i] = lat;
+        longitude[i] = lon;
+      }
+    }
+  }
+
+  private void grow() {
+    int n = size * 2;
+    time = Arrays.copyOf(time, n);
+    latitude = Arrays.copyOf(latitude, n);
+    longitude = Arrays.copyOf(longitude, n);
+    altitude = Arrays.copyOf(altitude, n);
+    distance = Arrays.copyOf(distance, n);
+    hr = Arrays.copyOf(hr, n);
+    cadence = Arrays.copyOf(cadence, n);
+    temperature = Arrays.copyOf(temperature, n);
+    lap = Arrays.copyOf(lap, n);
+    resume = Arrays.copyOf(resume, n);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public long getTime(int i) {
+    return time[i];
+  }
+
+  public double getLatitude(int i) {
+    return latitude[i];
+  }
+
+  public double getLongitude(int i) {
+    return longitude[i];
+  }
+
+  public double getAltitude(int i) {
+    return altitude[i];
+  }
+
+  public double getDistance(int i) {
+    return distance[i];
+  }
+
+  public int getHr(int i) {
+    return hr[i];
+  }
+
+  public float getCadence(int i) {
+    return cadence[i];
+  }
+
+  public float getTemperature(int i) {
+    return temperature[i];
+  }
+
+  public int getLap(int i) {
+    return lap[i];
+  }
+
+  public boolean isResume(int i) {
+    return resume[i];
+  }
+
+  public int getLapCount() {
+    return laps;
+  }
+
+  public long getLapStart(int l) {
+    return lapStart[l];
+  }
+
+  /** Lap time in s as recorded, NaN if not recorded */
+  public double getLapTime(int l) {
+    return lapTime[l];
+  }
+
+  /** Lap distance in m as recorded, NaN if not recorded */
+  public double getLapDistance(int l) {
+    return lapDistance[l];
+  }
+
+  public int getLapIntensity(int l) {
+    return lapIntensity[l];
+  }
+
+  /** Start time in ms, from the first point or lap; -1 if the activity is empty */
+  public long getStartTime() {
+    if (size > 0) {
+      return laps > 0 ? Math.min(time[0], lapStart[0]) : time[0];
+    }
+    return laps > 0 ? lapStart[0] : -1;
+  }
+
+  /** Time in ms from the first to the last point, the pauses between segments excluded */
+  public long getMovingTime() {
+    long sum = 0;
+    for (int i = 1; i < size; i++) {
+      if (!resume[i]) {
+        sum += time[i] - time[i - 1];
+      }
+    }
+    return sum;
+  }
+
+  /** Total distance in m: the sum of the recorded laps, or from the points */
+  public double getTotalDistance() {
+    double sum = 0;
+    for (int l = 0; l < laps; l++) {
+      if (Double.isNaN(lapDistance[l])) {
+        return size > 0 ? distance[size - 1] : 0;
+      }
+      sum += lapDistance[l];
+    }
+    return sum;
+  }
+
+  /**
+   * Fingerprint for duplicate detection: the start time in seconds. The same recording exported
+   * to several files or formats has the same start, different recordings cannot.
+   */
+  public long getFingerprint() {
+    long start = getStartTime();
+    return start < 0 ? -1 : start / 1000;
+  }
+
+  /** Great circle distance in m */
+  public static double distanceBetween(double lat1, double lon1, double lat2, double lon2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a =
+        Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2)
+                * Math.sin(dLon / 2);
+    return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+
+  /**
+   * Parse an xsd:dateTime as used in GPX and TCX, such as 2024-05-01T10:00:00Z,
+   * 2024-05-01T10:00:00.250+02:00 or without zone (taken as UTC).
+   *
+   * @return ms since the epoch, or -1 if not a valid time
+   */
+  public static long parseTime(String s) {
+    s = s.trim();
+    if (s.length() < 19
+        || s.charAt(4) != '-'
+        || s.charAt(7) != '-'
+        || (s.charAt(10) != 'T' && s.charAt(10) != ' ')
+        || s.charAt(13) != ':'
+        || s.charAt(16) != ':') {
+      return -1;
+    }
+    int year = digits(s, 0, 4);
+    int month = digits(s, 5, 2);
+    int day = digits(s, 8, 2);
+    int hour = digits(s, 11, 2);
+    int minute = digits(s, 14, 2);
+    int second = digits(s, 17, 2);
+    if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 24
+        || minute < 0 || minute > 59 || second < 0 || second > 60) {
+      return -1;
+    }
+    int pos = 19;
+    int millis = 0;
+    if (pos < s.length() && s.charAt(pos) == '.') {
+      pos++;
+      int scale = 100;
+      while (pos < s.length() && Character.isDigit(s.charAt(pos))) {
+        millis += (s.charAt(pos++) - '0') * scale;
+        scale /= 10;
+      }
+    }
+    long offsetMs = 0;
+    if (pos < s.length()) {
+      char c = s.charAt(pos);
+      if (c == 'Z' && pos + 1 == s.length()) {
+        offsetMs = 0;
+      } else if ((c == '+' || c == '-') && s.length() - pos == 6 && s.charAt(pos + 3) == ':') {
+        int oh = digits(s, pos + 1, 2);
+        int om = digits(s, pos + 4, 2);
+        if (oh < 0 || om < 0) {
+          return -1;
+        }
+        offsetMs = (oh * 60L + om) * 60_000L * (c == '+' ? 1 : -1);
+      } else {
+        return -1;
+      }
+    }
+    long days = daysFromCivil(year, month, day);
+    return ((days * 24 + hour) * 60 + minute) * 60_000L + second * 1000L + millis - offsetMs;
+  }
+
+  private static int digits(String s, int pos, int n) {
+    int v = 0;
+    for (int i = pos; i < pos + n; i++) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      v = v * 10 + (c - '0');
+    }
+    return v;
+  }
+
+  /** Days since 1970-01-01 in the proleptic Gregorian calendar */
+  private static long daysFromCivil(int y, int m, int d) {
+    y -= m <= 2 ? 1 : 0;
+    long era = (y >= 0 ? y : y - 399) / 400;
+    long yoe = y - era * 400;
+    long doy = (153L * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+    long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    return era * 146097 + doe - 719468;
+  }
+}
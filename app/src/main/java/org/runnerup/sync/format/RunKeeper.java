@@ -28,7 +28,6 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -36,17 +35,16 @@ import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.runnerup.common.util.Constants;
 import org.runnerup.common.util.Constants.DB;
+import org.runnerup.data.HRSeries;
 import org.runnerup.data.PathCursor;
 import org.runnerup.data.PathSimplifier;
 import org.runnerup.data.entities.ActivityEntity;
 import org.runnerup.data.entities.LapEntity;
 import org.runnerup.data.entities.LocationEntity;
 import org.runnerup.sync.RunKeeperSynchronizer;
+import org.runnerup.core.util.JsonReader;
 import org.runnerup.core.util.JsonWriter;
 import org.runnerup.core.workout.Sport;
 
@@ -119,14 +117,28 @@ public class RunKeeper {
             null);
     if (cursor.moveToFirst()) {
       long startTime = cursor.getLong(0);
-      do {
-        if (!cursor.isNull(1)) {
-          w.beginObject();
-          w.name("timestamp").value((cursor.getLong(0) - startTime) / 1000);
-          w.name("heart_rate").value(Integer.toString(cursor.getInt(1)));
-          w.endObject();
+      HRSeries hrSeries = HRSeries.load(mDB, activityId);
+      if (hrSeries != null) {
+        // All samples from the sensor, not only those at the locations
+        for (int i = 0; i < hrSeries.size(); i++) {
+          long time = hrSeries.getTime(i);
+          if (time >= startTime) {
+            w.beginObject();
+            w.name("timestamp").value((time - startTime) / 1000);
+            w.name("heart_rate").value(Integer.toString(hrSeries.getValue(i)));
+            w.endObject();
+          }
         }
-      } while (cursor.moveToNext());
+      } else {
+        do {
+          if (!cursor.isNull(1)) {
+            w.beginObject();
+            w.name("timestamp").value((cursor.getLong(0) - startTime) / 1000);
+            w.name("heart_rate").value(Integer.toString(cursor.getInt(1)));
+            w.endObject();
+          }
+        } while (cursor.moveToNext());
+      }
     }
     cursor.close();
   }
@@ -175,20 +187,72 @@ public class RunKeeper {
     cursor.close();
   }
 
-  public static ActivityEntity parseToActivity(JSONObject response, double unitMeters)
-      throws JSONException {
+  /** A point of the response, merged from the distance, path and heart_rate arrays */
+  private static final class Point {
+    double distance = Double.NaN;
+    double latitude = Double.NaN;
+    double longitude = Double.NaN;
+    double altitude = Double.NaN;
+    int hr = -1;
+    String type;
+  }
+
+  /**
+   * Parse a FitnessActivity response, streamed token by token. The distance, path and heart_rate
+   * arrays are merged on their timestamps, so the points are only created when all are read.
+   *
+   * @return the activity, or null if the start time cannot be parsed
+   */
+  public static ActivityEntity parseToActivity(JsonReader reader, double unitMeters)
+      throws IOException {
     ActivityEntity newActivity = new ActivityEntity();
-    newActivity.setSport(
-        RunKeeperSynchronizer.runkeeper2sportMap.get(response.getString("type")).getDbValue());
-    if (response.has("notes")) {
-      newActivity.setComment(response.getString("notes"));
+    String startTime = null;
+    boolean hasHr = false;
+    SortedMap<Long, Point> pointsMap = new TreeMap<>();
+
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (reader.peek() == JsonReader.Token.NULL) {
+        reader.nextNull();
+        continue;
+      }
+      switch (name) {
+        case "type":
+          Sport sport = RunKeeperSynchronizer.runkeeper2sportMap.get(reader.nextString());
+          newActivity.setSport((sport != null ? sport : Sport.OTHER).getDbValue());
+          break;
+        case "notes":
+          newActivity.setComment(reader.nextString());
+          break;
+        case "duration":
+          newActivity.setTime((long) reader.nextDouble());
+          break;
+        case "total_distance":
+          newActivity.setDistance(reader.nextDouble());
+          break;
+        case "start_time":
+          startTime = reader.nextString();
+          break;
+        case "distance":
+        case "path":
+          readPoints(reader, name, pointsMap);
+          break;
+        case "heart_rate":
+          hasHr = readPoints(reader, name, pointsMap);
+          break;
+        default:
+          reader.skipValue();
+          break;
+      }
     }
-    newActivity.setTime((long) Float.parseFloat(response.getString("duration")));
-    newActivity.setDistance(Double.parseDouble(response.getString("total_distance")));
+    reader.endObject();
 
-    String startTime = response.getString("start_time");
     SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss", Locale.US);
     try {
+      if (startTime == null) {
+        throw new ParseException("No start_time", 0);
+      }
       newActivity.setStartTime(format.parse(startTime));
     } catch (ParseException e) {
       Log.e(Constants.LOG, e.getMessage());
@@ -196,15 +260,8 @@ public class RunKeeper {
     }
 
     List<LapEntity> laps = new ArrayList<>();
-    List<LocationEntity> locations = new ArrayList<>();
-
-    JSONArray distance = response.getJSONArray("distance");
-    JSONArray path = response.getJSONArray("path");
-    JSONArray hr = response.getJSONArray("heart_rate");
-
-    SortedMap<Long, HashMap<String, String>> pointsValueMap = createPointsMap(distance, path, hr);
-    Iterator<Map.Entry<Long, HashMap<String, String>>> points =
-        pointsValueMap.entrySet().iterator();
+    List<LocationEntity> locations = new ArrayList<>(pointsMap.size());
+    Iterator<Map.Entry<Long, Point>> points = pointsMap.entrySet().iterator();
 
     // lap hr
     int maxHr = 0;
@@ -219,43 +276,38 @@ public class RunKeeper {
     int countOverall = 0;
 
     while (points.hasNext()) {
-      Map.Entry<Long, HashMap<String, String>> timePoint = points.next();
-      HashMap<String, String> values = timePoint.getValue();
+      Map.Entry<Long, Point> timePoint = points.next();
+      Point p = timePoint.getValue();
 
       LocationEntity lv = new LocationEntity();
       lv.setActivityId(newActivity.getId());
       lv.setTime(TimeUnit.SECONDS.toMillis(newActivity.getStartTime()) + timePoint.getKey());
 
-      String dist = values.get("distance");
-      if (dist == null) {
+      if (Double.isNaN(p.distance)) {
         continue;
       }
-      String lat = values.get("latitude");
-      String lon = values.get("longitude");
-      String alt = values.get("altitude");
-      String heart = values.get("heart_rate");
-      String type = values.get("type");
+      float dist = (float) p.distance;
 
-      if (lat == null || lon == null) {
+      if (Double.isNaN(p.latitude) || Double.isNaN(p.longitude)) {
         continue;
       } else {
-        lv.setLatitude(Double.valueOf(lat));
-        lv.setLongitude(Double.valueOf(lon));
+        lv.setLatitude(p.latitude);
+        lv.setLongitude(p.longitude);
       }
-      if (alt != null) {
-        lv.setAltitude(Double.valueOf(alt));
+      if (!Double.isNaN(p.altitude)) {
+        lv.setAltitude(p.altitude);
       }
 
-      if (pointsValueMap.firstKey().equals(timePoint.getKey())) {
+      if (pointsMap.firstKey().equals(timePoint.getKey())) {
         lv.setType(DB.LOCATION.TYPE_START);
       } else if (!points.hasNext()) {
         lv.setType(DB.LOCATION.TYPE_END);
-      } else if (type != null) {
-        lv.setType(RunKeeperSynchronizer.POINT_TYPE.get(type));
+      } else if (p.type != null) {
+        lv.setType(RunKeeperSynchronizer.POINT_TYPE.get(p.type));
       }
       // lap and activity max and avg hr
-      if (heart != null) {
-        lv.setHr(Integer.valueOf(heart));
+      if (p.hr >= 0) {
+        lv.setHr(p.hr);
         maxHr = Math.max(maxHr, lv.getHr());
         maxHrOverall = Math.max(maxHrOverall, lv.getHr());
         sumHr += lv.getHr();
@@ -264,7 +316,7 @@ public class RunKeeper {
         countOverall++;
       }
 
-      meters = Float.parseFloat(dist) - meters;
+      meters = dist - meters;
       time = timePoint.getKey() - time;
       if (time > 0) {
         float speed = meters / (float) TimeUnit.MILLISECONDS.toSeconds(time);
@@ -275,10 +327,10 @@ public class RunKeeper {
 
       // create lap if distance greater than configured lap distance
 
-      if (Float.parseFloat(dist) >= unitMeters * laps.size()) {
+      if (dist >= unitMeters * laps.size()) {
         LapEntity newLap = new LapEntity();
         newLap.setLap(laps.size());
-        newLap.setDistance(Double.valueOf(dist));
+        newLap.setDistance((double) dist);
         newLap.setTime((int) TimeUnit.MILLISECONDS.toSeconds(timePoint.getKey()));
         newLap.setActivityId(newActivity.getId());
         laps.add(newLap);
@@ -286,11 +338,11 @@ public class RunKeeper {
         // update previous lap with duration and distance
         if (laps.size() > 1) {
           LapEntity previousLap = laps.get(laps.size() - 2);
-          previousLap.setDistance(Float.parseFloat(dist) - previousLap.getDistance());
+          previousLap.setDistance(dist - previousLap.getDistance());
           previousLap.setTime(
               (int) TimeUnit.MILLISECONDS.toSeconds(timePoint.getKey()) - previousLap.getTime());
 
-          if (hr != null && hr.length() > 0) {
+          if (hasHr && count > 0) {
             previousLap.setMaxHr(maxHr);
             previousLap.setAvgHr(sumHr / count);
           }
@@ -302,11 +354,11 @@ public class RunKeeper {
       // update last lap with duration and distance
       if (!points.hasNext()) {
         LapEntity previousLap = laps.get(laps.size() - 1);
-        previousLap.setDistance(Float.parseFloat(dist) - previousLap.getDistance());
+        previousLap.setDistance(dist - previousLap.getDistance());
         previousLap.setTime(
             (int) TimeUnit.MILLISECONDS.toSeconds(timePoint.getKey()) - previousLap.getTime());
 
-        if (hr != null && hr.length() > 0) {
+        if (hasHr && count > 0) {
           previousLap.setMaxHr(maxHr);
           previousLap.setAvgHr(sumHr / count);
         }
@@ -329,53 +381,86 @@ public class RunKeeper {
     return newActivity;
   }
 
-  private static SortedMap<Long, HashMap<String, String>> createPointsMap(
-      JSONArray distance, JSONArray path, JSONArray hr) throws JSONException {
-    SortedMap<Long, HashMap<String, String>> result = new TreeMap<>();
-
-    if (distance != null && distance.length() > 0) {
-      for (int i = 0; i < distance.length(); i++) {
-        JSONObject o = distance.getJSONObject(i);
-        Long key = TimeUnit.SECONDS.toMillis((long) Float.parseFloat(o.getString("timestamp")));
-        HashMap<String, String> value = new HashMap<>();
-        String valueMapKey = "distance";
-        String valueMapValue = o.getString(valueMapKey);
-        value.put(valueMapKey, valueMapValue);
-        result.put(key, value);
-      }
-    }
-
-    if (path != null && path.length() > 0) {
-      for (int i = 0; i < path.length(); i++) {
-        JSONObject o = path.getJSONObject(i);
-        Long key = TimeUnit.SECONDS.toMillis((long) Float.parseFloat(o.getString("timestamp")));
-        HashMap<String, String> value = result.get(key);
-        if (value == null) {
-          value = new HashMap<>();
+  /**
+   * Read one of the timestamped arrays into the points, keyed on the timestamp in ms
+   *
+   * @return true if the array had any element
+   */
+  private static boolean readPoints(JsonReader reader, String array, SortedMap<Long, Point> result)
+      throws IOException {
+    boolean any = false;
+    reader.beginArray();
+    while (reader.hasNext()) {
+      any = true;
+      // Read the values first, the timestamp may come last
+      long timestamp = -1;
+      double distance = Double.NaN;
+      double latitude = Double.NaN;
+      double longitude = Double.NaN;
+      double altitude = Double.NaN;
+      int hr = -1;
+      String type = null;
+
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (reader.peek() == JsonReader.Token.NULL) {
+          reader.nextNull();
+          continue;
         }
-        String[] attrs = new String[] {"latitude", "longitude", "altitude", "type"};
-        for (String valueMapKey : attrs) {
-          String valueMapValue = o.getString(valueMapKey);
-          value.put(valueMapKey, valueMapValue);
+        switch (name) {
+          case "timestamp":
+            timestamp = TimeUnit.SECONDS.toMillis((long) reader.nextDouble());
+            break;
+          case "distance":
+            distance = reader.nextDouble();
+            break;
+          case "latitude":
+            latitude = reader.nextDouble();
+            break;
+          case "longitude":
+            longitude = reader.nextDouble();
+            break;
+          case "altitude":
+            altitude = reader.nextDouble();
+            break;
+          case "type":
+            type = reader.nextString();
+            break;
+          case "heart_rate":
+            hr = (int) reader.nextDouble();
+            break;
+          default:
+            reader.skipValue();
+            break;
         }
-        result.put(key, value);
       }
-    }
+      reader.endObject();
+      if (timestamp < 0) {
+        continue;
+      }
 
-    if (hr != null && hr.length() > 0) {
-      for (int i = 0; i < hr.length(); i++) {
-        JSONObject o = hr.getJSONObject(i);
-        Long key = TimeUnit.SECONDS.toMillis((long) Float.parseFloat(o.getString("timestamp")));
-        HashMap<String, String> value = result.get(key);
-        if (value == null) {
-          value = new HashMap<>();
-        }
-        String valueMapKey = "heart_rate";
-        String valueMapValue = o.getString(valueMapKey);
-        value.put(valueMapKey, valueMapValue);
-        result.put(key, value);
+      Point p = result.get(timestamp);
+      if (p == null) {
+        p = new Point();
+        result.put(timestamp, p);
+      }
+      switch (array) {
+        case "distance":
+          p.distance = distance;
+          break;
+        case "path":
+          p.latitude = latitude;
+          p.longitude = longitude;
+          p.altitude = altitude;
+          p.type = type;
+          break;
+        default:
+          p.hr = hr;
+          break;
       }
     }
-    return result;
+    reader.endArray();
+    return any;
   }
 }
@@ -29,6 +29,7 @@ import java.util.Locale;
 import java.util.TimeZone;
 import org.runnerup.BuildConfig;
 import org.runnerup.common.util.Constants.DB;
+import org.runnerup.data.HRSeries;
 import org.runnerup.data.PathCursor;
 import org.runnerup.data.PathSimplifier;
 import org.runnerup.core.util.KXmlSerializer;
@@ -297,6 +298,7 @@ public class TCX {
       DB.PRIMARY_KEY // , DB.LOCATION.TEMPERATURE, DB.LOCATION.PRESSURE
     };
     PathCursor cLocation = new PathCursor(mDB, activityId, pColumns, 9, simplifier);
+    HRSeries hrSeries = HRSeries.load(mDB, activityId);
     boolean lok = cLap.moveToFirst();
     boolean pok = cLocation.moveToFirst();
 
@@ -338,6 +340,9 @@ public class TCX {
           double last_lat = 0;
           double last_longi = 0;
           long last_time = 0;
+          // Heart rate samples after this time are written between the track points, -1 when
+          // paused
+          long hrSince = -1;
           while (pok && cLocation.getLong(0) == lap) {
             int locType = cLocation.getInt(1);
             if (hasTrackpoints
@@ -348,11 +353,27 @@ public class TCX {
               mXML.startTag("", "Track");
             }
             long time = cLocation.getLong(2);
+            if (locType == DB.LOCATION.TYPE_START
+                || locType == DB.LOCATION.TYPE_RESUME
+                || locType == DB.LOCATION.TYPE_AUTO_RESUME) {
+              hrSince = time;
+            } else if (locType == DB.LOCATION.TYPE_PAUSE
+                || locType == DB.LOCATION.TYPE_AUTO_PAUSE
+                || locType == DB.LOCATION.TYPE_END) {
+              if (hasTrackpoints && hrSeries != null && hrSince >= 0) {
+                hrSeries.forEachBetween(hrSince, time, this::exportHeartRatePoint);
+              }
+              hrSince = -1;
+            }
             if (locType == DB.LOCATION.TYPE_GPS && time > last_time) {
               if (!hasTrackpoints) {
                 mXML.startTag("", "Track");
               }
               hasTrackpoints = true;
+              if (hrSeries != null && hrSince >= 0) {
+                hrSeries.forEachBetween(hrSince, time, this::exportHeartRatePoint);
+              }
+              hrSince = time;
 
               mXML.startTag("", "Trackpoint");
               mXML.startTag("", "Time");
@@ -389,17 +410,19 @@ public class TCX {
               mXML.startTag("", "DistanceMeters");
               mXML.text("" + totalDistance);
               mXML.endTag("", "DistanceMeters");
-              if (!cLocation.isNull(7)) {
-                long hr = cLocation.getInt(7);
-                if (hr > 0) {
-
-                  mXML.startTag("", "HeartRateBpm");
-                  mXML.startTag("", "Value");
-                  String bpm = Long.toString(hr);
-                  mXML.text(bpm);
-                  mXML.endTag("", "Value");
-                  mXML.endTag("", "HeartRateBpm");
-                }
+              long hr;
+              if (hrSeries != null) {
+                hr = hrSeries.valueAt(time);
+              } else {
+                hr = cLocation.isNull(7) ? 0 : cLocation.getInt(7);
+              }
+              if (hr > 0) {
+                mXML.startTag("", "HeartRateBpm");
+                mXML.startTag("", "Value");
+                String bpm = Long.toString(hr);
+                mXML.text(bpm);
+                mXML.endTag("", "Value");
+                mXML.endTag("", "HeartRateBpm");
               }
 
               boolean isCad = !cLocation.isNull(8);
@@ -498,6 +521,20 @@ public class TCX {
     cLocation.close();
   }
 
+  /** A Trackpoint with only the heart rate, for the samples between the recorded locations */
+  private void exportHeartRatePoint(long time, int bpm) throws IOException {
+    mXML.startTag("", "Trackpoint");
+    mXML.startTag("", "Time");
+    mXML.text(formatTime(time));
+    mXML.endTag("", "Time");
+    mXML.startTag("", "HeartRateBpm");
+    mXML.startTag("", "Value");
+    mXML.text(Integer.toString(bpm));
+    mXML.endTag("", "Value");
+    mXML.endTag("", "HeartRateBpm");
+    mXML.endTag("", "Trackpoint");
+  }
+
   public String getNotes() {
     return notes;
   }
@@ -0,0 +1,313 @@
+package org.runnerup.sync.format;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.runnerup.common.util.Constants.DB;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Streaming parser for GPX and TCX files, the formats written by {@link GPX} and {@link TCX}.
+ * Elements are matched on their local name, so the namespace prefixes used by different tools do
+ * not matter. Trackpoint extensions for heart rate, cadence and temperature (Garmin
+ * TrackPointExtension, TPX and plain elements) are read.
+ */
+public final class XmlActivityParser {
+
+  private final XmlPullParser parser;
+  private final String source;
+  private final List<ImportedActivity> result = new ArrayList<>();
+
+  private ImportedActivity activity;
+
+  // Current trackpoint
+  private long time;
+  private double lat;
+  private double lon;
+  private double alt;
+  private double distance;
+  private int hr;
+  private float cadence;
+  private float temperature;
+
+  /**
+   * @param parser a namespace unaware parser with the file as input
+   * @param source name of the file, for logging
+   */
+  public XmlActivityParser(XmlPullParser parser, String source) {
+    this.parser = parser;
+    this.source = source;
+  }
+
+  /** Parse the file, a GPX file returns an activity per track, TCX per Activity */
+  public List<ImportedActivity> parse() throws XmlPullParserException, IOException {
+    int event = parser.getEventType();
+    while (event != XmlPullParser.END_DOCUMENT) {
+      if (event == XmlPullParser.START_TAG) {
+        String name = localName();
+        if (name.equals("trk")) {
+          parseGpxTrack();
+        } else if (name.equals("Activity")) {
+          parseTcxActivity();
+        }
+      }
+      event = parser.next();
+    }
+    return result;
+  }
+
+  private String localName() {
+    String name = parser.getName();
+    int colon = name.indexOf(':');
+    return colon < 0 ? name : name.substring(colon + 1);
+  }
+
+  private String text() throws XmlPullParserException, IOException {
+    return parser.nextText().trim();
+  }
+
+  private void parseGpxTrack() throws XmlPullParserException, IOException {
+    activity = new ImportedActivity(source);
+    int depth = parser.getDepth();
+    int event;
+    while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+      if (event == XmlPullParser.END_TAG && parser.getDepth() == depth) {
+        break;
+      }
+      if (event != XmlPullParser.START_TAG) {
+        continue;
+      }
+      switch (localName()) {
+        case "name":
+          activity.name = text();
+          break;
+        case "desc":
+          activity.comment = text();
+          break;
+        case "type":
+          activity.sport = sport(text());
+          break;
+        case "trkseg":
+          activity.startSegment();
+          break;
+        case "trkpt":
+          startPoint();
+          lat = parseDouble(parser.getAttributeValue(null, "lat"));
+          lon = parseDouble(parser.getAttributeValue(null, "lon"));
+          parsePoint();
+          break;
+        default:
+          break;
+      }
+    }
+    finish();
+  }
+
+  private void parseTcxActivity() throws XmlPullParserException, IOException {
+    activity = new ImportedActivity(source);
+    String sport = parser.getAttributeValue(null, "Sport");
+    if (sport != null) {
+      activity.sport = sport(sport);
+    }
+    int depth = parser.getDepth();
+    int event;
+    while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+      if (event == XmlPullParser.END_TAG && parser.getDepth() == depth) {
+        break;
+      }
+      if (event != XmlPullParser.START_TAG) {
+        continue;
+      }
+      switch (localName()) {
+        case "Lap":
+          parseTcxLap();
+          break;
+        case "Notes":
+          activity.comment = text();
+          break;
+        default:
+          break;
+      }
+    }
+    finish();
+  }
+
+  private void parseTcxLap() throws XmlPullParserException, IOException {
+    long start = ImportedActivity.parseTime(nonNull(parser.getAttributeValue(null, "StartTime")));
+    double lapTime = Double.NaN;
+    double lapDistance = Double.NaN;
+    boolean started = false;
+    int tracks = 0;
+    int depth = parser.getDepth();
+    int event;
+    while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+      if (event == XmlPullParser.END_TAG && parser.getDepth() == depth) {
+        break;
+      }
+      if (event != XmlPullParser.START_TAG) {
+        continue;
+      }
+      switch (localName()) {
+        case "TotalTimeSeconds":
+          lapTime = parseDouble(text());
+          break;
+        case "DistanceMeters":
+          // Lap level, the trackpoint distance is read in parsePoint()
+          lapDistance = parseDouble(text());
+          break;
+        case "Intensity":
+          int intensity =
+              text().equalsIgnoreCase("Resting") ? DB.INTENSITY.RESTING : DB.INTENSITY.ACTIVE;
+          if (!started) {
+            // Intensity normally comes before the track
+            activity.startLap(start, intensity);
+            started = true;
+          }
+          break;
+        case "Track":
+          if (!started) {
+            activity.startLap(start, DB.INTENSITY.ACTIVE);
+            started = true;
+          }
+          // A Track is written per Lap, continuing the previous lap. Further Tracks in the same
+          // lap follow a pause.
+          if (tracks++ > 0) {
+            activity.startSegment();
+          }
+          break;
+        case "Trackpoint":
+          if (!started) {
+            activity.startLap(start, DB.INTENSITY.ACTIVE);
+            started = true;
+          }
+          startPoint();
+          parsePoint();
+          break;
+        default:
+          break;
+      }
+    }
+    if (!started) {
+      activity.startLap(start, DB.INTENSITY.ACTIVE);
+    }
+    activity.setLapTotals(lapTime, lapDistance);
+  }
+
+  private void startPoint() {
+    time = -1;
+    lat = Double.NaN;
+    lon = Double.NaN;
+    alt = Double.NaN;
+    distance = Double.NaN;
+    hr = -1;
+    cadence = Float.NaN;
+    temperature = Float.NaN;
+  }
+
+  /** Read the children of trkpt or Trackpoint, including extensions */
+  private void parsePoint() throws XmlPullParserException, IOException {
+    int depth = parser.getDepth();
+    int event;
+    while ((event = parser.next()) != XmlPullParser.END_DOCUMENT) {
+      if (event == XmlPullParser.END_TAG && parser.getDepth() == depth) {
+        break;
+      }
+      if (event != XmlPullParser.START_TAG) {
+        continue;
+      }
+      switch (localName()) {
+        case "time":
+        case "Time":
+          time = ImportedActivity.parseTime(text());
+          break;
+        case "LatitudeDegrees":
+          lat = parseDouble(text());
+          break;
+        case "LongitudeDegrees":
+          lon = parseDouble(text());
+          break;
+        case "ele":
+        case "AltitudeMeters":
+          alt = parseDouble(text());
+          break;
+        case "DistanceMeters":
+          distance = parseDouble(text());
+          break;
+        case "hr":
+        case "heartrate":
+          hr = (int) Math.round(parseDouble(text()));
+          break;
+        case "Value":
+          // HeartRateBpm/Value, the only Value in a trackpoint
+          hr = (int) Math.round(parseDouble(text()));
+          break;
+        case "cad":
+        case "cadence":
+        case "Cadence":
+        case "RunCadence":
+          cadence = (float) parseDouble(text());
+          break;
+        case "atemp":
+        case "temp":
+        case "Temperature":
+          temperature = (float) parseDouble(text());
+          break;
+        default:
+          break;
+      }
+    }
+    if (Double.isNaN(lat) || Double.isNaN(lon)) {
+      // Indoors or on a treadmill: keep the point if it has data, not only a time
+      lat = Double.NaN;
+      lon = Double.NaN;
+      if (Double.isNaN(distance) && hr < 0 && Float.isNaN(cadence)) {
+        return;
+      }
+    }
+    if (time >= 0) {
+      activity.addPoint(time, lat, lon, alt, distance, hr, cadence, temperature);
+    }
+  }
+
+  private void finish() {
+    if (activity.getStartTime() >= 0) {
+      result.add(activity);
+    }
+    activity = null;
+  }
+
+  private static String nonNull(String s) {
+    return s == null ? "" : s;
+  }
+
+  private static double parseDouble(String s) {
+    if (s == null) {
+      return Double.NaN;
+    }
+    try {
+      return Double.parseDouble(s.trim());
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  /** Map the sport names used by GPX and TCX writers */
+  static int sport(String name) {
+    String s = name.toLowerCase(Locale.ROOT);
+    if (s.contains("bik") || s.contains("cycl") || s.contains("ride")) {
+      return DB.ACTIVITY.SPORT_BIKING;
+    } else if (s.contains("walk") || s.contains("hik")) {
+      return DB.ACTIVITY.SPORT_WALKING;
+    } else if (s.contains("orienteer")) {
+      return DB.ACTIVITY.SPORT_ORIENTEERING;
+    } else if (s.contains("treadmill")) {
+      return DB.ACTIVITY.SPORT_TREADMILL;
+    } else if (s.contains("run") || s.isEmpty() || s.equals("9")) {
+      // 9 is running in the GPX 1.0 Garmin numbering
+      return DB.ACTIVITY.SPORT_RUNNING;
+    }
+    return DB.ACTIVITY.SPORT_OTHER;
+  }
+}
@@ -0,0 +1,273 @@
+package org.runnerup.sync.util;
+
+import android.util.Log;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.ConnectionPool;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * Shared HTTP transport for the synchronizers. Connections are kept alive and reused per host:
+ * response bodies are read to the end and the stream closed instead of disconnecting, and the
+ * OkHttp based synchronizers share one connection pool. Token refreshes are coalesced per
+ * synchronizer and requests are counted per service.
+ */
+public final class HttpTransport {
+
+  private static final String TAG = "HttpTransport";
+
+  private static final int CONNECT_TIMEOUT_MS = 30_000;
+  private static final int READ_TIMEOUT_MS = 120_000;
+
+  /** Initial buffer when the response has no Content-Length */
+  private static final int DEFAULT_BODY_SIZE = 8 * 1024;
+
+  /** Do not trust larger Content-Length for the initial buffer */
+  private static final int MAX_PREALLOCATE = 4 * 1024 * 1024;
+
+  private static final OkHttpClient sClient =
+      new OkHttpClient.Builder()
+          .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+          .connectTimeout(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+          .readTimeout(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+          .build();
+
+  private static final Map<String, Metrics> sMetrics = new HashMap<>();
+
+  /** Request statistics for one service */
+  public static final class Metrics {
+    public final AtomicLong requests = new AtomicLong();
+    public final AtomicLong errors = new AtomicLong();
+    public final AtomicLong bytesReceived = new AtomicLong();
+    public final AtomicLong responseTimeMs = new AtomicLong();
+    /** Token refreshes, counting the refreshes run and the coalesced ones */
+    public final SingleFlight<Object, Object> refresh = new SingleFlight<>();
+
+    @Override
+    public String toString() {
+      long n = requests.get();
+      return String.format(
+          Locale.ROOT,
+          "requests: %d, errors: %d, received: %d kB, avg response: %d ms,"
+              + " token refreshes: %d (%d coalesced)",
+          n,
+          errors.get(),
+          bytesReceived.get() / 1024,
+          n > 0 ? responseTimeMs.get() / n : 0,
+          refresh.getCalls(),
+          refresh.getCoalesced());
+    }
+  }
+
+  private HttpTransport() {}
+
+  public static Metrics getMetrics(String service) {
+    synchronized (sMetrics) {
+      Metrics m = sMetrics.get(service);
+      if (m == null) {
+        m = new Metrics();
+        sMetrics.put(service, m);
+      }
+      return m;
+    }
+  }
+
+  /** Log the statistics for all services */
+  public static void logMetrics() {
+    synchronized (sMetrics) {
+      for (Map.Entry<String, Metrics> e : sMetrics.entrySet()) {
+        Log.i(TAG, e.getKey() + ": " + e.getValue());
+      }
+    }
+  }
+
+  /**
+   * Open a keep-alive connection, counted for the service. The response time, errors and the
+   * bytes read from the response are counted however the response is read.
+   */
+  public static HttpURLConnection open(String service, URL url) throws IOException {
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
+    conn.setReadTimeout(READ_TIMEOUT_MS);
+    Metrics metrics = getMetrics(service);
+    metrics.requests.incrementAndGet();
+    return new MeteredConnection(conn, metrics);
+  }
+
+  /**
+   * OkHttp client for a service, sharing the connection pool with all other services. Callers may
+   * add their own interceptors with newBuilder().
+   */
+  public static OkHttpClient getClient(String service) {
+    final Metrics metrics = getMetrics(service);
+    return sClient
+        .newBuilder()
+        .addNetworkInterceptor(
+            chain -> {
+              long start = System.currentTimeMillis();
+              metrics.requests.incrementAndGet();
+              Response response = chain.proceed(chain.request());
+              metrics.responseTimeMs.addAndGet(System.currentTimeMillis() - start);
+              if (response.code() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                metrics.errors.incrementAndGet();
+              }
+              // Content-Length is often missing, count the body as it is read
+              return response.newBuilder().body(new CountingBody(response.body(), metrics)).build();
+            })
+        .build();
+  }
+
+  private static final class CountingBody extends ResponseBody {
+    private final ResponseBody body;
+    private final BufferedSource source;
+
+    CountingBody(ResponseBody body, Metrics metrics) {
+      this.body = body;
+      this.source =
+          Okio.buffer(
+              new ForwardingSource(body.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                  long n = super.read(sink, byteCount);
+                  if (n > 0) {
+                    metrics.bytesReceived.addAndGet(n);
+                  }
+                  return n;
+                }
+              });
+    }
+
+    @Override
+    public MediaType contentType() {
+      return body.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+      return body.contentLength();
+    }
+
+    @Override
+    public BufferedSource source() {
+      return source;
+    }
+  }
+
+  /**
+   * Read the response body (or the error body) to the end and close the stream, so the connection
+   * can be reused. The buffer is sized from Content-Length when available.
+   *
+   * @return the body, empty if there is none
+   */
+  public static byte[] readBody(HttpURLConnection conn) throws IOException {
+    InputStream in;
+    try {
+      in =
+          conn.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST
+              ? conn.getErrorStream()
+              : conn.getInputStream();
+    } catch (IOException e) {
+      in = conn.getErrorStream();
+      if (in == null) {
+        throw e;
+      }
+    }
+    if (in == null) {
+      return new byte[0];
+    }
+    return readFully(in, conn.getContentLength());
+  }
+
+  public static String readString(HttpURLConnection conn) throws IOException {
+    return new String(readBody(conn), StandardCharsets.UTF_8);
+  }
+
+  /** Read a stream to the end and close it, expectedLength is used to size the buffer if > 0 */
+  static byte[] readFully(InputStream in, long expectedLength) throws IOException {
+    try {
+      if (expectedLength > 0 && expectedLength <= MAX_PREALLOCATE) {
+        // Read directly into the final array, no copy if the length is correct
+        byte[] buf = new byte[(int) expectedLength];
+        int pos = 0;
+        int n;
+        while (pos < buf.length && (n = in.read(buf, pos, buf.length - pos)) > 0) {
+          pos += n;
+        }
+        int next = pos == buf.length ? in.read() : -1;
+        if (next < 0) {
+          if (pos == buf.length) {
+            return buf;
+          }
+          byte[] shorter = new byte[pos];
+          System.arraycopy(buf, 0, shorter, 0, pos);
+          return shorter;
+        }
+        // Longer than announced, continue with a growing buffer
+        ByteArrayOutputStream out = new ByteArrayOutputStream(buf.length * 2);
+        out.write(buf, 0, pos);
+        out.write(next);
+        copy(in, out);
+        return out.toByteArray();
+      }
+      ByteArrayOutputStream out = new ByteArrayOutputStream(DEFAULT_BODY_SIZE);
+      copy(in, out);
+      return out.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void copy(InputStream in, ByteArrayOutputStream out) throws IOException {
+    byte[] buf = new byte[DEFAULT_BODY_SIZE];
+    int n;
+    while ((n = in.read(buf)) > 0) {
+      out.write(buf, 0, n);
+    }
+  }
+
+  /**
+   * Release a connection where the response is not needed, reading any remaining body so the
+   * connection can be reused.
+   */
+  public static void release(HttpURLConnection conn) {
+    try {
+      InputStream in = conn.getInputStream();
+      byte[] buf = new byte[DEFAULT_BODY_SIZE];
+      //noinspection StatementWithEmptyBody
+      while (in.read(buf) > 0) {}
+      in.close();
+    } catch (IOException e) {
+      // Error response or already closed, the connection cannot be reused
+      conn.disconnect();
+    }
+  }
+
+  /**
+   * Refresh a token, single flight per owner: concurrent refreshes for the same synchronizer share
+   * the result of one request.
+   *
+   * @param owner the synchronizer holding the token
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> T refreshToken(String service, Object owner, Callable<T> refresh)
+      throws Exception {
+    return (T) getMetrics(service).refresh.run(owner, refresh::call);
+  }
+}
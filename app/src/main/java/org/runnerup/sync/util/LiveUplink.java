@@ -0,0 +1,258 @@
+package org.runnerup.sync.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Posts live tracking samples from a bounded queue, sent together every flush interval on one
+ * background thread instead of a request per sample.
+ *
+ * <p>Only the newest position is of interest, so a queued position is replaced by a newer one.
+ * Events (start, pause, end) are kept, unless the queue is full of them. Failed posts are retried
+ * with exponential backoff and jitter; nothing is attempted while the network is unavailable.
+ */
+public final class LiveUplink {
+
+  public interface Network {
+    boolean isAvailable();
+  }
+
+  static final long MIN_RETRY_MS = 1000;
+  static final long MAX_RETRY_MS = 60000;
+  private static final int TIMEOUT_MS = 10000;
+
+  private static final class Sample {
+    final String body;
+    final boolean position;
+
+    Sample(String body, boolean position) {
+      this.body = body;
+      this.position = position;
+    }
+  }
+
+  private final String url;
+  private final int capacity;
+  private final long flushIntervalMs;
+  private final Network network;
+  private final ScheduledExecutorService executor;
+  private final Random random;
+
+  private final ArrayDeque<Sample> queue = new ArrayDeque<>();
+  private Sample posting = null;
+  private int failures = 0;
+  private boolean stopped = false;
+
+  private int sent = 0;
+  private int coalesced = 0;
+  private int dropped = 0;
+
+  public LiveUplink(
+      String url,
+      int capacity,
+      long flushIntervalMs,
+      Network network,
+      ScheduledExecutorService executor,
+      Random random) {
+    this.url = url;
+    this.capacity = capacity;
+    this.flushIntervalMs = flushIntervalMs;
+    this.network = network;
+    this.executor = executor;
+    this.random = random;
+  }
+
+  public void start() {
+    executor.schedule(this::flushAndReschedule, flushIntervalMs, TimeUnit.MILLISECONDS);
+  }
+
+  /** Send what is queued, then stop the executor */
+  public void stop() {
+    synchronized (queue) {
+      stopped = true;
+    }
+    executor.execute(
+        () -> {
+          try {
+            if (network.isAvailable()) {
+              flush();
+            }
+          } finally {
+            // Also cancels the scheduled flush
+            executor.shutdownNow();
+          }
+        });
+  }
+
+  /**
+   * Queue a JSON sample.
+   *
+   * @param position true for position updates, where only the newest is of interest
+   */
+  public void offer(String body, boolean position) {
+    synchronized (queue) {
+      Sample last = queue.peekLast();
+      if (position && last != null && last.position && last != posting) {
+        queue.pollLast();
+        coalesced++;
+      } else if (queue.size() >= capacity) {
+        removeOldest();
+        dropped++;
+      }
+      queue.addLast(new Sample(body, position));
+    }
+  }
+
+  // Make room, positions first, not the sample being posted
+  private void removeOldest() {
+    for (Iterator<Sample> it = queue.iterator(); it.hasNext(); ) {
+      Sample s = it.next();
+      if (s.position && s != posting) {
+        it.remove();
+        return;
+      }
+    }
+    Sample first = queue.pollFirst();
+    if (first == posting && !queue.isEmpty()) {
+      queue.pollFirst();
+      queue.addFirst(first);
+    }
+  }
+
+  private void flushAndReschedule() {
+    long delay = flushIntervalMs;
+    try {
+      if (network.isAvailable() && !flush()) {
+        delay = getRetryDelayMs(failures);
+      }
+    } catch (RuntimeException e) {
+      // Retried as a failed post, an exception would end the schedule
+      synchronized (queue) {
+        posting = null;
+      }
+      failures++;
+      delay = getRetryDelayMs(failures);
+    }
+    synchronized (queue) {
+      if (stopped) {
+        return;
+      }
+    }
+    executor.schedule(this::flushAndReschedule, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Post the queued samples in order, stop at the first failure.
+   *
+   * @return false if a sample is to be retried
+   */
+  boolean flush() {
+    while (true) {
+      Sample s;
+      synchronized (queue) {
+        s = queue.peekFirst();
+        posting = s;
+      }
+      if (s == null) {
+        failures = 0;
+        return true;
+      }
+
+      int code;
+      try {
+        code = post(s.body);
+      } catch (IOException e) {
+        code = -1;
+      }
+      if (code == -1 || code >= 500) {
+        synchronized (queue) {
+          posting = null;
+        }
+        failures++;
+        return false;
+      }
+
+      synchronized (queue) {
+        posting = null;
+        // The sample may have been dropped while posting
+        if (queue.peekFirst() == s) {
+          queue.pollFirst();
+        }
+        if (code < 300) {
+          sent++;
+        } else {
+          // Rejected, retrying will not help
+          dropped++;
+        }
+      }
+    }
+  }
+
+  /** Backoff before the next attempt, after consecutive failures */
+  long getRetryDelayMs(int failures) {
+    long max = MIN_RETRY_MS << Math.min(failures - 1, 16);
+    max = Math.min(max, MAX_RETRY_MS);
+    // Jitter in the upper half, to not retry in step with other clients
+    return max / 2 + (long) (random.nextDouble() * (max / 2));
+  }
+
+  private int post(String body) throws IOException {
+    HttpURLConnection connect = (HttpURLConnection) new URL(url).openConnection();
+    connect.setConnectTimeout(TIMEOUT_MS);
+    connect.setReadTimeout(TIMEOUT_MS);
+    connect.setDoOutput(true);
+    connect.addRequestProperty("Content-Type", "application/json; charset=UTF-8");
+    connect.setRequestMethod("POST");
+    byte[] data = body.getBytes(StandardCharsets.UTF_8);
+    connect.setFixedLengthStreamingMode(data.length);
+    try (OutputStream out = connect.getOutputStream()) {
+      out.write(data);
+    }
+    int code = connect.getResponseCode();
+    // Read the response so the connection is kept alive for the next sample
+    InputStream in = code < 400 ? connect.getInputStream() : connect.getErrorStream();
+    if (in != null) {
+      try (InputStream tmp = in) {
+        byte[] buf = new byte[512];
+        //noinspection StatementWithEmptyBody
+        while (tmp.read(buf) > 0) {}
+      }
+    }
+    return code;
+  }
+
+  public int getQueued() {
+    synchronized (queue) {
+      return queue.size();
+    }
+  }
+
+  public int getSent() {
+    synchronized (queue) {
+      return sent;
+    }
+  }
+
+  /** Positions replaced by a newer position before being sent */
+  public int getCoalesced() {
+    synchronized (queue) {
+      return coalesced;
+    }
+  }
+
+  /** Samples not sent: queue full or rejected by the server */
+  public int getDropped() {
+    synchronized (queue) {
+      return dropped;
+    }
+  }
+}
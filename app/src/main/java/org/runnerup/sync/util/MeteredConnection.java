@@ -0,0 +1,285 @@
+package org.runnerup.sync.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.security.Permission;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A connection counting the response for {@link HttpTransport.Metrics}, so the callers can read
+ * the response any way they like. The response time is from opening the connection, including
+ * sending the request, until the response headers are received.
+ */
+final class MeteredConnection extends HttpURLConnection {
+
+  private final HttpURLConnection conn;
+  private final HttpTransport.Metrics metrics;
+  private final long start = System.currentTimeMillis();
+  private boolean responded;
+
+  MeteredConnection(HttpURLConnection conn, HttpTransport.Metrics metrics) {
+    super(conn.getURL());
+    this.conn = conn;
+    this.metrics = metrics;
+  }
+
+  /** Count the response once, the first time it is accessed */
+  private void onResponse(boolean failed) {
+    if (responded) {
+      return;
+    }
+    responded = true;
+    metrics.responseTimeMs.addAndGet(System.currentTimeMillis() - start);
+    if (!failed) {
+      try {
+        failed = conn.getResponseCode() >= HTTP_BAD_REQUEST;
+      } catch (IOException e) {
+        failed = true;
+      }
+    }
+    if (failed) {
+      metrics.errors.incrementAndGet();
+    }
+  }
+
+  private InputStream counting(InputStream in) {
+    if (in == null) {
+      return null;
+    }
+    return new FilterInputStream(in) {
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+          metrics.bytesReceived.incrementAndGet();
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+          metrics.bytesReceived.addAndGet(n);
+        }
+        return n;
+      }
+
+      @Override
+      public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        metrics.bytesReceived.addAndGet(skipped);
+        return skipped;
+      }
+    };
+  }
+
+  @Override
+  public int getResponseCode() throws IOException {
+    try {
+      int code = conn.getResponseCode();
+      onResponse(false);
+      return code;
+    } catch (IOException e) {
+      onResponse(true);
+      throw e;
+    }
+  }
+
+  @Override
+  public String getResponseMessage() throws IOException {
+    return conn.getResponseMessage();
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    try {
+      InputStream in = conn.getInputStream();
+      onResponse(false);
+      return counting(in);
+    } catch (IOException e) {
+      onResponse(true);
+      throw e;
+    }
+  }
+
+  @Override
+  public InputStream getErrorStream() {
+    return counting(conn.getErrorStream());
+  }
+
+  @Override
+  public OutputStream getOutputStream() throws IOException {
+    return conn.getOutputStream();
+  }
+
+  @Override
+  public void connect() throws IOException {
+    conn.connect();
+  }
+
+  @Override
+  public void disconnect() {
+    conn.disconnect();
+  }
+
+  @Override
+  public boolean usingProxy() {
+    return conn.usingProxy();
+  }
+
+  @Override
+  public void setRequestMethod(String method) throws ProtocolException {
+    conn.setRequestMethod(method);
+  }
+
+  @Override
+  public String getRequestMethod() {
+    return conn.getRequestMethod();
+  }
+
+  @Override
+  public void setRequestProperty(String key, String value) {
+    conn.setRequestProperty(key, value);
+  }
+
+  @Override
+  public void addRequestProperty(String key, String value) {
+    conn.addRequestProperty(key, value);
+  }
+
+  @Override
+  public String getRequestProperty(String key) {
+    return conn.getRequestProperty(key);
+  }
+
+  @Override
+  public Map<String, List<String>> getRequestProperties() {
+    return conn.getRequestProperties();
+  }
+
+  @Override
+  public String getHeaderField(String name) {
+    return conn.getHeaderField(name);
+  }
+
+  @Override
+  public String getHeaderField(int n) {
+    return conn.getHeaderField(n);
+  }
+
+  @Override
+  public String getHeaderFieldKey(int n) {
+    return conn.getHeaderFieldKey(n);
+  }
+
+  @Override
+  public Map<String, List<String>> getHeaderFields() {
+    return conn.getHeaderFields();
+  }
+
+  @Override
+  public int getContentLength() {
+    return conn.getContentLength();
+  }
+
+  @Override
+  public String getContentType() {
+    return conn.getContentType();
+  }
+
+  @Override
+  public String getContentEncoding() {
+    return conn.getContentEncoding();
+  }
+
+  @Override
+  public void setDoInput(boolean doInput) {
+    conn.setDoInput(doInput);
+  }
+
+  @Override
+  public boolean getDoInput() {
+    return conn.getDoInput();
+  }
+
+  @Override
+  public void setDoOutput(boolean doOutput) {
+    conn.setDoOutput(doOutput);
+  }
+
+  @Override
+  public boolean getDoOutput() {
+    return conn.getDoOutput();
+  }
+
+  @Override
+  public void setUseCaches(boolean useCaches) {
+    conn.setUseCaches(useCaches);
+  }
+
+  @Override
+  public boolean getUseCaches() {
+    return conn.getUseCaches();
+  }
+
+  @Override
+  public void setInstanceFollowRedirects(boolean followRedirects) {
+    conn.setInstanceFollowRedirects(followRedirects);
+  }
+
+  @Override
+  public boolean getInstanceFollowRedirects() {
+    return conn.getInstanceFollowRedirects();
+  }
+
+  @Override
+  public void setConnectTimeout(int timeout) {
+    conn.setConnectTimeout(timeout);
+  }
+
+  @Override
+  public int getConnectTimeout() {
+    return conn.getConnectTimeout();
+  }
+
+  @Override
+  public void setReadTimeout(int timeout) {
+    conn.setReadTimeout(timeout);
+  }
+
+  @Override
+  public int getReadTimeout() {
+    return conn.getReadTimeout();
+  }
+
+  @Override
+  public void setFixedLengthStreamingMode(int contentLength) {
+    conn.setFixedLengthStreamingMode(contentLength);
+  }
+
+  @Override
+  public void setFixedLengthStreamingMode(long contentLength) {
+    conn.setFixedLengthStreamingMode(contentLength);
+  }
+
+  @Override
+  public void setChunkedStreamingMode(int chunkLength) {
+    conn.setChunkedStreamingMode(chunkLength);
+  }
+
+  @Override
+  public Permission getPermission() throws IOException {
+    return conn.getPermission();
+  }
+
+  @Override
+  public String toString() {
+    return conn.toString();
+  }
+}
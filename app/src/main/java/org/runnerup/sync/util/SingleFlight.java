@@ -0,0 +1,68 @@
+package org.runnerup.sync.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesce concurrent calls with the same key: the first caller runs the call, callers arriving
+ * while it runs wait for and share its result. A new call is made once the running one completed.
+ */
+public final class SingleFlight<K, V> {
+
+  private final Map<K, FutureTask<V>> inFlight = new HashMap<>();
+  private int calls = 0;
+  private int coalesced = 0;
+
+  public V run(K key, Callable<V> call) throws Exception {
+    FutureTask<V> task;
+    boolean leader = false;
+    synchronized (inFlight) {
+      task = inFlight.get(key);
+      if (task == null) {
+        task = new FutureTask<>(call);
+        inFlight.put(key, task);
+        leader = true;
+        calls++;
+      } else {
+        coalesced++;
+      }
+    }
+
+    if (leader) {
+      try {
+        task.run();
+      } finally {
+        synchronized (inFlight) {
+          inFlight.remove(key);
+        }
+      }
+    }
+
+    try {
+      return task.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      throw e;
+    }
+  }
+
+  /** Number of calls actually run */
+  public int getCalls() {
+    synchronized (inFlight) {
+      return calls;
+    }
+  }
+
+  /** Number of calls that shared the result of a running call */
+  public int getCoalesced() {
+    synchronized (inFlight) {
+      return coalesced;
+    }
+  }
+}
@@ -30,15 +30,16 @@ import java.io.Reader;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.runnerup.common.util.Constants;
+import org.runnerup.core.util.JsonReader;
 
 public final class SyncHelper {
 
@@ -119,41 +120,49 @@ public final class SyncHelper {
   }
 
   public static JSONObject parse(String in) throws JSONException {
-    return parse(new Scanner(in));
+    return new JSONObject(in);
   }
 
-  public static JSONObject parse(InputStream in) throws JSONException {
-    return parse(new Scanner(in));
+  public static JSONObject parse(InputStream in) throws IOException, JSONException {
+    return new JSONObject(new String(HttpTransport.readFully(in, -1), StandardCharsets.UTF_8));
   }
 
   public static JSONObject parse(Reader in) throws JSONException {
-    return parse(new Scanner(in));
-  }
-
-  private static JSONObject parse(Scanner scanner) throws JSONException {
+    StringBuilder buf = new StringBuilder();
+    char[] chars = new char[8 * 1024];
     try {
-      return new JSONObject(scanner.useDelimiter("\\A").next());
-    } finally {
-      scanner.close();
+      int n;
+      while ((n = in.read(chars)) > 0) {
+        buf.append(chars, 0, n);
+      }
+      in.close();
+    } catch (IOException e) {
+      throw new JSONException("Failed to read: " + e.getMessage());
     }
+    return new JSONObject(buf.toString());
   }
 
+  /**
+   * Stream a JSON response (UTF-8) token by token, for responses too large to parse into a
+   * JSONObject. The stream is closed with the reader.
+   */
+  public static JsonReader reader(InputStream in) {
+    return new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Parse the response (or the error response) as JSON. The connection is not disconnected, the
+   * body is read to the end so the connection can be reused.
+   */
   public static JSONObject parse(HttpURLConnection conn, String name)
       throws IOException, JSONException {
-    JSONObject obj;
-    try {
-      BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-      obj = SyncHelper.parse(in);
-    } catch (IOException e) {
-      InputStream inS = conn.getErrorStream();
-      String msg = inS == null ? "" : SyncHelper.readInputStream(inS);
+    int code = conn.getResponseCode();
+    String msg = HttpTransport.readString(conn);
+    if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
       Log.i(name, "Error stream: " + msg);
-      // The error stream is normally a JSON object too
-      obj = SyncHelper.parse(msg);
-    } finally {
-      conn.disconnect();
     }
-    return obj;
+    // The error stream is normally a JSON object too
+    return new JSONObject(msg);
   }
 
   public static String readInputStream(InputStream in) throws IOException {
@@ -0,0 +1,197 @@
+package org.runnerup.tracking;
+
+/**
+ * Heart rate variability over a sliding window of the last two minutes of RR intervals. RMSSD is
+ * updated per beat, DFA alpha 1 (detrended fluctuation analysis over boxes of 4 to 16 beats) is
+ * computed when read after new beats. No allocation per beat.
+ *
+ * <p>Implausible intervals and intervals differing more than 20% from the previous accepted one are
+ * treated as artifacts (missed or extra beats) and skipped, unless the next interval confirms the
+ * new level. No successive difference is taken across a skipped interval.
+ */
+public class HrvMetrics {
+
+  static final long WINDOW_MS = 120_000;
+  private static final int CAPACITY = 512; // two minutes at 240 bpm
+  private static final int MIN_RR_MS = 250;
+  private static final int MAX_RR_MS = 2000;
+  private static final double MAX_CHANGE = 0.2;
+  private static final int MIN_DIFFS = 10;
+  private static final int MIN_BOX = 4;
+  private static final int MAX_BOX = 16;
+  private static final int MIN_DFA_BEATS = 64;
+
+  private final double[] rr = new double[CAPACITY];
+  // Squared difference to the previous interval in the window, -1 if not adjacent
+  private final double[] diffSq = new double[CAPACITY];
+  private final double[] profile = new double[CAPACITY];
+  private int start = 0;
+  private int count = 0;
+  private double windowMs = 0;
+  private double sumDiffSq = 0;
+  private int diffs = 0;
+  private double reference = 0; // last accepted interval
+  private double candidate = 0; // last skipped interval, a possible new level
+  private boolean adjacent = false;
+
+  private boolean dfaValid = false;
+  private double dfaAlpha1 = 0;
+
+  /**
+   * Add the next interval.
+   *
+   * @return false if it was skipped as an artifact
+   */
+  public boolean add(int rrMs) {
+    if (rrMs < MIN_RR_MS || rrMs > MAX_RR_MS) {
+      adjacent = false;
+      candidate = 0;
+      return false;
+    }
+    if (reference > 0 && Math.abs(rrMs - reference) > MAX_CHANGE * reference) {
+      // A new level once two intervals in a row agree, otherwise an artifact
+      boolean newLevel = candidate > 0 && Math.abs(rrMs - candidate) <= MAX_CHANGE * candidate;
+      adjacent = false;
+      if (!newLevel) {
+        candidate = rrMs;
+        return false;
+      }
+    }
+    reference = rrMs;
+    candidate = 0;
+
+    while (count == CAPACITY || (count > 0 && windowMs + rrMs > WINDOW_MS)) {
+      removeOldest();
+    }
+    int i = (start + count) % CAPACITY;
+    rr[i] = rrMs;
+    if (adjacent && count > 0) {
+      double d = rrMs - rr[(i + CAPACITY - 1) % CAPACITY];
+      diffSq[i] = d * d;
+      sumDiffSq += diffSq[i];
+      diffs++;
+    } else {
+      diffSq[i] = -1;
+    }
+    count++;
+    windowMs += rrMs;
+    adjacent = true;
+    dfaValid = false;
+    return true;
+  }
+
+  private void removeOldest() {
+    windowMs -= rr[start];
+    start = (start + 1) % CAPACITY;
+    count--;
+    // The new oldest has no predecessor in the window
+    if (count > 0 && diffSq[start] >= 0) {
+      sumDiffSq -= diffSq[start];
+      diffs--;
+      diffSq[start] = -1;
+    }
+    if (diffs == 0) {
+      sumDiffSq = 0;
+    }
+  }
+
+  public void reset() {
+    start = 0;
+    count = 0;
+    windowMs = 0;
+    sumDiffSq = 0;
+    diffs = 0;
+    reference = 0;
+    candidate = 0;
+    adjacent = false;
+    dfaValid = false;
+  }
+
+  /** Beats in the window */
+  public int getCount() {
+    return count;
+  }
+
+  /**
+   * @return root mean square of successive differences in ms, 0 if there are too few beats
+   */
+  public double getRmssd() {
+    if (diffs < MIN_DIFFS) {
+      return 0;
+    }
+    return Math.sqrt(Math.max(0, sumDiffSq) / diffs);
+  }
+
+  /**
+   * @return short term scaling exponent, about 1 at rest and 0.75 at the aerobic threshold, 0 if
+   *     there are too few beats
+   */
+  public double getDfaAlpha1() {
+    if (count < MIN_DFA_BEATS) {
+      return 0;
+    }
+    if (!dfaValid) {
+      dfaAlpha1 = computeDfaAlpha1();
+      dfaValid = true;
+    }
+    return dfaAlpha1;
+  }
+
+  private double computeDfaAlpha1() {
+    double mean = windowMs / count;
+    double y = 0;
+    for (int k = 0; k < count; k++) {
+      y += rr[(start + k) % CAPACITY] - mean;
+      profile[k] = y;
+    }
+
+    // Least squares slope of log F(n) against log n
+    double sx = 0;
+    double sy = 0;
+    double sxx = 0;
+    double sxy = 0;
+    int points = 0;
+    for (int n = MIN_BOX; n <= MAX_BOX; n++) {
+      double f = fluctuation(n);
+      if (f <= 0) {
+        continue;
+      }
+      double lx = Math.log(n);
+      double ly = Math.log(f);
+      sx += lx;
+      sy += ly;
+      sxx += lx * lx;
+      sxy += lx * ly;
+      points++;
+    }
+    double denominator = points * sxx - sx * sx;
+    if (points < 2 || denominator == 0) {
+      return 0;
+    }
+    return (points * sxy - sx * sy) / denominator;
+  }
+
+  /** Root mean square of the profile around a linear fit in each box of n beats */
+  private double fluctuation(int n) {
+    int boxes = count / n;
+    // Sums of x = 0..n-1
+    double sx = n * (n - 1) / 2.0;
+    double sxx = (n - 1) * n * (2 * n - 1) / 6.0;
+    double varX = sxx - sx * sx / n;
+    double residual = 0;
+    for (int b = 0; b < boxes; b++) {
+      double sy = 0;
+      double syy = 0;
+      double sxy = 0;
+      for (int x = 0; x < n; x++) {
+        double v = profile[b * n + x];
+        sy += v;
+        syy += v * v;
+        sxy += x * v;
+      }
+      double covXY = sxy - sx * sy / n;
+      residual += syy - sy * sy / n - covXY * covXY / varX;
+    }
+    return Math.sqrt(Math.max(0, residual) / (boxes * n));
+  }
+}
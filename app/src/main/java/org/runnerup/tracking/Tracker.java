@@ -34,6 +34,8 @@ import android.os.SystemClock;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.preference.PreferenceManager;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -44,6 +46,7 @@ import org.runnerup.common.tracker.TrackerState;
 import org.runnerup.common.util.Constants;
 import org.runnerup.common.util.ValueModel;
 import org.runnerup.data.DBHelper;
+import org.runnerup.data.PathSimplifier;
 import org.runnerup.sync.SyncManager;
 import org.runnerup.hr.HRProvider;
 import org.runnerup.core.notification.ForegroundNotificationDisplayStrategy;
@@ -63,10 +66,15 @@ import org.runnerup.tracking.component.TrackerTTS;
 import org.runnerup.tracking.component.TrackerTemperature;
 import org.runnerup.tracking.component.TrackerWear;
 import org.runnerup.tracking.filter.PersistentGpsLoggerListener;
+import org.runnerup.tracking.replay.ReplaySession;
+import org.runnerup.tracking.replay.SensorLog;
+import org.runnerup.tracking.replay.SensorReplay;
 import org.runnerup.core.util.Formatter;
+import org.runnerup.core.util.TickListener;
 import org.runnerup.core.util.HRZones;
 import org.runnerup.core.workout.Scope;
 import org.runnerup.core.workout.Workout;
+import org.runnerup.core.workout.WorkoutBuilder;
 
 /**
  * GpsTracker - this class tracks Location updates
@@ -81,12 +89,17 @@ public class Tracker extends android.app.Service implements LocationListener, Co
   private static final int MAX_CURRENT_AGE = 15000;
   private static final long NANO_IN_MILLI = 1000000;
 
+  // Extras of Intents.REPLAY: path of the GPX, TCX or sample log, replay speed
+  public static final String EXTRA_REPLAY_FILE = "file";
+  public static final String EXTRA_REPLAY_SPEED = "speed";
+
   private final Handler handler = new Handler();
+  private final WorkoutScheduler workoutScheduler = new WorkoutScheduler(handler);
 
   private final TrackerComponentCollection components = new TrackerComponentCollection();
   // Some trackers may select separate sensors depending on sport, handled in onBind()
   private final TrackerGPS trackerGPS = (TrackerGPS) components.addComponent(new TrackerGPS(this));
-  private final TrackerHRM trackerHRM = (TrackerHRM) components.addComponent(new TrackerHRM());
+  private final TrackerHRM trackerHRM = (TrackerHRM) components.addComponent(new TrackerHRM(this));
   TrackerTTS trackerTTS = (TrackerTTS) components.addComponent(new TrackerTTS());
   private final TrackerCadence trackerCadence =
       (TrackerCadence) components.addComponent(new TrackerCadence());
@@ -111,9 +124,6 @@ public class Tracker extends android.app.Service implements LocationListener, Co
   private long mActivityId = 0;
   private long mElapsedTimeNanos = 0;
   private double mElapsedDistance = 0;
-  private double mHeartbeats = 0;
-  private double mHeartbeatNanos = 0; // since we might loose HRM connectivity...
-  private long mMaxHR = 0;
   private double mCurrentSpeed = 0.0;
 
   private TrackerState nextState;
@@ -131,6 +141,7 @@ public class Tracker extends android.app.Service implements LocationListener, Co
   private final List<WorkoutObserver> liveLoggers = new ArrayList<>();
 
   private Workout workout = null;
+  private SensorReplay sensorReplay = null;
   private NotificationStateManager notificationStateManager;
   private NotificationState activityOngoingState;
 
@@ -145,6 +156,11 @@ public class Tracker extends android.app.Service implements LocationListener, Co
 
   @Override
   public int onStartCommand(Intent intent, int flags, int startId) {
+    if (BuildConfig.DEBUG && intent != null && Intents.REPLAY.equals(intent.getAction())) {
+      startReplay(
+          intent.getStringExtra(EXTRA_REPLAY_FILE),
+          intent.getDoubleExtra(EXTRA_REPLAY_SPEED, SensorReplay.MIN_SPEED));
+    }
     // We want this service to continue running until it is explicitly
     // stopped, so return sticky.
     return START_STICKY;
@@ -152,6 +168,9 @@ public class Tracker extends android.app.Service implements LocationListener, Co
 
   @Override
   public void onDestroy() {
+    if (mDBWriter != null) {
+      mDBWriter.flush();
+    }
     if (mDB != null) {
       DBHelper.closeDB(mDB);
       mDB = null;
@@ -191,6 +210,48 @@ public class Tracker extends android.app.Service implements LocationListener, Co
     }
   }
 
+  /** Sensor replay used instead of the sensors, null if none */
+  public SensorReplay getSensorReplay() {
+    return sensorReplay;
+  }
+
+  /** Replace the sensors with a replay, set before connecting */
+  public void setSensorReplay(SensorReplay replay) {
+    if (replay != null && state.get() != TrackerState.INIT) {
+      if (BuildConfig.DEBUG) {
+        throw new AssertionError();
+      }
+      return;
+    }
+    sensorReplay = replay;
+    trackerCadence.setReplay(replay);
+    trackerPressure.setReplay(replay);
+  }
+
+  private void startReplay(String path, double speed) {
+    if (path == null) {
+      Log.w(getClass().getName(), "Replay without file");
+      return;
+    }
+    new Thread(
+            () -> {
+              try {
+                SensorLog log = SensorReplay.load(new File(path));
+                handler.post(
+                    () -> {
+                      SharedPreferences prefs =
+                          PreferenceManager.getDefaultSharedPreferences(this);
+                      Workout w =
+                          WorkoutBuilder.createDefaultWorkout(getResources(), prefs, null);
+                      new ReplaySession(this, new SensorReplay(log, speed), w).start();
+                    });
+              } catch (IOException e) {
+                Log.w(getClass().getName(), "Failed to load " + path + ": " + e.getMessage());
+              }
+            })
+        .start();
+  }
+
   public void setWithoutGps(boolean val) {
     trackerGPS.setWithoutGps(val);
   }
@@ -319,6 +380,11 @@ public class Tracker extends android.app.Service implements LocationListener, Co
       tmp.put(DB.LOCATION.ACTIVITY, mActivityId);
       tmp.put(DB.LOCATION.LAP, 0); // always start with lap 0
       mDBWriter = new PersistentGpsLoggerListener(mDB, DB.LOCATION.TABLE, tmp, logGpxAccuracy);
+      // Simplify while recording, so the redundant rows are never written
+      PathSimplifier simplifier = PathSimplifier.getPathSimplifierForSave(this);
+      if (simplifier != null) {
+        mDBWriter.setSimplification(simplifier.getToleranceMeters());
+      }
     } catch (IllegalStateException ex) {
       Log.e(getClass().getName(), "Query failed:", ex);
     }
@@ -364,9 +430,6 @@ public class Tracker extends android.app.Service implements LocationListener, Co
 
     mElapsedTimeNanos = 0;
     mElapsedDistance = 0;
-    mHeartbeats = 0;
-    mHeartbeatNanos = 0;
-    mMaxHR = 0;
     mLastLocationStarted = null;
 
     // New location update will be tagged with START
@@ -378,6 +441,7 @@ public class Tracker extends android.app.Service implements LocationListener, Co
 
     // And finally let workout know that we started
     workout.onStart(Scope.ACTIVITY, this.workout);
+    workoutScheduler.start(workout);
   }
 
   private void doBind() {
@@ -460,6 +524,8 @@ public class Tracker extends android.app.Service implements LocationListener, Co
     setNextLocationType(pauseType);
     // This saves a PAUSE location
     internalOnLocationChanged(mLastLocationStarted);
+    // Also without a location, GPS rows held back by the simplifier are only in memory
+    mDBWriter.flush();
 
     // Phase 4: log a pause event with the matching kind.
     logEvent(
@@ -490,9 +556,13 @@ public class Tracker extends android.app.Service implements LocationListener, Co
         break;
     }
     state.set(TrackerState.STOPPED);
+    // The scheduler keeps evaluating until reset, the stopped activity may be resumed and
+    // listeners render the stopped state
     setNextLocationType(DB.LOCATION.TYPE_PAUSE);
     // This saves a PAUSE location
     internalOnLocationChanged(mLastLocationStarted);
+    // Also without a location, GPS rows held back by the simplifier are only in memory
+    mDBWriter.flush();
 
     saveActivity(/* manualDistance= */null);
     components.onPause(); // TODO add new callback for this
@@ -536,6 +606,7 @@ public class Tracker extends android.app.Service implements LocationListener, Co
     logEvent(
         isAuto ? DB.EVENT_TYPE.AUTO_RESUME : DB.EVENT_TYPE.MANUAL_RESUME, /* payload= */ null);
     components.onResume();
+    workoutScheduler.start(workout);
   }
 
   public void reset() {
@@ -565,6 +636,7 @@ public class Tracker extends android.app.Service implements LocationListener, Co
     }
 
     wakeLock(false);
+    workoutScheduler.stop();
 
     if (workout != null) {
       workout.setTracker(null);
@@ -597,6 +669,7 @@ public class Tracker extends android.app.Service implements LocationListener, Co
 
     setNextLocationType(DB.LOCATION.TYPE_END);
     internalOnLocationChanged(mLastLocationStarted);
+    mDBWriter.flush();
 
     if (save) {
       saveActivity(manualDistance);
@@ -616,11 +689,14 @@ public class Tracker extends android.app.Service implements LocationListener, Co
 
   private void saveActivity(Double manualDistance) {
     ContentValues tmp = new ContentValues();
-    if (mHeartbeatNanos > 0) {
-      long avgHR = Math.round(60 * mHeartbeats * 1000 * NANO_IN_MILLI / mHeartbeatNanos); // BPM
-      tmp.put(Constants.DB.ACTIVITY.AVG_HR, avgHR);
+    long heartbeatNanos = trackerHRM.getHeartbeatNanos();
+    if (heartbeatNanos > 0) {
+      long avgHR =
+          Math.round(60 * trackerHRM.getHeartbeats() * 1000 * NANO_IN_MILLI / heartbeatNanos);
+      tmp.put(Constants.DB.ACTIVITY.AVG_HR, avgHR); // BPM
     }
-    if (mMaxHR > 0) tmp.put(Constants.DB.ACTIVITY.MAX_HR, mMaxHR);
+    int maxHR = trackerHRM.getMaxHR();
+    if (maxHR > 0) tmp.put(Constants.DB.ACTIVITY.MAX_HR, maxHR);
 
     if (TrackerPressure.isAvailable(this)) {
       final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
@@ -706,6 +782,21 @@ public class Tracker extends android.app.Service implements LocationListener, Co
     // Elevation depends on GPS updates
     trackerElevation.onLocationChanged(arg0);
     onLocationChangedImpl(arg0, false);
+    workoutScheduler.onData();
+  }
+
+  /** New sensor data, evaluate the workout */
+  public void onSensorData() {
+    workoutScheduler.onData();
+  }
+
+  /** Called on the tracker thread after the workout is evaluated */
+  public void registerWorkoutTickListener(TickListener listener) {
+    workoutScheduler.registerListener(listener);
+  }
+
+  public void unregisterWorkoutTickListener(TickListener listener) {
+    workoutScheduler.unregisterListener(listener);
   }
 
   private void onLocationChangedImpl(Location arg0, boolean internal) {
@@ -747,11 +838,6 @@ public class Tracker extends android.app.Service implements LocationListener, Co
           mElapsedTimeNanos += timeDiffNanos;
           mElapsedDistance += distDiff;
         }
-        if (hrValue != null && hrValue > 0) {
-          mHeartbeats += (hrValue * timeDiffNanos) / (double) (60 * 1000 * NANO_IN_MILLI);
-          mHeartbeatNanos += timeDiffNanos; // TODO handle loss of HRM connection
-          mMaxHR = Math.max(hrValue, mMaxHR);
-        }
       }
     }
 
@@ -929,8 +1015,18 @@ public class Tracker extends android.app.Service implements LocationListener, Co
     return getCurrentHRValueElapsed(SystemClock.elapsedRealtimeNanos(), MAX_CURRENT_AGE);
   }
 
+  /** RMSSD over the last two minutes in ms, 0 if not available */
+  public double getCurrentRmssd() {
+    return trackerHRM.getHrvMetrics().getRmssd();
+  }
+
+  /** DFA alpha 1 over the last two minutes, 0 if not available */
+  public double getCurrentDfaAlpha1() {
+    return trackerHRM.getHrvMetrics().getDfaAlpha1();
+  }
+
   public double getHeartbeats() {
-    return mHeartbeats;
+    return trackerHRM.getHeartbeats();
   }
 
   public Integer getCurrentBatteryLevel() {
@@ -0,0 +1,90 @@
+package org.runnerup.tracking;
+
+import android.os.Handler;
+import java.util.ArrayList;
+import java.util.List;
+import org.runnerup.core.util.TickListener;
+import org.runnerup.core.workout.Workout;
+
+/**
+ * Advances the workout owned by the {@link Tracker}: the triggers are evaluated when new data
+ * arrives (locations, heart rate) and when the next time based trigger is due, independent of any
+ * activity being shown. Listeners are called after each evaluation, to render the new state.
+ * Evaluation continues while the activity is paused or stopped, until the tracker is reset.
+ *
+ * <p>Runs on the tracker thread, the same thread as the sensor callbacks and the workout controls.
+ */
+class WorkoutScheduler {
+
+  // Evaluate at least this often, keeps polled state (HRM connection, paused steps) and the
+  // displayed time current
+  static final long MAX_DELAY_MS = 1000;
+  // Coalesce evaluations for due triggers
+  static final long MIN_DELAY_MS = 20;
+
+  private final Handler handler;
+  private final List<TickListener> listeners = new ArrayList<>();
+
+  private Workout workout = null;
+  private boolean evaluatePending = false;
+
+  WorkoutScheduler(Handler handler) {
+    this.handler = handler;
+  }
+
+  void start(Workout workout) {
+    this.workout = workout;
+    onData();
+  }
+
+  void stop() {
+    workout = null;
+    evaluatePending = false;
+    handler.removeCallbacks(evaluate);
+  }
+
+  /** New data is available, evaluate as soon as possible */
+  void onData() {
+    if (workout == null || evaluatePending) {
+      return;
+    }
+    evaluatePending = true;
+    handler.removeCallbacks(evaluate);
+    handler.post(evaluate);
+  }
+
+  void registerListener(TickListener listener) {
+    listeners.add(listener);
+  }
+
+  void unregisterListener(TickListener listener) {
+    listeners.remove(listener);
+  }
+
+  /** Delay until the next evaluation, from the time to the next due trigger in activity time */
+  static long nextDelayMs(double timeToTickS, boolean paused) {
+    if (paused || timeToTickS >= MAX_DELAY_MS / 1000.0) {
+      return MAX_DELAY_MS;
+    }
+    return Math.max(MIN_DELAY_MS, (long) Math.ceil(timeToTickS * 1000));
+  }
+
+  private final Runnable evaluate =
+      new Runnable() {
+        @Override
+        public void run() {
+          evaluatePending = false;
+          if (workout == null) {
+            return;
+          }
+          workout.onTick();
+          // The workout may have ended
+          if (workout != null) {
+            handler.postDelayed(this, nextDelayMs(workout.getTimeToTick(), workout.isPaused()));
+          }
+          for (TickListener l : new ArrayList<>(listeners)) {
+            l.onTick();
+          }
+        }
+      };
+}
@@ -34,6 +34,8 @@ import java.util.HashMap;
 import java.util.Random;
 import org.runnerup.common.util.Constants;
 import org.runnerup.core.workout.Workout;
+import org.runnerup.tracking.replay.SensorLog;
+import org.runnerup.tracking.replay.SensorReplay;
 
 public class TrackerCadence extends DefaultTrackerComponent implements SensorEventListener {
 
@@ -48,6 +50,8 @@ public class TrackerCadence extends DefaultTrackerComponent implements SensorEve
 
   // For debug builds, use random if sensor is unavailable
   private static boolean isMockSensor = false;
+  private final Random mockRandom = new Random(1);
+  private SensorReplay replay = null;
 
   private boolean isSportEnabled = true;
   private Float mPrevVal = null;
@@ -55,12 +59,20 @@ public class TrackerCadence extends DefaultTrackerComponent implements SensorEve
   private Float mCurrentCadence = null;
   final int cutOffTime = 3;
 
+  /** Use the replayed cadence instead of the sensor, null to use the sensor */
+  public void setReplay(SensorReplay replay) {
+    this.replay = replay;
+  }
+
   public Float getValue() {
     if (!isSportEnabled) {
       return null;
     }
+    if (replay != null) {
+      return replay.getCadence();
+    }
     if (isMockSensor) {
-      return (new Random()).nextFloat() * 120;
+      return mockRandom.nextFloat() * 120;
     }
 
     if (mCurrentCadence == null) {
@@ -155,6 +167,9 @@ public class TrackerCadence extends DefaultTrackerComponent implements SensorEve
 
   @Override
   public ResultCode onConnecting(final Callback callback, final Context context) {
+    if (replay != null) {
+      return replay.has(SensorLog.CADENCE) ? ResultCode.RESULT_OK : ResultCode.RESULT_NOT_SUPPORTED;
+    }
     ResultCode res;
     final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
     boolean enabled =
@@ -204,7 +219,7 @@ public class TrackerCadence extends DefaultTrackerComponent implements SensorEve
 
   @Override
   public boolean isConnected() {
-    return mSensorManager != null || isMockSensor;
+    return mSensorManager != null || isMockSensor || replay != null;
   }
 
   /**
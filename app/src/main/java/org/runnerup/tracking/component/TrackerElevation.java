@@ -20,13 +20,18 @@ package org.runnerup.tracking.component;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.util.Log;
 import androidx.preference.PreferenceManager;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import org.matthiaszimmermann.location.egm96.Geoid;
 import org.runnerup.BuildConfig;
 import org.runnerup.R;
@@ -35,6 +40,7 @@ import org.runnerup.tracking.Tracker;
 public class TrackerElevation extends DefaultTrackerComponent implements SensorEventListener {
 
   private static final String NAME = "Elevation";
+  private static final String GEOID_ASSET = "egm96.grid";
 
   @Override
   public String getName() {
@@ -61,11 +67,24 @@ public class TrackerElevation extends DefaultTrackerComponent implements SensorE
   public class GeoidAdjust {
     // "static" constructor in subclass
     GeoidAdjust GetAltitudeAdjust(Context context) {
-      try {
-        Geoid.init(context.getAssets().open("egm96-delta.dat"));
-        return new GeoidAdjust();
+      // The asset is stored uncompressed so it can be mapped instead of read to the heap
+      try (AssetFileDescriptor fd = context.getAssets().openFd(GEOID_ASSET);
+          FileInputStream is = fd.createInputStream()) {
+        MappedByteBuffer grid =
+            is.getChannel()
+                .map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(), fd.getDeclaredLength());
+        if (Geoid.init(grid)) {
+          return new GeoidAdjust();
+        }
       } catch (IOException e) {
-        Log.e("TrackerElevation", "Altitude correction " + e);
+        Log.w("TrackerElevation", "Altitude correction, cannot map grid " + e);
+        try (InputStream is = context.getAssets().open(GEOID_ASSET)) {
+          if (Geoid.init(is)) {
+            return new GeoidAdjust();
+          }
+        } catch (IOException e2) {
+          Log.e("TrackerElevation", "Altitude correction " + e2);
+        }
       }
       return null;
     }
@@ -59,6 +59,10 @@ public class TrackerGPS extends DefaultTrackerComponent implements TickListener
 
   @Override
   public ResultCode onInit(final Callback callback, Context context) {
+    if (tracker.getSensorReplay() != null) {
+      // Locations are replayed
+      return ResultCode.RESULT_OK;
+    }
     try {
       LocationManager lm = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
       if (lm == null) {
@@ -144,6 +148,11 @@ public class TrackerGPS extends DefaultTrackerComponent implements TickListener
 
   @Override
   public ResultCode onConnecting(final Callback callback, Context context) {
+    if (tracker.getSensorReplay() != null) {
+      mLastLocation = new Location("replay");
+      mLastLocation.setTime(System.currentTimeMillis());
+      return ResultCode.RESULT_OK;
+    }
     if (mWithoutGps == false &&
         ContextCompat.checkSelfPermission(this.tracker, Manifest.permission.ACCESS_FINE_LOCATION)
         != PackageManager.PERMISSION_GRANTED) {
@@ -175,7 +184,9 @@ public class TrackerGPS extends DefaultTrackerComponent implements TickListener
 
   @Override
   public boolean isConnected() {
-    return (mWithoutGps) || (mGpsStatus != null) && mGpsStatus.isFixed();
+    return (mWithoutGps)
+        || tracker.getSensorReplay() != null
+        || (mGpsStatus != null) && mGpsStatus.isFixed();
   }
 
   private void stopGps() {
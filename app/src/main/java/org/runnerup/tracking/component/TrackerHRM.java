@@ -17,27 +17,88 @@
 package org.runnerup.tracking.component;
 
 import android.Manifest;
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
+import android.database.sqlite.SQLiteDatabase;
 import android.os.Build;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.widget.Toast;
 import androidx.core.content.ContextCompat;
 import androidx.preference.PreferenceManager;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import org.runnerup.R;
+import org.runnerup.common.util.Constants.DB;
+import org.runnerup.data.DBHelper;
+import org.runnerup.data.HRSeries;
 import org.runnerup.hr.HRDeviceRef;
 import org.runnerup.hr.HRManager;
 import org.runnerup.hr.HRProvider;
+import org.runnerup.hr.ReplayHRProvider;
+import org.runnerup.hr.RrIntervalBuffer;
+import org.runnerup.tracking.HrvMetrics;
+import org.runnerup.tracking.Tracker;
+import org.runnerup.tracking.replay.SensorReplay;
 
 public class TrackerHRM extends DefaultTrackerComponent {
 
   private final Handler handler = new Handler();
   private HRProvider hrProvider;
+  private final Tracker tracker;
 
   public static final String NAME = "HRM";
 
+  private static final long DRAIN_INTERVAL_MS = 1000;
+  private static final int DRAIN_SIZE = 256;
+  // Intervals per rr_interval row
+  private static final int BATCH_SIZE = 64;
+  // A new row is started when the next interval does not follow the previous within this
+  private static final long MAX_GAP_MS = 1000;
+
+  private final HrvMetrics hrvMetrics = new HrvMetrics();
+  private final long[] drainTimes = new long[DRAIN_SIZE];
+  private final int[] drainIntervals = new int[DRAIN_SIZE];
+  private final ByteBuffer batch =
+      ByteBuffer.allocate(2 * BATCH_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  private long batchTime; // unix ms at the end of the first beat in the batch
+  private long batchEnd; // elapsed realtime ms at the end of the last beat in the batch
+
+  // Heart rate samples per hr_sample row, about two minutes at the common 1 Hz
+  private static final int HR_BATCH_SIZE = 128;
+  // Samples further apart are not integrated, the sensor was likely out of contact
+  private static final long MAX_SAMPLE_GAP_NANOS = HRSeries.MAX_AGE_MS * 1000000;
+
+  private final ByteBuffer hrBatch =
+      ByteBuffer.allocate(HRSeries.SAMPLE_SIZE * HR_BATCH_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+  private long hrBatchTime; // unix ms of the first sample in the batch
+  private long hrBatchLast; // elapsed realtime ms of the last sample in the batch
+  private int lastHr = 0;
+  private long lastHrNanos = 0;
+  private double heartbeats = 0;
+  private long heartbeatNanos = 0;
+  private int maxHr = 0;
+
+  private boolean recording = false;
+  private SQLiteDatabase db;
+
+  private final Runnable drainTask =
+      new Runnable() {
+        @Override
+        public void run() {
+          drainRrIntervals();
+          handler.postDelayed(this, DRAIN_INTERVAL_MS);
+        }
+      };
+
+  public TrackerHRM(Tracker tracker) {
+    this.tracker = tracker;
+  }
+
   @Override
   public String getName() {
     return NAME;
@@ -45,20 +106,40 @@ public class TrackerHRM extends DefaultTrackerComponent {
 
   @Override
   public ResultCode onConnecting(final Callback callback, final Context context) {
-    Resources res = context.getResources();
-    SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-    final String btAddress = prefs.getString(res.getString(R.string.pref_bt_address), null);
-    final String btProviderName = prefs.getString(res.getString(R.string.pref_bt_provider), null);
-    final String btDeviceName = prefs.getString(res.getString(R.string.pref_bt_name), null);
+    final SensorReplay replay = tracker.getSensorReplay();
+    final String btAddress;
+    final String btProviderName;
+    final String btDeviceName;
+    if (replay != null) {
+      if (replay.getHRProvider() == null) {
+        /* the replayed log has no heart rate */
+        return ResultCode.RESULT_NOT_SUPPORTED;
+      }
+      btAddress = ReplayHRProvider.NAME;
+      btProviderName = ReplayHRProvider.NAME;
+      btDeviceName = ReplayHRProvider.NAME;
+    } else {
+      Resources res = context.getResources();
+      SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+      btAddress = prefs.getString(res.getString(R.string.pref_bt_address), null);
+      btProviderName = prefs.getString(res.getString(R.string.pref_bt_provider), null);
+      btDeviceName = prefs.getString(res.getString(R.string.pref_bt_name), null);
+    }
 
     if (btAddress == null || btProviderName == null) {
       /* no HRM is configured, return directly */
       return ResultCode.RESULT_NOT_SUPPORTED;
     }
 
-    hrProvider = HRManager.getHRProvider(context, btProviderName);
+    hrProvider =
+        replay != null
+            ? replay.getHRProvider()
+            : HRManager.getHRProvider(context, btProviderName);
     if (hrProvider != null) {
-      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+      handler.removeCallbacks(drainTask);
+      handler.postDelayed(drainTask, DRAIN_INTERVAL_MS);
+      if (replay == null
+          && Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
           && (ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_CONNECT)
                   != PackageManager.PERMISSION_GRANTED
               || ContextCompat.checkSelfPermission(context, Manifest.permission.BLUETOOTH_SCAN)
@@ -113,6 +194,11 @@ public class TrackerHRM extends DefaultTrackerComponent {
             @Override
             public void onCloseResult(boolean closeOK) {}
 
+            @Override
+            public void onHRValue(HRProvider src, int hrValue, long elapsedRealtimeNanos) {
+              TrackerHRM.this.onHRValue(hrValue, elapsedRealtimeNanos);
+            }
+
             @Override
             public void log(HRProvider src, String msg) {}
           });
@@ -126,8 +212,157 @@ public class TrackerHRM extends DefaultTrackerComponent {
     return hrProvider.isConnected();
   }
 
+  @Override
+  public void onStart() {
+    db = DBHelper.getWritableDatabase(tracker);
+    hrvMetrics.reset();
+    batch.clear();
+    hrBatch.clear();
+    lastHrNanos = 0;
+    heartbeats = 0;
+    heartbeatNanos = 0;
+    maxHr = 0;
+    recording = true;
+  }
+
+  @Override
+  public void onPause() {
+    drainRrIntervals();
+    flush();
+    flushHr();
+    recording = false;
+    lastHrNanos = 0;
+  }
+
+  @Override
+  public void onResume() {
+    recording = true;
+  }
+
+  @Override
+  public void onComplete(boolean discarded) {
+    if (!discarded) {
+      drainRrIntervals();
+      flush();
+      flushHr();
+    }
+    batch.clear();
+    hrBatch.clear();
+    recording = false;
+    if (db != null) {
+      DBHelper.closeDB(db);
+      db = null;
+    }
+  }
+
+  /** Feed the intervals received since the last call to the metrics and the database */
+  private void drainRrIntervals() {
+    RrIntervalBuffer buffer = hrProvider != null ? hrProvider.getRrIntervals() : null;
+    if (buffer == null) {
+      return;
+    }
+    int count;
+    do {
+      count = buffer.drain(drainTimes, drainIntervals, DRAIN_SIZE);
+      for (int i = 0; i < count; i++) {
+        hrvMetrics.add(drainIntervals[i]);
+        if (recording) {
+          record(drainTimes[i], drainIntervals[i]);
+        }
+      }
+    } while (count == DRAIN_SIZE);
+  }
+
+  private void record(long elapsedMs, int rrMs) {
+    if (batch.position() > 0
+        && (!batch.hasRemaining() || Math.abs(elapsedMs - (batchEnd + rrMs)) > MAX_GAP_MS)) {
+      flush();
+    }
+    if (batch.position() == 0) {
+      batchTime = System.currentTimeMillis() - (SystemClock.elapsedRealtime() - elapsedMs);
+    }
+    batch.putShort((short) Math.min(rrMs, 0xFFFF));
+    batchEnd = elapsedMs;
+  }
+
+  private void flush() {
+    if (batch.position() == 0 || db == null) {
+      batch.clear();
+      return;
+    }
+    ContentValues tmp = new ContentValues();
+    tmp.put(DB.RR_INTERVAL.ACTIVITY, tracker.getActivityId());
+    tmp.put(DB.RR_INTERVAL.TIME, batchTime);
+    tmp.put(DB.RR_INTERVAL.INTERVALS, Arrays.copyOf(batch.array(), batch.position()));
+    db.insert(DB.RR_INTERVAL.TABLE, null, tmp);
+    batch.clear();
+  }
+
+  private void onHRValue(int hr, long elapsedRealtimeNanos) {
+    if (!recording || hr <= 0) {
+      return;
+    }
+    // Integrate with the true sample spacing, holding each value until the next sample
+    long dt = elapsedRealtimeNanos - lastHrNanos;
+    if (lastHrNanos > 0 && dt > 0 && dt <= MAX_SAMPLE_GAP_NANOS) {
+      heartbeats += lastHr * dt / (60 * 1e9);
+      heartbeatNanos += dt;
+    }
+    lastHr = hr;
+    lastHrNanos = elapsedRealtimeNanos;
+    maxHr = Math.max(maxHr, hr);
+
+    long elapsedMs = elapsedRealtimeNanos / 1000000;
+    if (hrBatch.position() > 0
+        && (!hrBatch.hasRemaining()
+            || elapsedMs < hrBatchLast
+            || elapsedMs - hrBatchLast > HRSeries.MAX_DELTA_MS)) {
+      flushHr();
+    }
+    if (hrBatch.position() == 0) {
+      hrBatchTime = System.currentTimeMillis() - (SystemClock.elapsedRealtime() - elapsedMs);
+      hrBatchLast = elapsedMs;
+    }
+    hrBatch.putShort((short) (elapsedMs - hrBatchLast));
+    hrBatch.put((byte) Math.min(hr, 0xFF));
+    hrBatchLast = elapsedMs;
+    tracker.onSensorData();
+  }
+
+  private void flushHr() {
+    if (hrBatch.position() == 0 || db == null) {
+      hrBatch.clear();
+      return;
+    }
+    ContentValues tmp = new ContentValues();
+    tmp.put(DB.HR_SAMPLE.ACTIVITY, tracker.getActivityId());
+    tmp.put(DB.HR_SAMPLE.TIME, hrBatchTime);
+    tmp.put(DB.HR_SAMPLE.SAMPLES, Arrays.copyOf(hrBatch.array(), hrBatch.position()));
+    db.insert(DB.HR_SAMPLE.TABLE, null, tmp);
+    hrBatch.clear();
+  }
+
+  /** Beats since start, integrated over the received samples */
+  public double getHeartbeats() {
+    return heartbeats;
+  }
+
+  /** Time covered by the samples integrated in {@link #getHeartbeats()} */
+  public long getHeartbeatNanos() {
+    return heartbeatNanos;
+  }
+
+  public int getMaxHR() {
+    return maxHr;
+  }
+
+  public HrvMetrics getHrvMetrics() {
+    return hrvMetrics;
+  }
+
   @Override
   public ResultCode onEnd(Callback callback, Context context) {
+    handler.removeCallbacks(drainTask);
     if (hrProvider != null) {
       hrProvider.disconnect();
       hrProvider.close();
@@ -25,6 +25,8 @@ import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import androidx.preference.PreferenceManager;
 import java.util.Random;
+import org.runnerup.tracking.replay.SensorLog;
+import org.runnerup.tracking.replay.SensorReplay;
 
 public class TrackerPressure extends DefaultTrackerComponent implements SensorEventListener {
 
@@ -38,14 +40,24 @@ public class TrackerPressure extends DefaultTrackerComponent implements SensorEv
   private SensorManager sensorManager = null;
 
   private static boolean isMockSensor = false;
+  private final Random mockRandom = new Random(1);
+  private SensorReplay replay = null;
 
   // The sensor fires continuously, use the last available values (no smoothing)
   private Float latestVal = null;
 
+  /** Use the replayed pressure instead of the sensor, null to use the sensor */
+  public void setReplay(SensorReplay replay) {
+    this.replay = replay;
+  }
+
   public Float getValue() {
+    if (replay != null) {
+      return replay.getPressure();
+    }
     if (isMockSensor) {
       latestVal =
-          (new Random()).nextFloat() * 0.2f
+          mockRandom.nextFloat() * 0.2f
               + 1013.25f /*SensorManager.PRESSURE_STANDARD_ATMOSPHERE*/;
       // latestTime = SystemClock.elapsedRealtime()*1000000;
     }
@@ -99,6 +111,11 @@ public class TrackerPressure extends DefaultTrackerComponent implements SensorEv
 
   @Override
   public ResultCode onConnecting(final Callback callback, final Context context) {
+    if (replay != null) {
+      return replay.has(SensorLog.PRESSURE)
+          ? ResultCode.RESULT_OK
+          : ResultCode.RESULT_NOT_SUPPORTED;
+    }
     ResultCode res;
     final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
     boolean enabled =
@@ -122,7 +139,7 @@ public class TrackerPressure extends DefaultTrackerComponent implements SensorEv
 
   @Override
   public boolean isConnected() {
-    return sensorManager != null || isMockSensor;
+    return sensorManager != null || isMockSensor || replay != null;
   }
 
   /** Called by tracked after workout has ended */
@@ -39,6 +39,7 @@ public class TrackerTemperature extends DefaultTrackerComponent implements Senso
   private SensorManager sensorManager = null;
 
   private static boolean isMockSensor = false;
+  private final Random mockRandom = new Random(1);
 
   private Float latestVal = null;
 
@@ -46,7 +47,7 @@ public class TrackerTemperature extends DefaultTrackerComponent implements Senso
 
   public Float getValue() {
     if (isMockSensor) {
-      latestVal = (new Random()).nextFloat() * 20 + 15;
+      latestVal = mockRandom.nextFloat() * 20 + 15;
       // latestTime = SystemClock.elapsedRealtime()*1000000;
     }
     return latestVal;
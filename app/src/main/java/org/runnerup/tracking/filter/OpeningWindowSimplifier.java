@@ -0,0 +1,132 @@
+package org.runnerup.tracking.filter;
+
+import java.util.Arrays;
+
+/**
+ * Online path simplification with the opening window algorithm. Points are held back while the
+ * segment from the last written point (the anchor) to the newest point passes within the tolerance
+ * of all points in between; when that fails, the previous point is written and becomes the new
+ * anchor. Every dropped point is thus within the tolerance of the written path. The number of
+ * held points is bounded, so memory and the work per point are constant.
+ *
+ * <p>Held points are only in memory: callers persisting the points must {@link #flush()} before
+ * they stop, and may {@link #commit()} to limit how long points are held.
+ *
+ * @param <T> the point payload passed to the sink
+ */
+public final class OpeningWindowSimplifier<T> {
+
+  /** Receives the points to keep, in order */
+  public interface Sink<T> {
+    void write(T point);
+  }
+
+  private static final double EARTH_RADIUS_M = 6371008.8;
+
+  private final double tolerance;
+  private final Sink<T> sink;
+
+  private boolean hasAnchor = false;
+  private double anchorLat;
+  private double anchorLon;
+
+  private int size = 0;
+  private final double[] lat;
+  private final double[] lon;
+  private final Object[] points;
+
+  /**
+   * @param toleranceM max distance in m from a dropped point to the written path
+   * @param maxLookahead max number of points held back
+   */
+  public OpeningWindowSimplifier(double toleranceM, int maxLookahead, Sink<T> sink) {
+    if (maxLookahead < 1) {
+      throw new IllegalArgumentException("maxLookahead must be at least 1");
+    }
+    this.tolerance = toleranceM;
+    this.sink = sink;
+    this.lat = new double[maxLookahead];
+    this.lon = new double[maxLookahead];
+    this.points = new Object[maxLookahead];
+  }
+
+  /** Add a point, the point or earlier held points may be written */
+  public void add(double latitude, double longitude, T point) {
+    if (!hasAnchor) {
+      setAnchor(latitude, longitude);
+      sink.write(point);
+      return;
+    }
+    if (size > 0 && (size == points.length || !covers(latitude, longitude))) {
+      // The window can not be extended to this point, keep the previous one
+      writeLast();
+    }
+    lat[size] = latitude;
+    lon[size] = longitude;
+    points[size] = point;
+    size++;
+  }
+
+  /** Write the newest held back point and continue the path from it */
+  public void commit() {
+    if (size > 0) {
+      writeLast();
+    }
+  }
+
+  /** Write the held back point, the next point added is written as is */
+  public void flush() {
+    if (size > 0) {
+      writeLast();
+    }
+    hasAnchor = false;
+  }
+
+  /** Write the held back point and continue from a point written by the caller */
+  public void flush(double latitude, double longitude) {
+    flush();
+    setAnchor(latitude, longitude);
+  }
+
+  /** Number of points held back */
+  public int pending() {
+    return size;
+  }
+
+  private void setAnchor(double latitude, double longitude) {
+    hasAnchor = true;
+    anchorLat = latitude;
+    anchorLon = longitude;
+  }
+
+  @SuppressWarnings("unchecked")
+  private void writeLast() {
+    T last = (T) points[size - 1];
+    setAnchor(lat[size - 1], lon[size - 1]);
+    Arrays.fill(points, 0, size, null);
+    size = 0;
+    sink.write(last);
+  }
+
+  /** All held points are within the tolerance of the segment from the anchor to the new point */
+  private boolean covers(double latitude, double longitude) {
+    // Local equirectangular projection around the anchor, in m
+    double kx = Math.cos(Math.toRadians(anchorLat)) * Math.toRadians(1) * EARTH_RADIUS_M;
+    double ky = Math.toRadians(1) * EARTH_RADIUS_M;
+    double ex = (longitude - anchorLon) * kx;
+    double ey = (latitude - anchorLat) * ky;
+    double len2 = ex * ex + ey * ey;
+    double tolerance2 = tolerance * tolerance;
+    for (int i = 0; i < size; i++) {
+      double px = (lon[i] - anchorLon) * kx;
+      double py = (lat[i] - anchorLat) * ky;
+      double t = len2 > 0 ? Math.max(0, Math.min(1, (px * ex + py * ey) / len2)) : 0;
+      double dx = px - t * ex;
+      double dy = py - t * ey;
+      if (dx * dx + dy * dy > tolerance2) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
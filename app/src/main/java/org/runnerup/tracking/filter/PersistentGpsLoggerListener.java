@@ -30,6 +30,19 @@ public class PersistentGpsLoggerListener extends LocationListenerBase implements
   private ContentValues mKey;
   private final boolean mLogGpxAccuracy;
 
+  /** Max number of GPS rows held back by the simplifier */
+  private static final int SIMPLIFY_LOOKAHEAD = 60;
+
+  /**
+   * Max time in ms a GPS row is held back by the simplifier. The held rows are only in memory, this
+   * limits what is lost if the service is killed without a pause or stop.
+   */
+  private static final long SIMPLIFY_MAX_HOLD_MS = 10000;
+
+  private OpeningWindowSimplifier<ContentValues> mSimplifier = null;
+  /** Time of the oldest GPS row held back by the simplifier */
+  private long mHeldSince = 0;
+
   public PersistentGpsLoggerListener(
       SQLiteDatabase _db, String _table, ContentValues _key, boolean logGpxAccuracy) {
     this.mLock = new java.lang.Object();
@@ -55,6 +68,31 @@ public class PersistentGpsLoggerListener extends LocationListenerBase implements
     mTable = _tab;
   }
 
+  /**
+   * Simplify the path while recording: GPS rows are only written if needed to keep the recorded
+   * path within the tolerance, other rows are always written. Rows are held back for at most
+   * {@link #SIMPLIFY_MAX_HOLD_MS}, the caller must {@link #flush()} when recording stops.
+   *
+   * @param toleranceM tolerance in m, 0 to write all rows
+   */
+  public void setSimplification(double toleranceM) {
+    synchronized (mLock) {
+      mSimplifier =
+          toleranceM > 0
+              ? new OpeningWindowSimplifier<>(toleranceM, SIMPLIFY_LOOKAHEAD, this::insert)
+              : null;
+    }
+  }
+
+  /** Write GPS rows held back by the simplifier */
+  public void flush() {
+    synchronized (mLock) {
+      if (mSimplifier != null) {
+        mSimplifier.flush();
+      }
+    }
+  }
+
   public ContentValues getKey() {
     synchronized (mLock) {
       if (mKey == null) return null;
@@ -165,6 +203,28 @@ public class PersistentGpsLoggerListener extends LocationListenerBase implements
     if (temperatureValue != null) {
       values.put(DB.LOCATION.TEMPERATURE, temperatureValue);
     }
+    Integer type = values.getAsInteger(DB.LOCATION.TYPE);
+    synchronized (mLock) {
+      if (mSimplifier == null) {
+        insert(values);
+      } else if (type != null && type == DB.LOCATION.TYPE_GPS) {
+        mSimplifier.add(arg0.getLatitude(), arg0.getLongitude(), values);
+        if (mSimplifier.pending() == 1) {
+          // Only this row is held
+          mHeldSince = arg0.getTime();
+        } else if (arg0.getTime() - mHeldSince >= SIMPLIFY_MAX_HOLD_MS) {
+          // Keep the path from the written row, as when the lookahead is full
+          mSimplifier.commit();
+        }
+      } else {
+        // START, PAUSE, RESUME, END: the path must include the held back row and this one
+        mSimplifier.flush(arg0.getLatitude(), arg0.getLongitude());
+        insert(values);
+      }
+    }
+  }
+
+  private void insert(ContentValues values) {
     if (mDB != null) {
       mDB.insert(mTable, null, values);
     }
@@ -0,0 +1,70 @@
+package org.runnerup.tracking.replay;
+
+import android.util.Log;
+import org.runnerup.common.tracker.TrackerState;
+import org.runnerup.common.util.ValueModel;
+import org.runnerup.core.workout.Workout;
+import org.runnerup.tracking.Tracker;
+
+/**
+ * Records an activity from a {@link SensorReplay} without user interaction: connects the tracker
+ * with the replay in place of the sensors, starts the workout, and stops and saves the activity
+ * when the replay ends.
+ */
+public class ReplaySession implements ValueModel.ChangeListener<TrackerState> {
+
+  private static final String TAG = "ReplaySession";
+
+  private final Tracker tracker;
+  private final SensorReplay replay;
+  private final Workout workout;
+
+  public ReplaySession(Tracker tracker, SensorReplay replay, Workout workout) {
+    this.tracker = tracker;
+    this.replay = replay;
+    this.workout = workout;
+  }
+
+  /** Start, the tracker must not be in use */
+  public boolean start() {
+    if (tracker.getState() != TrackerState.INIT) {
+      Log.w(TAG, "Tracker busy: " + tracker.getState());
+      return false;
+    }
+    tracker.setSensorReplay(replay);
+    tracker.registerTrackerStateListener(this);
+    tracker.connect();
+    return true;
+  }
+
+  @Override
+  public void onValueChanged(
+      ValueModel<TrackerState> instance, TrackerState oldValue, TrackerState newValue) {
+    switch (newValue) {
+      case CONNECTED:
+        tracker.setWorkout(workout);
+        tracker.start();
+        replay.start(tracker, this::finish);
+        break;
+      case ERROR:
+        Log.w(TAG, "Tracker error, replay aborted");
+        replay.stop();
+        end();
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void finish() {
+    tracker.stop();
+    tracker.completeActivity(true, null);
+    Log.i(TAG, "Saved activity " + tracker.getActivityId() + ", " + replay.getReport());
+    end();
+  }
+
+  private void end() {
+    tracker.unregisterTrackerStateListener(this);
+    tracker.setSensorReplay(null);
+  }
+}
@@ -0,0 +1,167 @@
+package org.runnerup.tracking.replay;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Locale;
+import org.runnerup.sync.format.ImportedActivity;
+
+/**
+ * A recorded session of sensor samples in time order, to be replayed into the tracker by {@link
+ * SensorReplay}. Created from an activity file or read from a sample log with one sample per line:
+ *
+ * <pre>
+ * # time ms, type, values
+ * 0,gps,59.3293,18.0686,12.5
+ * 0,hr,121
+ * 412,rr,498
+ * 1000,cad,84
+ * 1000,pres,1013.2
+ * </pre>
+ *
+ * The altitude of gps samples is optional. Times are relative, the first sample is replayed at
+ * the start.
+ */
+public final class SensorLog {
+
+  public static final int GPS = 0;
+  public static final int HR = 1;
+  public static final int RR = 2;
+  public static final int CADENCE = 3;
+  public static final int PRESSURE = 4;
+
+  private static final String[] NAMES = {"gps", "hr", "rr", "cad", "pres"};
+
+  private int count = 0;
+  private long[] time = new long[256];
+  private int[] type = new int[256];
+  // gps: latitude, longitude, altitude (NaN if unknown), other types: the value in values0
+  private double[] values0 = new double[256];
+  private double[] values1 = new double[256];
+  private double[] values2 = new double[256];
+  private int types = 0; // bit per type with samples
+
+  /**
+   * Add a sample, in time order.
+   *
+   * @throws IllegalArgumentException if the time is before the previous sample
+   */
+  public void add(long timeMs, int sampleType, double v0, double v1, double v2) {
+    if (count > 0 && timeMs < time[count - 1]) {
+      throw new IllegalArgumentException(
+          "Sample at " + timeMs + " before the previous at " + time[count - 1]);
+    }
+    if (count == time.length) {
+      int n = 2 * count;
+      time = Arrays.copyOf(time, n);
+      type = Arrays.copyOf(type, n);
+      values0 = Arrays.copyOf(values0, n);
+      values1 = Arrays.copyOf(values1, n);
+      values2 = Arrays.copyOf(values2, n);
+    }
+    time[count] = timeMs;
+    type[count] = sampleType;
+    values0[count] = v0;
+    values1[count] = v1;
+    values2[count] = v2;
+    types |= 1 << sampleType;
+    count++;
+  }
+
+  public void add(long timeMs, int sampleType, double value) {
+    add(timeMs, sampleType, value, Double.NaN, Double.NaN);
+  }
+
+  public int size() {
+    return count;
+  }
+
+  /** Time of the sample relative to the first, ms */
+  public long getTime(int i) {
+    return time[i] - time[0];
+  }
+
+  public int getType(int i) {
+    return type[i];
+  }
+
+  /** The value, or the latitude of a gps sample */
+  public double getValue(int i) {
+    return values0[i];
+  }
+
+  public double getLongitude(int i) {
+    return values1[i];
+  }
+
+  /** NaN if unknown */
+  public double getAltitude(int i) {
+    return values2[i];
+  }
+
+  public boolean has(int sampleType) {
+    return (types & (1 << sampleType)) != 0;
+  }
+
+  /** Duration from the first to the last sample, ms */
+  public long getDuration() {
+    return count > 0 ? getTime(count - 1) : 0;
+  }
+
+  /**
+   * Track points with heart rate and cadence, as parsed from a GPX or TCX file. Points without a
+   * position only give their sensor samples.
+   */
+  public static SensorLog fromActivity(ImportedActivity activity) {
+    SensorLog log = new SensorLog();
+    for (int i = 0; i < activity.size(); i++) {
+      long t = activity.getTime(i);
+      if (activity.hasPosition(i)) {
+        log.add(
+            t, GPS, activity.getLatitude(i), activity.getLongitude(i), activity.getAltitude(i));
+      }
+      if (activity.getHr(i) > 0) {
+        log.add(t, HR, activity.getHr(i));
+      }
+      if (activity.getCadence(i) > 0) {
+        log.add(t, CADENCE, activity.getCadence(i));
+      }
+    }
+    return log;
+  }
+
+  /** Read a sample log, see the class description */
+  public static SensorLog read(Reader reader) throws IOException {
+    SensorLog log = new SensorLog();
+    BufferedReader in = new BufferedReader(reader);
+    String line;
+    int lineNumber = 0;
+    while ((line = in.readLine()) != null) {
+      lineNumber++;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split(",");
+      try {
+        long t = Long.parseLong(fields[0].trim());
+        int sampleType = Arrays.asList(NAMES).indexOf(fields[1].trim().toLowerCase(Locale.US));
+        if (sampleType < 0) {
+          throw new IOException("Unknown sample type '" + fields[1] + "' on line " + lineNumber);
+        }
+        if (sampleType == GPS) {
+          double alt = fields.length > 4 ? Double.parseDouble(fields[4]) : Double.NaN;
+          log.add(t, GPS, Double.parseDouble(fields[2]), Double.parseDouble(fields[3]), alt);
+        } else {
+          log.add(t, sampleType, Double.parseDouble(fields[2]));
+        }
+      } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+        throw new IOException("Invalid sample on line " + lineNumber + ": " + line);
+      } catch (IllegalArgumentException e) {
+        throw new IOException(e.getMessage() + " on line " + lineNumber);
+      }
+    }
+    return log;
+  }
+}
@@ -0,0 +1,235 @@
+package org.runnerup.tracking.replay;
+
+import android.location.Location;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Xml;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.List;
+import java.util.Locale;
+import org.runnerup.hr.ReplayHRProvider;
+import org.runnerup.sync.format.ImportedActivity;
+import org.runnerup.sync.format.XmlActivityParser;
+import org.runnerup.tracking.Tracker;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+/**
+ * Replays a {@link SensorLog} into the tracker in place of the sensors: locations are passed to
+ * {@link Tracker#onLocationChanged}, heart rate and RR intervals through a {@link
+ * ReplayHRProvider}, cadence and pressure are read by the tracker components. The samples are
+ * dispatched on the main thread at 1 to 100 times the recorded speed, timestamped when dispatched,
+ * so durations in the recorded activity are divided by the speed.
+ *
+ * <p>The time spent in the tracker for each location and the dispatch delay are measured, see
+ * {@link #getReport()}.
+ */
+public class SensorReplay {
+
+  private static final String TAG = "SensorReplay";
+
+  public static final double MIN_SPEED = 1;
+  public static final double MAX_SPEED = 100;
+
+  private final SensorLog log;
+  private final double speed;
+  private final Handler handler = new Handler(Looper.getMainLooper());
+  private final ReplayHRProvider hrProvider;
+
+  private Tracker tracker;
+  private Runnable onFinished;
+  private long startNanos;
+  private int next = 0;
+  private boolean running = false;
+
+  private Float cadence = null;
+  private Float pressure = null;
+
+  // Timing
+  private final int[] samples = new int[5];
+  private long locationNanos = 0;
+  private long maxLocationNanos = 0;
+  private long lateNanos = 0;
+  private long maxLateNanos = 0;
+  private long endNanos = 0;
+
+  /**
+   * @param speed replay speed, limited to {@link #MIN_SPEED}..{@link #MAX_SPEED}
+   */
+  public SensorReplay(SensorLog log, double speed) {
+    this.log = log;
+    this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+    boolean hasHr = log.has(SensorLog.HR) || log.has(SensorLog.RR);
+    hrProvider = hasHr ? new ReplayHRProvider() : null;
+  }
+
+  /** Read a GPX or TCX file (the first activity), or else a sample log */
+  public static SensorLog load(File file) throws IOException {
+    String name = file.getName().toLowerCase(Locale.US);
+    if (name.endsWith(".gpx") || name.endsWith(".tcx")) {
+      try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setInput(in, null);
+        List<ImportedActivity> activities = new XmlActivityParser(parser, file.getName()).parse();
+        if (activities.isEmpty()) {
+          throw new IOException("No activity in " + file.getName());
+        }
+        return SensorLog.fromActivity(activities.get(0));
+      } catch (XmlPullParserException e) {
+        throw new IOException("Failed to parse " + file.getName() + ": " + e.getMessage());
+      }
+    }
+    try (Reader in = new FileReader(file)) {
+      return SensorLog.read(in);
+    }
+  }
+
+  /** The heart rate provider to use, null if the log has no heart rate */
+  public ReplayHRProvider getHRProvider() {
+    return hrProvider;
+  }
+
+  public boolean has(int sampleType) {
+    return log.has(sampleType);
+  }
+
+  /** Latest replayed cadence, null before the first */
+  public Float getCadence() {
+    return cadence;
+  }
+
+  /** Latest replayed pressure, null before the first */
+  public Float getPressure() {
+    return pressure;
+  }
+
+  /**
+   * Start dispatching from the first sample.
+   *
+   * @param onFinished run on the main thread after the last sample, may be null
+   */
+  public void start(Tracker tracker, Runnable onFinished) {
+    this.tracker = tracker;
+    this.onFinished = onFinished;
+    next = 0;
+    running = true;
+    startNanos = SystemClock.elapsedRealtimeNanos();
+    handler.post(dispatch);
+  }
+
+  public void stop() {
+    running = false;
+    handler.removeCallbacks(dispatch);
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  private final Runnable dispatch =
+      new Runnable() {
+        @Override
+        public void run() {
+          if (!running) {
+            return;
+          }
+          long now = SystemClock.elapsedRealtimeNanos();
+          while (next < log.size() && dueNanos(next) <= now) {
+            long late = now - dueNanos(next);
+            lateNanos += late;
+            maxLateNanos = Math.max(maxLateNanos, late);
+            dispatch(next++);
+            now = SystemClock.elapsedRealtimeNanos();
+          }
+          if (next < log.size()) {
+            long delayMs = (dueNanos(next) - now + 999_999) / 1_000_000;
+            handler.postDelayed(this, delayMs);
+          } else {
+            running = false;
+            endNanos = now;
+            Log.i(TAG, getReport());
+            if (onFinished != null) {
+              onFinished.run();
+            }
+          }
+        }
+      };
+
+  private long dueNanos(int i) {
+    return startNanos + (long) (log.getTime(i) * 1_000_000 / speed);
+  }
+
+  private void dispatch(int i) {
+    int type = log.getType(i);
+    samples[type]++;
+    switch (type) {
+      case SensorLog.GPS:
+        Location location = new Location("replay");
+        location.setLatitude(log.getValue(i));
+        location.setLongitude(log.getLongitude(i));
+        if (!Double.isNaN(log.getAltitude(i))) {
+          location.setAltitude(log.getAltitude(i));
+        }
+        location.setAccuracy(1);
+        location.setTime(System.currentTimeMillis());
+        location.setElapsedRealtimeNanos(SystemClock.elapsedRealtimeNanos());
+        long start = System.nanoTime();
+        tracker.onLocationChanged(location);
+        long spent = System.nanoTime() - start;
+        locationNanos += spent;
+        maxLocationNanos = Math.max(maxLocationNanos, spent);
+        break;
+      case SensorLog.HR:
+        if (hrProvider != null) {
+          hrProvider.onHRValue((int) Math.round(log.getValue(i)));
+        }
+        break;
+      case SensorLog.RR:
+        if (hrProvider != null) {
+          hrProvider.onRrInterval((int) Math.round(log.getValue(i)));
+        }
+        break;
+      case SensorLog.CADENCE:
+        cadence = (float) log.getValue(i);
+        break;
+      case SensorLog.PRESSURE:
+        pressure = (float) log.getValue(i);
+        break;
+    }
+  }
+
+  /** Samples dispatched and the time spent, so far */
+  public String getReport() {
+    int dispatched = Math.max(next, 1);
+    int locations = Math.max(samples[SensorLog.GPS], 1);
+    long wallNanos = (running || endNanos == 0 ? SystemClock.elapsedRealtimeNanos() : endNanos)
+        - startNanos;
+    return String.format(
+        Locale.US,
+        "replay %.0fx: %d/%d samples (gps %d, hr %d, rr %d, cad %d, pres %d) in %.1f s"
+            + " for %.1f s recorded; onLocationChanged avg %.3f ms, max %.3f ms;"
+            + " dispatch delay avg %.3f ms, max %.3f ms",
+        speed,
+        next,
+        log.size(),
+        samples[SensorLog.GPS],
+        samples[SensorLog.HR],
+        samples[SensorLog.RR],
+        samples[SensorLog.CADENCE],
+        samples[SensorLog.PRESSURE],
+        wallNanos / 1e9,
+        log.getDuration() / 1e3,
+        locationNanos / 1e6 / locations,
+        maxLocationNanos / 1e6,
+        lateNanos / 1e6 / dispatched,
+        maxLateNanos / 1e6);
+  }
+}
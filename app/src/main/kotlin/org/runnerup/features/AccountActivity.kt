@@ -182,6 +182,16 @@ class AccountActivity : AppCompatActivity(), Constants {
         addRow(
             resources.getString(org.runnerup.common.R.string.RunnerUp_live_address) + ":",
             mRunnerUpLiveApiAddress)
+
+        val uplink = RunnerUpLiveSynchronizer.getLastUplink()
+        if (uplink != null) {
+          addRow(
+              resources.getString(
+                  org.runnerup.common.R.string.Live_samples_sent_dropped,
+                  uplink.sent,
+                  uplink.dropped),
+              null)
+        }
       }
 
       if (synchronizer.checkSupport(Synchronizer.Feature.UPLOAD)) {
@@ -209,6 +219,32 @@ class AccountActivity : AppCompatActivity(), Constants {
         }
       }
 
+      if (synchronizer.checkSupport(Synchronizer.Feature.UPLOAD_FORMAT)) {
+        // One format, TCX unless FIT is selected
+        addRow(resources.getString(org.runnerup.common.R.string.File_format), null)
+        val tcx = CheckBox(this)
+        val fit = CheckBox(this)
+        fit.isChecked = format.contains(FileFormats.FIT)
+        tcx.isChecked = !fit.isChecked
+        for ((cb, f) in listOf(Pair(tcx, FileFormats.TCX), Pair(fit, FileFormats.FIT))) {
+          val other = if (cb === tcx) fit else tcx
+          cb.setOnCheckedChangeListener { _, isChecked ->
+            if (other.isChecked == isChecked) {
+              other.isChecked = !isChecked
+            }
+            if (isChecked) {
+              format = FileFormats(f.value)
+              val tmp = ContentValues()
+              tmp.put(DB.ACCOUNT.FORMAT, format.toString())
+              mDB!!.update(DB.ACCOUNT.TABLE, tmp, "name = ?", arrayOf(mSynchronizerName))
+            }
+          }
+          cb.minimumHeight = 48
+          cb.minimumWidth = 48
+          addRow(f.name, cb)
+        }
+      }
+
       if (synchronizer.checkSupport(Synchronizer.Feature.LIVE)) {
         val cb = CheckBox(this)
         cb.tag = DB.ACCOUNT.FLAG_LIVE
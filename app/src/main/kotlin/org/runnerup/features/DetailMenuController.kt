@@ -21,7 +21,6 @@ import org.runnerup.data.DBHelper
 import org.runnerup.data.PathSimplifier
 import org.runnerup.core.workout.Sport
 import org.runnerup.ui.common.widget.TitleSpinner
-import java.util.ArrayList
 import org.runnerup.core.content.ActivityProvider.GPX_MIME
 import org.runnerup.core.content.ActivityProvider.TCX_MIME
 
@@ -67,7 +66,7 @@ internal class DetailMenuController(private val activity: DetailActivity) {
           dialog.dismiss()
           val db = mDB ?: return@setPositiveButton
           val simplifier = PathSimplifier(activity)
-          val ids: ArrayList<String> = simplifier.getNoisyLocationIDsAsStrings(db, mID)
+          val ids = simplifier.getNoisyLocationIDs(db, mID)
           ActivityCleaner.deleteLocations(db, ids)
           ActivityCleaner().recompute(db, mID)
           activity.requery()
@@ -27,7 +27,6 @@ import org.runnerup.data.PathSimplifier
 import org.runnerup.core.workout.Sport
 import org.runnerup.ui.common.widget.TitleSpinner
 import org.runnerup.ui.common.widget.WidgetUtil
-import java.util.ArrayList
 
 /** Save-after-run flow and edit mode for [DetailActivity]. */
 internal class DetailSaveModeController(private val activity: DetailActivity) {
@@ -153,7 +152,7 @@ internal class DetailSaveModeController(private val activity: DetailActivity) {
     try {
       val simplifier = PathSimplifier.getPathSimplifierForSave(activity)
       if (simplifier != null) {
-        val ids: ArrayList<String> = simplifier.getNoisyLocationIDsAsStrings(db, mID)
+        val ids = simplifier.getNoisyLocationIDs(db, mID)
         ActivityCleaner.deleteLocations(db, ids)
         ActivityCleaner().recompute(db, mID)
       }
@@ -554,6 +554,8 @@ class HRSettingsActivity : AppCompatActivity(), HRClient {
     log(hrProvider!!.providerName + "::onCloseResult(" + closeOK + ")")
   }
 
+  override fun onHRValue(src: HRProvider, hrValue: Int, elapsedRealtimeNanos: Long) {}
+
   override fun log(src: HRProvider, msg: String) {
     log(src.providerName + ": " + msg)
   }
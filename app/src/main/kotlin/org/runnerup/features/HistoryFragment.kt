@@ -35,10 +35,13 @@ import androidx.appcompat.app.AppCompatDelegate
 import androidx.appcompat.content.res.AppCompatResources
 import androidx.core.content.ContextCompat
 import androidx.fragment.app.Fragment
+import androidx.recyclerview.widget.DiffUtil
 import androidx.recyclerview.widget.LinearLayoutManager
+import androidx.recyclerview.widget.ListAdapter
 import androidx.recyclerview.widget.RecyclerView
 import java.util.Calendar
 import java.util.Date
+import java.util.TimeZone
 import org.runnerup.R
 import org.runnerup.common.util.Constants.DB
 import org.runnerup.core.util.ActivitySummaryBinder
@@ -47,11 +50,18 @@ import org.runnerup.core.util.Formatter
 import org.runnerup.core.workout.Sport
 import org.runnerup.data.ActivityCleaner
 import org.runnerup.data.DBHelper
+import org.runnerup.data.MonthRange
 import org.runnerup.core.util.CardPressHelper
 import org.runnerup.data.entities.ActivityEntity
 
 class HistoryFragment : Fragment(R.layout.history) {
 
+  companion object {
+    private const val PAGE_SIZE = 100
+    // Load the next page when this many rows are left below the last visible one
+    private const val PREFETCH_DISTANCE = 30
+  }
+
   private var db: SQLiteDatabase? = null
   private var formatter: Formatter? = null
   private var adapter: HistoryListAdapter? = null
@@ -59,6 +69,10 @@ class HistoryFragment : Fragment(R.layout.history) {
   private var selectedYear = -1
   private var selectedMonth = -1
   private var loadGeneration = 0
+  private var loading = false
+  private var endReached = false
+  // The loaded rows, submitted as a whole. The adapter list lags behind while a diff is pending.
+  private var rows: List<HistoryRow> = emptyList()
 
   private val activityResultLauncher =
       registerForActivityResult(ActivityResultContracts.StartActivityForResult()) { reloadList() }
@@ -79,7 +93,7 @@ class HistoryFragment : Fragment(R.layout.history) {
         selectedYear = -1
         selectedMonth = -1
         filterButton?.text = "Filter"
-        reloadList()
+        reloadList(keepLoaded = false)
       } else {
         showFilterDialog()
       }
@@ -94,6 +108,16 @@ class HistoryFragment : Fragment(R.layout.history) {
     adapter =
         HistoryListAdapter(formatter) { activityId -> openDetail(activityId) }
     recyclerView.adapter = adapter
+    recyclerView.addOnScrollListener(
+        object : RecyclerView.OnScrollListener() {
+          override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+            val layoutManager = recyclerView.layoutManager as LinearLayoutManager
+            if (layoutManager.findLastVisibleItemPosition() >=
+                layoutManager.itemCount - PREFETCH_DISTANCE) {
+              loadNextPage()
+            }
+          }
+        })
 
     AppCompatDelegate.setCompatVectorFromResourcesEnabled(true)
     ActivityCleaner().conditionalRecompute(db)
@@ -116,22 +140,58 @@ class HistoryFragment : Fragment(R.layout.history) {
     selectedYear = year
     selectedMonth = if (month in 1..12) month - 1 else month
     filterButton?.text = "Clear"
-    reloadList()
+    reloadList(keepLoaded = false)
   }
 
-  private fun reloadList() {
+  /**
+   * Load the first page, or as many rows as are loaded when [keepLoaded], and show the changes
+   * to the current list.
+   */
+  private fun reloadList(keepLoaded: Boolean = true) {
     val database = db ?: return
     val gen = ++loadGeneration
+    val loaded = rows.size
+    val limit = if (keepLoaded) maxOf(PAGE_SIZE, loaded) else PAGE_SIZE
+    loading = true
+    BgTasks.runDb(
+        { queryActivities(database, null, limit) },
+        { activities ->
+          if (!isAdded || gen != loadGeneration) return@runDb
+          loading = false
+          endReached = activities.size < limit
+          rows = buildDisplayRows(activities, null)
+          adapter?.submitList(rows)
+        },
+    )
+  }
+
+  private fun loadNextPage() {
+    val database = db ?: return
+    if (loading || endReached) return
+    val last = rows.lastOrNull() ?: return
+    val gen = loadGeneration
+    loading = true
     BgTasks.runDb(
-        { queryActivities(database) },
+        { queryActivities(database, last.entity, PAGE_SIZE) },
         { activities ->
           if (!isAdded || gen != loadGeneration) return@runDb
-          adapter?.submit(buildDisplayRows(activities))
+          loading = false
+          endReached = activities.size < PAGE_SIZE
+          rows = rows + buildDisplayRows(activities, last)
+          adapter?.submitList(rows)
         },
     )
   }
 
-  private fun queryActivities(database: SQLiteDatabase): List<ActivityEntity> {
+  /**
+   * Activities, newest first, starting after [after]. Pages are read by (start_time, _id) from
+   * the start_time index, so a page costs the same anywhere in the history.
+   */
+  private fun queryActivities(
+      database: SQLiteDatabase,
+      after: ActivityEntity?,
+      limit: Int,
+  ): List<ActivityEntity> {
     val projection =
         arrayOf(
             "_id",
@@ -142,7 +202,7 @@ class HistoryFragment : Fragment(R.layout.history) {
             DB.ACTIVITY.AVG_HR,
             DB.ACTIVITY.MAX_HR,
         )
-    var whereClause = "deleted == 0"
+    var whereClause = "deleted == 0 AND ${DB.ACTIVITY.START_TIME} IS NOT NULL"
     if (selectedYear != -1 && selectedMonth != -1) {
       val cal = Calendar.getInstance()
       cal.set(selectedYear, selectedMonth, 1, 0, 0, 0)
@@ -153,16 +213,26 @@ class HistoryFragment : Fragment(R.layout.history) {
       whereClause +=
           " AND ${DB.ACTIVITY.START_TIME} >= $startTime AND ${DB.ACTIVITY.START_TIME} < $endTime"
     }
+    var args: Array<String>? = null
+    val afterStart = after?.startTime
+    val afterId = after?.id
+    if (afterStart != null && afterId != null) {
+      whereClause +=
+          " AND (${DB.ACTIVITY.START_TIME} < ?" +
+              " OR (${DB.ACTIVITY.START_TIME} = ? AND _id < ?))"
+      args = arrayOf(afterStart.toString(), afterStart.toString(), afterId.toString())
+    }
     val result = ArrayList<ActivityEntity>()
     database
         .query(
             DB.ACTIVITY.TABLE,
             projection,
             whereClause,
+            args,
             null,
             null,
-            null,
-            "${DB.ACTIVITY.START_TIME} desc",
+            "${DB.ACTIVITY.START_TIME} desc, _id desc",
+            limit.toString(),
         )
         .use { cursor ->
           while (cursor.moveToNext()) {
@@ -172,21 +242,21 @@ class HistoryFragment : Fragment(R.layout.history) {
     return result
   }
 
-  private fun buildDisplayRows(activities: List<ActivityEntity>): List<HistoryRow> {
+  /** Rows with a month header on the first activity of each month, continuing after [previous] */
+  private fun buildDisplayRows(
+      activities: List<ActivityEntity>,
+      previous: HistoryRow?,
+  ): List<HistoryRow> {
     val fmt = formatter ?: return emptyList()
+    val tz = TimeZone.getDefault()
     val rows = ArrayList<HistoryRow>(activities.size)
-    var prevYear = -1
-    var prevMonth = -1
+    var prevMonth = previous?.monthIndex ?: -1
     for (entity in activities) {
       val startTime = entity.startTime ?: continue
-      val cal = Calendar.getInstance()
-      cal.time = Date(startTime * 1000)
-      val year = cal.get(Calendar.YEAR)
-      val month = cal.get(Calendar.MONTH)
-      val showHeader = year != prevYear || month != prevMonth
-      val headerText = if (showHeader) fmt.formatMonth(cal.time) else null
-      rows.add(HistoryRow(entity, showHeader, headerText))
-      prevYear = year
+      val month = MonthRange.monthIndex(startTime, tz)
+      val showHeader = month != prevMonth
+      val headerText = if (showHeader) fmt.formatMonth(Date(startTime * 1000)) else null
+      rows.add(HistoryRow(entity, month, showHeader, headerText))
       prevMonth = month
     }
     return rows
@@ -239,13 +309,13 @@ class HistoryFragment : Fragment(R.layout.history) {
           selectedYear = years[yearPicker.value].toInt()
           selectedMonth = monthPicker.value
           filterButton?.text = "Clear"
-          reloadList()
+          reloadList(keepLoaded = false)
         }
         .setNeutralButton("Clear") { _, _ ->
           selectedYear = -1
           selectedMonth = -1
           filterButton?.text = "Filter"
-          reloadList()
+          reloadList(keepLoaded = false)
         }
         .setNegativeButton("Cancel", null)
         .show()
@@ -274,10 +344,29 @@ class HistoryFragment : Fragment(R.layout.history) {
 
   private data class HistoryRow(
       val entity: ActivityEntity,
+      val monthIndex: Int,
       val showMonthHeader: Boolean,
       val monthHeaderText: String?,
   )
 
+  private object HistoryRowDiff : DiffUtil.ItemCallback<HistoryRow>() {
+    override fun areItemsTheSame(oldItem: HistoryRow, newItem: HistoryRow): Boolean =
+        oldItem.entity.id == newItem.entity.id
+
+    override fun areContentsTheSame(oldItem: HistoryRow, newItem: HistoryRow): Boolean {
+      val a = oldItem.entity
+      val b = newItem.entity
+      return oldItem.showMonthHeader == newItem.showMonthHeader &&
+          oldItem.monthHeaderText == newItem.monthHeaderText &&
+          a.startTime == b.startTime &&
+          a.distance == b.distance &&
+          a.time == b.time &&
+          a.sport == b.sport &&
+          a.avgHr == b.avgHr &&
+          a.maxHr == b.maxHr
+    }
+  }
+
   private class HistoryItemSpacingDecoration(private val spacingPx: Int) :
       RecyclerView.ItemDecoration() {
     override fun getItemOffsets(
@@ -297,16 +386,7 @@ class HistoryFragment : Fragment(R.layout.history) {
   private class HistoryListAdapter(
       private val formatter: Formatter?,
       private val onItemClick: (Long?) -> Unit,
-  ) : RecyclerView.Adapter<HistoryListAdapter.Holder>() {
-    private val rows = ArrayList<HistoryRow>()
-
-    fun submit(newRows: List<HistoryRow>) {
-      rows.clear()
-      rows.addAll(newRows)
-      notifyDataSetChanged()
-    }
-
-    override fun getItemCount(): Int = rows.size
+  ) : ListAdapter<HistoryRow, HistoryListAdapter.Holder>(HistoryRowDiff) {
 
     override fun onCreateViewHolder(parent: ViewGroup, viewType: Int): Holder {
       val view =
@@ -316,7 +396,7 @@ class HistoryFragment : Fragment(R.layout.history) {
     }
 
     override fun onBindViewHolder(holder: Holder, position: Int) {
-      holder.bind(rows[position], formatter)
+      holder.bind(getItem(position), formatter)
     }
 
     class Holder(
@@ -17,7 +17,6 @@ import android.content.pm.ActivityInfo
 import android.content.res.Configuration
 import android.location.Location
 import android.os.Bundle
-import android.os.Handler
 import android.os.IBinder
 import android.util.Log
 import android.view.MotionEvent
@@ -33,8 +32,6 @@ import androidx.core.view.ViewCompat
 import androidx.preference.PreferenceManager
 import androidx.recyclerview.widget.RecyclerView
 import java.util.Arrays
-import java.util.Timer
-import java.util.TimerTask
 import org.runnerup.BuildConfig
 import org.runnerup.R
 import org.runnerup.common.tracker.TrackerState
@@ -49,7 +46,6 @@ class RunActivity : AppCompatActivity(), TickListener {
 
   private var workout: Workout? = null
   private var mTracker: Tracker? = null
-  private val handler = Handler()
 
   private var pauseButton: Button? = null
   private var newLapButton: Button? = null
@@ -192,8 +188,8 @@ class RunActivity : AppCompatActivity(), TickListener {
 
   override fun onDestroy() {
     super.onDestroy()
-    unbindGpsTracker()
     stopTimer()
+    unbindGpsTracker()
   }
 
   private fun onGpsTrackerBound() {
@@ -210,33 +206,26 @@ class RunActivity : AppCompatActivity(), TickListener {
     tracker.displayNotificationState()
   }
 
-  private var timer: Timer? = null
+  // The tracker advances the workout, the view is updated after each evaluation
+  private var tickListenerRegistered = false
   private var lastLocation: Location? = null
 
   private fun startTimer() {
-    timer =
-        Timer().also {
-          it.schedule(
-              object : TimerTask() {
-                override fun run() {
-                  handler.post { onTick() }
-                }
-              },
-              0,
-              500,
-          )
-        }
+    val tracker = mTracker ?: return
+    tracker.registerWorkoutTickListener(this)
+    tickListenerRegistered = true
+    onTick()
   }
 
   private fun stopTimer() {
-    timer?.cancel()
-    timer?.purge()
-    timer = null
+    if (tickListenerRegistered) {
+      mTracker?.unregisterWorkoutTickListener(this)
+      tickListenerRegistered = false
+    }
   }
 
   override fun onTick() {
-    val w = workout ?: return
-    w.onTick()
+    workout ?: return
     updateView()
     mTracker?.lastKnownLocation?.let { l2 ->
       if (lastLocation == null || l2 != lastLocation) {
@@ -247,7 +236,7 @@ class RunActivity : AppCompatActivity(), TickListener {
 
   private fun doStop() {
     val w = workout ?: return
-    if (timer == null) {
+    if (!tickListenerRegistered) {
       return
     }
     w.onStop(w)
@@ -38,6 +38,7 @@ internal class RunWorkoutListController(
   }
 
   @JvmField var currentStep: Step? = null
+  private var workout: org.runnerup.core.workout.Workout? = null
 
   private val adapter = WorkoutListAdapter()
   private val layoutManager = LinearLayoutManager(activity)
@@ -61,6 +62,7 @@ internal class RunWorkoutListController(
   }
 
   fun populateFromWorkout(workout: org.runnerup.core.workout.Workout) {
+    this.workout = workout
     rows.clear()
     for (entry in workout.getStepList()) {
       val row = WorkoutRow()
@@ -83,10 +85,9 @@ internal class RunWorkoutListController(
 
   private fun getPosition(step: Step?): Int {
     if (step == null) return 0
-    for (i in rows.indices) {
-      if (rows[i].step === step) return i
-    }
-    return 0
+    // Rows are in step list order
+    val i = workout?.getStepListIndex(step) ?: -1
+    return if (i in rows.indices) i else 0
   }
 
   private inner class WorkoutListAdapter : RecyclerView.Adapter<RecyclerView.ViewHolder>() {
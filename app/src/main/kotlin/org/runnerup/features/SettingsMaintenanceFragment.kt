@@ -6,20 +6,30 @@ import android.app.ProgressDialog
 import android.content.Intent
 import android.net.Uri
 import android.os.Bundle
+import android.provider.OpenableColumns
+import android.text.InputType
 import android.text.format.DateFormat
+import android.text.format.Formatter
 import android.util.Log
+import android.widget.EditText
+import android.widget.LinearLayout
 import android.widget.Toast
 import androidx.activity.result.ActivityResultLauncher
 import androidx.activity.result.contract.ActivityResultContracts
 import androidx.preference.Preference
 import androidx.preference.PreferenceFragmentCompat
+import androidx.preference.PreferenceManager
 import androidx.preference.SwitchPreference
+import java.io.File
 import java.util.Locale
 import org.runnerup.R
+import org.runnerup.core.content.BackupFileProvider
 import org.runnerup.core.util.AutomaticBackupManager
+import org.runnerup.core.util.BackupWorker
 import org.runnerup.core.util.BgTasks
 import org.runnerup.core.util.DriveBackupManager
 import org.runnerup.data.DBHelper
+import org.runnerup.sync.ActivityImporter
 
 class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
 
@@ -34,6 +44,7 @@ class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
   private var autoBackupPreference: SwitchPreference? = null
   private var progressDialog: ProgressDialog? = null
   private lateinit var folderPickerLauncher: ActivityResultLauncher<Intent>
+  private lateinit var importPickerLauncher: ActivityResultLauncher<Array<String>>
 
   override fun onCreate(savedInstanceState: Bundle?) {
     super.onCreate(savedInstanceState)
@@ -62,6 +73,14 @@ class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
         Toast.makeText(requireContext(), "Folder selection cancelled", Toast.LENGTH_SHORT).show()
       }
     }
+
+    importPickerLauncher = registerForActivityResult(
+        ActivityResultContracts.OpenDocument()
+    ) { uri ->
+      if (uri != null) {
+        importActivities(uri)
+      }
+    }
   }
 
   override fun onCreatePreferences(savedInstanceState: Bundle?, rootKey: String?) {
@@ -70,6 +89,11 @@ class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
     findPreference<Preference>(res.getString(R.string.pref_exportdb))?.setOnPreferenceClickListener(onExportClick)
     findPreference<Preference>(res.getString(R.string.pref_importdb))?.setOnPreferenceClickListener(onImportClick)
     findPreference<Preference>(res.getString(R.string.pref_prunedb))?.setOnPreferenceClickListener(onPruneClick)
+    findPreference<Preference>("pref_import_activities")?.setOnPreferenceClickListener {
+      // GPX and TCX have no reliable mime type, the file name is checked by the importer
+      importPickerLauncher.launch(arrayOf("*/*"))
+      true
+    }
 
     val path = DBHelper.getDefaultBackupPath(requireContext())
     findPreference<Preference>(res.getString(org.runnerup.common.R.string.Maintenance_explanation_summary))
@@ -109,6 +133,16 @@ class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
       true
     }
 
+    findPreference<Preference>("pref_auto_backup_encrypted")?.setOnPreferenceClickListener {
+      showEncryptedBackupDialog()
+      true
+    }
+    // The backup password used to be stored in plain text
+    PreferenceManager.getDefaultSharedPreferences(requireContext())
+        .edit()
+        .remove(BackupWorker.PREF_BACKUP_PASSWORD)
+        .apply()
+
     updateAutomaticBackupStatus()
   }
 
@@ -127,6 +161,17 @@ class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
     } else {
       "No backups created yet"
     }
+    AutomaticBackupManager.getLastBackupStats(requireContext())?.let { stats ->
+      summary +=
+          String.format(
+              Locale.getDefault(),
+              "\n%s (%.1fx less than the %s database), %s new, in %.1f s",
+              Formatter.formatShortFileSize(requireContext(), stats.backupSize),
+              stats.compressionRatio,
+              Formatter.formatShortFileSize(requireContext(), stats.databaseSize),
+              Formatter.formatShortFileSize(requireContext(), stats.writtenSize),
+              stats.durationMs / 1000.0)
+    }
 
     statusPref.summary = summary
   }
@@ -158,6 +203,76 @@ class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
         })
   }
 
+  private fun showEncryptedBackupDialog() {
+    showPasswordDialog("Encrypted Backup", true) { passphrase ->
+      progressDialog = ProgressDialog(requireContext()).apply {
+        setTitle("Creating Backup")
+        setMessage("Please wait...")
+        setCancelable(false)
+        show()
+      }
+
+      val ctx = requireContext()
+      BgTasks.runDb(
+          { AutomaticBackupManager.createEncryptedBackup(ctx, passphrase) },
+          { success ->
+            if (!isAdded) {
+              return@runDb
+            }
+            if (progressDialog?.isShowing == true) {
+              progressDialog?.dismiss()
+            }
+            if (success == true) {
+              Toast.makeText(
+                      ctx,
+                      "Encrypted backup created, the password is needed to restore it",
+                      Toast.LENGTH_LONG)
+                  .show()
+              updateAutomaticBackupStatus()
+            } else {
+              Toast.makeText(ctx, "Failed to create backup", Toast.LENGTH_LONG).show()
+            }
+          })
+    }
+  }
+
+  /** Ask for a password, it is not stored */
+  private fun showPasswordDialog(title: String, confirm: Boolean, onPassword: (CharArray) -> Unit) {
+    val ctx = requireContext()
+    fun passwordField(hint: String) =
+        EditText(ctx).apply {
+          this.hint = hint
+          inputType = InputType.TYPE_CLASS_TEXT or InputType.TYPE_TEXT_VARIATION_PASSWORD
+        }
+    val password = passwordField("Password")
+    val repeated = passwordField("Repeat password")
+    val layout = LinearLayout(ctx).apply {
+      orientation = LinearLayout.VERTICAL
+      val padding = (16 * resources.displayMetrics.density).toInt()
+      setPadding(padding, padding, padding, 0)
+      addView(password)
+      if (confirm) {
+        addView(repeated)
+      }
+    }
+
+    AlertDialog.Builder(ctx)
+        .setTitle(title)
+        .setView(layout)
+        .setPositiveButton("OK") { _, _ ->
+          val text = password.text.toString()
+          if (text.isEmpty()) {
+            Toast.makeText(ctx, "No password entered", Toast.LENGTH_SHORT).show()
+          } else if (confirm && text != repeated.text.toString()) {
+            Toast.makeText(ctx, "The passwords do not match", Toast.LENGTH_SHORT).show()
+          } else {
+            onPassword(text.toCharArray())
+          }
+        }
+        .setNegativeButton("Cancel", null)
+        .show()
+  }
+
   private fun showRestoreBackupDialog() {
     val backups = AutomaticBackupManager.getBackups(requireContext())
 
@@ -172,7 +287,7 @@ class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
 
     val backupNames = Array(backups.size) { i ->
       val info = backups[i]
-      "${info.formattedDate} (${info.formattedSize})"
+      "${info.formattedDate} (${info.formattedSize})" + if (info.isEncrypted) ", encrypted" else ""
     }
 
     AlertDialog.Builder(requireContext())
@@ -195,13 +310,17 @@ class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
                 "A backup of your current database will be created first.\n\n" +
                 "The app will need to be restarted after restore.")
         .setPositiveButton("Restore") { _, _ ->
-          performRestore(backup)
+          if (backup.isEncrypted) {
+            showPasswordDialog("Backup Password", false) { performRestore(backup, it) }
+          } else {
+            performRestore(backup, null)
+          }
         }
         .setNegativeButton("Cancel", null)
         .show()
   }
 
-  private fun performRestore(backup: AutomaticBackupManager.BackupInfo) {
+  private fun performRestore(backup: AutomaticBackupManager.BackupInfo, passphrase: CharArray?) {
     progressDialog = ProgressDialog(requireContext()).apply {
       setTitle("Restoring Backup")
       setMessage("Please wait...")
@@ -212,7 +331,7 @@ class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
     val ctx = requireContext()
     val backupFile = backup.file
     BgTasks.runDb(
-        { AutomaticBackupManager.restoreBackup(ctx, backupFile) },
+        { AutomaticBackupManager.restoreBackup(ctx, backupFile, passphrase) },
         { success ->
           if (!isAdded) {
             return@runDb
@@ -232,12 +351,79 @@ class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
                 }
                 .setCancelable(false)
                 .show()
+          } else if (passphrase != null) {
+            Toast.makeText(ctx, "Failed to restore backup, check the password", Toast.LENGTH_LONG)
+                .show()
           } else {
             Toast.makeText(ctx, "Failed to restore backup", Toast.LENGTH_LONG).show()
           }
         })
   }
 
+  private fun importActivities(uri: Uri) {
+    progressDialog = ProgressDialog(requireContext()).apply {
+      setTitle("Importing Activities")
+      setMessage("Please wait...")
+      setCancelable(false)
+      show()
+    }
+
+    val ctx = requireContext()
+    BgTasks.runDb(
+        {
+          val dir = File(ctx.cacheDir, "import")
+          try {
+            dir.deleteRecursively()
+            dir.mkdirs()
+            val file = File(dir, getDisplayName(uri) ?: "import.zip")
+            ctx.contentResolver.openInputStream(uri)?.use { input ->
+              file.outputStream().use { input.copyTo(it) }
+            }
+            AutomaticBackupManager.createBackup(ctx, true)
+            val importer = ActivityImporter(DBHelper.getWritableDatabase(ctx))
+            // A single file is imported from its folder
+            if (file.name.endsWith(".zip", true)) importer.importFrom(file)
+            else importer.importFrom(dir)
+          } catch (e: Exception) {
+            Log.e("SettingsMaintenanceFragment", "Error importing activities", e)
+            null
+          } finally {
+            dir.deleteRecursively()
+          }
+        },
+        { result ->
+          if (!isAdded) {
+            return@runDb
+          }
+          if (progressDialog?.isShowing == true) {
+            progressDialog?.dismiss()
+          }
+          if (result == null || result.files == 0) {
+            Toast.makeText(ctx, "No GPX or TCX files imported", Toast.LENGTH_LONG).show()
+          } else {
+            AlertDialog.Builder(ctx)
+                .setTitle("Import Complete")
+                .setMessage(
+                    "Imported: ${result.imported}\n" +
+                        "Already in the database: ${result.duplicates}\n" +
+                        "Failed: ${result.failed}")
+                .setPositiveButton("OK", null)
+                .show()
+          }
+        })
+  }
+
+  private fun getDisplayName(uri: Uri): String? {
+    requireContext().contentResolver
+        .query(uri, arrayOf(OpenableColumns.DISPLAY_NAME), null, null, null)
+        ?.use { c ->
+          if (c.moveToFirst()) {
+            return c.getString(0)?.let { File(it).name }
+          }
+        }
+    return null
+  }
+
   private fun showShareBackupDialog() {
     val backups = AutomaticBackupManager.getBackups(requireContext())
 
@@ -270,7 +456,7 @@ class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
       val backupUri = Uri.parse("content://$authority/${backup.file.name}")
 
       val shareIntent = Intent(Intent.ACTION_SEND).apply {
-        type = "application/x-sqlite3"
+        type = BackupFileProvider.getType(backup.file.name)
         putExtra(Intent.EXTRA_STREAM, backupUri)
         putExtra(Intent.EXTRA_SUBJECT, "RunnerUp Backup - ${backup.formattedDate}")
         putExtra(
@@ -464,13 +650,35 @@ class SettingsMaintenanceFragment : PreferenceFragmentCompat() {
 
   private val onExportClick = Preference.OnPreferenceClickListener {
     // TODO Use picker with ACTION_CREATE_DOCUMENT
-    DBHelper.exportDatabase(requireContext(), null)
+    AlertDialog.Builder(requireContext())
+        .setTitle(org.runnerup.common.R.string.Export)
+        .setItems(arrayOf("Export", "Export encrypted")) { _, which ->
+          if (which == 0) {
+            DBHelper.exportDatabase(requireContext(), null)
+          } else {
+            showPasswordDialog("Export Password", true) {
+              DBHelper.exportDatabase(requireContext(), null, it)
+            }
+          }
+        }
+        .setNegativeButton("Cancel", null)
+        .show()
     false
   }
 
   private val onImportClick = Preference.OnPreferenceClickListener {
     // TODO Use picker with ACTION_OPEN_DOCUMENT
-    DBHelper.importDatabase(requireContext(), null)
+    val ctx = requireContext()
+    val encrypted = File(DBHelper.getDefaultEncryptedBackupPath(ctx))
+    val plain = File(DBHelper.getDefaultBackupPath(ctx))
+    if (encrypted.exists() && encrypted.lastModified() > plain.lastModified()) {
+      // The latest export was encrypted
+      showPasswordDialog("Export Password", false) {
+        DBHelper.importDatabase(ctx, encrypted.path, it)
+      }
+    } else {
+      DBHelper.importDatabase(ctx, null)
+    }
     false
   }
 
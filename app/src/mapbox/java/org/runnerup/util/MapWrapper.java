@@ -38,6 +38,7 @@ import com.mapbox.mapboxsdk.geometry.LatLngBounds;
 import com.mapbox.mapboxsdk.maps.MapView;
 import com.mapbox.mapboxsdk.maps.MapboxMap;
 import com.mapbox.mapboxsdk.maps.Style;
+import com.mapbox.mapboxsdk.plugins.annotation.Line;
 import com.mapbox.mapboxsdk.plugins.annotation.LineManager;
 import com.mapbox.mapboxsdk.plugins.annotation.LineOptions;
 import com.mapbox.mapboxsdk.plugins.annotation.SymbolManager;
@@ -53,6 +54,7 @@ import java.util.Objects;
 import org.runnerup.BuildConfig;
 import org.runnerup.R;
 import org.runnerup.common.util.Constants;
+import org.runnerup.data.RouteLevelStore;
 import org.runnerup.data.entities.LocationEntity;
 
 public class MapWrapper implements Constants {
@@ -143,8 +145,9 @@ public class MapWrapper implements Constants {
       this.map = map;
     }
 
-    final List<LatLng> path = new ArrayList<>(10);
     final ArrayList<SymbolOptions> markers = new ArrayList<>(10);
+    final List<Line> lines = new ArrayList<>();
+    RouteLevels levels;
     final Context context;
     final MapboxMap map;
   }
@@ -169,9 +172,6 @@ public class MapWrapper implements Constants {
           new LocationEntity.LocationList<>(params.mDB, params.mID);
       int lastLap = 0;
       for (LocationEntity loc : ll) {
-        LatLng point = new LatLng(loc.getLatitude(), loc.getLongitude());
-        route.path.add(point);
-
         Integer type;
         // Start/end markers are not set in db, special handling
         if (route.markers.isEmpty()) {
@@ -221,7 +221,7 @@ public class MapWrapper implements Constants {
 
           SymbolOptions m =
               new SymbolOptions()
-                  .withLatLng(point)
+                  .withLatLng(new LatLng(loc.getLatitude(), loc.getLongitude()))
                   .withIconImage(iconImage)
                   .withIconAnchor(Property.ICON_ANCHOR_BOTTOM)
                   .withTextField(info)
@@ -230,6 +230,7 @@ public class MapWrapper implements Constants {
         }
       }
       ll.close();
+      route.levels = RouteLevelStore.get(params.mDB, params.mID);
 
       // Track is normally ended with a pause, not always followed by an end
       // Ignore the pause
@@ -259,16 +260,12 @@ public class MapWrapper implements Constants {
 
         scaleBarPlugin.create(new ScaleBarOptions(route.context));
 
-        if (route.path.size() > 1) {
-          LineOptions lineOptions =
-              new LineOptions()
-                  .withLatLngs(route.path)
-                  .withLineColor(ColorUtils.colorToRgbaString(Color.RED))
-                  .withLineWidth(3.0f);
-          lineManager.create(lineOptions);
-          Log.v(getClass().getName(), "Added line");
+        if (route.levels != null && route.levels.getLevel(0).size() > 1) {
+          // Redraw with the level for the zoom when the camera settles
+          route.map.addOnCameraIdleListener(() -> updateRoute(route));
+          updateRoute(route);
 
-          final LatLngBounds box = new LatLngBounds.Builder().includes(route.path).build();
+          final LatLngBounds box = getBounds(route.levels.getLevel(0));
           final CameraUpdate initialCameraPosition = CameraUpdateFactory.newLatLngBounds(box, 50);
           route.map.moveCamera(initialCameraPosition);
 
@@ -350,4 +347,49 @@ public class MapWrapper implements Constants {
         Log.v(getClass().getName(), "Added " + route.markers.size() + " markers");
       }
   }
+
+  /** Replace the route lines with the visible parts of the level for the current zoom */
+  private void updateRoute(Route route) {
+    // Mapbox zoom levels are for 512 dp tiles, one level more for 256 pixel tiles
+    double density = context.getResources().getDisplayMetrics().density;
+    RouteLevels.Level level =
+        route.levels.getLevelForZoom(route.map.getCameraPosition().zoom + 1, density);
+    LatLngBounds box = route.map.getProjection().getVisibleRegion().latLngBounds;
+    List<int[]> runs =
+        RouteLevels.getVisibleRuns(
+            level, box.getLatSouth(), box.getLonWest(), box.getLatNorth(), box.getLonEast());
+
+    List<LineOptions> options = new ArrayList<>(runs.size());
+    for (int[] run : runs) {
+      if (run[1] <= run[0]) {
+        continue;
+      }
+      List<LatLng> points = new ArrayList<>(run[1] - run[0] + 1);
+      for (int i = run[0]; i <= run[1]; i++) {
+        points.add(new LatLng(level.lat[i], level.lon[i]));
+      }
+      options.add(
+          new LineOptions()
+              .withLatLngs(points)
+              .withLineColor(ColorUtils.colorToRgbaString(Color.RED))
+              .withLineWidth(3.0f));
+    }
+    lineManager.delete(route.lines);
+    route.lines.clear();
+    route.lines.addAll(lineManager.create(options));
+  }
+
+  private static LatLngBounds getBounds(RouteLevels.Level level) {
+    double south = 90;
+    double north = -90;
+    double west = 180;
+    double east = -180;
+    for (int i = 0; i < level.size(); i++) {
+      south = Math.min(south, level.lat[i]);
+      north = Math.max(north, level.lat[i]);
+      west = Math.min(west, level.lon[i]);
+      east = Math.max(east, level.lon[i]);
+    }
+    return LatLngBounds.from(north, east, south, west);
+  }
 }
@@ -23,12 +23,16 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.os.Bundle;
-import java.util.LinkedList;
 import java.util.ArrayList;
 import java.util.List;
 import org.osmdroid.api.IMapController;
 import org.osmdroid.config.Configuration;
+import org.osmdroid.events.DelayedMapListener;
+import org.osmdroid.events.MapListener;
+import org.osmdroid.events.ScrollEvent;
+import org.osmdroid.events.ZoomEvent;
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.CustomZoomButtonsController;
 import org.osmdroid.views.MapView;
@@ -36,6 +40,7 @@ import org.osmdroid.views.overlay.Marker;
 import org.osmdroid.views.overlay.Polyline;
 import org.runnerup.R;
 import org.runnerup.common.util.Constants;
+import org.runnerup.data.RouteLevelStore;
 import org.runnerup.data.entities.LocationEntity;
 
 public class MapWrapper implements Constants {
@@ -47,6 +52,7 @@ public class MapWrapper implements Constants {
   private final MapView mapView;
 
   private static final String OSMDROID_USER_AGENT = "org.runnerup.free";
+  private static final long ROUTE_UPDATE_DELAY_MS = 100;
 
   public MapWrapper(
       Context context, SQLiteDatabase mDB, long mID, Formatter formatter, Object mapView) {
@@ -77,20 +83,14 @@ public class MapWrapper implements Constants {
 
   private Route buildRoute(LoadParam param) {
     Route route = new Route(param.context, param.mapView);
-    route.map.setInfoWindow(null);
-    route.map.getOutlinePaint().setStrokeWidth(10.f);
     LocationEntity.LocationList<LocationEntity> ll =
         new LocationEntity.LocationList<>(param.mDB, param.mID);
-    List<GeoPoint> points = new LinkedList<>();
     int lastLap = -1;
     for (LocationEntity loc : ll) {
-      GeoPoint point = new GeoPoint(loc.getLatitude(), loc.getLongitude());
-      points.add(point);
-
       int lap = loc.getLap();
       if (lastLap != lap) {
         Marker marker = new Marker(route.mapView);
-        marker.setPosition(point);
+        marker.setPosition(new GeoPoint(loc.getLatitude(), loc.getLongitude()));
         String info =
             "#"
                 + loc.getLap()
@@ -104,33 +104,81 @@ public class MapWrapper implements Constants {
       }
     }
     ll.close();
-    route.map.setPoints(points);
+    route.levels = RouteLevelStore.get(param.mDB, param.mID);
     return route;
   }
 
   private void applyRoute(LoadParam param, Route route) {
-    if (route != null && route.map != null && route.markers != null) {
-      for (Marker marker : route.markers) {
-        route.mapView.getOverlays().add(marker);
-      }
-      route.mapView.getOverlays().add(route.map);
+    if (route == null) {
+      return;
+    }
+    for (Marker marker : route.markers) {
+      route.mapView.getOverlays().add(marker);
+    }
+    if (route.levels == null || route.levels.isEmpty()) {
+      return;
     }
-    if (route != null && route.map != null && !route.map.getPoints().isEmpty()) {
-      param.iMapController.setCenter(route.map.getPoints().get(0));
+    RouteLevels.Level finest = route.levels.getLevel(0);
+    param.iMapController.setCenter(new GeoPoint(finest.lat[0], finest.lon[0]));
+    // Redraw with the level for the zoom when the map settles
+    route.mapView.addMapListener(
+        new DelayedMapListener(
+            new MapListener() {
+              @Override
+              public boolean onScroll(ScrollEvent event) {
+                updateRoute(route);
+                return false;
+              }
+
+              @Override
+              public boolean onZoom(ZoomEvent event) {
+                updateRoute(route);
+                return false;
+              }
+            },
+            ROUTE_UPDATE_DELAY_MS));
+    route.mapView.post(() -> updateRoute(route));
+  }
+
+  /** Replace the route lines with the visible parts of the level for the current zoom */
+  private void updateRoute(Route route) {
+    MapView view = route.mapView;
+    double density =
+        view.isTilesScaledToDpi() ? context.getResources().getDisplayMetrics().density : 1;
+    RouteLevels.Level level = route.levels.getLevelForZoom(view.getZoomLevelDouble(), density);
+    BoundingBox box = view.getBoundingBox();
+    List<int[]> runs =
+        RouteLevels.getVisibleRuns(
+            level, box.getLatSouth(), box.getLonWest(), box.getLatNorth(), box.getLonEast());
+
+    view.getOverlays().removeAll(route.lines);
+    route.lines.clear();
+    for (int[] run : runs) {
+      List<GeoPoint> points = new ArrayList<>(run[1] - run[0] + 1);
+      for (int i = run[0]; i <= run[1]; i++) {
+        points.add(new GeoPoint(level.lat[i], level.lon[i]));
+      }
+      Polyline line = new Polyline(view, true);
+      line.setInfoWindow(null);
+      line.getOutlinePaint().setStrokeWidth(10.f);
+      line.setPoints(points);
+      route.lines.add(line);
     }
+    view.getOverlays().addAll(route.lines);
+    view.invalidate();
   }
 
   class Route {
     Route(Context context, MapView mapView) {
       this.context = context;
       this.mapView = mapView;
-      this.map = new Polyline(mapView, true);
     }
 
     final Context context;
     final MapView mapView;
-    final Polyline map;
+    final List<Polyline> lines = new ArrayList<>();
     List<Marker> markers = new ArrayList<>(2);
+    RouteLevels levels;
   }
 
   private class LoadParam {
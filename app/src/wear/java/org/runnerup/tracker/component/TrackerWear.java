@@ -36,7 +36,10 @@ import com.google.android.gms.wearable.Wearable;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import org.runnerup.common.tracker.TrackerState;
+import org.runnerup.common.tracker.WearTelemetry;
 import org.runnerup.common.util.Constants;
 import org.runnerup.common.util.ValueModel;
 import org.runnerup.tracking.Tracker;
@@ -69,8 +72,13 @@ public class TrackerWear extends DefaultTrackerComponent
   private String wearNode;
 
   private final Handler handler = new Handler();
-  private Bundle lastCreatedWorkoutEvent;
-  private Bundle lastSentWorkoutEvent;
+  // Workout values by WearTelemetry field
+  private TreeMap<Integer, String> lastCreatedWorkoutEvent;
+  private TreeMap<Integer, String> lastSentWorkoutEvent;
+  // Keyframe at least every 10 frames, to recover from lost messages
+  private final WearTelemetry.Encoder telemetryEncoder = new WearTelemetry.Encoder(10);
+  // The wear app asked for frames, older apps only handle a DataMap of all values
+  private boolean telemetrySupported = false;
   private boolean mWorkoutSenderRunning = false;
 
   private final ArrayList<Integer> screenSizes = new ArrayList<>();
@@ -282,15 +290,14 @@ public class TrackerWear extends DefaultTrackerComponent
         break;
     }
 
-    Bundle b = new Bundle();
+    TreeMap<Integer, String> b = new TreeMap<>();
     {
       int screenNo = 0;
       for (List<Pair<Pair<Scope, Dimension>, Formatter.Format>> screen : screens) {
         int itemNo = 0;
-        String itemPrefix = screenNo + ".";
         for (Pair<Pair<Scope, Dimension>, Formatter.Format> item : screen) {
-          b.putString(
-              Wear.RunInfo.DATA + itemPrefix + itemNo,
+          b.put(
+              WearTelemetry.dataField(screenNo, itemNo),
               formatter.format(
                   item.second,
                   item.first.second,
@@ -326,10 +333,12 @@ public class TrackerWear extends DefaultTrackerComponent
 
     /* special handling of pauseStep */
     if (pauseStep) {
-      if (lastCreatedWorkoutEvent == null) lastCreatedWorkoutEvent = lastSentWorkoutEvent;
+      if (lastCreatedWorkoutEvent == null && lastSentWorkoutEvent != null) {
+        lastCreatedWorkoutEvent = new TreeMap<>(lastSentWorkoutEvent);
+      }
 
       if (lastCreatedWorkoutEvent == null) {
-        lastCreatedWorkoutEvent = new Bundle();
+        lastCreatedWorkoutEvent = new TreeMap<>();
       }
 
       Dimension dim = currentStep.getDurationType();
@@ -338,18 +347,31 @@ public class TrackerWear extends DefaultTrackerComponent
         if (remaining < 0) {
           remaining = 0;
         }
-        lastCreatedWorkoutEvent.putString(
-            Wear.RunInfo.COUNTDOWN,
+        lastCreatedWorkoutEvent.put(
+            WearTelemetry.FIELD_COUNTDOWN,
             formatter.formatRemaining(Formatter.Format.TXT_SHORT, dim, remaining));
       }
     }
 
     if (lastCreatedWorkoutEvent != null) {
-      Wearable.MessageApi.sendMessage(
-          mGoogleApiClient,
-          wearNode,
-          Wear.Path.MSG_WORKOUT_EVENT,
-          DataMap.fromBundle(lastCreatedWorkoutEvent).toByteArray());
+      if (telemetrySupported) {
+        // Only the changed values are sent, nothing if all are unchanged
+        byte[] frame = telemetryEncoder.encode(lastCreatedWorkoutEvent);
+        if (frame != null) {
+          Wearable.MessageApi.sendMessage(
+              mGoogleApiClient, wearNode, Wear.Path.MSG_WORKOUT_EVENT_V2, frame);
+        }
+      } else {
+        Bundle b = new Bundle();
+        for (Map.Entry<Integer, String> e : lastCreatedWorkoutEvent.entrySet()) {
+          b.putString(WearTelemetry.bundleKey(e.getKey()), e.getValue());
+        }
+        Wearable.MessageApi.sendMessage(
+            mGoogleApiClient,
+            wearNode,
+            Wear.Path.MSG_WORKOUT_EVENT,
+            DataMap.fromBundle(b).toByteArray());
+      }
       lastSentWorkoutEvent = lastCreatedWorkoutEvent;
       lastCreatedWorkoutEvent = null;
     }
@@ -446,6 +468,17 @@ public class TrackerWear extends DefaultTrackerComponent
     } else if (Wear.Path.MSG_CMD_WORKOUT_START.contentEquals(messageEvent.getPath())) {
       /* send broadcast to start the workout */
       sendBroadcast(Intents.START_WORKOUT);
+    } else if (Wear.Path.MSG_WORKOUT_EVENT_SYNC.contentEquals(messageEvent.getPath())) {
+      /* wear handles frames and lost a workout event, send all values */
+      handler.post(
+          () -> {
+            telemetrySupported = true;
+            telemetryEncoder.requestKeyframe();
+            if (lastCreatedWorkoutEvent == null) {
+              lastCreatedWorkoutEvent = lastSentWorkoutEvent;
+            }
+            sendWorkoutEvent();
+          });
     }
   }
 
@@ -510,6 +543,9 @@ public class TrackerWear extends DefaultTrackerComponent
   private void setWearNode(DataEvent ev) {
     if (ev.getType() == DataEvent.TYPE_CHANGED) {
       wearNode = ev.getDataItem().getUri().getHost();
+      // Until the wear app asks for frames, it may be an older one
+      telemetrySupported = false;
+      telemetryEncoder.requestKeyframe();
       if (lastCreatedWorkoutEvent == null) {
         lastCreatedWorkoutEvent = lastSentWorkoutEvent;
       }
@@ -0,0 +1,56 @@
+package org.matthiaszimmermann.location.egm96;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class GeoidTest {
+
+  private static final int ROWS = 721;
+  private static final int COLS = 1440;
+
+  /** Grid value in cm: linear in latitude, a ridge at longitude 0 */
+  private static short cm(int row, int col) {
+    int dc = Math.min(col, COLS - col);
+    return (short) (row * 10 - dc * 5);
+  }
+
+  @BeforeClass
+  public static void init() {
+    ByteBuffer grid = ByteBuffer.allocate(Geoid.GRID_BYTES);
+    for (int r = 0; r < ROWS; r++) {
+      for (int c = 0; c < COLS; c++) {
+        grid.putShort(cm(r, c));
+      }
+    }
+    grid.flip();
+    Geoid.init(grid);
+  }
+
+  @Test
+  public void gridPoints_exact() {
+    assertEquals(cm(0, 0) / 100.0, Geoid.getOffset(90, 0), 1e-9);
+    assertEquals(cm(360, 40) / 100.0, Geoid.getOffset(0, 10), 1e-9);
+    assertEquals(cm(124, 1400) / 100.0, Geoid.getOffset(59, 350), 1e-9);
+    assertEquals(cm(124, 1400) / 100.0, Geoid.getOffset(59, -10), 1e-9);
+    assertEquals(cm(720, 4) / 100.0, Geoid.getOffset(-90, 1), 1e-9);
+  }
+
+  @Test
+  public void between_linearIsReproduced() {
+    // Linear in both directions away from the ridge, bicubic and bilinear are exact
+    assertEquals((360.5 * 10 - 41 * 5) / 100.0, Geoid.getOffset(-0.125, 10.25), 1e-9);
+    assertEquals((0.4 * 10 - 20 * 5) / 100.0, Geoid.getOffset(89.9, 5), 1e-9);
+    // Same cell again, from the cache
+    assertEquals((360.5 * 10 - 41 * 5) / 100.0, Geoid.getOffset(-0.125, 10.25), 1e-9);
+  }
+
+  @Test
+  public void longitude_wraps() {
+    // Symmetric around the ridge at 0
+    assertEquals(Geoid.getOffset(45.1, 0.1), Geoid.getOffset(45.1, -0.1), 1e-9);
+    assertEquals(Geoid.getOffset(45.1, 0.1), Geoid.getOffset(45.1, 359.9), 1e-9);
+  }
+}
@@ -0,0 +1,98 @@
+package org.runnerup.core.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import org.junit.Test;
+
+public class ChunkStoreTest {
+
+  private static byte[] random(int size, long seed) {
+    byte[] data = new byte[size];
+    new Random(seed).nextBytes(data);
+    return data;
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[10000];
+    int n;
+    while ((n = in.read(buf)) > 0) {
+      out.write(buf, 0, n);
+    }
+    in.close();
+    return out.toByteArray();
+  }
+
+  @Test
+  public void chunker_boundsAndCoverage() throws IOException {
+    byte[] data = random(3_000_000, 1);
+    ChunkStore.Chunker chunker = new ChunkStore.Chunker(new ByteArrayInputStream(data));
+    byte[] buf = new byte[ChunkStore.MAX_CHUNK];
+    int total = 0;
+    int chunks = 0;
+    int len;
+    while ((len = chunker.next(buf)) > 0) {
+      assertTrue(len <= ChunkStore.MAX_CHUNK);
+      assertTrue(total + len == data.length || len >= ChunkStore.MIN_CHUNK);
+      total += len;
+      chunks++;
+    }
+    assertEquals(data.length, total);
+    // About 80 KiB average
+    assertTrue(chunks > 15 && chunks < 100);
+  }
+
+  @Test
+  public void write_dedupesAndRestores() throws IOException {
+    File dir = Files.createTempDirectory("chunks").toFile();
+    ChunkStore store = new ChunkStore(new File(dir, "chunks"));
+
+    byte[] v1 = random(4_000_000, 2);
+    // Insert 1000 bytes in the middle, shifting the rest
+    byte[] v2 = new byte[v1.length + 1000];
+    System.arraycopy(v1, 0, v2, 0, 2_000_000);
+    System.arraycopy(random(1000, 3), 0, v2, 2_000_000, 1000);
+    System.arraycopy(v1, 2_000_000, v2, 2_001_000, v1.length - 2_000_000);
+
+    File m1 = new File(dir, "1.manifest");
+    File m2 = new File(dir, "2.manifest");
+    ChunkStore.WriteResult r1 = store.write(new ByteArrayInputStream(v1), m1);
+    ChunkStore.WriteResult r2 = store.write(new ByteArrayInputStream(v2), m2);
+    assertEquals(r1.chunks, r1.newChunks);
+    assertEquals(v2.length, r2.size);
+    assertTrue("new chunks " + r2.newChunks, r2.newChunks <= 2);
+    assertTrue(r2.bytesWritten < r1.bytesWritten / 10);
+    // The second backup still uses as much of the store as the first
+    assertEquals(r1.bytesWritten, r1.bytesStored);
+    assertTrue(r2.bytesStored > r1.bytesStored * 9 / 10);
+    assertEquals(v2.length, ChunkStore.readSize(m2));
+
+    assertArrayEquals(v1, readAll(store.open(m1)));
+    assertArrayEquals(v2, readAll(store.open(m2)));
+
+    // Dropping the first backup only frees the chunks it does not share
+    assertTrue(m1.delete());
+    int deleted = store.collectGarbage(Collections.singletonList(m2));
+    assertTrue(deleted >= 1 && deleted <= 2);
+    assertArrayEquals(v2, readAll(store.open(m2)));
+  }
+
+  @Test
+  public void empty_roundtrip() throws IOException {
+    File dir = Files.createTempDirectory("chunks").toFile();
+    ChunkStore store = new ChunkStore(new File(dir, "chunks"));
+    File m = new File(dir, "empty.manifest");
+    assertEquals(0, store.write(new ByteArrayInputStream(new byte[0]), m).chunks);
+    assertEquals(0, readAll(store.open(m)).length);
+  }
+}
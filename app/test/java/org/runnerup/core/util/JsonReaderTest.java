@@ -0,0 +1,133 @@
+package org.runnerup.core.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.junit.Test;
+
+public class JsonReaderTest {
+
+  @Test
+  public void readsNestedDocument() throws IOException {
+    JsonReader r =
+        new JsonReader(
+            new StringReader(
+                "{ \"id\": 12, \"name\": \"a \\\"b\\\"\\u00e5\", \"ok\": true,"
+                    + " \"none\": null, \"values\": [1.5, -2e3, \"3\"], \"empty\": {} }"));
+    r.beginObject();
+    assertEquals("id", r.nextName());
+    assertEquals(JsonReader.Token.NUMBER, r.peek());
+    assertEquals(12, r.nextInt());
+    assertEquals("name", r.nextName());
+    assertEquals("a \"b\"\u00e5", r.nextString());
+    assertEquals("ok", r.nextName());
+    assertTrue(r.nextBoolean());
+    assertEquals("none", r.nextName());
+    r.nextNull();
+    assertEquals("values", r.nextName());
+    r.beginArray();
+    assertEquals(1.5, r.nextDouble(), 0);
+    assertEquals(-2000, r.nextLong());
+    assertEquals(3, r.nextInt());
+    assertFalse(r.hasNext());
+    r.endArray();
+    assertEquals("empty", r.nextName());
+    r.beginObject();
+    r.endObject();
+    assertFalse(r.hasNext());
+    r.endObject();
+    assertEquals(JsonReader.Token.END_DOCUMENT, r.peek());
+  }
+
+  @Test
+  public void skipValue_skipsNestedStructures() throws IOException {
+    JsonReader r =
+        new JsonReader(new StringReader("{\"a\": [[1, {\"x\": [2]}], 3], \"b\": \"c\"}"));
+    r.beginObject();
+    assertEquals("a", r.nextName());
+    r.skipValue();
+    assertEquals("b", r.nextName());
+    assertEquals("c", r.nextString());
+    r.endObject();
+  }
+
+  @Test
+  public void readsAcrossBufferBoundaries() throws IOException {
+    // Larger than the internal buffer, returned a few chars at a time
+    StringWriter out = new StringWriter();
+    JsonWriter w = new JsonWriter(out);
+    w.beginArray();
+    for (int i = 0; i < 1000; i++) {
+      w.beginObject().name("timestamp").value(i).name("value").value("v\n" + i).endObject();
+    }
+    w.endArray();
+    w.close();
+
+    JsonReader r = new JsonReader(new ChunkedReader(out.toString(), 7));
+    r.beginArray();
+    int count = 0;
+    while (r.hasNext()) {
+      r.beginObject();
+      assertEquals("timestamp", r.nextName());
+      assertEquals(count, r.nextLong());
+      assertEquals("value", r.nextName());
+      assertEquals("v\n" + count, r.nextString());
+      r.endObject();
+      count++;
+    }
+    r.endArray();
+    assertEquals(1000, count);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void wrongToken_throws() throws IOException {
+    JsonReader r = new JsonReader(new StringReader("[\"a\"]"));
+    r.beginObject();
+  }
+
+  @Test(expected = IOException.class)
+  public void malformed_throws() throws IOException {
+    JsonReader r = new JsonReader(new StringReader("{\"a\" 1}"));
+    r.beginObject();
+    r.nextName();
+    r.nextInt();
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void fraction_isNotLong() throws IOException {
+    JsonReader r = new JsonReader(new StringReader("[1.5]"));
+    r.beginArray();
+    r.nextLong();
+  }
+
+  /** Returns at most n chars per read */
+  private static class ChunkedReader extends Reader {
+    private final String s;
+    private final int n;
+    private int pos = 0;
+
+    ChunkedReader(String s, int n) {
+      this.s = s;
+      this.n = n;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+      if (pos == s.length()) {
+        return -1;
+      }
+      int count = Math.min(Math.min(len, n), s.length() - pos);
+      s.getChars(pos, pos + count, cbuf, off);
+      pos += count;
+      return count;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,50 @@
+package org.runnerup.core.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import org.junit.Test;
+
+public class LttbTest {
+
+  @Test
+  public void belowThreshold_keepsAll() {
+    double[] x = {0, 1, 2, 3};
+    double[] y = {5, 6, 5, 6};
+    assertArrayEquals(new int[] {0, 1, 2, 3}, Lttb.select(x, y, 4, 10));
+    assertArrayEquals(new int[] {0, 1, 2}, Lttb.select(x, y, 3, 3));
+  }
+
+  @Test
+  public void capsPoints_keepsEndsAndOrder() {
+    int n = 20000;
+    double[] x = new double[n];
+    double[] y = new double[n];
+    for (int i = 0; i < n; i++) {
+      x[i] = i * 5.0;
+      y[i] = Math.sin(i / 300.0) * 3 + (i % 7) * 0.01;
+    }
+    int[] kept = Lttb.select(x, y, n, 1000);
+    assertEquals(1000, kept.length);
+    assertEquals(0, kept[0]);
+    assertEquals(n - 1, kept[kept.length - 1]);
+    for (int i = 1; i < kept.length; i++) {
+      assertTrue(kept[i] > kept[i - 1]);
+    }
+  }
+
+  @Test
+  public void keepsSpike() {
+    int n = 1000;
+    double[] x = new double[n];
+    double[] y = new double[n];
+    for (int i = 0; i < n; i++) {
+      x[i] = i;
+    }
+    y[537] = 100;
+    int[] kept = Lttb.select(x, y, n, 20);
+    assertTrue(Arrays.stream(kept).anyMatch(i -> i == 537));
+  }
+}
@@ -0,0 +1,71 @@
+package org.runnerup.core.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+public class RouteLevelsTest {
+
+  // About 1.1 m of latitude
+  private static final double ONE_M = 1e-5;
+
+  @Test
+  public void douglasPeucker_dropsPointsWithinTolerance() {
+    // Straight line with a 3 m bump in the middle
+    double[] lat = {0, 10 * ONE_M, 20 * ONE_M, 30 * ONE_M, 40 * ONE_M};
+    double[] lon = {0, 0, 3 * ONE_M, 0, 0};
+    assertArrayEquals(new int[] {0, 2, 4}, RouteLevels.douglasPeucker(lat, lon, 5, 2));
+    assertArrayEquals(new int[] {0, 4}, RouteLevels.douglasPeucker(lat, lon, 5, 16));
+    assertArrayEquals(new int[] {0, 1}, RouteLevels.douglasPeucker(lat, lon, 2, 16));
+  }
+
+  @Test
+  public void build_levelsGetCoarser() {
+    int n = 5000;
+    double[] lat = new double[n];
+    double[] lon = new double[n];
+    for (int i = 0; i < n; i++) {
+      lat[i] = 59 + i * ONE_M;
+      lon[i] = 18 + Math.sin(i / 50.0) * 100 * ONE_M;
+    }
+    RouteLevels levels = RouteLevels.build(lat, lon, n);
+    assertEquals(RouteLevels.TOLERANCES_M.length, levels.getLevelCount());
+    for (int l = 1; l < levels.getLevelCount(); l++) {
+      assertTrue(levels.getLevel(l).size() <= levels.getLevel(l - 1).size());
+    }
+    assertTrue(levels.getLevel(levels.getLevelCount() - 1).size() < n / 10);
+
+    // Street level zoom draws the finest level, a country view the coarsest
+    assertSame(levels.getLevel(0), levels.getLevelForZoom(18, 1));
+    assertSame(levels.getLevel(levels.getLevelCount() - 1), levels.getLevelForZoom(5, 1));
+  }
+
+  @Test
+  public void visibleRuns_splitAtView() {
+    double[] lat = {0, 1, 2, 3, 4, 5};
+    double[] lon = {0, 0, 0, 0, 0, 0};
+    RouteLevels.Level level = new RouteLevels.Level(1, lat, lon);
+    List<int[]> runs = RouteLevels.getVisibleRuns(level, 1.5, -1, 2.5, 1);
+    assertEquals(1, runs.size());
+    assertArrayEquals(new int[] {1, 3}, runs.get(0));
+
+    assertEquals(0, RouteLevels.getVisibleRuns(level, 10, -1, 11, 1).size());
+    assertArrayEquals(new int[] {0, 5}, RouteLevels.getVisibleRuns(level, -1, -1, 6, 1).get(0));
+  }
+
+  @Test
+  public void encode_roundtrip() {
+    double[] lat = {59.123456, 59.123457, -33.5, 0};
+    double[] lon = {18.654321, 18.654300, 151.25, -179.999999};
+    RouteLevels.Level level = new RouteLevels.Level(4, lat, lon);
+    RouteLevels.Level decoded = RouteLevels.Level.decode(4, level.encode());
+    assertArrayEquals(lat, decoded.lat, 1e-7);
+    assertArrayEquals(lon, decoded.lon, 1e-7);
+    RouteLevels.Level empty = new RouteLevels.Level(1, new double[0], new double[0]);
+    assertEquals(0, RouteLevels.Level.decode(1, empty.encode()).size());
+  }
+}
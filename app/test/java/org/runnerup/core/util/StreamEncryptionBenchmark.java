@@ -0,0 +1,125 @@
+package org.runnerup.core.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.PBEParameterSpec;
+
+/**
+ * Throughput of {@link StreamEncryption} compared to the legacy {@link Encryption} format. Not a
+ * unit test, run the main method from the IDE with the size in MiB as argument. The legacy format
+ * only has a public decrypt, so both are compared decrypting, and the new format also encrypting.
+ */
+public class StreamEncryptionBenchmark {
+
+  private static final char[] PASSWORD = "benchmark".toCharArray();
+
+  public static void main(String[] args) throws Exception {
+    int mib = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+    byte[] plain = new byte[mib * 1024 * 1024];
+    new Random(1).nextBytes(plain);
+    int cores = Runtime.getRuntime().availableProcessors();
+
+    byte[] legacy = legacyEncrypted(plain);
+    byte[] stream = streamEncrypted(plain);
+
+    // Warm up
+    for (int i = 0; i < 2; i++) {
+      legacyDecrypt(legacy);
+      streamEncrypt(plain, cores);
+      streamDecrypt(stream, cores);
+    }
+
+    report("PBEWithMD5AndDES decrypt", plain.length, time(() -> legacyDecrypt(legacy)));
+    report("AES-GCM decrypt 1 thread", plain.length, time(() -> streamDecrypt(stream, 1)));
+    report(
+        "AES-GCM decrypt " + cores + " threads",
+        plain.length,
+        time(() -> streamDecrypt(stream, cores)));
+    report("AES-GCM encrypt 1 thread", plain.length, time(() -> streamEncrypt(plain, 1)));
+    report(
+        "AES-GCM encrypt " + cores + " threads",
+        plain.length,
+        time(() -> streamEncrypt(plain, cores)));
+    long start = System.nanoTime();
+    // Nothing to encrypt, only the key
+    StreamEncryption.encrypt(
+        new ByteArrayInputStream(new byte[0]), new NullOutputStream(), PASSWORD);
+    System.out.printf("Key derivation: %d ms%n", (System.nanoTime() - start) / 1_000_000);
+  }
+
+  private interface Run {
+    void run() throws Exception;
+  }
+
+  private static long time(Run run) throws Exception {
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < 3; i++) {
+      long start = System.nanoTime();
+      run.run();
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best;
+  }
+
+  private static void report(String name, long bytes, long nanos) {
+    System.out.printf(
+        "%-24s %8.1f MiB/s%n", name, bytes / (1024.0 * 1024.0) / (nanos / 1e9));
+  }
+
+  /** The format written by Encryption.encrypt */
+  private static byte[] legacyEncrypted(byte[] plain) throws Exception {
+    byte[] salt = new byte[8];
+    new Random(2).nextBytes(salt);
+    Cipher cipher = Cipher.getInstance("PBEWithMD5AndDES");
+    cipher.init(
+        Cipher.ENCRYPT_MODE,
+        SecretKeyFactory.getInstance("PBEWithMD5AndDES")
+            .generateSecret(new PBEKeySpec("benchmark".toCharArray())),
+        new PBEParameterSpec(salt, 100));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    out.write(salt);
+    out.write(cipher.doFinal(plain));
+    return out.toByteArray();
+  }
+
+  private static byte[] streamEncrypted(byte[] plain) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamEncryption.encrypt(
+        new ByteArrayInputStream(plain), out, PASSWORD, 1, StreamEncryption.DEFAULT_FRAME_SIZE, 1);
+    return out.toByteArray();
+  }
+
+  private static void legacyDecrypt(byte[] encrypted) throws Exception {
+    Encryption.decrypt(new ByteArrayInputStream(encrypted), new NullOutputStream(), "benchmark");
+  }
+
+  private static void streamEncrypt(byte[] plain, int threads) throws Exception {
+    // Key derivation excluded, it is measured separately
+    StreamEncryption.encrypt(
+        new ByteArrayInputStream(plain),
+        new NullOutputStream(),
+        PASSWORD,
+        1,
+        StreamEncryption.DEFAULT_FRAME_SIZE,
+        threads);
+  }
+
+  private static void streamDecrypt(byte[] encrypted, int threads) throws Exception {
+    // Written with a single iteration, so key derivation is excluded
+    StreamEncryption.decrypt(
+        new ByteArrayInputStream(encrypted), new NullOutputStream(), PASSWORD, threads);
+  }
+
+  private static class NullOutputStream extends OutputStream {
+    @Override
+    public void write(int b) {}
+
+    @Override
+    public void write(byte[] b, int off, int len) {}
+  }
+}
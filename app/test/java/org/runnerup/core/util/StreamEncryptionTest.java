@@ -0,0 +1,197 @@
+package org.runnerup.core.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+
+public class StreamEncryptionTest {
+
+  private static final char[] PASSWORD = "correct horse".toCharArray();
+  private static final int ITERATIONS = 1000;
+  private static final int FRAME = 1024;
+  private static final int HEADER = 36;
+  private static final int TAG = 16;
+
+  private static byte[] data(int size) {
+    byte[] data = new byte[size];
+    new Random(size).nextBytes(data);
+    return data;
+  }
+
+  private static byte[] encrypt(byte[] plain, int threads) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamEncryption.encrypt(
+        new ByteArrayInputStream(plain), out, PASSWORD, ITERATIONS, FRAME, threads);
+    return out.toByteArray();
+  }
+
+  private static byte[] decrypt(byte[] encrypted, char[] password, int threads) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamEncryption.decrypt(new ByteArrayInputStream(encrypted), out, password, threads);
+    return out.toByteArray();
+  }
+
+  @Test
+  public void roundtrip() throws Exception {
+    for (int size : new int[] {0, 1, FRAME - 1, FRAME, FRAME + 1, 10 * FRAME, 10 * FRAME + 17}) {
+      byte[] plain = data(size);
+      byte[] encrypted = encrypt(plain, 1);
+      assertTrue(StreamEncryption.isEncrypted(encrypted));
+      assertArrayEquals(plain, decrypt(encrypted, PASSWORD, 1));
+      assertArrayEquals(plain, decrypt(encrypt(plain, 4), PASSWORD, 3));
+    }
+  }
+
+  @Test
+  public void wrongPassword_fails() throws Exception {
+    byte[] encrypted = encrypt(data(3 * FRAME), 1);
+    try {
+      decrypt(encrypted, "wrong".toCharArray(), 1);
+      fail();
+    } catch (GeneralSecurityException expected) {
+    }
+  }
+
+  @Test
+  public void modification_fails() throws Exception {
+    byte[] encrypted = encrypt(data(3 * FRAME), 2);
+    byte[] modified = encrypted.clone();
+    modified[modified.length / 2] ^= 1;
+    assertDecryptFails(modified);
+
+    // The plaintext is a multiple of the frame size, so the last frame is empty (the tag only).
+    // Without it the stream ends with a complete frame.
+    int stride = FRAME + TAG;
+    assertDecryptFails(Arrays.copyOf(encrypted, encrypted.length - TAG));
+    assertDecryptFails(Arrays.copyOf(encrypted, encrypted.length - 1));
+
+    // Swapped frames
+    byte[] swapped = encrypted.clone();
+    System.arraycopy(encrypted, HEADER, swapped, HEADER + stride, stride);
+    System.arraycopy(encrypted, HEADER + stride, swapped, HEADER, stride);
+    assertDecryptFails(swapped);
+  }
+
+  private static void assertDecryptFails(byte[] encrypted) throws Exception {
+    try {
+      decrypt(encrypted, PASSWORD, 1);
+      fail();
+    } catch (GeneralSecurityException expected) {
+    }
+  }
+
+  private static File write(byte[] encrypted) throws IOException {
+    File file = File.createTempFile("stream", ".enc");
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(encrypted);
+    }
+    return file;
+  }
+
+  @Test
+  public void randomAccess() throws Exception {
+    byte[] plain = data(5 * FRAME + 100);
+    File file = write(encrypt(plain, 2));
+    try (StreamEncryption.RandomAccessReader reader =
+        new StreamEncryption.RandomAccessReader(file, PASSWORD)) {
+      assertEquals(6, reader.getFrameCount());
+      assertEquals(plain.length, reader.getLength());
+      byte[] frame = new byte[reader.getFrameSize()];
+      assertEquals(100, reader.readFrame(5, frame));
+      assertArrayEquals(
+          Arrays.copyOfRange(plain, 5 * FRAME, plain.length), Arrays.copyOf(frame, 100));
+      assertEquals(FRAME, reader.readFrame(2, frame));
+      assertArrayEquals(Arrays.copyOfRange(plain, 2 * FRAME, 3 * FRAME), frame);
+
+      // From within a frame to the end
+      int position = 3 * FRAME + 10;
+      try (InputStream in = reader.openStream(position)) {
+        assertArrayEquals(Arrays.copyOfRange(plain, position, plain.length), readAll(in));
+      }
+    } finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
+  @Test
+  public void openStream_backupRoundtrip() throws Exception {
+    // As written and restored by AutomaticBackupManager: compressed, then encrypted
+    byte[] plain = data(5 * FRAME + 100);
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gz = new GZIPOutputStream(compressed)) {
+      gz.write(plain);
+    }
+    byte[] encrypted = encrypt(compressed.toByteArray(), 2);
+    File file = write(encrypted);
+    File truncated = write(Arrays.copyOf(encrypted, encrypted.length - 1));
+    try {
+      try (InputStream in =
+          new GZIPInputStream(
+              new StreamEncryption.RandomAccessReader(file, PASSWORD).openStream(0))) {
+        assertArrayEquals(plain, readAll(in));
+      }
+
+      try (InputStream in =
+          new StreamEncryption.RandomAccessReader(file, "wrong".toCharArray()).openStream(0)) {
+        readAll(in);
+        fail();
+      } catch (IOException expected) {
+      }
+
+      try (InputStream in =
+          new StreamEncryption.RandomAccessReader(truncated, PASSWORD).openStream(0)) {
+        readAll(in);
+        fail();
+      } catch (IOException expected) {
+      }
+    } finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+      //noinspection ResultOfMethodCallIgnored
+      truncated.delete();
+    }
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[4096];
+    int n;
+    while ((n = in.read(buf)) > 0) {
+      out.write(buf, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void pbkdf2_rfc7914Vector() throws Exception {
+    // RFC 7914 section 11, PBKDF2-HMAC-SHA256
+    byte[] key = StreamEncryption.pbkdf2("passwd".toCharArray(), "salt".getBytes("UTF-8"), 1, 64);
+    assertEquals(
+        "55ac046e56e3089fec1691c22544b605f94185216dde0465e68b9d57c20dacbc"
+            + "49ca9cccf179b645991664b39d77ef317c71b845b1e30bd509112041d3a19783",
+        toHex(key));
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder();
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,77 @@
+package org.runnerup.data;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class HRSeriesTest {
+
+  private static byte[] samples(int... deltaAndBpm) {
+    byte[] b = new byte[deltaAndBpm.length / 2 * HRSeries.SAMPLE_SIZE];
+    for (int i = 0; i < deltaAndBpm.length / 2; i++) {
+      int delta = deltaAndBpm[2 * i];
+      b[i * 3] = (byte) delta;
+      b[i * 3 + 1] = (byte) (delta >> 8);
+      b[i * 3 + 2] = (byte) deltaAndBpm[2 * i + 1];
+    }
+    return b;
+  }
+
+  @Test
+  public void decodesRows() {
+    HRSeries s = new HRSeries();
+    s.append(10_000, samples(0, 120, 1000, 200, 65535, 255));
+    s.append(200_000, samples(0, 90));
+    assertEquals(4, s.size());
+    assertEquals(10_000, s.getTime(0));
+    assertEquals(11_000, s.getTime(1));
+    assertEquals(200, s.getValue(1));
+    assertEquals(76_535, s.getTime(2));
+    assertEquals(255, s.getValue(2));
+    assertEquals(200_000, s.getTime(3));
+  }
+
+  @Test
+  public void valueAt_latestSampleWithinMaxAge() {
+    HRSeries s = new HRSeries();
+    s.append(10_000, samples(0, 100, 500, 110, 500, 120));
+    assertEquals(0, s.valueAt(9_999));
+    assertEquals(100, s.valueAt(10_000));
+    assertEquals(100, s.valueAt(10_499));
+    assertEquals(110, s.valueAt(10_500));
+    assertEquals(120, s.valueAt(11_000 + HRSeries.MAX_AGE_MS));
+    assertEquals(0, s.valueAt(11_001 + HRSeries.MAX_AGE_MS));
+  }
+
+  @Test
+  public void growsBeyondInitialCapacity() {
+    HRSeries s = new HRSeries();
+    int[] data = new int[2 * 1000];
+    for (int i = 0; i < 1000; i++) {
+      data[2 * i] = 1000;
+      data[2 * i + 1] = 60 + i % 100;
+    }
+    s.append(0, samples(data));
+    assertEquals(1000, s.size());
+    assertEquals(60 + 999 % 100, s.valueAt(1_000_000));
+  }
+
+  @Test
+  public void forEachBetween_samplesAwayFromPoints() throws Exception {
+    HRSeries s = new HRSeries();
+    // 2 Hz samples, with a dropout of the sensor (0 bpm)
+    s.append(10_000, samples(0, 100, 500, 101, 500, 102, 500, 103, 500, 0, 500, 105, 500, 106));
+    List<Long> times = new ArrayList<>();
+    s.forEachBetween(10_000, 13_500, (time, bpm) -> times.add(time));
+    // Not within 1 s of the points at 10 and 13.5 s or of each other
+    assertEquals(2, times.size());
+    assertEquals(11_000, (long) times.get(0));
+    assertEquals(12_500, (long) times.get(1));
+
+    times.clear();
+    s.forEachBetween(10_000, 10_900, (time, bpm) -> times.add(time));
+    assertEquals(0, times.size());
+  }
+}
@@ -0,0 +1,58 @@
+package org.runnerup.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class LocationIdSetTest {
+
+  @Test
+  public void contains_onlyAddedIds() {
+    long[] ids = {1_000_020, 1_000_005, 1_000_010, 0};
+    LocationIdSet set = LocationIdSet.of(ids, 3);
+    assertEquals(3, set.size());
+    assertTrue(set.contains(1_000_005));
+    assertTrue(set.contains(1_000_010));
+    assertTrue(set.contains(1_000_020));
+    assertFalse(set.contains(0));
+    assertFalse(set.contains(1_000_004));
+    assertFalse(set.contains(1_000_021));
+    assertFalse(set.contains(-1));
+    assertFalse(set.contains(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void toArray_isSorted() {
+    long[] ids = {30, 10, 20, 10};
+    assertArrayEquals(new long[] {10, 20, 30}, LocationIdSet.of(ids, ids.length).toArray());
+  }
+
+  @Test
+  public void empty() {
+    LocationIdSet set = LocationIdSet.of(new long[4], 0);
+    assertTrue(set.isEmpty());
+    assertEquals(0, set.size());
+    assertFalse(set.contains(0));
+    assertEquals(0, set.toArray().length);
+  }
+
+  @Test
+  public void sparseIds_beyondIntRange() {
+    long[] ids = {5_000_000_000L, 7, 5_000_000_000L, 3_000_000_000L, -2};
+    LocationIdSet set = LocationIdSet.of(ids, ids.length);
+    assertEquals(4, set.size());
+    assertTrue(set.contains(-2));
+    assertTrue(set.contains(7));
+    assertTrue(set.contains(3_000_000_000L));
+    assertTrue(set.contains(5_000_000_000L));
+    assertFalse(set.contains(8));
+    assertFalse(set.contains(Long.MIN_VALUE));
+    assertArrayEquals(new long[] {-2, 7, 3_000_000_000L, 5_000_000_000L}, set.toArray());
+
+    long[] extremes = {Long.MIN_VALUE, Long.MAX_VALUE};
+    assertArrayEquals(extremes, LocationIdSet.of(extremes, 2).toArray());
+  }
+}
@@ -4,6 +4,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
 import org.junit.Test;
 
 public class MonthRangeTest {
@@ -34,4 +36,31 @@ public class MonthRangeTest {
     assertTrue(now >= range.startSeconds);
     assertTrue(now < range.endSecondsExclusive);
   }
+
+  @Test
+  public void monthIndex_matchesCalendar() {
+    Random random = new Random(1);
+    String[] zones = {"UTC", "Europe/Stockholm", "America/Los_Angeles", "Asia/Kolkata"};
+    for (String id : zones) {
+      TimeZone tz = TimeZone.getTimeZone(id);
+      Calendar cal = Calendar.getInstance(tz);
+      for (int i = 0; i < 10_000; i++) {
+        // 1970 to 2100
+        long seconds = (long) (random.nextDouble() * 4_102_444_800L);
+        cal.setTimeInMillis(seconds * 1000);
+        assertEquals(
+            cal.get(Calendar.YEAR) * 12 + cal.get(Calendar.MONTH),
+            MonthRange.monthIndex(seconds, tz));
+      }
+    }
+  }
+
+  @Test
+  public void monthIndex_monthBoundaries() {
+    TimeZone utc = TimeZone.getTimeZone("UTC");
+    // 2024-02-29T23:59:59Z and 2024-03-01T00:00:00Z
+    assertEquals(2024 * 12 + Calendar.FEBRUARY, MonthRange.monthIndex(1_709_251_199L, utc));
+    assertEquals(2024 * 12 + Calendar.MARCH, MonthRange.monthIndex(1_709_251_200L, utc));
+    assertEquals(1969 * 12 + Calendar.DECEMBER, MonthRange.monthIndex(-1, utc));
+  }
 }
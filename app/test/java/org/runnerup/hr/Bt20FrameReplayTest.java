@@ -0,0 +1,179 @@
+package org.runnerup.hr;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Replays captured BT 2.0 heart rate monitor byte streams through {@link FrameBuffer} and the
+ * decoders, delivered in random chunk sizes as from a socket.
+ */
+public class Bt20FrameReplayTest {
+
+  /** Polar WearLink capture: three frames, two with RR intervals */
+  private static final String POLAR_CAPTURE =
+      "fe08f7000f4e03e8" + "fe0af5010f50038403de" + "fe06f9020f51";
+
+  private static class Replay {
+    final FrameBuffer buffer = new FrameBuffer(256);
+    final List<Integer> hr = new ArrayList<>();
+    final List<Integer> rr = new ArrayList<>();
+  }
+
+  /** Input stream returning the data in chunks of random size */
+  private static class ChunkedInputStream extends InputStream {
+    private final byte[] data;
+    private final Random random;
+    private int pos = 0;
+
+    ChunkedInputStream(byte[] data, long seed) {
+      this.data = data;
+      this.random = new Random(seed);
+    }
+
+    @Override
+    public int read() {
+      return pos < data.length ? data[pos++] & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (pos == data.length) {
+        return -1;
+      }
+      int n = Math.min(Math.min(len, data.length - pos), 1 + random.nextInt(40));
+      System.arraycopy(data, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+  }
+
+  private static Replay replay(FrameDecoder decoder, byte[] capture, long seed)
+      throws IOException {
+    Replay replay = new Replay();
+    InputStream in = new ChunkedInputStream(capture, seed);
+    FrameDecoder.Frame frame = new FrameDecoder.Frame();
+    while (replay.buffer.read(in) != -1) {
+      while (replay.buffer.decode(decoder, frame)) {
+        if (frame.hr != FrameDecoder.Frame.NO_VALUE) {
+          replay.hr.add(frame.hr);
+        }
+        for (int i = 0; i < frame.rrCount; i++) {
+          replay.rr.add(frame.rr[i]);
+        }
+      }
+    }
+    return replay;
+  }
+
+  private static byte[] hex(String s) {
+    byte[] b = new byte[s.length() / 2];
+    for (int i = 0; i < b.length; i++) {
+      b[i] = (byte) Integer.parseInt(s.substring(2 * i, 2 * i + 2), 16);
+    }
+    return b;
+  }
+
+  /** Zephyr HxM frame, beat timestamps 1000 ms apart ending at the beat number */
+  private static byte[] zephyrFrame(int hr, int beat) {
+    byte[] f = new byte[60];
+    f[0] = 0x02;
+    f[1] = 0x26;
+    f[2] = 55;
+    f[12] = (byte) hr;
+    f[13] = (byte) beat;
+    for (int k = 0; k < 15; k++) {
+      int ts = ((beat - k) * 1000) & 0xffff;
+      f[14 + 2 * k] = (byte) ts;
+      f[15 + 2 * k] = (byte) (ts >> 8);
+    }
+    int crc = 0;
+    for (int i = 3; i < 58; i++) {
+      crc ^= f[i] & 0xFF;
+      for (int b = 0; b < 8; b++) {
+        crc = (crc & 1) != 0 ? (crc >> 1) ^ 0x8c : crc >> 1;
+      }
+    }
+    f[58] = (byte) crc;
+    f[59] = 0x03;
+    return f;
+  }
+
+  @Test
+  public void zephyr_cleanStream() throws IOException {
+    ByteArrayOutputStream capture = new ByteArrayOutputStream();
+    for (int i = 0; i < 20; i++) {
+      capture.write(zephyrFrame(100 + i, 2 * i));
+    }
+    for (long seed = 0; seed < 10; seed++) {
+      Replay r = replay(new Bt20FrameDecoders.Zephyr(), capture.toByteArray(), seed);
+      assertEquals(20, r.hr.size());
+      assertEquals(119, (int) r.hr.get(19));
+      // Two beats per frame after the first
+      assertEquals(38, r.rr.size());
+      assertEquals(1000, (int) r.rr.get(37));
+      assertEquals(20, r.buffer.getFrames());
+      assertEquals(0, r.buffer.getCorruptFrames());
+      assertEquals(0, r.buffer.getSkippedBytes());
+    }
+  }
+
+  @Test
+  public void zephyr_recoversFromCorruption() throws IOException {
+    ByteArrayOutputStream capture = new ByteArrayOutputStream();
+    capture.write(hex("0203020002")); // noise, with start bytes
+    capture.write(zephyrFrame(120, 1));
+    byte[] bad = zephyrFrame(121, 2);
+    bad[20] ^= 0x10; // CRC mismatch
+    capture.write(bad);
+    capture.write(zephyrFrame(122, 3), 0, 30); // truncated
+    capture.write(zephyrFrame(123, 4));
+    capture.write(zephyrFrame(0, 5)); // no skin contact
+    capture.write(zephyrFrame(124, 6));
+
+    Replay r = replay(new Bt20FrameDecoders.Zephyr(), capture.toByteArray(), 1);
+    assertEquals(List.of(120, 123, 124), r.hr);
+    assertEquals(4, r.buffer.getFrames());
+    assertEquals(5 + 60 + 30, r.buffer.getSkippedBytes());
+    // Every start byte not starting a valid frame: three in the noise, the two damaged frames
+    // and the beat number 2 in the damaged frame
+    assertEquals(6, r.buffer.getCorruptFrames());
+  }
+
+  @Test
+  public void polar_capture() throws IOException {
+    Replay r = replay(new Bt20FrameDecoders.Polar(), hex(POLAR_CAPTURE), 2);
+    assertEquals(List.of(78, 80, 81), r.hr);
+    assertEquals(List.of(1000, 900, 990), r.rr);
+    assertEquals(0, r.buffer.getSkippedBytes());
+  }
+
+  @Test
+  public void polar_invalidLength() throws IOException {
+    // Complement mismatch and a too long frame, then a valid one
+    Replay r = replay(new Bt20FrameDecoders.Polar(), hex("fe08f6" + "fe40bf00" + "fe06f9020f51"), 3);
+    assertEquals(List.of(81), r.hr);
+    assertEquals(2, r.buffer.getCorruptFrames());
+    assertEquals(7, r.buffer.getSkippedBytes());
+  }
+
+  @Test
+  public void stHRMv1_capture() throws IOException {
+    // Length 17 in the upper six bits of byte 1
+    String frame = "fa" + "44bb" + "0000" + "5a" + "0000000000000000000000";
+    Replay r = replay(new Bt20FrameDecoders.StHRMv1(), hex("00" + frame + frame), 4);
+    assertEquals(List.of(90, 90), r.hr);
+    assertEquals(1, r.buffer.getSkippedBytes());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void frameBuffer_capacityPowerOfTwo() {
+    new FrameBuffer(100);
+  }
+}
@@ -0,0 +1,144 @@
+package org.runnerup.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+import org.runnerup.common.util.Constants.DB;
+
+public class UploadQueueTest {
+
+  private static final long NOW = 1700000000000L;
+
+  private SQLiteDatabase db;
+  private Cursor cursor;
+
+  @Before
+  public void setUp() {
+    db = mock(SQLiteDatabase.class);
+    cursor = mock(Cursor.class);
+    when(db.query(eq(DB.UPLOAD_QUEUE.TABLE), any(), anyString(), any(), any(), any(), any()))
+        .thenReturn(cursor);
+  }
+
+  /** A queued entry with the given number of failed attempts */
+  private void queued(int attempts) {
+    when(cursor.moveToFirst()).thenReturn(true);
+    when(cursor.getInt(0)).thenReturn(attempts);
+  }
+
+  @Test
+  public void backoff_exponentialAndCapped() {
+    assertEquals(0, UploadQueue.getBackoff(0));
+    assertEquals(TimeUnit.MINUTES.toMillis(1), UploadQueue.getBackoff(1));
+    assertEquals(TimeUnit.MINUTES.toMillis(2), UploadQueue.getBackoff(2));
+    assertEquals(TimeUnit.MINUTES.toMillis(256), UploadQueue.getBackoff(9));
+    assertEquals(TimeUnit.HOURS.toMillis(6), UploadQueue.getBackoff(10));
+    assertEquals(TimeUnit.HOURS.toMillis(6), UploadQueue.getBackoff(100));
+    for (int i = 1; i < UploadQueue.MAX_ATTEMPTS; i++) {
+      assertTrue(UploadQueue.getBackoff(i + 1) >= UploadQueue.getBackoff(i));
+    }
+  }
+
+  @Test
+  public void failed_countsAttemptAndBacksOff() {
+    queued(2);
+    try (MockedConstruction<ContentValues> values = mockConstruction(ContentValues.class)) {
+      UploadQueue.failed(db, 1, 42, NOW);
+
+      ContentValues v = values.constructed().get(0);
+      verify(v).put(DB.UPLOAD_QUEUE.ATTEMPTS, Integer.valueOf(3));
+      verify(v).put(DB.UPLOAD_QUEUE.NEXT_ATTEMPT, Long.valueOf(NOW + UploadQueue.getBackoff(3)));
+      verify(v).put(DB.UPLOAD_QUEUE.STATE, Integer.valueOf(DB.UPLOAD_QUEUE.STATE_PENDING));
+      verify(db).update(eq(DB.UPLOAD_QUEUE.TABLE), eq(v), anyString(), any());
+    }
+  }
+
+  @Test
+  public void failed_lastAttemptMarksFailed() {
+    queued(UploadQueue.MAX_ATTEMPTS - 1);
+    try (MockedConstruction<ContentValues> values = mockConstruction(ContentValues.class)) {
+      UploadQueue.failed(db, 1, 42, NOW);
+
+      ContentValues v = values.constructed().get(0);
+      verify(v).put(DB.UPLOAD_QUEUE.ATTEMPTS, Integer.valueOf(UploadQueue.MAX_ATTEMPTS));
+      verify(v).put(DB.UPLOAD_QUEUE.STATE, Integer.valueOf(DB.UPLOAD_QUEUE.STATE_FAILED));
+    }
+  }
+
+  @Test
+  public void failed_removedEntryIsNotRecreated() {
+    when(cursor.moveToFirst()).thenReturn(false);
+    UploadQueue.failed(db, 1, 42, NOW);
+    verify(db, never()).update(anyString(), any(), anyString(), any());
+  }
+
+  @Test
+  public void extendLease_onlyUntriedPendingEntries() {
+    try (MockedConstruction<ContentValues> values = mockConstruction(ContentValues.class)) {
+      long until = NOW + UploadQueue.LEASE_MS;
+      UploadQueue.extendLease(db, 1, until);
+
+      ContentValues v = values.constructed().get(0);
+      verify(v).put(DB.UPLOAD_QUEUE.NEXT_ATTEMPT, Long.valueOf(until));
+      verify(db)
+          .update(
+              eq(DB.UPLOAD_QUEUE.TABLE),
+              eq(v),
+              argThat(where -> where.contains(DB.UPLOAD_QUEUE.ATTEMPTS + " = 0")),
+              eq(
+                  new String[] {
+                    "1", Integer.toString(DB.UPLOAD_QUEUE.STATE_PENDING), Long.toString(until)
+                  }));
+    }
+  }
+
+  @Test
+  public void needAuth_parksWithoutCountingAttempt() {
+    try (MockedConstruction<ContentValues> values = mockConstruction(ContentValues.class)) {
+      UploadQueue.needAuth(db, 1);
+
+      ContentValues v = values.constructed().get(0);
+      verify(v).put(DB.UPLOAD_QUEUE.STATE, Integer.valueOf(DB.UPLOAD_QUEUE.STATE_NEED_AUTH));
+      verify(v, never()).put(eq(DB.UPLOAD_QUEUE.ATTEMPTS), any(Integer.class));
+      verify(db)
+          .update(
+              eq(DB.UPLOAD_QUEUE.TABLE),
+              eq(v),
+              anyString(),
+              eq(new String[] {"1", Integer.toString(DB.UPLOAD_QUEUE.STATE_PENDING)}));
+    }
+  }
+
+  @Test
+  public void authenticated_resumesParkedEntries() {
+    try (MockedConstruction<ContentValues> values = mockConstruction(ContentValues.class)) {
+      UploadQueue.authenticated(db, 1, NOW);
+
+      ContentValues v = values.constructed().get(0);
+      verify(v).put(DB.UPLOAD_QUEUE.STATE, Integer.valueOf(DB.UPLOAD_QUEUE.STATE_PENDING));
+      verify(v).put(DB.UPLOAD_QUEUE.NEXT_ATTEMPT, Long.valueOf(NOW));
+      verify(db)
+          .update(
+              eq(DB.UPLOAD_QUEUE.TABLE),
+              eq(v),
+              anyString(),
+              eq(new String[] {"1", Integer.toString(DB.UPLOAD_QUEUE.STATE_NEED_AUTH)}));
+    }
+  }
+}
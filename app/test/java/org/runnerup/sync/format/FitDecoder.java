@@ -0,0 +1,148 @@
+package org.runnerup.sync.format;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reference FIT decoder for the tests, written from the FIT protocol description independently of
+ * {@link FitEncoder}: checks header and file CRC and decodes normal definition and data messages.
+ */
+class FitDecoder {
+
+  static class Message {
+    final int global;
+    /** Field number to raw value, signed types sign extended, invalid values kept */
+    final Map<Integer, Long> fields = new LinkedHashMap<>();
+
+    Message(int global) {
+      this.global = global;
+    }
+
+    long get(int field) {
+      Long v = fields.get(field);
+      if (v == null) {
+        throw new AssertionError("Message " + global + " has no field " + field);
+      }
+      return v;
+    }
+  }
+
+  private static class Definition {
+    int global;
+    boolean bigEndian;
+    int[] numbers;
+    int[] sizes;
+    int[] types;
+  }
+
+  static List<Message> decode(byte[] file) throws IOException {
+    if (file.length < 14) {
+      throw new IOException("Too short");
+    }
+    int headerSize = file[0] & 0xFF;
+    if (headerSize != 12 && headerSize != 14) {
+      throw new IOException("Header size " + headerSize);
+    }
+    if (file[8] != '.' || file[9] != 'F' || file[10] != 'I' || file[11] != 'T') {
+      throw new IOException("No .FIT signature");
+    }
+    long dataSize = readLE(file, 4, 4);
+    if (headerSize + dataSize + 2 != file.length) {
+      throw new IOException("Data size " + dataSize + " does not match file of " + file.length);
+    }
+    if (headerSize == 14) {
+      int headerCrc = (int) readLE(file, 12, 2);
+      if (headerCrc != 0 && headerCrc != crc(file, 0, 12)) {
+        throw new IOException("Header CRC");
+      }
+    }
+    // The CRC over the file including the CRC itself is 0
+    if (crc(file, 0, file.length) != 0) {
+      throw new IOException("File CRC");
+    }
+
+    List<Message> messages = new ArrayList<>();
+    Definition[] locals = new Definition[16];
+    int pos = headerSize;
+    int end = (int) (headerSize + dataSize);
+    while (pos < end) {
+      int header = file[pos++] & 0xFF;
+      if ((header & 0x80) != 0) {
+        throw new IOException("Compressed timestamp headers are not supported");
+      }
+      int local = header & 0x0F;
+      if ((header & 0x40) != 0) {
+        Definition d = new Definition();
+        pos++; // reserved
+        d.bigEndian = file[pos++] == 1;
+        d.global = (int) (d.bigEndian ? readBE(file, pos, 2) : readLE(file, pos, 2));
+        pos += 2;
+        int n = file[pos++] & 0xFF;
+        d.numbers = new int[n];
+        d.sizes = new int[n];
+        d.types = new int[n];
+        for (int i = 0; i < n; i++) {
+          d.numbers[i] = file[pos++] & 0xFF;
+          d.sizes[i] = file[pos++] & 0xFF;
+          d.types[i] = file[pos++] & 0xFF;
+        }
+        if ((header & 0x20) != 0) {
+          throw new IOException("Developer fields are not supported");
+        }
+        locals[local] = d;
+      } else {
+        Definition d = locals[local];
+        if (d == null) {
+          throw new IOException("Data message for undefined local type " + local);
+        }
+        Message m = new Message(d.global);
+        for (int i = 0; i < d.numbers.length; i++) {
+          long v = d.bigEndian ? readBE(file, pos, d.sizes[i]) : readLE(file, pos, d.sizes[i]);
+          pos += d.sizes[i];
+          boolean signed = d.types[i] == 0x01 || d.types[i] == 0x83 || d.types[i] == 0x85;
+          if (signed) {
+            int bits = 64 - 8 * d.sizes[i];
+            v = (v << bits) >> bits;
+          }
+          m.fields.put(d.numbers[i], v);
+        }
+        messages.add(m);
+      }
+    }
+    if (pos != end) {
+      throw new IOException("Message overruns the data");
+    }
+    return messages;
+  }
+
+  /** Bitwise CRC-16 (polynomial 0xA001, reflected), as specified for FIT */
+  static int crc(byte[] data, int off, int len) {
+    int crc = 0;
+    for (int i = off; i < off + len; i++) {
+      crc ^= data[i] & 0xFF;
+      for (int bit = 0; bit < 8; bit++) {
+        crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0xA001 : crc >>> 1;
+      }
+    }
+    return crc;
+  }
+
+  private static long readLE(byte[] b, int off, int size) {
+    long v = 0;
+    for (int i = size - 1; i >= 0; i--) {
+      v = (v << 8) | (b[off + i] & 0xFF);
+    }
+    return v;
+  }
+
+  private static long readBE(byte[] b, int off, int size) {
+    long v = 0;
+    for (int i = 0; i < size; i++) {
+      v = (v << 8) | (b[off + i] & 0xFF);
+    }
+    return v;
+  }
+}
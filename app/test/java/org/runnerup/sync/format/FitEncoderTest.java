@@ -0,0 +1,126 @@
+package org.runnerup.sync.format;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import org.junit.Test;
+
+public class FitEncoderTest {
+
+  private static final FitEncoder.Message RECORD =
+      new FitEncoder.Message(20)
+          .field(253, FitEncoder.UINT32)
+          .field(0, FitEncoder.SINT32)
+          .field(1, FitEncoder.SINT32)
+          .field(2, FitEncoder.UINT16)
+          .field(3, FitEncoder.UINT8)
+          .field(13, FitEncoder.SINT8);
+
+  private static final FitEncoder.Message LAP =
+      new FitEncoder.Message(19).field(253, FitEncoder.UINT32).field(9, FitEncoder.UINT32);
+
+  private static byte[] finish(FitEncoder enc) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    enc.finish(out);
+    return out.toByteArray();
+  }
+
+  @Test
+  public void roundTrip_records() throws IOException {
+    FitEncoder enc = new FitEncoder();
+    int n = 5000;
+    for (int i = 0; i < n; i++) {
+      enc.begin(RECORD)
+          .value(1_000_000_000L + i)
+          .value(-(i * 1000L))
+          .value(i * 2000L)
+          .value((i + 500) * 5);
+      if (i % 3 == 0) {
+        enc.invalid();
+      } else {
+        enc.value(120 + i % 60);
+      }
+      enc.value(i % 40 - 20);
+      if (i % 1000 == 999) {
+        enc.begin(LAP).value(1_000_000_000L + i).value(i * 100L);
+      }
+    }
+    byte[] file = finish(enc);
+
+    List<FitDecoder.Message> messages = FitDecoder.decode(file);
+    assertEquals(n + n / 1000, messages.size());
+    int record = 0;
+    int laps = 0;
+    for (FitDecoder.Message m : messages) {
+      if (m.global == 19) {
+        laps++;
+        assertEquals(record - 1 + 1_000_000_000L, m.get(253));
+        continue;
+      }
+      assertEquals(20, m.global);
+      int i = record++;
+      assertEquals(1_000_000_000L + i, m.get(253));
+      assertEquals(-(i * 1000L), m.get(0));
+      assertEquals(i * 2000L, m.get(1));
+      assertEquals((i + 500) * 5L, m.get(2));
+      assertEquals(i % 3 == 0 ? 0xFF : 120 + i % 60, m.get(3));
+      assertEquals(i % 40 - 20, m.get(13));
+    }
+    assertEquals(n, record);
+    assertEquals(n / 1000, laps);
+  }
+
+  @Test
+  public void localTypes_areReused() throws IOException {
+    // More message types than local types, definitions must be written again
+    FitEncoder.Message[] types = new FitEncoder.Message[20];
+    for (int i = 0; i < types.length; i++) {
+      types[i] = new FitEncoder.Message(100 + i).field(0, FitEncoder.UINT16);
+    }
+    FitEncoder enc = new FitEncoder();
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < types.length; i++) {
+        enc.begin(types[i]).value(round * 100 + i);
+      }
+    }
+    List<FitDecoder.Message> messages = FitDecoder.decode(finish(enc));
+    assertEquals(60, messages.size());
+    for (int j = 0; j < messages.size(); j++) {
+      int round = j / types.length;
+      int i = j % types.length;
+      assertEquals(100 + i, messages.get(j).global);
+      assertEquals(round * 100 + i, messages.get(j).get(0));
+    }
+  }
+
+  @Test
+  public void crc_matchesBitwiseCrc() {
+    byte[] data = new byte[256];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) (i * 37);
+    }
+    assertEquals(FitDecoder.crc(data, 0, data.length), FitEncoder.crc(0, data, 0, data.length));
+  }
+
+  @Test
+  public void emptyFile_isValid() throws IOException {
+    byte[] file = finish(new FitEncoder());
+    assertEquals(FitEncoder.HEADER_SIZE + 2, file.length);
+    assertTrue(FitDecoder.decode(file).isEmpty());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void incompleteMessage_throws() {
+    FitEncoder enc = new FitEncoder();
+    enc.begin(LAP).value(1);
+    enc.begin(LAP);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void tooManyValues_throws() {
+    new FitEncoder().begin(LAP).value(1).value(2).value(3);
+  }
+}
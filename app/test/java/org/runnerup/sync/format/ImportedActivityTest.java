@@ -0,0 +1,120 @@
+package org.runnerup.sync.format;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ImportedActivityTest {
+
+  @Test
+  public void parseTime_formats() {
+    assertEquals(0L, ImportedActivity.parseTime("1970-01-01T00:00:00Z"));
+    assertEquals(1714557600000L, ImportedActivity.parseTime("2024-05-01T10:00:00Z"));
+    assertEquals(1714557600000L, ImportedActivity.parseTime("2024-05-01T10:00:00"));
+    assertEquals(1714557600250L, ImportedActivity.parseTime("2024-05-01T12:00:00.250+02:00"));
+    assertEquals(1714557600123L, ImportedActivity.parseTime(" 2024-05-01T09:30:00.1234-00:30 "));
+    assertEquals(951782400000L, ImportedActivity.parseTime("2000-02-29T00:00:00Z"));
+  }
+
+  @Test
+  public void parseTime_invalid() {
+    assertEquals(-1L, ImportedActivity.parseTime(""));
+    assertEquals(-1L, ImportedActivity.parseTime("2024-05-01"));
+    assertEquals(-1L, ImportedActivity.parseTime("2024-13-01T10:00:00Z"));
+    assertEquals(-1L, ImportedActivity.parseTime("2024-05-01T10:00:00X"));
+    assertEquals(-1L, ImportedActivity.parseTime("2024-05-01T1a:00:00Z"));
+  }
+
+  @Test
+  public void distance_computedWithinSegments() {
+    ImportedActivity a = new ImportedActivity("test");
+    // 0.001 degree of latitude is about 111 m
+    a.addPoint(1000, 59.000, 18.0, Double.NaN, Double.NaN, -1, Float.NaN, Float.NaN);
+    a.addPoint(2000, 59.001, 18.0, Double.NaN, Double.NaN, 150, Float.NaN, Float.NaN);
+    a.startSegment();
+    a.addPoint(9000, 59.010, 18.0, Double.NaN, Double.NaN, 150, Float.NaN, Float.NaN);
+    a.addPoint(10000, 59.011, 18.0, Double.NaN, Double.NaN, 150, Float.NaN, Float.NaN);
+
+    assertEquals(4, a.size());
+    assertEquals(0, a.getDistance(0), 0);
+    assertEquals(111.2, a.getDistance(1), 0.1);
+    // The gap between the segments is not counted
+    assertEquals(a.getDistance(1), a.getDistance(2), 0);
+    assertEquals(222.4, a.getDistance(3), 0.2);
+    assertFalse(a.isResume(1));
+    assertTrue(a.isResume(2));
+    assertEquals(222.4, a.getTotalDistance(), 0.2);
+    assertEquals(1, a.getLapCount());
+  }
+
+  @Test
+  public void outOfOrderPoints_areDropped() {
+    ImportedActivity a = new ImportedActivity("test");
+    a.addPoint(2000, 59, 18, 10, 0, -1, Float.NaN, Float.NaN);
+    a.addPoint(1000, 59, 18, 10, 5, -1, Float.NaN, Float.NaN);
+    a.addPoint(3000, 59, 18, 10, 10, -1, Float.NaN, Float.NaN);
+    assertEquals(2, a.size());
+    assertEquals(3000, a.getTime(1));
+    assertEquals(10, a.getDistance(1), 0);
+  }
+
+  @Test
+  public void laps_andFingerprint() {
+    ImportedActivity a = new ImportedActivity("test");
+    assertEquals(-1, a.getFingerprint());
+    a.startLap(1_700_000_000_500L, 0);
+    a.addPoint(1_700_000_001_000L, 59, 18, 0, 0, -1, Float.NaN, Float.NaN);
+    a.setLapTotals(60, 1000);
+    a.startLap(1_700_000_060_500L, 1);
+    for (int i = 0; i < 1000; i++) {
+      a.addPoint(1_700_000_061_000L + i * 1000L, 59, 18, 0, 1000, -1, Float.NaN, Float.NaN);
+    }
+    a.setLapTotals(1000, 0);
+
+    assertEquals(1001, a.size());
+    assertEquals(2, a.getLapCount());
+    assertEquals(0, a.getLap(0));
+    assertEquals(1, a.getLap(1000));
+    assertEquals(1, a.getLapIntensity(1));
+    assertEquals(1_700_000_000_500L, a.getStartTime());
+    assertEquals(1_700_000_000L, a.getFingerprint());
+    assertEquals(1000, a.getTotalDistance(), 0);
+  }
+
+  @Test
+  public void positionlessPoints_keepDistance() {
+    ImportedActivity a = new ImportedActivity("test");
+    a.addPoint(1000, Double.NaN, Double.NaN, Double.NaN, Double.NaN, 140, Float.NaN, Float.NaN);
+    a.addPoint(2000, 59.000, 18.0, Double.NaN, Double.NaN, 145, Float.NaN, Float.NaN);
+    // Lost the position in a tunnel, the distance is computed over the gap
+    a.addPoint(3000, Double.NaN, Double.NaN, Double.NaN, Double.NaN, 150, Float.NaN, Float.NaN);
+    a.addPoint(4000, 59.001, 18.0, Double.NaN, Double.NaN, 150, Float.NaN, Float.NaN);
+
+    assertEquals(4, a.size());
+    assertFalse(a.hasPosition(0));
+    assertTrue(a.hasPosition(1));
+    assertEquals(0, a.getDistance(1), 0);
+    assertEquals(0, a.getDistance(2), 0);
+    assertEquals(111.2, a.getDistance(3), 0.1);
+
+    a.fillMissingPositions();
+    assertEquals(59.000, a.getLatitude(0), 0);
+    assertEquals(59.000, a.getLatitude(2), 0);
+    assertEquals(18.0, a.getLongitude(2), 0);
+    assertEquals(111.2, a.getDistance(3), 0.1);
+  }
+
+  @Test
+  public void noPositions_recordedDistance() {
+    ImportedActivity a = new ImportedActivity("treadmill");
+    a.addPoint(1000, Double.NaN, Double.NaN, Double.NaN, 0, 120, Float.NaN, Float.NaN);
+    a.addPoint(2000, Double.NaN, Double.NaN, Double.NaN, 3.1, 125, Float.NaN, Float.NaN);
+    assertEquals(3.1, a.getTotalDistance(), 0);
+
+    a.fillMissingPositions();
+    assertEquals(0, a.getLatitude(1), 0);
+    assertEquals(0, a.getLongitude(1), 0);
+  }
+}
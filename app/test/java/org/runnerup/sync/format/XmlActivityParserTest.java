@@ -0,0 +1,179 @@
+package org.runnerup.sync.format;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.util.List;
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+import org.runnerup.common.util.Constants.DB;
+
+public class XmlActivityParserTest {
+
+  // Two laps as written by TCX: a Track per Lap, a new Track in the second lap after a pause
+  private static final String TCX =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<TrainingCenterDatabase"
+          + " xmlns=\"http://www.garmin.com/xmlschemas/TrainingCenterDatabase/v2\">\n"
+          + "<Activities><Activity Sport=\"Running\">\n"
+          + "<Id>2024-05-01T10:00:00Z</Id>\n"
+          + "<Lap StartTime=\"2024-05-01T10:00:00Z\">\n"
+          + "<TotalTimeSeconds>20</TotalTimeSeconds>\n"
+          + "<DistanceMeters>222.4</DistanceMeters>\n"
+          + "<Intensity>Active</Intensity>\n"
+          + "<Track>\n"
+          + point("2024-05-01T10:00:00Z", "59.000", 0, 140)
+          + point("2024-05-01T10:00:10Z", "59.001", 111.2, 150)
+          + point("2024-05-01T10:00:20Z", "59.002", 222.4, 160)
+          + "</Track>\n"
+          + "</Lap>\n"
+          + "<Lap StartTime=\"2024-05-01T10:00:20Z\">\n"
+          + "<TotalTimeSeconds>20</TotalTimeSeconds>\n"
+          + "<DistanceMeters>222.4</DistanceMeters>\n"
+          + "<Intensity>Resting</Intensity>\n"
+          + "<Track>\n"
+          + point("2024-05-01T10:00:30Z", "59.003", 333.6, 150)
+          + "</Track>\n"
+          + "<Track>\n"
+          + point("2024-05-01T10:01:30Z", "59.003", 333.6, 120)
+          + point("2024-05-01T10:01:40Z", "59.004", 444.8, 130)
+          + "</Track>\n"
+          + "</Lap>\n"
+          + "<Notes>Intervals</Notes>\n"
+          + "</Activity></Activities>\n"
+          + "</TrainingCenterDatabase>\n";
+
+  private static final String GPX =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<gpx version=\"1.1\" creator=\"RunnerUp\" xmlns=\"http://www.topografix.com/GPX/1/1\""
+          + " xmlns:gpxtpx=\"http://www.garmin.com/xmlschemas/TrackPointExtension/v1\">\n"
+          + "<trk><name>Morning</name><type>biking</type>\n"
+          + "<trkseg>\n"
+          + "<trkpt lat=\"59.000\" lon=\"18.0\"><ele>10</ele><time>2024-05-01T10:00:00Z</time>"
+          + "<extensions><gpxtpx:TrackPointExtension><gpxtpx:hr>140</gpxtpx:hr>"
+          + "</gpxtpx:TrackPointExtension></extensions></trkpt>\n"
+          + "<trkpt lat=\"59.001\" lon=\"18.0\"><ele>11</ele><time>2024-05-01T10:00:10Z</time>"
+          + "</trkpt>\n"
+          + "</trkseg>\n"
+          + "<trkseg>\n"
+          + "<trkpt lat=\"59.010\" lon=\"18.0\"><time>2024-05-01T10:05:00Z</time></trkpt>\n"
+          + "<trkpt lat=\"59.011\" lon=\"18.0\"><time>2024-05-01T10:05:10Z</time></trkpt>\n"
+          + "</trkseg>\n"
+          + "</trk>\n"
+          + "</gpx>\n";
+
+  // A treadmill run: no positions, distance from a foot pod
+  private static final String TCX_INDOOR =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<TrainingCenterDatabase"
+          + " xmlns=\"http://www.garmin.com/xmlschemas/TrainingCenterDatabase/v2\">\n"
+          + "<Activities><Activity Sport=\"Running\">\n"
+          + "<Id>2024-05-01T10:00:00Z</Id>\n"
+          + "<Lap StartTime=\"2024-05-01T10:00:00Z\">\n"
+          + "<Track>\n"
+          + "<Trackpoint><Time>2024-05-01T10:00:00Z</Time>"
+          + "<DistanceMeters>0</DistanceMeters><HeartRateBpm><Value>120</Value></HeartRateBpm>"
+          + "</Trackpoint>\n"
+          + "<Trackpoint><Time>2024-05-01T10:00:05Z</Time></Trackpoint>\n"
+          + "<Trackpoint><Time>2024-05-01T10:00:10Z</Time>"
+          + "<DistanceMeters>30.5</DistanceMeters><HeartRateBpm><Value>130</Value></HeartRateBpm>"
+          + "</Trackpoint>\n"
+          + "</Track>\n"
+          + "</Lap>\n"
+          + "</Activity></Activities>\n"
+          + "</TrainingCenterDatabase>\n";
+
+  private static String point(String time, String lat, double distance, int hr) {
+    return "<Trackpoint><Time>"
+        + time
+        + "</Time><Position><LatitudeDegrees>"
+        + lat
+        + "</LatitudeDegrees><LongitudeDegrees>18.0</LongitudeDegrees></Position>"
+        + "<DistanceMeters>"
+        + distance
+        + "</DistanceMeters><HeartRateBpm><Value>"
+        + hr
+        + "</Value></HeartRateBpm></Trackpoint>\n";
+  }
+
+  private static List<ImportedActivity> parse(String xml) throws Exception {
+    KXmlParser parser = new KXmlParser();
+    parser.setInput(new StringReader(xml));
+    return new XmlActivityParser(parser, "test").parse();
+  }
+
+  private static int pauses(ImportedActivity a) {
+    int n = 0;
+    for (int i = 0; i < a.size(); i++) {
+      if (a.isResume(i)) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  @Test
+  public void tcx_lapsAreContinuous() throws Exception {
+    List<ImportedActivity> result = parse(TCX);
+    assertEquals(1, result.size());
+    ImportedActivity a = result.get(0);
+
+    assertEquals(DB.ACTIVITY.SPORT_RUNNING, a.sport);
+    assertEquals("Intervals", a.comment);
+    assertEquals(6, a.size());
+    assertEquals(2, a.getLapCount());
+    assertEquals(0, a.getLap(2));
+    assertEquals(1, a.getLap(3));
+    assertEquals(DB.INTENSITY.ACTIVE, a.getLapIntensity(0));
+    assertEquals(DB.INTENSITY.RESTING, a.getLapIntensity(1));
+    assertEquals(20, a.getLapTime(1), 0);
+
+    // Only the second Track in the lap is a pause, not the lap boundary
+    assertEquals(1, pauses(a));
+    assertFalse(a.isResume(3));
+    assertTrue(a.isResume(4));
+    assertEquals(160, a.getHr(2));
+
+    assertEquals(1714557600000L, a.getStartTime());
+    assertEquals(444.8, a.getTotalDistance(), 0.01);
+    assertEquals(444.8, a.getDistance(5), 0.01);
+    // 30 s to the pause, 10 s after it
+    assertEquals(40000, a.getMovingTime());
+  }
+
+  @Test
+  public void gpx_segmentsArePauses() throws Exception {
+    List<ImportedActivity> result = parse(GPX);
+    assertEquals(1, result.size());
+    ImportedActivity a = result.get(0);
+
+    assertEquals("Morning", a.name);
+    assertEquals(DB.ACTIVITY.SPORT_BIKING, a.sport);
+    assertEquals(4, a.size());
+    assertEquals(1, pauses(a));
+    assertTrue(a.isResume(2));
+    assertEquals(140, a.getHr(0));
+    assertEquals(11, a.getAltitude(1), 0);
+
+    // 0.001 degree of latitude is about 111 m, the gap between the segments is not counted
+    assertEquals(222.4, a.getTotalDistance(), 0.2);
+    assertEquals(20000, a.getMovingTime());
+  }
+
+  @Test
+  public void tcx_positionlessPoints() throws Exception {
+    List<ImportedActivity> result = parse(TCX_INDOOR);
+    assertEquals(1, result.size());
+    ImportedActivity a = result.get(0);
+
+    // The point with only a time is dropped
+    assertEquals(2, a.size());
+    assertFalse(a.hasPosition(0));
+    assertEquals(130, a.getHr(1));
+    assertEquals(30.5, a.getDistance(1), 0);
+    assertEquals(30.5, a.getTotalDistance(), 0);
+    assertEquals(10000, a.getMovingTime());
+  }
+}
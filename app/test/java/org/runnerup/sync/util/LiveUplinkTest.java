@@ -0,0 +1,181 @@
+package org.runnerup.sync.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LiveUplinkTest {
+
+  private HttpServer server;
+  private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+  // Status codes to answer with, 200 when empty
+  private final List<Integer> responses = Collections.synchronizedList(new ArrayList<>());
+  private ScheduledExecutorService executor;
+  private String url;
+
+  @Before
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(
+        "/api",
+        exchange -> {
+          ByteArrayOutputStream body = new ByteArrayOutputStream();
+          try (InputStream in = exchange.getRequestBody()) {
+            byte[] buf = new byte[256];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+              body.write(buf, 0, n);
+            }
+          }
+          int code = responses.isEmpty() ? 200 : responses.remove(0);
+          if (code == 200) {
+            received.add(body.toString(StandardCharsets.UTF_8.name()));
+          }
+          exchange.sendResponseHeaders(code, -1);
+          exchange.close();
+        });
+    server.start();
+    url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api";
+    executor = Executors.newSingleThreadScheduledExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  private LiveUplink uplink(int capacity, LiveUplink.Network network) {
+    return new LiveUplink(url, capacity, 60000, network, executor, new Random(1));
+  }
+
+  @Test
+  public void flush_newestPositionWins() {
+    LiveUplink uplink = uplink(16, () -> true);
+    uplink.offer("start", false);
+    uplink.offer("gps1", true);
+    uplink.offer("gps2", true);
+    uplink.offer("pause", false);
+    uplink.offer("gps3", true);
+    uplink.offer("gps4", true);
+
+    assertTrue(uplink.flush());
+    assertEquals(List.of("start", "gps2", "pause", "gps4"), received);
+    assertEquals(4, uplink.getSent());
+    assertEquals(2, uplink.getCoalesced());
+    assertEquals(0, uplink.getQueued());
+  }
+
+  @Test
+  public void offer_fullQueueDropsPositionsFirst() {
+    LiveUplink uplink = uplink(3, () -> true);
+    uplink.offer("start", false);
+    uplink.offer("gps1", true);
+    uplink.offer("pause", false);
+    uplink.offer("resume", false);
+    uplink.offer("end", false);
+
+    assertTrue(uplink.flush());
+    assertEquals(List.of("pause", "resume", "end"), received);
+    assertEquals(2, uplink.getDropped());
+  }
+
+  @Test
+  public void flush_serverErrorIsRetried() {
+    LiveUplink uplink = uplink(16, () -> true);
+    uplink.offer("start", false);
+    uplink.offer("gps1", true);
+    responses.add(503);
+
+    assertFalse(uplink.flush());
+    assertEquals(2, uplink.getQueued());
+    assertTrue(uplink.flush());
+    assertEquals(List.of("start", "gps1"), received);
+
+    // Rejected samples are not retried
+    uplink.offer("bad", false);
+    responses.add(400);
+    assertTrue(uplink.flush());
+    assertEquals(1, uplink.getDropped());
+    assertEquals(2, uplink.getSent());
+  }
+
+  @Test
+  public void stop_sendsQueuedOnlyWithNetwork() throws InterruptedException {
+    AtomicInteger checks = new AtomicInteger();
+    LiveUplink offline =
+        uplink(
+            16,
+            () -> {
+              checks.incrementAndGet();
+              return false;
+            });
+    offline.offer("end", false);
+    offline.stop();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(1, checks.get());
+    assertTrue(received.isEmpty());
+
+    executor = Executors.newSingleThreadScheduledExecutor();
+    LiveUplink online = uplink(16, () -> true);
+    online.start();
+    online.offer("end", false);
+    online.stop();
+    assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    assertEquals(List.of("end"), received);
+  }
+
+  @Test
+  public void start_exceptionIsRetried() throws InterruptedException {
+    AtomicInteger checks = new AtomicInteger();
+    LiveUplink uplink =
+        new LiveUplink(
+            url,
+            16,
+            10,
+            () -> {
+              if (checks.incrementAndGet() == 1) {
+                throw new IllegalStateException("no connectivity service");
+              }
+              return true;
+            },
+            executor,
+            new Random(1));
+    uplink.offer("gps1", true);
+    uplink.start();
+    for (int i = 0; i < 500 && received.isEmpty(); i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(List.of("gps1"), received);
+    assertTrue(checks.get() >= 2);
+  }
+
+  @Test
+  public void retryDelay_backoffWithJitter() {
+    LiveUplink uplink = uplink(16, () -> true);
+    for (int failures = 1; failures < 12; failures++) {
+      long max = Math.min(LiveUplink.MIN_RETRY_MS << (failures - 1), LiveUplink.MAX_RETRY_MS);
+      long delay = uplink.getRetryDelayMs(failures);
+      assertTrue(delay >= max / 2 && delay <= max);
+    }
+    assertTrue(uplink.getRetryDelayMs(100) <= LiveUplink.MAX_RETRY_MS);
+  }
+}
@@ -0,0 +1,90 @@
+package org.runnerup.sync.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import org.junit.Test;
+
+public class MeteredConnectionTest {
+
+  /** A response without network access */
+  private static final class FakeConnection extends HttpURLConnection {
+    private final int code;
+    private final byte[] body;
+
+    FakeConnection(int code, byte[] body) throws IOException {
+      super(new URL("https://example.com/upload"));
+      this.code = code;
+      this.body = body;
+    }
+
+    @Override
+    public int getResponseCode() {
+      return code;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      if (code >= HTTP_BAD_REQUEST) {
+        throw new IOException("HTTP " + code);
+      }
+      return new ByteArrayInputStream(body);
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return code >= HTTP_BAD_REQUEST ? new ByteArrayInputStream(body) : null;
+    }
+
+    @Override
+    public void connect() {}
+
+    @Override
+    public void disconnect() {}
+
+    @Override
+    public boolean usingProxy() {
+      return false;
+    }
+  }
+
+  @Test
+  public void countsStreamReadByCaller() throws Exception {
+    HttpTransport.Metrics metrics = new HttpTransport.Metrics();
+    HttpURLConnection conn =
+        new MeteredConnection(new FakeConnection(200, new byte[1000]), metrics);
+
+    // As SyncHelper.parse(InputStream), not through readBody
+    assertEquals(200, conn.getResponseCode());
+    try (InputStream in = conn.getInputStream()) {
+      byte[] buf = new byte[300];
+      //noinspection StatementWithEmptyBody
+      while (in.read(buf) > 0) {}
+    }
+    assertEquals(1000, metrics.bytesReceived.get());
+    assertEquals(0, metrics.errors.get());
+    assertNull(conn.getErrorStream());
+  }
+
+  @Test
+  public void countsErrorOnce() throws Exception {
+    HttpTransport.Metrics metrics = new HttpTransport.Metrics();
+    HttpURLConnection conn = new MeteredConnection(new FakeConnection(401, new byte[20]), metrics);
+
+    try {
+      conn.getInputStream();
+      fail();
+    } catch (IOException expected) {
+    }
+    assertEquals(401, conn.getResponseCode());
+    assertEquals(20, HttpTransport.readBody(conn).length);
+    assertEquals(1, metrics.errors.get());
+    assertEquals(20, metrics.bytesReceived.get());
+  }
+}
@@ -0,0 +1,72 @@
+package org.runnerup.sync.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+  @Test
+  public void concurrentCalls_shareOneResult() throws Exception {
+    SingleFlight<String, Integer> flight = new SingleFlight<>();
+    AtomicInteger runs = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      Future<Integer> first =
+          pool.submit(
+              () ->
+                  flight.run(
+                      "strava",
+                      () -> {
+                        started.countDown();
+                        release.await(5, TimeUnit.SECONDS);
+                        return runs.incrementAndGet();
+                      }));
+      assertTrue(started.await(5, TimeUnit.SECONDS));
+      Future<Integer> second = pool.submit(() -> flight.run("strava", runs::incrementAndGet));
+      Future<Integer> third = pool.submit(() -> flight.run("strava", runs::incrementAndGet));
+      // Let the waiters join the running call before it completes
+      while (flight.getCoalesced() < 2) {
+        Thread.sleep(5);
+      }
+      release.countDown();
+
+      assertEquals(1, (int) first.get(5, TimeUnit.SECONDS));
+      assertEquals(1, (int) second.get(5, TimeUnit.SECONDS));
+      assertEquals(1, (int) third.get(5, TimeUnit.SECONDS));
+      assertEquals(1, runs.get());
+      assertEquals(1, flight.getCalls());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  @Test
+  public void sequentialCalls_runAgain() throws Exception {
+    SingleFlight<String, Integer> flight = new SingleFlight<>();
+    AtomicInteger runs = new AtomicInteger();
+    assertEquals(1, (int) flight.run("a", runs::incrementAndGet));
+    assertEquals(2, (int) flight.run("a", runs::incrementAndGet));
+    assertEquals(3, (int) flight.run("b", runs::incrementAndGet));
+    assertEquals(0, flight.getCoalesced());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void exception_isRethrown() throws Exception {
+    SingleFlight<String, Integer> flight = new SingleFlight<>();
+    flight.run(
+        "a",
+        () -> {
+          throw new IllegalStateException("refresh failed");
+        });
+  }
+}
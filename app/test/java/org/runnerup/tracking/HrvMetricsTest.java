@@ -0,0 +1,73 @@
+package org.runnerup.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class HrvMetricsTest {
+
+  @Test
+  public void rmssd_alternatingIntervals() {
+    HrvMetrics hrv = new HrvMetrics();
+    for (int i = 0; i < 5; i++) {
+      hrv.add(800);
+    }
+    assertEquals(0, hrv.getRmssd(), 0);
+    for (int i = 0; i < 20; i++) {
+      hrv.add(i % 2 == 0 ? 800 : 880);
+    }
+    assertTrue(hrv.getRmssd() > 70 && hrv.getRmssd() < 80);
+    hrv.reset();
+    for (int i = 0; i < 40; i++) {
+      hrv.add(i % 2 == 0 ? 800 : 880);
+    }
+    assertEquals(80, hrv.getRmssd(), 1e-9);
+  }
+
+  @Test
+  public void artifacts_areSkipped() {
+    HrvMetrics hrv = new HrvMetrics();
+    for (int i = 0; i < 20; i++) {
+      hrv.add(800);
+    }
+    // Missed beat and an implausible value
+    assertFalse(hrv.add(1600));
+    assertTrue(hrv.add(800));
+    assertFalse(hrv.add(100));
+    assertEquals(0, hrv.getRmssd(), 0);
+    assertEquals(21, hrv.getCount());
+
+    // A new level is accepted when confirmed
+    assertFalse(hrv.add(600));
+    assertTrue(hrv.add(600));
+  }
+
+  @Test
+  public void window_keepsTwoMinutes() {
+    HrvMetrics hrv = new HrvMetrics();
+    for (int i = 0; i < 1000; i++) {
+      hrv.add(500);
+    }
+    assertEquals(HrvMetrics.WINDOW_MS / 500, hrv.getCount());
+  }
+
+  @Test
+  public void dfaAlpha1_whiteAndBrownNoise() {
+    Random random = new Random(3);
+    HrvMetrics white = new HrvMetrics();
+    HrvMetrics brown = new HrvMetrics();
+    double level = 0;
+    for (int i = 0; i < 300; i++) {
+      white.add((int) Math.round(700 + 20 * random.nextGaussian()));
+      level += 5 * random.nextGaussian();
+      brown.add((int) Math.round(700 + level));
+    }
+    // Uncorrelated intervals scale with 0.5, integrated ones with 1.5
+    assertEquals(0.5, white.getDfaAlpha1(), 0.2);
+    assertEquals(1.5, brown.getDfaAlpha1(), 0.25);
+    assertEquals(0, new HrvMetrics().getDfaAlpha1(), 0);
+  }
+}
@@ -0,0 +1,186 @@
+package org.runnerup.tracking;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.runnerup.core.workout.Workout;
+
+public class WorkoutSchedulerTest {
+
+  /** A mocked Handler, running the posted callbacks in time order on a fake clock */
+  private static final class FakeLooper {
+    private static final class Posted {
+      final long at;
+      final Runnable r;
+
+      Posted(long at, Runnable r) {
+        this.at = at;
+        this.r = r;
+      }
+    }
+
+    final Handler handler = mock(Handler.class);
+    private final List<Posted> queue = new ArrayList<>();
+    private long now = 0;
+
+    FakeLooper() {
+      when(handler.post(any(Runnable.class))).thenAnswer(i -> post(i.getArgument(0), 0));
+      when(handler.postDelayed(any(Runnable.class), anyLong()))
+          .thenAnswer(i -> post(i.getArgument(0), i.getArgument(1)));
+      doAnswer(
+              i -> {
+                Runnable r = i.getArgument(0);
+                queue.removeIf(p -> p.r == r);
+                return null;
+              })
+          .when(handler)
+          .removeCallbacks(any(Runnable.class));
+    }
+
+    private boolean post(Runnable r, long delayMs) {
+      queue.add(new Posted(now + delayMs, r));
+      return true;
+    }
+
+    /** Run the callbacks due within the time, including those they post */
+    void advance(long ms) {
+      long end = now + ms;
+      while (true) {
+        Posted next = null;
+        for (Posted p : queue) {
+          // Same time in posting order
+          if (p.at <= end && (next == null || p.at < next.at)) {
+            next = p;
+          }
+        }
+        if (next == null) {
+          break;
+        }
+        queue.remove(next);
+        now = next.at;
+        next.r.run();
+      }
+      now = end;
+    }
+
+    int pending() {
+      return queue.size();
+    }
+  }
+
+  private FakeLooper looper;
+  private WorkoutScheduler scheduler;
+  private Workout workout;
+
+  @Before
+  public void setUp() {
+    looper = new FakeLooper();
+    scheduler = new WorkoutScheduler(looper.handler);
+    workout = mock(Workout.class);
+    // No time based trigger due
+    when(workout.getTimeToTick()).thenReturn(Double.MAX_VALUE);
+  }
+
+  @Test
+  public void start_ticksWithoutListeners() {
+    // As when no activity is shown
+    scheduler.start(workout);
+    looper.advance(0);
+    verify(workout, times(1)).onTick();
+
+    looper.advance(WorkoutScheduler.MAX_DELAY_MS * 5);
+    verify(workout, times(6)).onTick();
+
+    // Evaluated when the next trigger is due
+    when(workout.getTimeToTick()).thenReturn(0.25);
+    looper.advance(WorkoutScheduler.MAX_DELAY_MS);
+    looper.advance(250);
+    verify(workout, times(8)).onTick();
+  }
+
+  @Test
+  public void onData_evaluatesNow() {
+    int[] ticks = {0};
+    scheduler.registerListener(() -> ticks[0]++);
+    scheduler.start(workout);
+    looper.advance(100);
+    verify(workout, times(1)).onTick();
+
+    // Location and heart rate samples in the same loop are evaluated once
+    scheduler.onData();
+    scheduler.onData();
+    looper.advance(0);
+    verify(workout, times(2)).onTick();
+    assertEquals(2, ticks[0]);
+
+    // The periodic evaluation restarts from the last one
+    looper.advance(WorkoutScheduler.MAX_DELAY_MS - 1);
+    verify(workout, times(2)).onTick();
+    looper.advance(1);
+    verify(workout, times(3)).onTick();
+    assertEquals(3, ticks[0]);
+    assertEquals(1, looper.pending());
+  }
+
+  @Test
+  public void stop_cancelsPendingTick() {
+    scheduler.start(workout);
+    looper.advance(0);
+    assertEquals(1, looper.pending());
+
+    scheduler.onData();
+    scheduler.stop();
+    assertEquals(0, looper.pending());
+    looper.advance(WorkoutScheduler.MAX_DELAY_MS * 5);
+    verify(workout, times(1)).onTick();
+
+    // Data after the workout ended is ignored
+    scheduler.onData();
+    assertEquals(0, looper.pending());
+  }
+
+  @Test
+  public void stop_fromWorkout() {
+    // The workout ends in its last step
+    doAnswer(
+            i -> {
+              scheduler.stop();
+              return null;
+            })
+        .when(workout)
+        .onTick();
+    scheduler.start(workout);
+    looper.advance(WorkoutScheduler.MAX_DELAY_MS * 5);
+    verify(workout, times(1)).onTick();
+    verify(workout, never()).getTimeToTick();
+    assertEquals(0, looper.pending());
+  }
+
+  @Test
+  public void nextDelay_untilDueTrigger() {
+    assertEquals(250, WorkoutScheduler.nextDelayMs(0.25, false));
+    assertEquals(WorkoutScheduler.MIN_DELAY_MS, WorkoutScheduler.nextDelayMs(0.0005, false));
+    assertEquals(WorkoutScheduler.MIN_DELAY_MS, WorkoutScheduler.nextDelayMs(0, false));
+  }
+
+  @Test
+  public void nextDelay_limited() {
+    assertEquals(WorkoutScheduler.MAX_DELAY_MS, WorkoutScheduler.nextDelayMs(42, false));
+    assertEquals(
+        WorkoutScheduler.MAX_DELAY_MS, WorkoutScheduler.nextDelayMs(Double.MAX_VALUE, false));
+    // Activity time does not advance while paused
+    assertEquals(WorkoutScheduler.MAX_DELAY_MS, WorkoutScheduler.nextDelayMs(0.25, true));
+  }
+}
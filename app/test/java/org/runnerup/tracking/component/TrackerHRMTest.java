@@ -0,0 +1,50 @@
+package org.runnerup.tracking.component;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+import org.mockito.MockedConstruction;
+import org.mockito.MockedStatic;
+import org.runnerup.tracking.Tracker;
+import org.runnerup.tracking.replay.SensorLog;
+import org.runnerup.tracking.replay.SensorReplay;
+
+public class TrackerHRMTest {
+
+  @Test
+  public void onConnecting_replayWithoutHr() throws IOException {
+    // A GPX track without heart rate
+    SensorLog log =
+        SensorLog.read(
+            new StringReader("1000,gps,59.3293,18.0686\n2000,gps,59.3294,18.0687\n"));
+    try (MockedConstruction<Handler> ignored = mockConstruction(Handler.class);
+        MockedStatic<Looper> looper = mockStatic(Looper.class)) {
+      SensorReplay replay = new SensorReplay(log, 1);
+      assertNull(replay.getHRProvider());
+
+      Tracker tracker = mock(Tracker.class);
+      when(tracker.getSensorReplay()).thenReturn(replay);
+      TrackerComponent.Callback callback = mock(TrackerComponent.Callback.class);
+
+      // Not pending, the tracker would wait for the callback forever
+      TrackerHRM hrm = new TrackerHRM(tracker);
+      assertEquals(
+          TrackerComponent.ResultCode.RESULT_NOT_SUPPORTED,
+          hrm.onConnecting(callback, mock(Context.class)));
+      verify(callback, never()).run(any(), any());
+    }
+  }
+}
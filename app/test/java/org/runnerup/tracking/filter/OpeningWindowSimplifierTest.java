@@ -0,0 +1,122 @@
+package org.runnerup.tracking.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class OpeningWindowSimplifierTest {
+
+  private static final double M_PER_DEG = 111195.08;
+
+  private static double[][] track(int n, long seed) {
+    Random random = new Random(seed);
+    double[][] points = new double[n][];
+    double lat = 59.3;
+    double lon = 18.0;
+    double heading = 0;
+    for (int i = 0; i < n; i++) {
+      heading += random.nextGaussian() * 0.1;
+      lat += Math.cos(heading) * 3 / M_PER_DEG;
+      lon += Math.sin(heading) * 3 / (M_PER_DEG * Math.cos(Math.toRadians(lat)));
+      points[i] = new double[] {lat, lon};
+    }
+    return points;
+  }
+
+  /** Distance in m from p to the segment a-b, planar approximation */
+  private static double distance(double[] p, double[] a, double[] b) {
+    double k = Math.cos(Math.toRadians(a[0]));
+    double ex = (b[1] - a[1]) * k;
+    double ey = b[0] - a[0];
+    double px = (p[1] - a[1]) * k;
+    double py = p[0] - a[0];
+    double len2 = ex * ex + ey * ey;
+    double t = len2 > 0 ? Math.max(0, Math.min(1, (px * ex + py * ey) / len2)) : 0;
+    return Math.hypot(px - t * ex, py - t * ey) * M_PER_DEG;
+  }
+
+  private static List<Integer> simplify(double[][] points, double tolerance, int lookahead) {
+    List<Integer> kept = new ArrayList<>();
+    OpeningWindowSimplifier<Integer> s =
+        new OpeningWindowSimplifier<>(tolerance, lookahead, kept::add);
+    for (int i = 0; i < points.length; i++) {
+      s.add(points[i][0], points[i][1], i);
+    }
+    s.flush();
+    return kept;
+  }
+
+  @Test
+  public void droppedPoints_withinTolerance() {
+    double[][] points = track(5000, 1);
+    double tolerance = 5;
+    List<Integer> kept = simplify(points, tolerance, 60);
+
+    assertEquals(0, (int) kept.get(0));
+    assertEquals(points.length - 1, (int) kept.get(kept.size() - 1));
+    assertTrue("kept " + kept.size(), kept.size() < points.length / 3);
+    for (int k = 1; k < kept.size(); k++) {
+      int from = kept.get(k - 1);
+      int to = kept.get(k);
+      assertTrue(to > from);
+      for (int i = from + 1; i < to; i++) {
+        double d = distance(points[i], points[from], points[to]);
+        assertTrue("point " + i + " at " + d + " m", d <= tolerance + 0.01);
+      }
+    }
+  }
+
+  @Test
+  public void straightLine_boundedByLookahead() {
+    double[][] points = new double[100][];
+    for (int i = 0; i < points.length; i++) {
+      points[i] = new double[] {59 + i * 1e-5, 18};
+    }
+    List<Integer> kept = simplify(points, 1, 10);
+    // The first point, then every tenth
+    assertEquals(11, kept.size());
+    for (int k = 1; k < kept.size(); k++) {
+      assertTrue(kept.get(k) - kept.get(k - 1) <= 10);
+    }
+  }
+
+  @Test
+  public void flushAt_writesHeldPointAndRestartsFromAnchor() {
+    List<Integer> kept = new ArrayList<>();
+    OpeningWindowSimplifier<Integer> s = new OpeningWindowSimplifier<>(1, 10, kept::add);
+    s.add(59.0, 18.0, 0);
+    s.add(59.00001, 18.0, 1);
+    s.add(59.00002, 18.0, 2);
+    // On a line, both are held back
+    assertEquals(2, s.pending());
+    // A pause row written by the caller
+    s.flush(59.00002, 18.0);
+    assertEquals(0, s.pending());
+    s.add(59.00003, 18.0, 3);
+    assertEquals(1, s.pending());
+    s.flush();
+    assertEquals(List.of(0, 2, 3), kept);
+  }
+
+  @Test
+  public void commit_writesHeldPointAndKeepsAnchor() {
+    List<Integer> kept = new ArrayList<>();
+    OpeningWindowSimplifier<Integer> s = new OpeningWindowSimplifier<>(1, 10, kept::add);
+    s.add(59.0, 18.0, 0);
+    s.add(59.00001, 18.0, 1);
+    s.add(59.00002, 18.0, 2);
+    s.commit();
+    assertEquals(0, s.pending());
+    assertEquals(List.of(0, 2), kept);
+    // Continues the path from the written point, not as a new start
+    s.add(59.00003, 18.0, 3);
+    assertEquals(1, s.pending());
+    s.commit();
+    s.commit();
+    assertEquals(List.of(0, 2, 3), kept);
+  }
+}
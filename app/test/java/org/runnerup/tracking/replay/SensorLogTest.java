@@ -0,0 +1,77 @@
+package org.runnerup.tracking.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+import org.runnerup.sync.format.ImportedActivity;
+
+public class SensorLogTest {
+
+  @Test
+  public void read_samplesInOrder() throws IOException {
+    SensorLog log =
+        SensorLog.read(
+            new StringReader(
+                "# recorded\n"
+                    + "5000,gps,59.3293,18.0686,12.5\n"
+                    + "5000,hr,121\n"
+                    + "\n"
+                    + "5412,RR,498\n"
+                    + "6000,gps,59.3294,18.0687\n"
+                    + "6000,cad,84\n"));
+    assertEquals(5, log.size());
+    assertEquals(0, log.getTime(0));
+    assertEquals(412, log.getTime(2));
+    assertEquals(1000, log.getDuration());
+
+    assertEquals(SensorLog.GPS, log.getType(0));
+    assertEquals(59.3293, log.getValue(0), 0);
+    assertEquals(18.0686, log.getLongitude(0), 0);
+    assertEquals(12.5, log.getAltitude(0), 0);
+    assertTrue(Double.isNaN(log.getAltitude(3)));
+
+    assertEquals(SensorLog.RR, log.getType(2));
+    assertEquals(498, log.getValue(2), 0);
+    assertTrue(log.has(SensorLog.CADENCE));
+    assertFalse(log.has(SensorLog.PRESSURE));
+  }
+
+  @Test
+  public void read_invalidLines() {
+    String[] invalid = {
+      "0,speed,3.2", "0,hr", "x,hr,120", "0,gps,59.3", "1000,hr,120\n999,hr,121",
+    };
+    for (String s : invalid) {
+      try {
+        SensorLog.read(new StringReader(s));
+        fail("Accepted " + s);
+      } catch (IOException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void fromActivity_gpsWithHrAndCadence() {
+    ImportedActivity a = new ImportedActivity("test");
+    a.addPoint(1000, 59.0, 18.0, 10, Double.NaN, 120, 80, 0);
+    a.addPoint(2000, 59.1, 18.1, 11, Double.NaN, 0, 0, 0);
+    a.addPoint(3000, 59.2, 18.2, 12, Double.NaN, 125, 0, 0);
+
+    SensorLog log = SensorLog.fromActivity(a);
+    assertEquals(6, log.size());
+    assertEquals(SensorLog.GPS, log.getType(0));
+    assertEquals(SensorLog.HR, log.getType(1));
+    assertEquals(SensorLog.CADENCE, log.getType(2));
+    assertEquals(SensorLog.GPS, log.getType(3));
+    assertEquals(SensorLog.GPS, log.getType(4));
+    assertEquals(2000, log.getTime(4));
+    assertEquals(125, log.getValue(5), 0);
+    assertEquals(2000, log.getDuration());
+  }
+}
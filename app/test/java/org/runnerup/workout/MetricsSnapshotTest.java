@@ -0,0 +1,49 @@
+package org.runnerup.core.workout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.runnerup.tracking.Tracker;
+
+public class MetricsSnapshotTest {
+
+  @Test
+  public void valuesFixedWithinTick() {
+    Tracker tracker = mock(Tracker.class);
+    when(tracker.getDistance()).thenReturn(100d);
+    when(tracker.getTimeMs()).thenReturn(50000L);
+    Workout workout = new Workout();
+    workout.setTracker(tracker);
+
+    assertEquals(100, workout.get(Scope.ACTIVITY, Dimension.DISTANCE), 0);
+    assertEquals(2, workout.getSpeed(Scope.ACTIVITY), 0);
+    long updates = workout.getMetrics().getUpdates();
+
+    when(tracker.getDistance()).thenReturn(200d);
+    assertEquals(100, workout.getDistance(Scope.ACTIVITY), 0);
+    assertEquals(0.5, workout.get(Scope.ACTIVITY, Dimension.PACE), 0);
+    assertEquals(updates, workout.getMetrics().getUpdates());
+
+    workout.onTick();
+    assertEquals(200, workout.getDistance(Scope.ACTIVITY), 0);
+    assertEquals(4, workout.get(Scope.ACTIVITY, Dimension.SPEED), 0);
+    assertEquals(updates + 1, workout.getMetrics().getUpdates());
+  }
+
+  @Test
+  public void currentOnlyDimensions() {
+    Workout workout = new Workout();
+    workout.setTracker(mock(Tracker.class));
+    MetricsSnapshot metrics = workout.getMetrics();
+    assertTrue(metrics.isValid());
+    assertTrue(metrics.has(Scope.CURRENT, Dimension.CAD));
+    assertFalse(metrics.has(Scope.LAP, Dimension.CAD));
+    assertTrue(metrics.has(Scope.STEP, Dimension.TIME));
+    // Without HR zones
+    assertFalse(metrics.has(Scope.CURRENT, Dimension.HRZ));
+  }
+}
@@ -0,0 +1,66 @@
+package org.runnerup.core.workout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+
+public class SlidingTrimmedMeanTest {
+
+  // The sort based computation replaced
+  private static double sortedTrimmedMean(double[] window, int n) {
+    double[] sorted = Arrays.copyOf(window, n);
+    Arrays.sort(sorted);
+    int skip = (5 * n) / 100;
+    double val = 0;
+    for (int i = skip; i < n - skip; i++) {
+      val += sorted[i];
+    }
+    return val / (n - 2 * skip);
+  }
+
+  @Test
+  public void trimmedMean_matchesSorting() {
+    Random random = new Random(17);
+    int window = 60;
+    SlidingTrimmedMean mean = new SlidingTrimmedMean(window, 5);
+    double[] ring = new double[window];
+    int cnt = 0;
+    for (int i = 0; i < 1000; i++) {
+      double val = random.nextInt(10) == 0 ? 1000 * random.nextDouble() : 150 + random.nextInt(20);
+      int n = random.nextInt(5) == 0 ? 1 + random.nextInt(90) : 1;
+      mean.add(val, n);
+      for (int j = 0; j < n; j++) {
+        ring[cnt++ % window] = val;
+      }
+      int size = Math.min(cnt, window);
+      assertEquals(size, mean.size());
+      assertEquals(sortedTrimmedMean(ring, size), mean.getTrimmedMean(), 1e-9);
+    }
+  }
+
+  @Test
+  public void median() {
+    SlidingTrimmedMean mean = new SlidingTrimmedMean(4, 5);
+    assertTrue(Double.isNaN(mean.getMedian()));
+    assertTrue(Double.isNaN(mean.getTrimmedMean()));
+    mean.add(3);
+    mean.add(1);
+    mean.add(2);
+    assertEquals(2, mean.getMedian(), 0);
+    mean.add(10);
+    assertEquals(2.5, mean.getMedian(), 0);
+    // 3 is replaced
+    mean.add(2);
+    assertEquals(2, mean.getMedian(), 0);
+    assertEquals(1, mean.get(0), 0);
+    assertEquals(10, mean.get(3), 0);
+
+    mean.clear();
+    mean.add(5);
+    assertEquals(1, mean.size());
+    assertEquals(5, mean.getTrimmedMean(), 0);
+  }
+}
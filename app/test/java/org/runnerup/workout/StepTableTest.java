@@ -0,0 +1,60 @@
+package org.runnerup.core.workout;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class StepTableTest {
+
+  @Test
+  public void compile_nestedRepeats() {
+    Step warmup = new Step();
+    RepeatStep outer = new RepeatStep();
+    RepeatStep inner = new RepeatStep();
+    Step fast = new Step();
+    Step slow = new Step();
+    Step rest = new Step();
+    Step cooldown = new Step();
+    inner.steps.add(fast);
+    inner.steps.add(slow);
+    outer.steps.add(inner);
+    outer.steps.add(rest);
+
+    StepTable table = StepTable.compile(Arrays.asList(warmup, outer, cooldown));
+    assertEquals(7, table.size());
+    Step[] order = {warmup, outer, inner, fast, slow, rest, cooldown};
+    int[] parents = {-1, -1, 1, 2, 2, 1, -1};
+    int[] levels = {0, 0, 1, 2, 2, 1, 0};
+    int[] orderInParent = {0, 1, 0, 0, 1, 1, 2};
+    for (int i = 0; i < order.length; i++) {
+      assertSame(order[i], table.getStep(i));
+      assertEquals(parents[i], table.getParent(i));
+      assertEquals(levels[i], table.getLevel(i));
+      assertEquals(orderInParent[i], table.getOrderInParent(i));
+      assertEquals(i, table.indexOf(order[i]));
+    }
+    assertEquals(-1, table.indexOf(new Step()));
+
+    List<Workout.StepListEntry> entries = table.getEntries();
+    assertNull(entries.get(0).parent);
+    assertSame(inner, entries.get(4).parent);
+    assertEquals(2, entries.get(4).level);
+  }
+
+  @Test
+  public void compile_longWorkout() {
+    RepeatStep repeat = new RepeatStep();
+    for (int i = 0; i < 30; i++) {
+      repeat.steps.add(new Step());
+      repeat.steps.add(Step.createRestStep(Dimension.DISTANCE, 200, true));
+    }
+    StepTable table = StepTable.compile(Arrays.asList(repeat));
+    assertEquals(61, table.size());
+    assertEquals(59, table.getOrderInParent(60));
+    assertEquals(0, table.getParent(60));
+  }
+}
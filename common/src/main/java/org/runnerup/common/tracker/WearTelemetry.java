@@ -0,0 +1,209 @@
+package org.runnerup.common.tracker;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import org.runnerup.common.util.Constants;
+
+/**
+ * Binary frames for the workout values sent from the phone to the watch.
+ *
+ * <p>A frame holds the fields that changed since the previous frame, each as a field id and its
+ * text. A keyframe holds all fields and replaces the state on the watch. The watch applies a delta
+ * only if it follows the last frame it applied; after a lost frame it ignores deltas until the next
+ * keyframe, sent periodically or when the watch asks for it.
+ *
+ * <p>Layout: flags byte, varint sequence number, varint field count, then per field varint id,
+ * varint byte length and the UTF-8 text.
+ */
+public final class WearTelemetry {
+
+  static final int FLAG_KEYFRAME = 1;
+
+  /** Field of the pause step countdown */
+  public static final int FIELD_COUNTDOWN = 0;
+
+  // Items per screen on the watch is at most 3
+  private static final int ITEMS_PER_SCREEN = 4;
+
+  private WearTelemetry() {}
+
+  /** Field of a value on a watch screen */
+  public static int dataField(int screen, int item) {
+    return 1 + screen * ITEMS_PER_SCREEN + item;
+  }
+
+  /** Screen of a field from {@link #dataField}, -1 for other fields */
+  public static int getScreen(int field) {
+    return field <= FIELD_COUNTDOWN ? -1 : (field - 1) / ITEMS_PER_SCREEN;
+  }
+
+  /** Item of a field from {@link #dataField}, -1 for other fields */
+  public static int getItem(int field) {
+    return field <= FIELD_COUNTDOWN ? -1 : (field - 1) % ITEMS_PER_SCREEN;
+  }
+
+  /** Key of a field in the workout event Bundle on the watch, as sent before the frames */
+  public static String bundleKey(int field) {
+    if (field == FIELD_COUNTDOWN) {
+      return Constants.Wear.RunInfo.COUNTDOWN;
+    }
+    return Constants.Wear.RunInfo.DATA + getScreen(field) + "." + getItem(field);
+  }
+
+  /** Creates the frames on the phone */
+  public static final class Encoder {
+
+    private final int keyframeInterval;
+    private final TreeMap<Integer, String> sent = new TreeMap<>();
+    private int seq = 0;
+    private int sinceKeyframe = 0;
+    private boolean keyframeRequested = true;
+
+    /** @param keyframeInterval max number of frames between keyframes */
+    public Encoder(int keyframeInterval) {
+      this.keyframeInterval = keyframeInterval;
+    }
+
+    /** Send all fields in the next frame, e.g. a new watch connected or it lost a frame */
+    public void requestKeyframe() {
+      keyframeRequested = true;
+    }
+
+    /**
+     * Encode the fields not yet sent.
+     *
+     * @return the frame, null if nothing changed
+     */
+    public byte[] encode(Map<Integer, String> fields) {
+      boolean keyframe =
+          keyframeRequested
+              || sinceKeyframe + 1 >= keyframeInterval
+              // Removed fields are only sent as keyframes
+              || !fields.keySet().containsAll(sent.keySet());
+
+      TreeMap<Integer, String> changed = new TreeMap<>();
+      for (Map.Entry<Integer, String> e : fields.entrySet()) {
+        if (keyframe || !e.getValue().equals(sent.get(e.getKey()))) {
+          changed.put(e.getKey(), e.getValue());
+        }
+      }
+      if (!keyframe && changed.isEmpty()) {
+        return null;
+      }
+
+      seq++;
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      out.write(keyframe ? FLAG_KEYFRAME : 0);
+      writeVarint(out, seq);
+      writeVarint(out, changed.size());
+      for (Map.Entry<Integer, String> e : changed.entrySet()) {
+        byte[] text = e.getValue().getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, e.getKey());
+        writeVarint(out, text.length);
+        out.write(text, 0, text.length);
+      }
+
+      if (keyframe) {
+        sent.clear();
+        sinceKeyframe = 0;
+        keyframeRequested = false;
+      } else {
+        sinceKeyframe++;
+      }
+      sent.putAll(changed);
+      return out.toByteArray();
+    }
+  }
+
+  /** Applies the frames on the watch */
+  public static final class Decoder {
+
+    private final TreeMap<Integer, String> fields = new TreeMap<>();
+    private int seq = 0;
+    private boolean synced = false;
+
+    /**
+     * Apply a frame.
+     *
+     * @return false if the frame was ignored: malformed, or a delta not following the last frame
+     *     applied. A keyframe is then needed.
+     */
+    public boolean decode(byte[] frame) {
+      int[] pos = {0};
+      TreeMap<Integer, String> changed = new TreeMap<>();
+      boolean keyframe;
+      int frameSeq;
+      try {
+        keyframe = (readByte(frame, pos) & FLAG_KEYFRAME) != 0;
+        frameSeq = readVarint(frame, pos);
+        int count = readVarint(frame, pos);
+        for (int i = 0; i < count; i++) {
+          int id = readVarint(frame, pos);
+          int len = readVarint(frame, pos);
+          if (len > frame.length - pos[0]) {
+            return false;
+          }
+          changed.put(id, new String(frame, pos[0], len, StandardCharsets.UTF_8));
+          pos[0] += len;
+        }
+      } catch (IndexOutOfBoundsException e) {
+        return false;
+      }
+
+      if (keyframe) {
+        fields.clear();
+      } else if (!synced || frameSeq != seq + 1) {
+        synced = false;
+        return false;
+      }
+      fields.putAll(changed);
+      seq = frameSeq;
+      synced = true;
+      return true;
+    }
+
+    /** False from a lost frame until the next keyframe */
+    public boolean isSynced() {
+      return synced;
+    }
+
+    /** The current fields, by field id */
+    public Map<Integer, String> getFields() {
+      return fields;
+    }
+
+    public void reset() {
+      fields.clear();
+      synced = false;
+    }
+  }
+
+  static void writeVarint(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7f) != 0) {
+      out.write((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  static int readVarint(byte[] buf, int[] pos) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = readByte(buf, pos);
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IndexOutOfBoundsException("varint too long");
+  }
+
+  private static int readByte(byte[] buf, int[] pos) {
+    if (pos[0] >= buf.length) {
+      throw new IndexOutOfBoundsException();
+    }
+    return buf[pos[0]++] & 0xff;
+  }
+}
@@ -221,6 +221,8 @@ public interface Constants {
       int CAD = 7;
       int TEMPERATURE = 8;
       int PRESSURE = 9;
+      int RMSSD = 10;
+      int DFA_ALPHA1 = 11;
     }
 
     interface ACCOUNT {
@@ -252,6 +254,46 @@ public interface Constants {
       String EXTRA = "extra";
     }
 
+    /**
+     * Persistent upload queue, one row per activity and account still to be uploaded. Drained by
+     * the UploadWorker with exponential backoff, rows are removed when the upload succeeds.
+     */
+    interface UPLOAD_QUEUE {
+      String TABLE = "upload_queue";
+      String ACTIVITY = "activity_id";
+      String ACCOUNT = "account_id";
+      String STATE = "state"; // see STATE_*
+      String ATTEMPTS = "attempts"; // failed upload attempts
+      String NEXT_ATTEMPT = "next_attempt"; // System.currentTimeMillis() of next attempt
+
+      int STATE_PENDING = 0;
+      int STATE_FAILED = 1; // too many attempts, kept for the user to retry
+      int STATE_NEED_AUTH = 2; // parked until the account is authenticated again
+    }
+
+    interface ROUTE_LOD {
+      String TABLE = "route_lod";
+      String ACTIVITY = "activity_id";
+      String LEVEL = "level"; // 0 is the finest
+      String TOLERANCE = "tolerance"; // m
+      String POINTS = "points"; // blob, see RouteLevels.Level.encode()
+    }
+
+    interface RR_INTERVAL {
+      String TABLE = "rr_interval";
+      String ACTIVITY = "activity_id";
+      String TIME = "time"; // unix ms at the end of the first beat
+      String INTERVALS = "intervals"; // blob, consecutive beats as 16 bit little endian ms
+    }
+
+    interface HR_SAMPLE {
+      String TABLE = "hr_sample";
+      String ACTIVITY = "activity_id";
+      String TIME = "time"; // unix ms, the first sample is at TIME
+      // blob, per sample 16 bit little endian ms since the previous sample and 8 bit bpm
+      String SAMPLES = "samples";
+    }
+
     interface AUDIO_SCHEMES {
       String TABLE = "audio_schemes";
       String NAME = "name";
@@ -446,6 +488,8 @@ public interface Constants {
     String START_WORKOUT = BuildConfig.applicationIdFull + ".START_WORKOUT";
     String PAUSE_WORKOUT = BuildConfig.applicationIdFull + ".PAUSE_WORKOUT";
     String RESUME_WORKOUT = BuildConfig.applicationIdFull + ".RESUME_WORKOUT";
+    // Debug builds, record an activity from a sensor log
+    String REPLAY = BuildConfig.applicationIdFull + ".REPLAY";
   }
 
   interface TRACKER_STATE {
@@ -485,8 +529,12 @@ public interface Constants {
       String TRACKER_STATE = PREFIX + "/tracker/state";
       String WORKOUT_PLAN = PREFIX + "/workout/plan";
 
-      /* Msg: workout event */
+      /* Msg: workout event, DataMap of all values, sent to wear apps without V2 */
       String MSG_WORKOUT_EVENT = PREFIX + "/workout/event";
+      /* Msg: workout event, see WearTelemetry */
+      String MSG_WORKOUT_EVENT_V2 = PREFIX + "/workout/event/v2";
+      /* Msg: wear handles V2 and lost a workout event or has none, send all values */
+      String MSG_WORKOUT_EVENT_SYNC = PREFIX + "/workout/event/sync";
 
       /* Msg: pause/resume from wear to phone */
       String MSG_CMD_WORKOUT_PAUSE = PREFIX + "/workout/pause";
@@ -0,0 +1,107 @@
+package org.runnerup.common.tracker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.TreeMap;
+import org.junit.Test;
+
+public class WearTelemetryTest {
+
+  private static TreeMap<Integer, String> fields(String time, String distance, String pace) {
+    TreeMap<Integer, String> f = new TreeMap<>();
+    f.put(WearTelemetry.dataField(0, 0), time);
+    f.put(WearTelemetry.dataField(0, 1), distance);
+    f.put(WearTelemetry.dataField(0, 2), pace);
+    return f;
+  }
+
+  @Test
+  public void varint_roundTrip() {
+    int[] values = {0, 1, 127, 128, 300, 16384, Integer.MAX_VALUE, -1};
+    for (int v : values) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      WearTelemetry.writeVarint(out, v);
+      assertEquals(v, WearTelemetry.readVarint(out.toByteArray(), new int[] {0}));
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    WearTelemetry.writeVarint(out, 300);
+    assertArrayEquals(new byte[] {(byte) 0xac, 0x02}, out.toByteArray());
+  }
+
+  @Test
+  public void fieldIds() {
+    int field = WearTelemetry.dataField(2, 1);
+    assertEquals(2, WearTelemetry.getScreen(field));
+    assertEquals(1, WearTelemetry.getItem(field));
+    assertEquals(-1, WearTelemetry.getScreen(WearTelemetry.FIELD_COUNTDOWN));
+    assertEquals("DATA/2.1", WearTelemetry.bundleKey(field));
+    assertEquals("COUNTDOWN", WearTelemetry.bundleKey(WearTelemetry.FIELD_COUNTDOWN));
+  }
+
+  @Test
+  public void encode_onlyChangedFields() {
+    WearTelemetry.Encoder encoder = new WearTelemetry.Encoder(10);
+    WearTelemetry.Decoder decoder = new WearTelemetry.Decoder();
+
+    byte[] keyframe = encoder.encode(fields("0:10", "0.03", "5:20"));
+    assertTrue(decoder.decode(keyframe));
+    assertEquals(fields("0:10", "0.03", "5:20"), decoder.getFields());
+
+    byte[] delta = encoder.encode(fields("0:11", "0.03", "5:20"));
+    assertTrue(delta.length < keyframe.length);
+    assertTrue(decoder.decode(delta));
+    assertEquals(fields("0:11", "0.03", "5:20"), decoder.getFields());
+
+    assertNull(encoder.encode(fields("0:11", "0.03", "5:20")));
+  }
+
+  @Test
+  public void decode_recoversFromLostFrame() {
+    WearTelemetry.Encoder encoder = new WearTelemetry.Encoder(4);
+    WearTelemetry.Decoder decoder = new WearTelemetry.Decoder();
+
+    assertTrue(decoder.decode(encoder.encode(fields("0:01", "0.00", "-"))));
+    encoder.encode(fields("0:02", "0.01", "-")); // lost
+    assertFalse(decoder.decode(encoder.encode(fields("0:03", "0.01", "-"))));
+    assertFalse(decoder.isSynced());
+    // Deltas are not applied until the keyframe
+    assertFalse(decoder.decode(encoder.encode(fields("0:04", "0.01", "-"))));
+    assertEquals(fields("0:01", "0.00", "-"), decoder.getFields());
+
+    assertTrue(decoder.decode(encoder.encode(fields("0:05", "0.02", "6:00"))));
+    assertTrue(decoder.isSynced());
+    assertEquals(fields("0:05", "0.02", "6:00"), decoder.getFields());
+
+    // Keyframe on request
+    assertFalse(decoder.decode(new byte[] {0, 9, 0}));
+    encoder.requestKeyframe();
+    assertTrue(decoder.decode(encoder.encode(fields("0:05", "0.02", "6:00"))));
+  }
+
+  @Test
+  public void encode_removedFieldAsKeyframe() {
+    WearTelemetry.Encoder encoder = new WearTelemetry.Encoder(10);
+    WearTelemetry.Decoder decoder = new WearTelemetry.Decoder();
+    TreeMap<Integer, String> withCountdown = fields("1:00", "0.20", "5:00");
+    withCountdown.put(WearTelemetry.FIELD_COUNTDOWN, "0:30");
+    assertTrue(decoder.decode(encoder.encode(withCountdown)));
+
+    assertTrue(decoder.decode(encoder.encode(fields("1:01", "0.20", "5:00"))));
+    assertEquals(fields("1:01", "0.20", "5:00"), decoder.getFields());
+  }
+
+  @Test
+  public void decode_malformed() {
+    WearTelemetry.Decoder decoder = new WearTelemetry.Decoder();
+    assertFalse(decoder.decode(new byte[0]));
+    assertFalse(decoder.decode(new byte[] {1, 1, 1, 1, 5, 'a'}));
+    assertFalse(decoder.decode(new byte[] {1, (byte) 0x80}));
+    assertTrue(decoder.decode(new byte[] {1, 1, 1, 1, 1, 'a'}));
+    assertEquals("a", decoder.getFields().get(1));
+  }
+}
@@ -62,6 +62,8 @@ public class AndroidBLEHRProvider extends BtHRBase implements HRProvider {
   private BluetoothGatt btGatt = null;
   private BluetoothDevice btDevice = null;
   private int hrValue = 0;
+  // At most 9 intervals fit in a 20 byte notification
+  private final int[] rrScratch = new int[9];
   private long hrTimestamp = 0;
   private long hrElapsedRealtime = 0;
   private int batteryLevel = HRProvider.BATTERY_LEVEL_UNAVAILABLE;
@@ -184,6 +186,11 @@ public class AndroidBLEHRProvider extends BtHRBase implements HRProvider {
             } else {
               hrValue = val;
               mPrevHrTimestampNotZero = hrTimestamp;
+              reportHRValue(val, hrElapsedRealtime);
+              int count = parseRrIntervals(arg0.getValue(), rrScratch);
+              if (count > 0) {
+                rrIntervals.offer(hrElapsedRealtime / 1000000, rrScratch, count);
+              }
             }
 
             if (mIsConnecting) {
@@ -750,6 +757,29 @@ public class AndroidBLEHRProvider extends BtHRBase implements HRProvider {
     return this.hrElapsedRealtime;
   }
 
+  /**
+   * RR intervals in a Heart Rate Measurement characteristic value, converted from 1/1024 s to ms.
+   *
+   * @return the number of intervals
+   */
+  static int parseRrIntervals(byte[] value, int[] rrMs) {
+    int flags = value[0] & 0xff;
+    if ((flags & 0x10) == 0) {
+      return 0;
+    }
+    // Flags, heart rate in 8 or 16 bits, then energy expended if present
+    int offset = (flags & 0x01) != 0 ? 3 : 2;
+    if ((flags & 0x08) != 0) {
+      offset += 2;
+    }
+    int count = 0;
+    for (; offset + 1 < value.length && count < rrMs.length; offset += 2) {
+      int raw = (value[offset] & 0xff) | ((value[offset + 1] & 0xff) << 8);
+      rrMs[count++] = (int) Math.round(raw * 1000.0 / 1024);
+    }
+    return count;
+  }
+
   @Override
   public HRData getHRData() {
 
@@ -23,6 +23,8 @@ import android.os.SystemClock;
 import androidx.appcompat.app.AppCompatActivity;
 import com.dsi.ant.plugins.antplus.pcc.AntPlusHeartRatePcc;
 import com.dsi.ant.plugins.antplus.pcc.AntPlusHeartRatePcc.IHeartRateDataReceiver;
+import com.dsi.ant.plugins.antplus.pcc.AntPlusHeartRatePcc.IRrIntervalReceiver;
+import com.dsi.ant.plugins.antplus.pcc.AntPlusHeartRatePcc.RrFlag;
 import com.dsi.ant.plugins.antplus.pcc.defines.DeviceState;
 import com.dsi.ant.plugins.antplus.pcc.defines.EventFlag;
 import com.dsi.ant.plugins.antplus.pcc.defines.RequestAccessResult;
@@ -252,6 +254,7 @@ public class AntPlus extends BtHRBase {
           }
 
           antDevice.subscribeHeartRateDataEvent(heartRateDataReceiver);
+          antDevice.subscribeRrIntervalEvent(rrIntervalReceiver);
         }
       };
 
@@ -288,6 +291,7 @@ public class AntPlus extends BtHRBase {
           hrValue = arg2;
           hrTimestamp = System.currentTimeMillis();
           hrElapsedRealtime = SystemClock.elapsedRealtimeNanos();
+          reportHRValue(hrValue, hrElapsedRealtime);
 
           if (mIsConnecting) {
             reportConnected(true);
@@ -295,6 +299,24 @@ public class AntPlus extends BtHRBase {
         }
       };
 
+  private final IRrIntervalReceiver rrIntervalReceiver =
+      new IRrIntervalReceiver() {
+
+        @Override
+        public void onNewRrInterval(
+            long estTimestamp,
+            EnumSet<EventFlag> eventFlags,
+            BigDecimal calculatedRrInterval,
+            RrFlag rrFlag) {
+          // Averaged intervals are derived from the heart rate, not measured beat to beat
+          if (calculatedRrInterval == null
+              || (rrFlag != RrFlag.DATA_SOURCE_PAGE_4 && rrFlag != RrFlag.DATA_SOURCE_CACHED)) {
+            return;
+          }
+          rrIntervals.offer(SystemClock.elapsedRealtime(), calculatedRrInterval.intValue());
+        }
+      };
+
   private final IDeviceStateChangeReceiver stateReceiver =
       arg0 -> {
         log("onDeviceStateChange(" + arg0 + ")");
@@ -0,0 +1,161 @@
+package org.runnerup.hr;
+
+/** Frame decoders of the BT 2.0 heart rate monitors in {@link Bt20Base}. */
+public final class Bt20FrameDecoders {
+
+  private Bt20FrameDecoders() {}
+
+  /** Zephyr HxM, fixed 60 byte frames with CRC */
+  public static final class Zephyr implements FrameDecoder {
+
+    static final int BYTE_DLC = 2;
+    static final int BYTE_HR = 12;
+    static final int BYTE_BEAT = 13;
+    static final int BYTE_BEAT_TIMESTAMPS = 14;
+    static final int BEAT_TIMESTAMPS = 15;
+    static final int BYTE_CRC = 58;
+    static final int BYTE_ETX = 59;
+    static final int FRAME_SIZE = BYTE_ETX + 1;
+    static final int PAYLOAD_SIZE = 55;
+
+    static final int START_BYTE = 0x02;
+    static final int END_BYTE = 0x03;
+
+    private int lastBeat = -1;
+
+    @Override
+    public boolean isStart(int b) {
+      return b == START_BYTE;
+    }
+
+    @Override
+    public int decode(FrameBuffer in, Frame out) {
+      if (in.available() <= BYTE_DLC) {
+        return NEED_MORE;
+      }
+      if (in.get(BYTE_DLC) != PAYLOAD_SIZE) {
+        return CORRUPT;
+      }
+      if (in.available() < FRAME_SIZE) {
+        return NEED_MORE;
+      }
+      if (in.get(BYTE_ETX) != END_BYTE
+          || calcCrc8(in, BYTE_DLC + 1, PAYLOAD_SIZE) != in.get(BYTE_CRC)) {
+        return CORRUPT;
+      }
+
+      // 0 while the strap has no skin contact, not a value
+      int hr = in.get(BYTE_HR);
+      out.hr = hr > 0 ? hr : Frame.NO_VALUE;
+      decodeRrIntervals(in, out);
+      return FRAME_SIZE;
+    }
+
+    /**
+     * The frame has the number of the last beat and the timestamps of the last 15 beats, newest
+     * first, in ms modulo 65536. The intervals of the beats since the previous frame are added.
+     */
+    private void decodeRrIntervals(FrameBuffer in, Frame out) {
+      int beat = in.get(BYTE_BEAT);
+      if (lastBeat >= 0) {
+        int beats = Math.min((beat - lastBeat) & 0xff, BEAT_TIMESTAMPS - 1);
+        for (int k = beats - 1; k >= 0; k--) {
+          out.rr[out.rrCount++] = (beatTimestamp(in, k) - beatTimestamp(in, k + 1)) & 0xffff;
+        }
+      }
+      lastBeat = beat;
+    }
+
+    private static int beatTimestamp(FrameBuffer in, int k) {
+      int pos = BYTE_BEAT_TIMESTAMPS + 2 * k;
+      return in.get(pos) | (in.get(pos + 1) << 8);
+    }
+
+    static int calcCrc8(FrameBuffer in, int start, int length) {
+      int crc = 0x0;
+      for (int i = start; i < (start + length); i++) {
+        crc ^= in.get(i);
+        for (int b = 0; b <= 7; b++) {
+          if ((crc & 1) != 0) {
+            crc = ((crc >> 1) ^ 0x8c);
+          } else {
+            crc = (crc >> 1);
+          }
+        }
+      }
+      return crc;
+    }
+  }
+
+  /**
+   * Polar WearLink: start byte, length, complement of the length, sequence number, status, heart
+   * rate, then the RR intervals since the previous frame as big endian ms.
+   */
+  public static final class Polar implements FrameDecoder {
+
+    static final int START_BYTE = 0xFE;
+    static final int MIN_LENGTH = 6;
+    static final int MAX_LENGTH = 32;
+
+    @Override
+    public boolean isStart(int b) {
+      return b == START_BYTE;
+    }
+
+    @Override
+    public int decode(FrameBuffer in, Frame out) {
+      if (in.available() < 4) {
+        return NEED_MORE;
+      }
+      int length = in.get(1);
+      if (in.get(2) != 0xFF - length
+          || in.get(3) >= 16
+          || length < MIN_LENGTH
+          || length > MAX_LENGTH) {
+        return CORRUPT;
+      }
+      if (in.available() < length) {
+        return NEED_MORE;
+      }
+
+      out.hr = in.get(5);
+      for (int pos = 6; pos + 1 < length && out.rrCount < out.rr.length; pos += 2) {
+        out.rr[out.rrCount++] = (in.get(pos) << 8) | in.get(pos + 1);
+      }
+      return length;
+    }
+  }
+
+  /**
+   * SportTracker HRM v1: start byte, length in the upper 6 bits, complement of the length byte,
+   * heart rate at byte 5.
+   */
+  public static final class StHRMv1 implements FrameDecoder {
+
+    static final int START_BYTE = 250;
+    static final int MIN_LENGTH = 6;
+
+    @Override
+    public boolean isStart(int b) {
+      return b == START_BYTE;
+    }
+
+    @Override
+    public int decode(FrameBuffer in, Frame out) {
+      if (in.available() < 3) {
+        return NEED_MORE;
+      }
+      int b1 = in.get(1);
+      int length = b1 >> 2;
+      if (in.get(2) != 0xFF - b1 || length < MIN_LENGTH) {
+        return CORRUPT;
+      }
+      if (in.available() < length) {
+        return NEED_MORE;
+      }
+
+      out.hr = in.get(5);
+      return length;
+    }
+  }
+}
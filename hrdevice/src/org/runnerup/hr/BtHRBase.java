@@ -33,6 +33,22 @@ abstract class BtHRBase implements HRProvider {
 
   HRProvider.HRClient hrClient;
   Handler hrClientHandler;
+  final RrIntervalBuffer rrIntervals = new RrIntervalBuffer();
+
+  @Override
+  public RrIntervalBuffer getRrIntervals() {
+    return rrIntervals;
+  }
+
+  /** Pass a received sample to the client, from any thread */
+  void reportHRValue(final int hrValue, final long elapsedRealtimeNanos) {
+    Handler handler = hrClientHandler;
+    if (handler == null) return;
+    handler.post(
+        () -> {
+          if (hrClient != null) hrClient.onHRValue(BtHRBase.this, hrValue, elapsedRealtimeNanos);
+        });
+  }
 
   void log(final String msg) {
     if (hrClient != null) {
@@ -0,0 +1,106 @@
+package org.runnerup.hr;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Circular buffer for framed sensor byte streams. Bytes are read from the stream directly into the
+ * buffer and decoded in place by a {@link FrameDecoder}: each byte is examined once as a possible
+ * frame start and bytes are never moved. Counts decoded and corrupt frames and bytes skipped while
+ * searching for a frame start.
+ */
+public final class FrameBuffer {
+
+  private final byte[] data;
+  private final int mask;
+  private long readPos = 0;
+  private long writePos = 0;
+
+  private volatile long frames = 0;
+  private volatile long corruptFrames = 0;
+  private volatile long skippedBytes = 0;
+
+  /**
+   * @param capacity power of two, larger than the largest frame of the decoders used
+   */
+  public FrameBuffer(int capacity) {
+    if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+      throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+    }
+    data = new byte[capacity];
+    mask = capacity - 1;
+  }
+
+  /**
+   * Read what the stream has, up to the free space in one piece.
+   *
+   * @return the number of bytes read, -1 at end of stream
+   */
+  public int read(InputStream in) throws IOException {
+    int start = (int) (writePos & mask);
+    int length = Math.min(data.length - available(), data.length - start);
+    int n = in.read(data, start, length);
+    if (n > 0) {
+      writePos += n;
+    }
+    return n;
+  }
+
+  /** Bytes not yet decoded */
+  public int available() {
+    return (int) (writePos - readPos);
+  }
+
+  /** Unsigned byte at the offset from the first byte not yet decoded */
+  public int get(int offset) {
+    return data[(int) ((readPos + offset) & mask)] & 0xFF;
+  }
+
+  private void skip(int count) {
+    readPos += count;
+  }
+
+  /**
+   * Decode the next frame.
+   *
+   * @return true if a frame was decoded to frame, false if more bytes are needed
+   */
+  public boolean decode(FrameDecoder decoder, FrameDecoder.Frame frame) {
+    while (available() > 0) {
+      if (!decoder.isStart(get(0))) {
+        skip(1);
+        skippedBytes++;
+        continue;
+      }
+      frame.clear();
+      int length = decoder.decode(this, frame);
+      if (length > 0) {
+        skip(length);
+        frames++;
+        return true;
+      }
+      if (length == FrameDecoder.NEED_MORE && available() < data.length) {
+        return false;
+      }
+      // Not a frame after all, continue the search from the next byte
+      skip(1);
+      skippedBytes++;
+      corruptFrames++;
+    }
+    return false;
+  }
+
+  public long getFrames() {
+    return frames;
+  }
+
+  /** Frame starts found to be invalid, by length or checksum */
+  public long getCorruptFrames() {
+    return corruptFrames;
+  }
+
+  /** Bytes not part of a decoded frame */
+  public long getSkippedBytes() {
+    return skippedBytes;
+  }
+}
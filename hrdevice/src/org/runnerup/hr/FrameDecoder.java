@@ -0,0 +1,43 @@
+package org.runnerup.hr;
+
+/**
+ * Decodes the frames of a BT 2.0 heart rate monitor from a {@link FrameBuffer}. A decoder may keep
+ * state between frames, one instance is used per connection.
+ */
+public interface FrameDecoder {
+
+  /** More bytes are needed to decide */
+  int NEED_MORE = 0;
+
+  /** No valid frame starts at the first byte */
+  int CORRUPT = -1;
+
+  /** Whether a frame can start with the byte */
+  boolean isStart(int b);
+
+  /**
+   * Decode the frame starting at the first byte of the buffer, for which isStart() is true.
+   *
+   * @return the frame length, {@link #NEED_MORE} or {@link #CORRUPT}
+   */
+  int decode(FrameBuffer in, Frame out);
+
+  /** Values of one frame */
+  final class Frame {
+    public static final int NO_VALUE = -1;
+    static final int MAX_RR = 16;
+
+    /** Heart rate in bpm, NO_VALUE if the frame has none */
+    public int hr = NO_VALUE;
+
+    /** RR intervals in ms since the previous frame, oldest first */
+    public final int[] rr = new int[MAX_RR];
+
+    public int rrCount;
+
+    void clear() {
+      hr = NO_VALUE;
+      rrCount = 0;
+    }
+  }
+}
@@ -48,6 +48,14 @@ public interface HRProvider {
 
     void onCloseResult(boolean closeOK);
 
+    /**
+     * A heart rate sample was received, at the rate of the sensor. Called on the handler given to
+     * open().
+     *
+     * @param elapsedRealtimeNanos SystemClock.elapsedRealtimeNanos() when the sample was received
+     */
+    void onHRValue(HRProvider src, int hrValue, long elapsedRealtimeNanos);
+
     void log(HRProvider src, String msg);
   }
 
@@ -160,6 +168,12 @@ public interface HRProvider {
    */
   HRData getHRData();
 
+  /**
+   * @return the RR intervals received from the device, null if the provider does not supply them.
+   *     The buffer has a single consumer, the tracker.
+   */
+  RrIntervalBuffer getRrIntervals();
+
   /**
    * @return The battery level, in percents (0-100), of the heart rate monitor device, or {@link
    *     #BATTERY_LEVEL_UNAVAILABLE} if no device has been connected or the device doesn't supply
@@ -109,7 +109,12 @@ public class MockHRProvider implements HRProvider {
           hrValue = (int) (120 + SystemClock.elapsedRealtime() / 1000.0 % 40 + 3 * Math.random());
           hrTimestamp = System.currentTimeMillis();
           hrElapsedRealtime = SystemClock.elapsedRealtimeNanos();
+          // One beat at the current rate with some variability
+          rrIntervals.offer(
+              SystemClock.elapsedRealtime(),
+              (int) (60000 / hrValue * (1 + 0.05 * (Math.random() - 0.5))));
           if (mIsConnected) {
+            hrClient.onHRValue(MockHRProvider.this, hrValue, hrElapsedRealtime);
             hrClientHandler.postDelayed(hrUpdate, 750);
           }
         }
@@ -124,6 +129,7 @@ public class MockHRProvider implements HRProvider {
   private int hrValue = 0;
   private long hrTimestamp = 0;
   private long hrElapsedRealtime = 0;
+  private final RrIntervalBuffer rrIntervals = new RrIntervalBuffer();
 
   @Override
   public int getHRValue() {
@@ -149,6 +155,11 @@ public class MockHRProvider implements HRProvider {
     return new HRData().setHeartRate(hrValue).setTimestampEstimate(hrTimestamp);
   }
 
+  @Override
+  public RrIntervalBuffer getRrIntervals() {
+    return rrIntervals;
+  }
+
   @Override
   public int getBatteryLevel() {
     return (int) (100 * Math.random());
@@ -0,0 +1,143 @@
+package org.runnerup.hr;
+
+import android.os.Handler;
+import android.os.SystemClock;
+import androidx.appcompat.app.AppCompatActivity;
+
+/**
+ * Heart rate provider fed with recorded samples instead of a sensor, for replaying sessions into
+ * the tracker. Connects immediately, the samples are passed in on the handler thread by the replay.
+ */
+public class ReplayHRProvider implements HRProvider {
+
+  public static final String NAME = "ReplayHR";
+
+  private HRClient hrClient = null;
+  private boolean mIsConnected = false;
+
+  private int hrValue = 0;
+  private long hrTimestamp = 0;
+  private long hrElapsedRealtime = 0;
+  private final RrIntervalBuffer rrIntervals = new RrIntervalBuffer();
+
+  /** A recorded heart rate sample, received now */
+  public void onHRValue(int value) {
+    hrValue = value;
+    hrTimestamp = System.currentTimeMillis();
+    hrElapsedRealtime = SystemClock.elapsedRealtimeNanos();
+    if (mIsConnected && hrClient != null) {
+      hrClient.onHRValue(this, hrValue, hrElapsedRealtime);
+    }
+  }
+
+  /** A recorded RR interval, the beat ending now */
+  public void onRrInterval(int rrMs) {
+    if (mIsConnected) {
+      rrIntervals.offer(SystemClock.elapsedRealtime(), rrMs);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public String getProviderName() {
+    return NAME;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return true;
+  }
+
+  @Override
+  public boolean startEnableIntent(AppCompatActivity activity, int requestCode) {
+    return false;
+  }
+
+  @Override
+  public void open(Handler handler, HRClient hrClient) {
+    this.hrClient = hrClient;
+    hrClient.onOpenResult(true);
+  }
+
+  @Override
+  public void close() {
+    hrClient = null;
+  }
+
+  @Override
+  public boolean includePairingBLE() {
+    return false;
+  }
+
+  @Override
+  public boolean isScanning() {
+    return false;
+  }
+
+  @Override
+  public boolean isConnected() {
+    return mIsConnected;
+  }
+
+  @Override
+  public boolean isConnecting() {
+    return false;
+  }
+
+  @Override
+  public void startScan() {}
+
+  @Override
+  public void stopScan() {}
+
+  @Override
+  public void connect(HRDeviceRef ref) {
+    mIsConnected = true;
+    if (hrClient != null) {
+      hrClient.onConnectResult(true);
+    }
+  }
+
+  @Override
+  public void disconnect() {
+    mIsConnected = false;
+  }
+
+  @Override
+  public int getHRValue() {
+    return hrValue;
+  }
+
+  @Override
+  public long getHRValueTimestamp() {
+    return hrTimestamp;
+  }
+
+  @Override
+  public long getHRValueElapsedRealtime() {
+    return hrElapsedRealtime;
+  }
+
+  @Override
+  public HRData getHRData() {
+    if (hrValue <= 0) {
+      return null;
+    }
+
+    return new HRData().setHeartRate(hrValue).setTimestampEstimate(hrTimestamp);
+  }
+
+  @Override
+  public RrIntervalBuffer getRrIntervals() {
+    return rrIntervals;
+  }
+
+  @Override
+  public int getBatteryLevel() {
+    return HRProvider.BATTERY_LEVEL_UNAVAILABLE;
+  }
+}
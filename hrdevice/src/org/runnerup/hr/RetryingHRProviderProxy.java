@@ -271,6 +271,11 @@ public class RetryingHRProviderProxy implements HRProvider, HRProvider.HRClient
     return provider.getHRData();
   }
 
+  @Override
+  public RrIntervalBuffer getRrIntervals() {
+    return provider.getRrIntervals();
+  }
+
   @Override
   public int getBatteryLevel() {
     return provider.getBatteryLevel();
@@ -307,6 +312,11 @@ public class RetryingHRProviderProxy implements HRProvider, HRProvider.HRClient
     if (client != null) client.onConnectResult(closeOK);
   }
 
+  @Override
+  public void onHRValue(HRProvider src, int hrValue, long elapsedRealtimeNanos) {
+    if (client != null) client.onHRValue(this, hrValue, elapsedRealtimeNanos);
+  }
+
   @Override
   public void log(HRProvider src, String msg) {
     log(msg);
@@ -0,0 +1,88 @@
+package org.runnerup.hr;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free single-producer/single-consumer ring buffer of RR intervals. The provider thread
+ * receiving sensor data is the producer, the tracker draining the intervals the consumer. When the
+ * consumer falls behind, new intervals are dropped and counted.
+ */
+public final class RrIntervalBuffer {
+
+  private static final int CAPACITY = 1024; // power of two, about 10 minutes of beats
+  private static final int MASK = CAPACITY - 1;
+
+  // Elapsed realtime in ms at the end of the beat, and the interval in ms
+  private final long[] times = new long[CAPACITY];
+  private final int[] intervals = new int[CAPACITY];
+
+  // Written by the producer only, read by the consumer
+  private final AtomicLong head = new AtomicLong();
+  // Written by the consumer only, read by the producer
+  private final AtomicLong tail = new AtomicLong();
+  private volatile long dropped = 0;
+
+  /**
+   * Add an interval, producer thread only.
+   *
+   * @param elapsedMs SystemClock.elapsedRealtime() at the end of the beat
+   * @return false if the buffer is full and the interval was dropped
+   */
+  public boolean offer(long elapsedMs, int rrMs) {
+    long h = head.get();
+    if (h - tail.get() == CAPACITY) {
+      //noinspection NonAtomicOperationOnVolatileField
+      dropped++;
+      return false;
+    }
+    int i = (int) (h & MASK);
+    times[i] = elapsedMs;
+    intervals[i] = rrMs;
+    // Publish the slot after it is written
+    head.lazySet(h + 1);
+    return true;
+  }
+
+  /**
+   * Add the intervals received in one packet, the last ending at elapsedMs. Producer thread only.
+   */
+  public void offer(long elapsedMs, int[] rrMs, int count) {
+    long end = elapsedMs;
+    for (int i = count - 1; i > 0; i--) {
+      end -= rrMs[i];
+    }
+    for (int i = 0; i < count; i++) {
+      offer(end, rrMs[i]);
+      if (i + 1 < count) {
+        end += rrMs[i + 1];
+      }
+    }
+  }
+
+  /**
+   * Move up to max intervals to the arrays, oldest first. Consumer thread only.
+   *
+   * @return the number of intervals
+   */
+  public int drain(long[] elapsedMs, int[] rrMs, int max) {
+    long t = tail.get();
+    int count = (int) Math.min(max, head.get() - t);
+    for (int n = 0; n < count; n++) {
+      int i = (int) ((t + n) & MASK);
+      elapsedMs[n] = times[i];
+      rrMs[n] = intervals[i];
+    }
+    // Release the slots after they are read
+    tail.lazySet(t + count);
+    return count;
+  }
+
+  public boolean isEmpty() {
+    return head.get() == tail.get();
+  }
+
+  /** Intervals dropped because the buffer was full */
+  public long getDropped() {
+    return dropped;
+  }
+}
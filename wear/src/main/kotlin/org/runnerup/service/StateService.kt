@@ -32,6 +32,7 @@ import com.google.android.gms.wearable.MessageApi
 import com.google.android.gms.wearable.MessageEvent
 import com.google.android.gms.wearable.Wearable
 import org.runnerup.common.tracker.TrackerState
+import org.runnerup.common.tracker.WearTelemetry
 import org.runnerup.common.util.Constants
 import org.runnerup.common.util.ValueModel
 import org.runnerup.view.MainActivity
@@ -46,6 +47,10 @@ class StateService :
     private var phoneNode: String? = null
 
     private var data: Bundle? = null
+    private val telemetry = WearTelemetry.Decoder()
+    private var syncRequested = false
+    // The phone was told that frames are handled
+    private var telemetryAnnounced = false
     private val trackerStateModel = ValueModel<TrackerState>()
     private val headers = ValueModel<Bundle>()
     private var headersListener: MainActivity? = null
@@ -160,14 +165,42 @@ class StateService :
     fun getData(lastUpdateTime: Long): Bundle? = getBundle(data, lastUpdateTime)
 
     override fun onMessageReceived(messageEvent: MessageEvent) {
-        if (Constants.Wear.Path.MSG_WORKOUT_EVENT.contentEquals(messageEvent.path)) {
+        if (Constants.Wear.Path.MSG_WORKOUT_EVENT_V2.contentEquals(messageEvent.path)) {
+            onWorkoutEvent(messageEvent.data)
+        } else if (Constants.Wear.Path.MSG_WORKOUT_EVENT.contentEquals(messageEvent.path)) {
+            // Sent until the phone knows that frames are handled
             data = DataMap.fromByteArray(messageEvent.data).toBundle()
             data?.putLong(UPDATE_TIME, System.currentTimeMillis())
+            if (!telemetryAnnounced) {
+                telemetryAnnounced = true
+                sendMessage(Constants.Wear.Path.MSG_WORKOUT_EVENT_SYNC)
+            }
         } else {
             System.err.println("onMessageReceived: $messageEvent")
         }
     }
 
+    private fun onWorkoutEvent(frame: ByteArray) {
+        if (!telemetry.decode(frame)) {
+            // Lost a frame, keep showing the last values until all are resent
+            if (!syncRequested) {
+                syncRequested = true
+                sendMessage(Constants.Wear.Path.MSG_WORKOUT_EVENT_SYNC)
+            }
+            return
+        }
+        syncRequested = false
+
+        telemetryAnnounced = true
+
+        val b = Bundle()
+        for ((field, text) in telemetry.fields) {
+            b.putString(WearTelemetry.bundleKey(field), text)
+        }
+        b.putLong(UPDATE_TIME, System.currentTimeMillis())
+        data = b
+    }
+
     override fun onDataChanged(dataEvents: DataEventBuffer) {
         for (ev in dataEvents) {
             System.err.println("onDataChanged: " + ev.dataItem.uri)
@@ -221,6 +254,9 @@ class StateService :
 
     private fun resetState() {
         data = null
+        telemetry.reset()
+        syncRequested = false
+        telemetryAnnounced = false
         headers.set(null)
     }
 